@@ -21,6 +21,7 @@ import com.limelight.binding.video.MediaCodecDecoderRenderer;
 import com.limelight.binding.video.MediaCodecHelper;
 import com.limelight.binding.video.PerfOverlayListener;
 import com.limelight.binding.video.PerformanceInfo;
+import com.limelight.nvstream.AdaptiveBitrateController;
 import com.limelight.nvstream.NvConnection;
 import com.limelight.nvstream.NvConnectionListener;
 import com.limelight.nvstream.StreamConfiguration;
@@ -69,6 +70,7 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Rational;
 import android.view.Display;
@@ -212,7 +214,11 @@ public class Game extends Activity implements SurfaceHolder.Callback,
     // 性能覆盖层管理器
     private PerformanceOverlayManager performanceOverlayManager;
 
+    // 自适应码率控制器，未启用时为null
+    private AdaptiveBitrateController adaptiveBitrateController;
+
     private MediaCodecDecoderRenderer decoderRenderer;
+    private AndroidAudioRenderer audioRenderer;
     private boolean reportedCrash;
 
     private WifiManager.WifiLock highPerfWifiLock;
@@ -3914,6 +3920,12 @@ public class Game extends Activity implements SurfaceHolder.Callback,
             shortcutHelper.reportGameLaunched(computer, app);
         }
 
+        if (prefConfig.enableAdaptiveBitrate) {
+            // The configured bitrate is the ceiling, 500 kbps matches the manual adjustment floor
+            int bitrate = conn.getCurrentBitrate();
+            adaptiveBitrateController = new AdaptiveBitrateController(500, bitrate, bitrate);
+        }
+
         // 检查是否启用了HDR并主动设置初始状态
         // 这解决了首次连接时setHdrMode没有被调用的问题
         boolean appSupportsHdr = Game.this.getIntent().getBooleanExtra(EXTRA_APP_HDR, false);
@@ -4223,8 +4235,8 @@ public class Game extends Activity implements SurfaceHolder.Callback,
 
             decoderRenderer.setRenderTarget(holder);
 
-            conn.start(new AndroidAudioRenderer(Game.this, prefConfig.enableAudioFx, prefConfig.enableSpatializer),
-                    decoderRenderer, Game.this);
+            audioRenderer = new AndroidAudioRenderer(Game.this, prefConfig.enableAudioFx, prefConfig.enableSpatializer);
+            conn.start(audioRenderer, decoderRenderer, Game.this);
 
             if (streamView != null) {
                 streamView.post(this::syncCursorWithStream);
@@ -4693,9 +4705,59 @@ public class Game extends Activity implements SurfaceHolder.Callback,
 
     @Override
     public void onPerfUpdateV(final PerformanceInfo performanceInfo) {
+        if (audioRenderer != null) {
+            audioRenderer.populatePerformanceInfo(performanceInfo);
+        }
         if (performanceOverlayManager != null) {
             performanceOverlayManager.updatePerformanceInfo(performanceInfo);
         }
+        updateAdaptiveBitrate(performanceInfo);
+    }
+
+    private void updateAdaptiveBitrate(PerformanceInfo performanceInfo) {
+        final AdaptiveBitrateController controller = adaptiveBitrateController;
+        final NvConnection connection = conn;
+        if (controller == null || connection == null) {
+            return;
+        }
+
+        int targetBitrate;
+        final int sequence;
+        synchronized (controller) {
+            targetBitrate = controller.onStatsWindow(SystemClock.uptimeMillis(),
+                    performanceInfo.windowTotalFrames, performanceInfo.windowFramesLost,
+                    performanceInfo.windowFrameLossEvents,
+                    (int) (performanceInfo.rttInfo >> 32), (int) performanceInfo.rttInfo,
+                    performanceInfo.pendingVideoFrames);
+            sequence = controller.getRequestSequence();
+        }
+        if (targetBitrate < 0) {
+            return;
+        }
+
+        // Unlike a manual change, this isn't saved to prefConfig so the configured bitrate stays the ceiling
+        try {
+            connection.setBitrate(targetBitrate, new NvConnection.BitrateAdjustmentCallback() {
+                @Override
+                public void onSuccess(int newBitrate) {
+                    controller.onBitrateApplied(sequence, newBitrate);
+                }
+
+                @Override
+                public void onFailure(String errorMessage) {
+                    controller.onBitrateRejected(sequence);
+                }
+            });
+        } catch (Exception e) {
+            controller.onBitrateRejected(sequence);
+        }
+    }
+
+    // 用户手动调整码率后，作为自适应码率的新上限
+    public void onManualBitrateChanged(int bitrateKbps) {
+        if (adaptiveBitrateController != null) {
+            adaptiveBitrateController.onManualBitrateChange(bitrateKbps);
+        }
     }
 
     @Override
@@ -4729,6 +4791,11 @@ public class Game extends Activity implements SurfaceHolder.Callback,
                 perfAttrs.put("解码时间", String.format("%.2f", performanceInfo.decodeTimeMs));
                 perfAttrs.put("带宽", performanceInfo.bandWidth);
                 perfAttrs.put("渲染延迟", String.format("%.2f", performanceInfo.renderingLatencyMs));
+                perfAttrs.put("解码时间P95", String.format("%.2f", performanceInfo.decodeTimeP95Ms));
+                perfAttrs.put("解码时间P99", String.format("%.2f", performanceInfo.decodeTimeP99Ms));
+                perfAttrs.put("主机延时P99", String.format("%.2f", performanceInfo.hostProcessingLatencyP99Ms));
+                perfAttrs.put("渲染延迟P99", String.format("%.2f", performanceInfo.renderingLatencyP99Ms));
+                perfAttrs.put("帧间隔P99", String.format("%.2f", performanceInfo.frameIntervalP99Ms));
                 for (PerformanceInfoDisplay performanceInfoDisplay : performanceInfoDisplays) {
                     performanceInfoDisplay.display(perfAttrs);
                 }
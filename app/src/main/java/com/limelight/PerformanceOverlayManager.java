@@ -112,6 +112,7 @@ public class PerformanceOverlayManager {
         NETWORK_LATENCY(R.id.perfNetworkLatency, "network_latency", "networkLatencyView"),
         DECODE_LATENCY(R.id.perfDecodeLatency, "decode_latency", "decodeLatencyView"),
         HOST_LATENCY(R.id.perfHostLatency, "host_latency", "hostLatencyView"),
+        AUDIO_LATENCY(R.id.perfAudioLatency, "audio_latency", "audioLatencyView"),
         BATTERY(R.id.perfBattery, "battery", "perfBatteryView");
 
         final int viewId;
@@ -236,6 +237,7 @@ public class PerformanceOverlayManager {
             case NETWORK_LATENCY: return this::showNetworkLatencyInfo;
             case DECODE_LATENCY: return this::showDecodeLatencyInfo;
             case HOST_LATENCY: return this::showHostLatencyInfo;
+            case AUDIO_LATENCY: return this::showAudioLatencyInfo;
             case BATTERY: return this::showBatteryInfo;
             default: return this::showMoonPhaseInfo;
         }
@@ -554,6 +556,9 @@ public class PerformanceOverlayManager {
             case HOST_LATENCY:
                 updateHostLatencyText(itemInfo.view, performanceInfo);
                 break;
+            case AUDIO_LATENCY:
+                updateAudioLatencyText(itemInfo.view, performanceInfo);
+                break;
             case BATTERY:
                 updateBatteryText(itemInfo.view);
                 break;
@@ -598,19 +603,30 @@ public class PerformanceOverlayManager {
 
     private void updateDecodeLatencyText(TextView view, PerformanceInfo performanceInfo) {
         String icon = performanceInfo.decodeTimeMs < 15 ? "⏱️" : "🥵";
-        @SuppressLint("DefaultLocale") String latencyValue = String.format("%.2f", performanceInfo.decodeTimeMs);
+        @SuppressLint("DefaultLocale") String latencyValue = String.format("%.2f (p99 %.1f)",
+            performanceInfo.decodeTimeMs, performanceInfo.decodeTimeP99Ms);
         view.setText(createStyledText(icon, latencyValue, "ms", 0xFFD597E3));
     }
 
     private void updateHostLatencyText(TextView view, PerformanceInfo performanceInfo) {
         if (performanceInfo.framesWithHostProcessingLatency > 0) {
-            @SuppressLint("DefaultLocale") String latencyValue = String.format("%.1f", performanceInfo.aveHostProcessingLatency);
+            @SuppressLint("DefaultLocale") String latencyValue = String.format("%.1f (p99 %.1f)",
+                performanceInfo.aveHostProcessingLatency, performanceInfo.hostProcessingLatencyP99Ms);
             view.setText(createStyledText("🖥", latencyValue, "ms", 0xFF009688));
         } else {
             view.setText(createStyledText("🧋", "Ver.V+", "", 0xFF009688));
         }
     }
 
+    private void updateAudioLatencyText(TextView view, PerformanceInfo performanceInfo) {
+        // 出现欠载时用红色提示
+        int audioColor = performanceInfo.audioUnderruns > 0 ? 0xFFB57D7D : 0xFFFFD54F;
+        @SuppressLint("DefaultLocale") String audioValue = String.format("%.0f (p99 %.0f) U%d C%d",
+            performanceInfo.audioQueuedP50Ms, performanceInfo.audioQueuedP99Ms,
+            performanceInfo.audioUnderruns, performanceInfo.audioCorrections);
+        view.setText(createStyledText("🔊", audioValue, "ms", audioColor));
+    }
+
     private void updateBatteryText(TextView view) {
         int batteryLevel = UiHelper.getBatteryLevel(activity);
         String batteryText;
@@ -863,6 +879,9 @@ public class PerformanceOverlayManager {
         } else if (viewId == R.id.perfHostLatency) {
             textView.setTypeface(Typeface.create("sans-serif", Typeface.NORMAL));
             textView.setTextSize(10);
+        } else if (viewId == R.id.perfAudioLatency) {
+            textView.setTypeface(Typeface.create("sans-serif", Typeface.NORMAL));
+            textView.setTextSize(10);
         } else if (viewId == R.id.perfBattery) {
             textView.setTypeface(Typeface.create("sans-serif", Typeface.NORMAL));
             textView.setTextSize(10);
@@ -1336,6 +1355,10 @@ public class PerformanceOverlayManager {
         showPerformanceInfo(R.string.perf_host_latency_title, R.string.perf_host_latency_info);
     }
 
+    private void showAudioLatencyInfo() {
+        showPerformanceInfo(R.string.perf_audio_latency_title, R.string.perf_audio_latency_info);
+    }
+
     private void showInfoDialog(String title, String message) {
         new AlertDialog.Builder(activity, R.style.AppDialogStyle)
                 .setTitle(title)
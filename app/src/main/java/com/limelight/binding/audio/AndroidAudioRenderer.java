@@ -9,11 +9,17 @@ import android.media.AudioTrack;
 import android.media.Spatializer;
 import android.media.audiofx.AudioEffect;
 import android.os.Build;
+import android.os.SystemClock;
 
 import com.limelight.LimeLog;
+import com.limelight.binding.video.PerformanceInfo;
 import com.limelight.nvstream.av.audio.AudioRenderer;
 import com.limelight.nvstream.jni.MoonBridge;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
 public class AndroidAudioRenderer implements AudioRenderer {
 
     private final Context context;
@@ -23,6 +29,29 @@ public class AndroidAudioRenderer implements AudioRenderer {
     private AudioTrack track;
     private Spatializer spatializer;
 
+    private AudioLatencyGovernor latencyGovernor;
+    private int channelCount;
+    private int sampleRate;
+    // Frames handed to AudioTrack, for working out how much it still has buffered.
+    // Kept as an int so it wraps the same way as getPlaybackHeadPosition().
+    private int framesWritten;
+
+    // The native side reuses the same array for every frame, so we only wrap it once
+    private short[] wrappedAudioData;
+    private ShortBuffer wrappedAudioBuffer;
+    private ShortBuffer pcmShortBuffer;
+
+    // Decoded PCM is written here by native code when using the direct path
+    private ByteBuffer pcmBuffer;
+
+    // Direct path write stats. A short write is a non-blocking write that couldn't take the
+    // whole frame because AudioTrack's buffer was full. The rest is then written blocking,
+    // and that wait is a stall.
+    private int shortWrites;
+    private int writeStalls;
+    private long totalStallTimeNs;
+    private long maxStallTimeNs;
+
     public AndroidAudioRenderer(Context context, boolean enableAudioFx, boolean enableSpatializer) {
         this.context = context;
         this.enableAudioFx = enableAudioFx;
@@ -104,6 +133,8 @@ public class AndroidAudioRenderer implements AudioRenderer {
         LimeLog.info("Audio channel config: "+String.format("0x%X", channelConfig));
 
         bytesPerFrame = audioConfiguration.channelCount * samplesPerFrame * 2;
+        channelCount = audioConfiguration.channelCount;
+        this.sampleRate = sampleRate;
 
         // We're not supposed to request less than the minimum
         // buffer size for our buffer, but it appears that we can
@@ -192,6 +223,8 @@ public class AndroidAudioRenderer implements AudioRenderer {
             return -2;
         }
 
+        latencyGovernor = new AudioLatencyGovernor(channelCount, sampleRate, SystemClock.uptimeMillis());
+
         // Initialize Spatializer if supported and enabled
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU && enableSpatializer) {
             try {
@@ -229,16 +262,107 @@ public class AndroidAudioRenderer implements AudioRenderer {
     public void playDecodedAudio(short[] audioData) {
         // Only queue up to 40 ms of pending audio data in addition to what AudioTrack is buffering for us.
         if (MoonBridge.getPendingAudioDuration() < 40) {
+            if (audioData != wrappedAudioData) {
+                wrappedAudioData = audioData;
+                wrappedAudioBuffer = ShortBuffer.wrap(audioData);
+            }
+
+            int samplesPerChannel = governLatency(wrappedAudioBuffer, audioData.length / channelCount);
+            if (samplesPerChannel == 0) {
+                return;
+            }
+
             // This will block until the write is completed. That can cause a backlog
             // of pending audio data, so we do the above check to be able to bound
             // latency at 40 ms in that situation.
-            track.write(audioData, 0, audioData.length);
+            int written = track.write(audioData, 0, samplesPerChannel * channelCount);
+            if (written > 0) {
+                framesWritten += written / channelCount;
+            }
         }
         else {
             LimeLog.info("Too much pending audio data: " + MoonBridge.getPendingAudioDuration() +" ms");
         }
     }
 
+    @Override
+    public ByteBuffer getDirectPcmBuffer(int sizeBytes) {
+        // Opus decodes to native endian samples, which is also what AudioTrack expects
+        pcmBuffer = ByteBuffer.allocateDirect(sizeBytes).order(ByteOrder.nativeOrder());
+        pcmShortBuffer = pcmBuffer.asShortBuffer();
+        return pcmBuffer;
+    }
+
+    @Override
+    public void playDirectAudio(int lengthBytes) {
+        // Same bound on pending audio as playDecodedAudio()
+        if (MoonBridge.getPendingAudioDuration() >= 40) {
+            LimeLog.info("Too much pending audio data: " + MoonBridge.getPendingAudioDuration() +" ms");
+            return;
+        }
+
+        int samplesPerChannel = governLatency(pcmShortBuffer, lengthBytes / (2 * channelCount));
+        if (samplesPerChannel == 0) {
+            return;
+        }
+        lengthBytes = samplesPerChannel * channelCount * 2;
+
+        pcmBuffer.clear();
+        pcmBuffer.limit(lengthBytes);
+
+        int written = track.write(pcmBuffer, lengthBytes, AudioTrack.WRITE_NON_BLOCKING);
+        if (written < 0) {
+            LimeLog.warning("AudioTrack write failed: " + written);
+            return;
+        }
+        framesWritten += written / (2 * channelCount);
+
+        if (written < lengthBytes) {
+            shortWrites++;
+
+            // Write the rest blocking rather than dropping it, and time how long that takes.
+            // The buffer position has already advanced past what was written.
+            long startNs = System.nanoTime();
+            int remainderWritten = track.write(pcmBuffer, pcmBuffer.remaining(), AudioTrack.WRITE_BLOCKING);
+            long stallNs = System.nanoTime() - startNs;
+            if (remainderWritten > 0) {
+                framesWritten += remainderWritten / (2 * channelCount);
+            }
+
+            // Waits under 1 ms are just AudioTrack draining a period
+            if (stallNs >= 1000000) {
+                writeStalls++;
+                totalStallTimeNs += stallNs;
+                maxStallTimeNs = Math.max(maxStallTimeNs, stallNs);
+            }
+        }
+    }
+
+    private int governLatency(ShortBuffer pcm, int samplesPerChannel) {
+        // Frames written to AudioTrack that it hasn't played yet
+        int trackBufferedFrames = Math.max(0, framesWritten - track.getPlaybackHeadPosition());
+        int queuedMs = MoonBridge.getPendingAudioDuration() + (int) (trackBufferedFrames * 1000L / sampleRate);
+
+        int underrunCount = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? track.getUnderrunCount() : -1;
+
+        return latencyGovernor.process(pcm, samplesPerChannel, queuedMs, underrunCount, SystemClock.uptimeMillis());
+    }
+
+    // Called on the video stats thread about once per second
+    public void populatePerformanceInfo(PerformanceInfo performanceInfo) {
+        AudioLatencyGovernor governor = latencyGovernor;
+        if (governor == null) {
+            return;
+        }
+
+        performanceInfo.audioQueuedP50Ms = governor.getQueuedP50Ms();
+        performanceInfo.audioQueuedP95Ms = governor.getQueuedP95Ms();
+        performanceInfo.audioQueuedP99Ms = governor.getQueuedP99Ms();
+        performanceInfo.audioTargetMs = governor.getTargetMs();
+        performanceInfo.audioUnderruns = governor.getUnderruns();
+        performanceInfo.audioCorrections = governor.getCorrections();
+    }
+
     @Override
     public void start() {
         if (enableAudioFx) {
@@ -264,6 +388,17 @@ public class AndroidAudioRenderer implements AudioRenderer {
 
     @Override
     public void cleanup() {
+        if (pcmBuffer != null) {
+            LimeLog.info("Audio direct writes: " + shortWrites + " short writes, " + writeStalls + " stalls (" +
+                    totalStallTimeNs / 1000000 + " ms total, " + maxStallTimeNs / 1000000 + " ms max)");
+        }
+
+        if (latencyGovernor != null) {
+            LimeLog.info("Audio latency governor: " + latencyGovernor.getSilenceDrops() + " silent frames dropped, " +
+                    latencyGovernor.getStretchedFrames() + " frames shortened, " +
+                    latencyGovernor.getUnderruns() + " underruns, final target " + latencyGovernor.getTargetMs() + " ms");
+        }
+
         // Immediately drop all pending data
         track.pause();
         track.flush();
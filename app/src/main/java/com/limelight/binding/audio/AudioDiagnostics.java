@@ -4,6 +4,7 @@ import android.content.Context;
 import com.limelight.LimeLog;
 import com.limelight.R;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -18,10 +19,60 @@ public class AudioDiagnostics {
     private static final AtomicLong droppedFrames = new AtomicLong(0);
     private static final AtomicLong encodingErrors = new AtomicLong(0);
     private static final AtomicLong sendingErrors = new AtomicLong(0);
+    // 静音期间被语音门限跳过编码的帧，以及编码器处于DTX状态不需要发送的帧
+    private static final AtomicLong gatedFrames = new AtomicLong(0);
+    private static final AtomicLong dtxFrames = new AtomicLong(0);
+    // 跳过编码节省的CPU时间（按平均编码耗时估算）
+    private static final AtomicLong encodeTimeSavedNs = new AtomicLong(0);
     
     private static long lastReportTime = 0;
     private static final long REPORT_INTERVAL_MS = 5000; // 每5秒报告一次
     
+    // 从入队到发送的排队延迟
+    private static final DelayHistogram queueDelay = new DelayHistogram();
+    // 从采集到发送的总延迟
+    private static final DelayHistogram captureToSendDelay = new DelayHistogram();
+    // 采集时钟相对系统时钟的漂移（ppm）
+    private static volatile double captureClockDriftPpm = 0;
+    
+    /**
+     * 延迟直方图：0.1ms一个桶，覆盖0-100ms，超出的计入最后一个桶
+     */
+    private static class DelayHistogram {
+        private static final int BUCKET_US = 100;
+        private static final int BUCKETS = 1000;
+        
+        private final long[] counts = new long[BUCKETS];
+        private long samples = 0;
+        
+        synchronized void record(long delayNs) {
+            counts[(int) Math.min(BUCKETS - 1, Math.max(0, delayNs / 1000 / BUCKET_US))]++;
+            samples++;
+        }
+        
+        synchronized float getPercentileMs(double percentile) {
+            if (samples == 0) {
+                return 0;
+            }
+            
+            long rank = (long) Math.ceil(samples * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    // 返回桶的上界
+                    return (i + 1) * BUCKET_US / 1000.0f;
+                }
+            }
+            return BUCKETS * BUCKET_US / 1000.0f;
+        }
+        
+        synchronized void clear() {
+            Arrays.fill(counts, 0);
+            samples = 0;
+        }
+    }
+    
     /**
      * 记录捕获的帧
      */
@@ -54,6 +105,24 @@ public class AudioDiagnostics {
         checkAndReport();
     }
     
+    /**
+     * 记录被语音门限跳过的帧
+     * @param savedEncodeNs 估算节省的编码时间
+     */
+    public static void recordFrameGated(long savedEncodeNs) {
+        gatedFrames.incrementAndGet();
+        encodeTimeSavedNs.addAndGet(savedEncodeNs);
+        checkAndReport();
+    }
+    
+    /**
+     * 记录编码器处于DTX状态、无需发送的帧
+     */
+    public static void recordDtxFrame() {
+        dtxFrames.incrementAndGet();
+        checkAndReport();
+    }
+    
     /**
      * 记录编码错误
      */
@@ -70,6 +139,45 @@ public class AudioDiagnostics {
         checkAndReport();
     }
     
+    /**
+     * 记录数据包从入队到开始发送的排队延迟
+     */
+    public static void recordQueueDelay(long delayNs) {
+        queueDelay.record(delayNs);
+    }
+    
+    /**
+     * 记录数据包从采集到开始发送的延迟
+     */
+    public static void recordCaptureToSendDelay(long delayNs) {
+        captureToSendDelay.record(delayNs);
+    }
+    
+    /**
+     * 记录采集时钟相对发送端时钟的漂移
+     */
+    public static void recordCaptureClockDrift(double driftPpm) {
+        captureClockDriftPpm = driftPpm;
+    }
+    
+    /**
+     * 获取排队延迟百分位数（毫秒），percentile取值0-1
+     */
+    public static float getQueueDelayPercentileMs(double percentile) {
+        return queueDelay.getPercentileMs(percentile);
+    }
+    
+    /**
+     * 获取采集到发送延迟百分位数（毫秒），percentile取值0-1
+     */
+    public static float getCaptureToSendDelayPercentileMs(double percentile) {
+        return captureToSendDelay.getPercentileMs(percentile);
+    }
+    
+    public static double getCaptureClockDriftPpm() {
+        return captureClockDriftPpm;
+    }
+    
     /**
      * 检查并报告统计信息
      */
@@ -91,16 +199,26 @@ public class AudioDiagnostics {
         long dropped = droppedFrames.get();
         long encErrors = encodingErrors.get();
         long sendErrors = sendingErrors.get();
+        long gated = gatedFrames.get();
+        long dtx = dtxFrames.get();
         
-        // 计算连续性指标
-        double captureToEncodeRatio = captured > 0 ? (double) encoded / captured : 0;
-        double encodeToSendRatio = encoded > 0 ? (double) sent / encoded : 0;
-        double overallContinuity = captured > 0 ? (double) sent / captured : 0;
+        // 计算连续性指标（静音跳过的帧不算作丢失）
+        long expectedEncoded = captured - gated;
+        long expectedSent = encoded - dtx;
+        double captureToEncodeRatio = expectedEncoded > 0 ? (double) encoded / expectedEncoded : 1;
+        double encodeToSendRatio = expectedSent > 0 ? (double) sent / expectedSent : 1;
+        double overallContinuity = expectedEncoded - dtx > 0 ? (double) sent / (expectedEncoded - dtx) : 1;
         
         // 使用单行详细日志
         LimeLog.info(String.format("[音频诊断] 捕获:%d 编码:%d 发送:%d 丢弃:%d 编错:%d 发错:%d (捕编比:%.2f%% 编发比:%.2f%% 连续性:%.2f%%)",
                 captured, encoded, sent, dropped, encErrors, sendErrors,
                 captureToEncodeRatio * 100, encodeToSendRatio * 100, overallContinuity * 100));
+        LimeLog.info(String.format("[音频诊断] 静音跳过:%d DTX:%d 节省编码时间:%.1fms",
+                gated, dtx, encodeTimeSavedNs.get() / 1000000.0));
+        LimeLog.info(String.format("[音频诊断] 排队延迟 p50:%.1fms p95:%.1fms p99:%.1fms 采集到发送 p50:%.1fms p99:%.1fms 时钟漂移:%.0fppm",
+                getQueueDelayPercentileMs(0.50), getQueueDelayPercentileMs(0.95), getQueueDelayPercentileMs(0.99),
+                getCaptureToSendDelayPercentileMs(0.50), getCaptureToSendDelayPercentileMs(0.99),
+                captureClockDriftPpm));
         
         // 分析问题
         if (captureToEncodeRatio < 0.95) {
@@ -115,6 +233,9 @@ public class AudioDiagnostics {
         if (dropped > 0) {
             LimeLog.warning("检测到帧丢弃，可能存在缓冲区不足问题");
         }
+        if (Math.abs(captureClockDriftPpm) > 500) {
+            LimeLog.warning("采集时钟漂移较大，发送端可能逐渐积压或欠载");
+        }
     }
     
     /**
@@ -127,6 +248,12 @@ public class AudioDiagnostics {
         droppedFrames.set(0);
         encodingErrors.set(0);
         sendingErrors.set(0);
+        gatedFrames.set(0);
+        dtxFrames.set(0);
+        encodeTimeSavedNs.set(0);
+        queueDelay.clear();
+        captureToSendDelay.clear();
+        captureClockDriftPpm = 0;
         lastReportTime = 0;
         LimeLog.info("音频诊断统计已重置");
     }
@@ -139,8 +266,9 @@ public class AudioDiagnostics {
         long encoded = totalFramesEncoded.get();
         long sent = totalFramesSent.get();
         long dropped = droppedFrames.get();
+        long skipped = gatedFrames.get() + dtxFrames.get();
         
-        double continuity = captured > 0 ? (double) sent / captured : 0;
+        double continuity = captured - skipped > 0 ? (double) sent / (captured - skipped) : 0;
         
         return String.format("音频连续性: %.1f%% (捕获:%d 编码:%d 发送:%d 丢弃:%d)", 
                            continuity * 100, captured, encoded, sent, dropped);
@@ -158,8 +286,9 @@ public class AudioDiagnostics {
         long encoded = totalFramesEncoded.get();
         long sent = totalFramesSent.get();
         long dropped = droppedFrames.get();
+        long skipped = gatedFrames.get() + dtxFrames.get();
         
-        double continuity = captured > 0 ? (double) sent / captured : 0;
+        double continuity = captured - skipped > 0 ? (double) sent / (captured - skipped) : 0;
         
         return context.getString(R.string.mic_stats_continuity, 
                                continuity * 100, captured, encoded, sent, dropped);
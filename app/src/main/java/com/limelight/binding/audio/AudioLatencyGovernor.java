@@ -0,0 +1,245 @@
+package com.limelight.binding.audio;
+
+import com.limelight.LimeLog;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+// Pulls audio latency back down after it has built up, without audible jumps.
+//
+// Once AudioTrack's buffer fills up after a network hiccup, audio arrives at the same rate it
+// is played, so that extra latency would otherwise stay for the rest of the session. Each
+// decoded frame is checked against the lowest queued duration seen over a short window
+// (the floor, so jitter alone doesn't count as excess). While the floor is above the target,
+// silent frames are dropped outright and other frames are shortened by a few samples at a
+// time with linear interpolation, which is too small a pitch change to notice.
+//
+// The target starts low and is raised a little after every window with AudioTrack underruns,
+// then slowly lowered again once playback has been clean for a while.
+//
+// All methods except the stats getters are called on the audio decoder thread.
+class AudioLatencyGovernor {
+    private static final int MIN_TARGET_MS = 20;
+    private static final int MAX_TARGET_MS = 80;
+    private static final int TARGET_STEP_MS = 5;
+    private static final long TARGET_DECAY_INTERVAL_MS = 30000;
+
+    // Window for the queued duration floor
+    private static final long FLOOR_WINDOW_MS = 500;
+    // Frames are shortened by at most 1/48 of their length (about 2% faster playback)
+    private static final int MAX_STRETCH_DIVISOR = 48;
+    // Peak sample magnitude below which a frame counts as silence (about -54 dBFS)
+    private static final int SILENCE_THRESHOLD = 64;
+
+    private static final long STATS_INTERVAL_MS = 1000;
+    // Queued duration histogram has 1 ms buckets, larger values go in the last one
+    private static final int HISTOGRAM_BUCKETS = 256;
+
+    private final int channelCount;
+    private final int sampleRate;
+
+    private int targetMs = MIN_TARGET_MS;
+    private long lastTargetChangeMs;
+    private int lastUnderrunCount;
+
+    private int floorMs = Integer.MAX_VALUE;
+    private int windowMinMs = Integer.MAX_VALUE;
+    private long floorWindowStartMs;
+    // Removed audio not yet credited to the floor, in 1/sampleRate ms units
+    private long floorCreditRemainder;
+
+    private final int[] queuedHistogram = new int[HISTOGRAM_BUCKETS];
+    private int queuedSamples;
+    private long statsWindowStartMs;
+
+    // Published once per stats window for the performance overlay
+    private volatile float queuedP50Ms;
+    private volatile float queuedP95Ms;
+    private volatile float queuedP99Ms;
+    private volatile int underruns;
+    private volatile int silenceDrops;
+    private volatile int stretchedFrames;
+    private volatile int currentTargetMs = MIN_TARGET_MS;
+
+    AudioLatencyGovernor(int channelCount, int sampleRate, long nowMs) {
+        this.channelCount = channelCount;
+        this.sampleRate = sampleRate;
+        this.lastTargetChangeMs = nowMs;
+        this.floorWindowStartMs = nowMs;
+        this.statsWindowStartMs = nowMs;
+    }
+
+    // Processes one decoded frame of interleaved samples in place. queuedMs is the audio
+    // already waiting to be played (both in the network queue and in AudioTrack), and
+    // underrunCount is AudioTrack's running underrun count or -1 if it isn't available.
+    //
+    // Returns the number of samples per channel to write, which is 0 to drop the frame.
+    int process(ShortBuffer pcm, int samplesPerChannel, int queuedMs, int underrunCount, long nowMs) {
+        recordQueued(queuedMs);
+        updateTarget(underrunCount, nowMs);
+        updateFloor(queuedMs, nowMs);
+
+        int excessMs = floorMs == Integer.MAX_VALUE ? 0 : floorMs - targetMs;
+        if (excessMs <= 0) {
+            maybePublishStats(nowMs);
+            return samplesPerChannel;
+        }
+
+        int frameMs = samplesPerChannel * 1000 / sampleRate;
+        int result = samplesPerChannel;
+        if (excessMs >= frameMs && isSilent(pcm, samplesPerChannel * channelCount)) {
+            // Nothing audible is lost by skipping a silent frame
+            silenceDrops++;
+            creditFloor(samplesPerChannel);
+            result = 0;
+        }
+        else {
+            int removed = Math.min(samplesPerChannel / MAX_STRETCH_DIVISOR,
+                    excessMs * sampleRate / 1000);
+            if (removed > 0) {
+                result = compress(pcm, samplesPerChannel, samplesPerChannel - removed);
+                stretchedFrames++;
+                creditFloor(removed);
+            }
+        }
+
+        maybePublishStats(nowMs);
+        return result;
+    }
+
+    private void recordQueued(int queuedMs) {
+        queuedHistogram[Math.max(0, Math.min(HISTOGRAM_BUCKETS - 1, queuedMs))]++;
+        queuedSamples++;
+    }
+
+    private void updateTarget(int underrunCount, long nowMs) {
+        if (underrunCount < 0) {
+            return;
+        }
+
+        if (underrunCount > lastUnderrunCount) {
+            underruns = underrunCount;
+            if (targetMs < MAX_TARGET_MS) {
+                targetMs = Math.min(MAX_TARGET_MS, targetMs + TARGET_STEP_MS);
+                LimeLog.info("Audio underrun (" + underrunCount + " total), latency target raised to " + targetMs + " ms");
+            }
+            lastTargetChangeMs = nowMs;
+        }
+        else if (targetMs > MIN_TARGET_MS && nowMs - lastTargetChangeMs >= TARGET_DECAY_INTERVAL_MS) {
+            targetMs -= TARGET_STEP_MS;
+            lastTargetChangeMs = nowMs;
+        }
+        lastUnderrunCount = underrunCount;
+        currentTargetMs = targetMs;
+    }
+
+    private void updateFloor(int queuedMs, long nowMs) {
+        windowMinMs = Math.min(windowMinMs, queuedMs);
+        if (nowMs - floorWindowStartMs >= FLOOR_WINDOW_MS) {
+            // A fresh measurement already reflects everything removed so far
+            floorMs = windowMinMs;
+            floorCreditRemainder = 0;
+            windowMinMs = Integer.MAX_VALUE;
+            floorWindowStartMs = nowMs;
+        }
+    }
+
+    // Lowers the floor by the audio just removed, so we don't overshoot before the next window
+    // is measured. Shortening only removes a fraction of a millisecond per frame, so the
+    // remainder carries over to the next frame.
+    private void creditFloor(int samplesPerChannel) {
+        floorCreditRemainder += samplesPerChannel * 1000L;
+        int creditMs = (int) (floorCreditRemainder / sampleRate);
+        floorCreditRemainder -= (long) creditMs * sampleRate;
+        floorMs -= creditMs;
+    }
+
+    private static boolean isSilent(ShortBuffer pcm, int sampleCount) {
+        for (int i = 0; i < sampleCount; i++) {
+            int sample = pcm.get(i);
+            if (sample > SILENCE_THRESHOLD || sample < -SILENCE_THRESHOLD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Resamples the frame to outSamples per channel in place. Each output sample reads source
+    // samples at or after its own index, so going forwards never reads an overwritten value.
+    private int compress(ShortBuffer pcm, int inSamples, int outSamples) {
+        // 16.16 fixed point step through the source frame
+        long step = ((long) (inSamples - 1) << 16) / (outSamples - 1);
+        for (int i = 0; i < outSamples; i++) {
+            long pos = i * step;
+            int index = (int) (pos >> 16);
+            int frac = (int) (pos & 0xFFFF);
+            int next = Math.min(index + 1, inSamples - 1);
+
+            for (int ch = 0; ch < channelCount; ch++) {
+                int a = pcm.get(index * channelCount + ch);
+                int b = pcm.get(next * channelCount + ch);
+                pcm.put(i * channelCount + ch, (short) (a + (((long) (b - a) * frac) >> 16)));
+            }
+        }
+        return outSamples;
+    }
+
+    private void maybePublishStats(long nowMs) {
+        if (nowMs - statsWindowStartMs < STATS_INTERVAL_MS || queuedSamples == 0) {
+            return;
+        }
+
+        queuedP50Ms = getPercentile(0.50);
+        queuedP95Ms = getPercentile(0.95);
+        queuedP99Ms = getPercentile(0.99);
+
+        Arrays.fill(queuedHistogram, 0);
+        queuedSamples = 0;
+        statsWindowStartMs = nowMs;
+    }
+
+    private float getPercentile(double percentile) {
+        int rank = (int) Math.ceil(queuedSamples * percentile);
+        int seen = 0;
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            seen += queuedHistogram[i];
+            if (seen >= rank) {
+                return i;
+            }
+        }
+        return HISTOGRAM_BUCKETS - 1;
+    }
+
+    float getQueuedP50Ms() {
+        return queuedP50Ms;
+    }
+
+    float getQueuedP95Ms() {
+        return queuedP95Ms;
+    }
+
+    float getQueuedP99Ms() {
+        return queuedP99Ms;
+    }
+
+    int getUnderruns() {
+        return underruns;
+    }
+
+    // Frames dropped as silence plus frames shortened
+    int getCorrections() {
+        return silenceDrops + stretchedFrames;
+    }
+
+    int getSilenceDrops() {
+        return silenceDrops;
+    }
+
+    int getStretchedFrames() {
+        return stretchedFrames;
+    }
+
+    int getTargetMs() {
+        return currentTargetMs;
+    }
+}
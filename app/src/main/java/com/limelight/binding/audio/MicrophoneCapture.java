@@ -2,13 +2,13 @@ package com.limelight.binding.audio;
 
 import android.media.AudioFormat;
 import android.media.AudioRecord;
+import android.media.AudioTimestamp;
 import android.media.MediaRecorder;
 import android.media.audiofx.AcousticEchoCanceler;
 import android.media.audiofx.AutomaticGainControl;
 import android.media.audiofx.NoiseSuppressor;
 import android.os.Build;
 import android.os.Process;
-import android.os.SystemClock;
 
 import com.limelight.LimeLog;
 
@@ -35,11 +35,25 @@ public class MicrophoneCapture {
     private int frameBufferPos = 0;
     
     // 时序控制
-    private long lastFrameTime = 0;
+    // 帧的时间戳由采样位置推算：AudioRecord.getTimestamp()给出某个采样位置对应的
+    // System.nanoTime()时间，其余采样按采样率外推。HAL成批返回的数据会被立即处理，
+    // 不再根据到达间隔等待。
+    private final AudioTimestamp audioTimestamp = new AudioTimestamp();
+    private boolean timestampValid;
+    // 已读取的总采样数（单声道即帧数）
+    private long samplesRead = 0;
     private long frameCount = 0;
+    private long lastFrameCaptureTimeNs = 0;
+    
+    // 采集时钟漂移测量：比较采样位置推进与System.nanoTime()推进的差异
+    private static final long DRIFT_MEASURE_INTERVAL_NS = 10000000000L; // 10秒
+    private long driftBaseSamplePos = -1;
+    private long driftBaseTimeNs;
+    private long lastDriftMeasureTimeNs;
     
     public interface MicrophoneDataCallback {
-        void onMicrophoneData(byte[] data, int offset, int length);
+        // captureTimeNs为帧中第一个采样的采集时间（System.nanoTime()时基）
+        void onMicrophoneData(byte[] data, int offset, int length, long captureTimeNs);
     }
     
     public MicrophoneCapture(MicrophoneDataCallback callback) {
@@ -87,7 +101,11 @@ public class MicrophoneCapture {
             initializeAudioEffects();
             
             running.set(true);
-            lastFrameTime = SystemClock.elapsedRealtimeNanos();
+            samplesRead = 0;
+            frameCount = 0;
+            frameBufferPos = 0;
+            timestampValid = false;
+            driftBaseSamplePos = -1;
             
             captureThread = new Thread(() -> {
                 Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
@@ -102,11 +120,14 @@ public class MicrophoneCapture {
                     while (running.get()) {
                         int bytesRead = audioRecord.read(buffer, bufferSize);
                         if (bytesRead > 0) {
+                            long readTimeNs = System.nanoTime();
                             buffer.get(data, 0, bytesRead);
                             buffer.clear();
                             
+                            updateTimestamp();
+                            
                             // 处理音频数据，确保帧的连续性
-                            processAudioData(data, 0, bytesRead);
+                            processAudioData(data, 0, bytesRead, readTimeNs);
                         } else if (bytesRead == AudioRecord.ERROR_INVALID_OPERATION) {
                             LimeLog.warning("AudioRecord读取错误: ERROR_INVALID_OPERATION");
                             break;
@@ -143,10 +164,64 @@ public class MicrophoneCapture {
         }
     }
     
+    /**
+     * 从AudioRecord获取最新的采样位置与时间的对应关系
+     */
+    private void updateTimestamp() {
+        if (!MicrophoneConfig.ENABLE_AUDIO_SYNC || Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return;
+        }
+        
+        timestampValid = audioRecord.getTimestamp(audioTimestamp, AudioTimestamp.TIMEBASE_MONOTONIC) == AudioRecord.SUCCESS;
+        if (timestampValid) {
+            measureClockDrift(audioTimestamp.framePosition, audioTimestamp.nanoTime);
+        }
+    }
+    
+    /**
+     * 计算指定采样位置的采集时间
+     * @param readTimeNs 本批数据读取完成的时间，没有有效时间戳时用于估算
+     */
+    private long getCaptureTimeNs(long samplePos, long readTimeNs) {
+        if (timestampValid) {
+            return audioTimestamp.nanoTime +
+                    (samplePos - audioTimestamp.framePosition) * 1000000000L / MicrophoneConfig.SAMPLE_RATE;
+        }
+        
+        // 没有时间戳时，认为已读取的最后一个采样刚好在读取完成时采集
+        return readTimeNs - (samplesRead - samplePos) * 1000000000L / MicrophoneConfig.SAMPLE_RATE;
+    }
+    
+    /**
+     * 测量采集时钟相对于System.nanoTime()（发送端使用的时钟）的漂移
+     */
+    private void measureClockDrift(long samplePos, long timeNs) {
+        if (driftBaseSamplePos < 0) {
+            driftBaseSamplePos = samplePos;
+            driftBaseTimeNs = timeNs;
+            lastDriftMeasureTimeNs = timeNs;
+            return;
+        }
+        
+        if (timeNs - lastDriftMeasureTimeNs < DRIFT_MEASURE_INTERVAL_NS) {
+            return;
+        }
+        lastDriftMeasureTimeNs = timeNs;
+        
+        long elapsedNs = timeNs - driftBaseTimeNs;
+        long sampleElapsedNs = (samplePos - driftBaseSamplePos) * 1000000000L / MicrophoneConfig.SAMPLE_RATE;
+        
+        // 正值表示采集时钟比系统时钟快
+        double driftPpm = (double) (sampleElapsedNs - elapsedNs) / elapsedNs * 1000000;
+        AudioDiagnostics.recordCaptureClockDrift(driftPpm);
+    }
+    
     /**
      * 处理音频数据，确保发送完整的帧
      */
-    private void processAudioData(byte[] data, int offset, int length) {
+    private void processAudioData(byte[] data, int offset, int length, long readTimeNs) {
+        samplesRead += length / 2 / MicrophoneConfig.CHANNELS;
+        
         int remainingBytes = length;
         int dataOffset = offset;
         
@@ -161,28 +236,14 @@ public class MicrophoneCapture {
             dataOffset += bytesToCopy;
             remainingBytes -= bytesToCopy;
             
-            // 如果帧缓冲区满了，发送完整的帧
+            // 如果帧缓冲区满了，立即发送完整的帧
             if (frameBufferPos >= MicrophoneConfig.BYTES_PER_FRAME) {
-                // 检查时序
-                long currentTime = SystemClock.elapsedRealtimeNanos();
-                long timeDiff = currentTime - lastFrameTime;
-                
-                if (MicrophoneConfig.ENABLE_AUDIO_SYNC && 
-                    timeDiff < MicrophoneConfig.FRAME_INTERVAL_NS * 0.8) {
-                    // 帧间隔太短，等待一下
-                    try {
-                        Thread.sleep(1);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                    continue;
-                }
+                // 帧是连续的，第一个采样的位置由已发送的帧数决定
+                long frameStartSamplePos = frameCount * MicrophoneConfig.SAMPLES_PER_FRAME;
+                long captureTimeNs = getCaptureTimeNs(frameStartSamplePos, readTimeNs);
                 
-                // 发送帧
-                dataCallback.onMicrophoneData(frameBuffer, 0, MicrophoneConfig.BYTES_PER_FRAME);
+                dataCallback.onMicrophoneData(frameBuffer, 0, MicrophoneConfig.BYTES_PER_FRAME, captureTimeNs);
                 frameBufferPos = 0; // 重置缓冲区位置
-                lastFrameTime = currentTime;
                 frameCount++;
                 
                 // 记录诊断信息
@@ -190,8 +251,11 @@ public class MicrophoneCapture {
                 
                 // 每12000帧记录一次统计信息
                 if (frameCount % 12000 == 0) {
-                    LimeLog.info("麦克风帧统计: " + frameCount + " 帧, 平均间隔: " + (timeDiff / 1000000) + "ms");
+                    LimeLog.info("麦克风帧统计: " + frameCount + " 帧, 帧间隔: " +
+                            (captureTimeNs - lastFrameCaptureTimeNs) / 1000000.0 + "ms, 时间戳" +
+                            (timestampValid ? "来自AudioRecord" : "为估算值"));
                 }
+                lastFrameCaptureTimeNs = captureTimeNs;
             }
         }
     }
@@ -15,6 +15,7 @@ public class MicrophoneConfig {
     
     // 网络参数
     public static final int MAX_QUEUE_SIZE = 5;
+    public static final int MAX_PACKET_SIZE = 4000; // 与OpusEncoder.c中的编码缓冲区大小一致
     
     // 权限请求码
     public static final int PERMISSION_REQUEST_MICROPHONE = 1001;
@@ -28,7 +29,7 @@ public class MicrophoneConfig {
     public static final int BYTES_PER_FRAME = SAMPLES_PER_FRAME * CHANNELS * 2; // 每帧字节数 (1920)
     
     // 发送线程参数
-    public static final int SENDER_THREAD_SLEEP_MS = 5; // 发送线程睡眠时间
+    public static final int SENDER_WAIT_TIMEOUT_MS = 100; // 发送线程等待数据包的超时时间（仅用于检查运行状态）
     
     // 音频捕获优化参数
     public static final int CAPTURE_BUFFER_SIZE_MS = 40; // 捕获缓冲区大小 (毫秒)
@@ -44,6 +45,7 @@ public class MicrophoneConfig {
     private static boolean enableAGC = true; // 启用自动增益控制
     private static boolean enableNS = true; // 启用噪声抑制
     private static boolean useVoiceComm = false; // 使用VOICE_COMMUNICATION音频源（自动启用AEC+AGC+NS）
+    private static boolean enableVoiceGate = true; // 启用语音门限（静音时跳过编码和发送）
     
     /**
      * 获取当前配置的Opus比特率
@@ -131,6 +133,20 @@ public class MicrophoneConfig {
         useVoiceComm = use;
     }
     
+    /**
+     * 是否启用语音门限
+     */
+    public static boolean enableVoiceGate() {
+        return enableVoiceGate;
+    }
+    
+    /**
+     * 设置是否启用语音门限
+     */
+    public static void setEnableVoiceGate(boolean enable) {
+        enableVoiceGate = enable;
+    }
+    
     /**
      * 获取音频处理配置的摘要信息
      */
@@ -140,7 +156,8 @@ public class MicrophoneConfig {
         summary.append("音频源: ").append(useVoiceComm ? "VOICE_COMMUNICATION" : "MIC").append("\n");
         summary.append("回声消除(AEC): ").append(enableAEC ? "启用" : "禁用").append("\n");
         summary.append("自动增益(AGC): ").append(enableAGC ? "启用" : "禁用").append("\n");
-        summary.append("噪声抑制(NS): ").append(enableNS ? "启用" : "禁用");
+        summary.append("噪声抑制(NS): ").append(enableNS ? "启用" : "禁用").append("\n");
+        summary.append("语音门限: ").append(enableVoiceGate ? "启用" : "禁用");
         return summary.toString();
     }
     
@@ -0,0 +1,102 @@
+package com.limelight.binding.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 麦克风数据包队列
+ * 固定数量的可复用数据包槽位组成的环形队列，单生产者（编码线程）单消费者（发送线程）。
+ * 入队时复制到槽位，出队时复制到调用方的缓冲区，因此运行中不会分配内存。
+ * 发送线程在队列为空时阻塞等待，有数据包入队时立即被唤醒。
+ */
+class MicrophonePacketQueue {
+    private final byte[][] slots;
+    private final int[] lengths;
+    private final long[] captureTimesNs;
+    private final long[] enqueueTimesNs;
+
+    private int head;
+    private int count;
+    private boolean closed;
+
+    MicrophonePacketQueue(int capacity, int maxPacketSize) {
+        slots = new byte[capacity][maxPacketSize];
+        lengths = new int[capacity];
+        captureTimesNs = new long[capacity];
+        enqueueTimesNs = new long[capacity];
+    }
+
+    /**
+     * 将数据包复制到队列中。队列已满时丢弃最旧的数据包。
+     * @return 是否丢弃了最旧的数据包
+     */
+    synchronized boolean offer(ByteBuffer data, int length, long captureTimeNs, long nowNs) {
+        boolean droppedOldest = false;
+        if (count == slots.length) {
+            head = (head + 1) % slots.length;
+            count--;
+            droppedOldest = true;
+        }
+
+        int tail = (head + count) % slots.length;
+        data.position(0);
+        data.get(slots[tail], 0, length);
+        lengths[tail] = length;
+        captureTimesNs[tail] = captureTimeNs;
+        enqueueTimesNs[tail] = nowNs;
+        count++;
+
+        notify();
+        return droppedOldest;
+    }
+
+    /**
+     * 取出最旧的数据包，从位置0开始复制到out中。队列为空时最多等待timeoutMs。
+     * @param timesNs 用于返回数据包的采集时间[0]和入队时间[1]，长度至少为2
+     * @return 数据包长度；超时返回0，队列关闭返回-1
+     */
+    synchronized int take(ByteBuffer out, long[] timesNs, long timeoutMs) throws InterruptedException {
+        if (count == 0 && !closed) {
+            wait(timeoutMs);
+        }
+        if (closed) {
+            return -1;
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        int length = lengths[head];
+        out.clear();
+        out.put(slots[head], 0, length);
+        timesNs[0] = captureTimesNs[head];
+        timesNs[1] = enqueueTimesNs[head];
+        head = (head + 1) % slots.length;
+        count--;
+        return length;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    synchronized void clear() {
+        head = 0;
+        count = 0;
+    }
+
+    synchronized void open() {
+        closed = false;
+    }
+
+    /**
+     * 关闭队列并唤醒等待中的发送线程
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    int getMaxPacketSize() {
+        return slots[0].length;
+    }
+}
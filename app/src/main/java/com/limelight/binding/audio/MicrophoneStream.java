@@ -4,7 +4,7 @@ import com.limelight.LimeLog;
 import com.limelight.nvstream.NvConnection;
 import com.limelight.nvstream.jni.MoonBridge;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallback {
@@ -17,11 +17,17 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final AtomicBoolean micActive = new AtomicBoolean(false);
     private final AtomicBoolean hostRequested = new AtomicBoolean(false);
-    private LinkedBlockingQueue<byte[]> packetQueue;
+    private final MicrophonePacketQueue packetQueue;
+    private final MicrophoneVoiceGate voiceGate = new MicrophoneVoiceGate();
+    // 编码用的直接缓冲区，只在捕获线程中使用，编码过程中不再分配内存
+    private final ByteBuffer pcmBuffer = ByteBuffer.allocateDirect(MicrophoneConfig.BYTES_PER_FRAME);
+    private final ByteBuffer encodedBuffer = ByteBuffer.allocateDirect(MicrophoneConfig.MAX_PACKET_SIZE);
+    // 编码耗时的滑动平均，用于估算跳过编码节省的CPU时间
+    private long averageEncodeNs = 0;
     
     public MicrophoneStream(NvConnection conn) {
         this.conn = conn;
-        this.packetQueue = new LinkedBlockingQueue<>(MicrophoneConfig.MAX_QUEUE_SIZE);
+        this.packetQueue = new MicrophonePacketQueue(MicrophoneConfig.MAX_QUEUE_SIZE, MicrophoneConfig.MAX_PACKET_SIZE);
         LimeLog.info("初始化麦克风流");
     }
     
@@ -105,6 +111,7 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
             }
             
             // 创建编码器
+            voiceGate.reset();
             encoder = new OpusEncoder(MicrophoneConfig.SAMPLE_RATE, MicrophoneConfig.CHANNELS, MicrophoneConfig.getOpusBitrate());
             
             // 创建并启动麦克风捕获
@@ -118,6 +125,7 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
             // 如果发送线程还没有启动，启动它
             if (senderThread == null || !senderThread.isAlive()) {
                 running.set(true);
+                packetQueue.open();
                 senderThread = new Thread(this::senderThreadProc, "MicSender");
                 senderThread.setPriority(Thread.MAX_PRIORITY);
                 senderThread.start();
@@ -147,6 +155,9 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
             capture = null;
         }
         
+        // 唤醒阻塞中的发送线程
+        packetQueue.close();
+        
         if (senderThread != null) {
             try {
                 senderThread.join(300); // 等待最多300ms
@@ -222,40 +233,54 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
     }
 
     @Override
-    public void onMicrophoneData(byte[] data, int offset, int length) {
+    public void onMicrophoneData(byte[] data, int offset, int length, long captureTimeNs) {
         if (!running.get() || !micActive.get()) {
             return;
         }
         
         try {
-            byte[] encoded = null;
+            // 静音期间跳过编码和发送
+            if (MicrophoneConfig.enableVoiceGate() && !voiceGate.shouldEncode(data, offset, length)) {
+                AudioDiagnostics.recordFrameGated(averageEncodeNs);
+                return;
+            }
+            
+            int encodedLength = -1;
+            
+            // PCM数据（小端）复制到直接缓冲区
+            pcmBuffer.clear();
+            pcmBuffer.put(data, offset, length);
             
             // Synchronized access to encoder
             synchronized (encoderLock) {
-                if (encoder != null) {
-                    encoded = encoder.encode(data, offset, length);
+                if (encoder == null) {
+                    return;
                 }
+                
+                long encodeStartNs = System.nanoTime();
+                encodedLength = encoder.encode(pcmBuffer, length, encodedBuffer);
+                long encodeNs = System.nanoTime() - encodeStartNs;
+                averageEncodeNs = averageEncodeNs == 0 ? encodeNs : (averageEncodeNs * 15 + encodeNs) / 16;
             }
             
-            if (encoded != null) {
-                // 记录编码成功
-                AudioDiagnostics.recordFrameEncoded();
-                
-                int queueSize = packetQueue.size();
-                
-                if (queueSize >= MicrophoneConfig.MAX_QUEUE_SIZE) {
-                    // 队列已满，丢弃最旧的数据包
-                    packetQueue.poll();
-                    AudioDiagnostics.recordFrameDropped();
-                    LimeLog.warning("音频队列已满，丢弃最旧数据包");
-                }
-                
-                // 将编码数据加入队列
-                if (!packetQueue.offer(encoded)) {
-                    // 如果仍然无法加入队列，丢弃当前数据包
-                    AudioDiagnostics.recordFrameDropped();
-                    LimeLog.warning("无法将编码数据加入队列，丢弃当前数据包");
-                }
+            if (encodedLength < 0) {
+                AudioDiagnostics.recordEncodingError();
+                return;
+            }
+            
+            // 记录编码成功
+            AudioDiagnostics.recordFrameEncoded();
+            
+            // 编码器处于DTX状态时不需要发送
+            if (encodedLength == 0) {
+                AudioDiagnostics.recordDtxFrame();
+                return;
+            }
+            
+            // 复制到队列槽位并唤醒发送线程，队列已满时丢弃最旧的数据包
+            if (packetQueue.offer(encodedBuffer, encodedLength, captureTimeNs, System.nanoTime())) {
+                AudioDiagnostics.recordFrameDropped();
+                LimeLog.warning("音频队列已满，丢弃最旧数据包");
             }
         } catch (Exception e) {
             AudioDiagnostics.recordEncodingError();
@@ -264,17 +289,26 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
     }
     
     private void senderThreadProc() {
-        long lastSendTime = 0;
+        // 发送缓冲区在线程启动时分配一次，发送过程中不再分配内存
+        // 使用直接缓冲区，发送时原生层可以直接读取，无需复制
+        ByteBuffer sendBuffer = ByteBuffer.allocateDirect(packetQueue.getMaxPacketSize());
+        // [0]为采集时间，[1]为入队时间
+        long[] packetTimesNs = new long[2];
         long sendCount = 0;
-        long totalLatency = 0;
-        long maxLatency = 0;
-        long lastStatsTime = System.currentTimeMillis();
         
         while (running.get()) {
             try {
+                // 阻塞等待数据包，有数据入队时立即唤醒；超时只用于检查运行状态
+                int length = packetQueue.take(sendBuffer, packetTimesNs, MicrophoneConfig.SENDER_WAIT_TIMEOUT_MS);
+                if (length < 0) {
+                    break;
+                }
+                if (length == 0) {
+                    continue;
+                }
+                
                 // 检查连接状态和麦克风状态
                 if (!hostRequested.get() || !micActive.get()) {
-                    Thread.sleep(MicrophoneConfig.SENDER_THREAD_SLEEP_MS);
                     continue;
                 }
                 
@@ -283,47 +317,20 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
                     LimeLog.info("检测到连接断开，停止麦克风发送");
                     break;
                 }
-
-                long currentTime = System.currentTimeMillis();
-                
-                // 动态调整发送频率，基于队列大小
-                int queueSize = packetQueue.size();
-                long targetInterval = MicrophoneConfig.FRAME_INTERVAL_MS;
                 
-                // 如果队列过大，加快发送频率
-                if (queueSize > MicrophoneConfig.MAX_QUEUE_SIZE * 0.7) {
-                    targetInterval = Math.max(5, MicrophoneConfig.FRAME_INTERVAL_MS / 2);
-                } else if (queueSize < MicrophoneConfig.MAX_QUEUE_SIZE * 0.3) {
-                    // 如果队列较小，可以稍微放慢
-                    targetInterval = MicrophoneConfig.FRAME_INTERVAL_MS;
-                }
+                // 记录从入队到发送的排队延迟，以及从采集到发送的总延迟
+                long sendTimeNs = System.nanoTime();
+                AudioDiagnostics.recordQueueDelay(sendTimeNs - packetTimesNs[1]);
+                AudioDiagnostics.recordCaptureToSendDelay(sendTimeNs - packetTimesNs[0]);
                 
-                if (currentTime - lastSendTime < targetInterval) {
-                    Thread.sleep(1);
-                    continue;
-                }
-
-                byte[] encoded = packetQueue.poll();
-                if (encoded == null) {
-                    // 没有数据可发送，短暂等待
-                    Thread.sleep(1);
-                    continue;
-                }
-
-                // 计算发送延迟
-                long sendLatency = currentTime - lastSendTime;
-                totalLatency += sendLatency;
-                maxLatency = Math.max(maxLatency, sendLatency);
-
                 // 发送 Opus 数据
-                int result = MoonBridge.sendMicrophoneOpusData(encoded);
+                int result = MoonBridge.sendMicrophoneOpusData(sendBuffer, length);
                 if (result < 0) {
                     AudioDiagnostics.recordSendingError();
                     LimeLog.warning("麦克风数据发送失败: " + result);
                     continue;
                 }
                 
-                lastSendTime = currentTime;
                 sendCount++;
                 
                 // 记录发送成功
@@ -331,17 +338,12 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
                 
                 // 每12000个包记录一次详细统计信息
                 if (sendCount % 12000 == 0) {
-                    long currentStatsTime = System.currentTimeMillis();
-                    long statsInterval = currentStatsTime - lastStatsTime;
-                    double avgLatency = sendCount > 0 ? (double) totalLatency / sendCount : 0;
-                    
-                    LimeLog.info(String.format("麦克风发送统计: 包数=%d, 队列大小=%d, 平均延迟=%.1fms, 最大延迟=%dms, 统计间隔=%dms", 
-                        sendCount, queueSize, avgLatency, maxLatency, statsInterval));
-                    
-                    // 重置统计
-                    lastStatsTime = currentStatsTime;
-                    totalLatency = 0;
-                    maxLatency = 0;
+                    LimeLog.info(String.format("麦克风发送统计: 包数=%d, 队列大小=%d, 排队延迟 p50=%.2fms p99=%.2fms, 采集到发送 p50=%.2fms p99=%.2fms",
+                        sendCount, packetQueue.size(),
+                        AudioDiagnostics.getQueueDelayPercentileMs(0.50),
+                        AudioDiagnostics.getQueueDelayPercentileMs(0.99),
+                        AudioDiagnostics.getCaptureToSendDelayPercentileMs(0.50),
+                        AudioDiagnostics.getCaptureToSendDelayPercentileMs(0.99)));
                 }
                 
             } catch (InterruptedException e) {
@@ -0,0 +1,84 @@
+package com.limelight.binding.audio;
+
+/**
+ * 麦克风语音门限
+ * 在编码前根据帧能量判断是否有语音，静音期间直接跳过编码和发送。
+ * 噪声基底跟踪环境噪声：能量低于基底时立即下调，高于基底时缓慢上调，
+ * 因此持续的风扇声等稳定噪声不会被当作语音。
+ * 检测到语音后保持一段拖尾时间，避免截断词尾。
+ */
+class MicrophoneVoiceGate {
+    // 能量超过噪声基底多少dB视为语音
+    private static final double SPEECH_MARGIN_DB = 10;
+    // 低于此能量的帧始终视为静音（约为数字静音之上的底噪）
+    private static final double MIN_SPEECH_DB = -55;
+    // 噪声基底每帧最多上升的幅度（20ms帧时约为0.5dB/秒）
+    private static final double FLOOR_RISE_DB_PER_FRAME = 0.01;
+    private static final double INITIAL_FLOOR_DB = -60;
+    // 语音结束后继续编码的帧数（20ms帧时为300ms）
+    private static final int HANGOVER_FRAMES = 15;
+
+    private double noiseFloorDb = INITIAL_FLOOR_DB;
+    private int hangoverRemaining;
+
+    /**
+     * 判断当前帧是否需要编码
+     * @param pcm 16位小端单声道PCM数据
+     */
+    boolean shouldEncode(byte[] pcm, int offset, int length) {
+        double energyDb = getEnergyDb(pcm, offset, length);
+
+        boolean speech = energyDb > Math.max(noiseFloorDb + SPEECH_MARGIN_DB, MIN_SPEECH_DB);
+        if (speech) {
+            hangoverRemaining = HANGOVER_FRAMES;
+        }
+
+        // 语音中的停顿会把基底拉回，而基底上升很慢，所以说话时也可以更新。
+        // 这样突然出现的持续噪声最终也会被纳入基底。
+        if (energyDb < noiseFloorDb) {
+            noiseFloorDb = energyDb;
+        }
+        else {
+            noiseFloorDb = Math.min(energyDb, noiseFloorDb + FLOOR_RISE_DB_PER_FRAME);
+        }
+
+        if (hangoverRemaining > 0) {
+            if (!speech) {
+                hangoverRemaining--;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    void reset() {
+        noiseFloorDb = INITIAL_FLOOR_DB;
+        hangoverRemaining = 0;
+    }
+
+    double getNoiseFloorDb() {
+        return noiseFloorDb;
+    }
+
+    private static double getEnergyDb(byte[] pcm, int offset, int length) {
+        int samples = length / 2;
+        if (samples == 0) {
+            return -100;
+        }
+
+        long sumSquares = 0;
+        for (int i = 0; i < samples; i++) {
+            int index = offset + i * 2;
+            int sample = (short) ((pcm[index] & 0xFF) | (pcm[index + 1] << 8));
+            sumSquares += sample * sample;
+        }
+
+        double meanSquare = (double) sumSquares / samples;
+        if (meanSquare < 1) {
+            return -100;
+        }
+
+        // 相对满幅度的dB值
+        return 10 * Math.log10(meanSquare / (32768.0 * 32768.0));
+    }
+}
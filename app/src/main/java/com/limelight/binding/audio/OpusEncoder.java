@@ -2,6 +2,8 @@ package com.limelight.binding.audio;
 
 import com.limelight.LimeLog;
 
+import java.nio.ByteBuffer;
+
 public class OpusEncoder {
     private long nativePtr;
     private final int sampleRate;
@@ -23,12 +25,22 @@ public class OpusEncoder {
         }
     }
     
-    public byte[] encode(byte[] pcmData, int offset, int length) {
+    /**
+     * 从直接缓冲区中的PCM数据编码一帧，写入调用方提供的直接缓冲区，不分配内存
+     * @param pcmData 16位PCM数据，必须是直接缓冲区，从位置0开始
+     * @param length PCM数据字节数
+     * @param output 编码输出，必须是直接缓冲区，从位置0开始写入，最多写满其容量
+     * @return 编码后的字节数；编码器处于DTX状态、无需发送时返回0；出错返回负数
+     */
+    public int encode(ByteBuffer pcmData, int length, ByteBuffer output) {
         if (nativePtr == 0) {
-            return null;
+            return -1;
+        }
+        if (!pcmData.isDirect() || !output.isDirect()) {
+            throw new IllegalArgumentException("Opus编码需要直接缓冲区");
         }
         
-        return nativeEncode(nativePtr, pcmData, offset, length);
+        return nativeEncodeDirect(nativePtr, pcmData, length, output);
     }
     
     public synchronized void release() {
@@ -49,6 +61,6 @@ public class OpusEncoder {
     
     // 这些方法需要在原生代码中实现
     private static native long nativeInit(int sampleRate, int channels, int bitrate);
-    private static native byte[] nativeEncode(long handle, byte[] pcmData, int offset, int length);
+    private static native int nativeEncodeDirect(long handle, ByteBuffer pcmData, int length, ByteBuffer output);
     private static native void nativeDestroy(long handle);
 }
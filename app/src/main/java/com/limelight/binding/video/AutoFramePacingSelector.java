@@ -0,0 +1,102 @@
+package com.limelight.binding.video;
+
+import com.limelight.LimeLog;
+import com.limelight.preferences.PreferenceConfiguration;
+
+// Chooses the frame pacing mode at runtime for the "auto" frame pacing preference.
+//
+// It starts with lowest latency, which is ideal when the display refresh rate is a whole
+// multiple of the stream FPS (or vice versa). When the cadences don't line up, releasing
+// frames as they arrive makes some frames stay on screen longer than others, so it moves to
+// balanced pacing on the Choreographer. If frames arrive so unevenly that balanced pacing
+// keeps finding an empty queue on V-sync, it falls back to never dropping frames.
+//
+// A switch needs the same verdict for several windows in a row and the previous mode must
+// have been active for a while, so a single bad window can't make it oscillate. Time is
+// passed in by the caller, so this can be driven by a virtual clock.
+class AutoFramePacingSelector {
+    private static final int WINDOWS_TO_SWITCH = 3;
+    private static final long MIN_DWELL_MS = 5000;
+
+    // How far displayHz / streamFps (or its inverse) may be from a whole number
+    private static final float CADENCE_TOLERANCE = 0.1f;
+    // Frame interval p95 - p50 above this fraction of the frame time counts as jittery
+    private static final float JITTER_FRACTION = 0.5f;
+    // Empty V-syncs above this fraction of rendered frames means balanced pacing is starved
+    private static final float STARVED_FRACTION = 0.1f;
+
+    private int currentMode = PreferenceConfiguration.FRAME_PACING_MIN_LATENCY;
+    private int candidateMode = currentMode;
+    private int candidateWindows;
+    private long lastSwitchTimeMs;
+
+    AutoFramePacingSelector(long nowMs) {
+        lastSwitchTimeMs = nowMs;
+    }
+
+    int getCurrentMode() {
+        return currentMode;
+    }
+
+    static boolean isCadenceMatched(float streamFps, float displayHz) {
+        if (streamFps <= 0 || displayHz <= 0) {
+            // Assume the best if we don't know
+            return true;
+        }
+
+        float ratio = displayHz >= streamFps ? displayHz / streamFps : streamFps / displayHz;
+        return Math.abs(ratio - Math.round(ratio)) <= CADENCE_TOLERANCE;
+    }
+
+    // Processes one stats window. Returns the mode to switch to, or -1 to stay in the current one.
+    //
+    // frameIntervalJitterMs is the spread of intervals between frames reaching the display,
+    // skippedVsyncs counts V-syncs where a frame was due but the queue was empty.
+    int onStatsWindow(long nowMs, float streamFps, float displayHz, float frameIntervalJitterMs,
+                      int framesRendered, int skippedVsyncs) {
+        if (framesRendered <= 0 || streamFps <= 0) {
+            return -1;
+        }
+
+        float frameTimeMs = 1000 / streamFps;
+        boolean cadenceMatched = isCadenceMatched(streamFps, displayHz);
+        boolean jittery = frameIntervalJitterMs > frameTimeMs * JITTER_FRACTION;
+
+        int desiredMode;
+        if (cadenceMatched && !jittery) {
+            desiredMode = PreferenceConfiguration.FRAME_PACING_MIN_LATENCY;
+        } else if (currentMode == PreferenceConfiguration.FRAME_PACING_BALANCED &&
+                jittery && skippedVsyncs > framesRendered * STARVED_FRACTION) {
+            desiredMode = PreferenceConfiguration.FRAME_PACING_MAX_SMOOTHNESS;
+        } else if (currentMode == PreferenceConfiguration.FRAME_PACING_MAX_SMOOTHNESS && jittery) {
+            // Only leave max smoothness once the jitter has settled
+            desiredMode = currentMode;
+        } else {
+            desiredMode = PreferenceConfiguration.FRAME_PACING_BALANCED;
+        }
+
+        if (desiredMode == currentMode) {
+            candidateWindows = 0;
+            return -1;
+        }
+
+        if (desiredMode != candidateMode) {
+            candidateMode = desiredMode;
+            candidateWindows = 0;
+        }
+        candidateWindows++;
+
+        if (candidateWindows < WINDOWS_TO_SWITCH || nowMs - lastSwitchTimeMs < MIN_DWELL_MS) {
+            return -1;
+        }
+
+        LimeLog.info("Auto frame pacing: " + currentMode + " -> " + desiredMode +
+                " (stream " + streamFps + " FPS, display " + displayHz + " Hz, jitter " + frameIntervalJitterMs +
+                " ms, rendered " + framesRendered + ", empty V-syncs " + skippedVsyncs + ")");
+
+        currentMode = desiredMode;
+        candidateWindows = 0;
+        lastSwitchTimeMs = nowMs;
+        return desiredMode;
+    }
+}
@@ -0,0 +1,356 @@
+package com.limelight.binding.video;
+
+import com.limelight.nvstream.jni.MoonBridge;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Tees decode units into a memory-mapped capture file so decoder problems that depend on
+// the host's content can be reproduced offline.
+//
+// Recording is just a memcpy of the payload into the mapping plus the index entry and header
+// updates, with no syscalls or allocations on the decode thread. Since the kernel owns the
+// dirty pages, the capture also survives the process crashing.
+//
+// The file is a ring: payloads wrap around the data region and the oldest units are
+// evicted as they are overwritten, so it always holds the most recent part of the stream.
+//
+// To replay a capture, pull it from the app's external files directory and convert it with
+// exportStream(). The result is a raw Annex B (H.264/HEVC) or OBU (AV1) stream that starts
+// at an IDR frame, so any decoder or player that takes elementary streams can play it.
+//
+// Layout (little endian):
+//   header (64 bytes): magic, version, video format, width, height, fps, index capacity,
+//                      data capacity, oldest sequence (long), next sequence (long), write offset
+//   index (32 bytes per entry, addressed by sequence % index capacity): data offset, length,
+//                      receive time (long), enqueue time (long), frame number, buffer type (byte),
+//                      frame type (byte), host processing latency (char)
+//   data: raw decode unit payloads
+class DecodeUnitCapture {
+    private static final int MAGIC = 0x55444C4D; // "MLDU"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int INDEX_ENTRY_SIZE = 32;
+
+    private static final int HDR_MAGIC = 0;
+    private static final int HDR_VERSION = 4;
+    private static final int HDR_VIDEO_FORMAT = 8;
+    private static final int HDR_WIDTH = 12;
+    private static final int HDR_HEIGHT = 16;
+    private static final int HDR_FPS = 20;
+    private static final int HDR_INDEX_CAPACITY = 24;
+    private static final int HDR_DATA_CAPACITY = 28;
+    private static final int HDR_OLDEST_SEQ = 32;
+    private static final int HDR_NEXT_SEQ = 40;
+    private static final int HDR_WRITE_OFFSET = 48;
+
+    private static final int IDX_DATA_OFFSET = 0;
+    private static final int IDX_LENGTH = 4;
+    private static final int IDX_RECEIVE_TIME = 8;
+    private static final int IDX_ENQUEUE_TIME = 16;
+    private static final int IDX_FRAME_NUMBER = 24;
+    private static final int IDX_BUFFER_TYPE = 28;
+    private static final int IDX_FRAME_TYPE = 29;
+    private static final int IDX_HOST_LATENCY = 30;
+
+    static class Header {
+        int videoFormat;
+        int width, height, fps;
+    }
+
+    static class Unit {
+        final int bufferType;
+        final int frameType;
+        // Index of the frame this unit belongs to, counting from the first frame read
+        final int frameIndex;
+        final byte[] data;
+        final int frameNumber;
+        final char frameHostProcessingLatency;
+        final long receiveTimeUs, enqueueTimeUs;
+
+        Unit(int bufferType, int frameType, int frameIndex, byte[] data, int frameNumber,
+             char frameHostProcessingLatency, long receiveTimeUs, long enqueueTimeUs) {
+            this.bufferType = bufferType;
+            this.frameType = frameType;
+            this.frameIndex = frameIndex;
+            this.data = data;
+            this.frameNumber = frameNumber;
+            this.frameHostProcessingLatency = frameHostProcessingLatency;
+            this.receiveTimeUs = receiveTimeUs;
+            this.enqueueTimeUs = enqueueTimeUs;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final int indexCapacity;
+    private final int dataCapacity;
+    private final int dataStart;
+
+    private long oldestSeq, nextSeq;
+    private int writeOffset;
+    private long unitsDropped;
+
+    DecodeUnitCapture(File path, Header header, int indexCapacity, int dataCapacity) throws IOException {
+        this.indexCapacity = indexCapacity;
+        this.dataCapacity = dataCapacity;
+        this.dataStart = HEADER_SIZE + indexCapacity * INDEX_ENTRY_SIZE;
+
+        file = new RandomAccessFile(path, "rw");
+        try {
+            file.setLength(0);
+            map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) dataStart + dataCapacity);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        // Pages are faulted in lazily as the ring fills. Loading the whole mapping up front would
+        // cost hundreds of MB of page cache and delay the stream start at high bitrates.
+        map.order(ByteOrder.LITTLE_ENDIAN);
+
+        map.putInt(HDR_VERSION, VERSION);
+        map.putInt(HDR_VIDEO_FORMAT, header.videoFormat);
+        map.putInt(HDR_WIDTH, header.width);
+        map.putInt(HDR_HEIGHT, header.height);
+        map.putInt(HDR_FPS, header.fps);
+        map.putInt(HDR_INDEX_CAPACITY, indexCapacity);
+        map.putInt(HDR_DATA_CAPACITY, dataCapacity);
+        publish();
+
+        // Written last so a partially initialized file is never mistaken for a capture
+        map.putInt(HDR_MAGIC, MAGIC);
+    }
+
+    private void publish() {
+        map.putLong(HDR_OLDEST_SEQ, oldestSeq);
+        map.putInt(HDR_WRITE_OFFSET, writeOffset);
+        // The index entry is complete once nextSeq covers it
+        map.putLong(HDR_NEXT_SEQ, nextSeq);
+    }
+
+    private int indexEntry(long seq) {
+        return HEADER_SIZE + (int) (seq % indexCapacity) * INDEX_ENTRY_SIZE;
+    }
+
+    // Makes room for length bytes of payload and returns where it should be written, or -1
+    // if it can never fit
+    private int allocate(int length) {
+        if (length > dataCapacity) {
+            unitsDropped++;
+            return -1;
+        }
+
+        int start = writeOffset;
+        boolean wrapped = false;
+        if (start + length > dataCapacity) {
+            start = 0;
+            wrapped = true;
+        }
+        int end = start + length;
+
+        while (oldestSeq < nextSeq) {
+            int entry = indexEntry(oldestSeq);
+            int entryStart = map.getInt(entry + IDX_DATA_OFFSET);
+            int entryEnd = entryStart + Math.max(1, map.getInt(entry + IDX_LENGTH));
+
+            if (nextSeq - oldestSeq >= indexCapacity ||
+                    (wrapped && entryStart >= writeOffset) ||
+                    (entryStart < end && start < entryEnd)) {
+                // The index slot or the data is about to be reused
+                oldestSeq++;
+            } else {
+                break;
+            }
+        }
+
+        writeOffset = end;
+        return start;
+    }
+
+    private void writeIndexEntry(int dataOffset, int length, int bufferType, int frameNumber, int frameType,
+                                 char frameHostProcessingLatency, long receiveTimeUs, long enqueueTimeUs) {
+        int entry = indexEntry(nextSeq);
+        map.putInt(entry + IDX_DATA_OFFSET, dataOffset);
+        map.putInt(entry + IDX_LENGTH, length);
+        map.putLong(entry + IDX_RECEIVE_TIME, receiveTimeUs);
+        map.putLong(entry + IDX_ENQUEUE_TIME, enqueueTimeUs);
+        map.putInt(entry + IDX_FRAME_NUMBER, frameNumber);
+        map.put(entry + IDX_BUFFER_TYPE, (byte) bufferType);
+        map.put(entry + IDX_FRAME_TYPE, (byte) frameType);
+        map.putChar(entry + IDX_HOST_LATENCY, frameHostProcessingLatency);
+
+        nextSeq++;
+        publish();
+    }
+
+    void record(byte[] data, int length, int bufferType, int frameNumber, int frameType,
+                char frameHostProcessingLatency, long receiveTimeUs, long enqueueTimeUs) {
+        int offset = allocate(length);
+        if (offset < 0) {
+            return;
+        }
+
+        map.position(dataStart + offset);
+        map.put(data, 0, length);
+
+        writeIndexEntry(offset, length, bufferType, frameNumber, frameType,
+                frameHostProcessingLatency, receiveTimeUs, enqueueTimeUs);
+    }
+
+    // Records length bytes of src starting at start, leaving src's position and limit unchanged
+    void record(ByteBuffer src, int start, int length, int bufferType, int frameNumber, int frameType,
+                char frameHostProcessingLatency, long receiveTimeUs, long enqueueTimeUs) {
+        int offset = allocate(length);
+        if (offset < 0) {
+            return;
+        }
+
+        int oldPosition = src.position();
+        int oldLimit = src.limit();
+        src.limit(start + length);
+        src.position(start);
+        map.position(dataStart + offset);
+        map.put(src);
+        src.limit(oldLimit);
+        src.position(oldPosition);
+
+        writeIndexEntry(offset, length, bufferType, frameNumber, frameType,
+                frameHostProcessingLatency, receiveTimeUs, enqueueTimeUs);
+    }
+
+    long getUnitCount() {
+        return nextSeq - oldestSeq;
+    }
+
+    long getUnitsDropped() {
+        return unitsDropped;
+    }
+
+    void close() throws IOException {
+        map.force();
+        file.close();
+    }
+
+    static Header readHeader(File path) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(path, "r")) {
+            ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            in.getChannel().read(buf, 0);
+            return parseHeader(buf);
+        }
+    }
+
+    private static Header parseHeader(ByteBuffer buf) throws IOException {
+        if (buf.getInt(HDR_MAGIC) != MAGIC || buf.getInt(HDR_VERSION) != VERSION) {
+            throw new IOException("Not a decode unit capture");
+        }
+
+        Header header = new Header();
+        header.videoFormat = buf.getInt(HDR_VIDEO_FORMAT);
+        header.width = buf.getInt(HDR_WIDTH);
+        header.height = buf.getInt(HDR_HEIGHT);
+        header.fps = buf.getInt(HDR_FPS);
+        return header;
+    }
+
+    // Reads the units received in the last lastSeconds of the capture (or all of them if
+    // lastSeconds <= 0), oldest first. The result starts at the first IDR frame in that range
+    // so it can be decoded from scratch.
+    static List<Unit> read(File path, int lastSeconds) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(path, "r")) {
+            MappedByteBuffer buf = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            parseHeader(buf);
+
+            int indexCapacity = buf.getInt(HDR_INDEX_CAPACITY);
+            int dataStart = HEADER_SIZE + indexCapacity * INDEX_ENTRY_SIZE;
+            long oldestSeq = buf.getLong(HDR_OLDEST_SEQ);
+            long nextSeq = buf.getLong(HDR_NEXT_SEQ);
+
+            long firstSeq = oldestSeq;
+            if (lastSeconds > 0 && nextSeq > oldestSeq) {
+                long newestReceiveTimeUs = buf.getLong(entryOffset(nextSeq - 1, indexCapacity) + IDX_RECEIVE_TIME);
+                long cutoffUs = newestReceiveTimeUs - lastSeconds * 1000000L;
+                while (firstSeq < nextSeq && buf.getLong(entryOffset(firstSeq, indexCapacity) + IDX_RECEIVE_TIME) < cutoffUs) {
+                    firstSeq++;
+                }
+            }
+
+            // Skip ahead to the first IDR frame
+            while (firstSeq < nextSeq && buf.get(entryOffset(firstSeq, indexCapacity) + IDX_FRAME_TYPE) != MoonBridge.FRAME_TYPE_IDR) {
+                firstSeq++;
+            }
+
+            List<Unit> units = new ArrayList<>((int) (nextSeq - firstSeq));
+            int firstFrameNumber = 0;
+            for (long seq = firstSeq; seq < nextSeq; seq++) {
+                int entry = entryOffset(seq, indexCapacity);
+                int frameNumber = buf.getInt(entry + IDX_FRAME_NUMBER);
+                if (seq == firstSeq) {
+                    firstFrameNumber = frameNumber;
+                }
+
+                byte[] data = new byte[buf.getInt(entry + IDX_LENGTH)];
+                buf.position(dataStart + buf.getInt(entry + IDX_DATA_OFFSET));
+                buf.get(data);
+
+                units.add(new Unit(buf.get(entry + IDX_BUFFER_TYPE), buf.get(entry + IDX_FRAME_TYPE),
+                        frameNumber - firstFrameNumber, data, frameNumber,
+                        buf.getChar(entry + IDX_HOST_LATENCY),
+                        buf.getLong(entry + IDX_RECEIVE_TIME), buf.getLong(entry + IDX_ENQUEUE_TIME)));
+            }
+
+            return units;
+        }
+    }
+
+    private static int entryOffset(long seq, int indexCapacity) {
+        return HEADER_SIZE + (int) (seq % indexCapacity) * INDEX_ENTRY_SIZE;
+    }
+
+    // Writes the payloads of the last lastSeconds of src (or all of it if lastSeconds <= 0)
+    // to dst as an elementary stream. Decode units already carry their start codes (or OBU
+    // headers for AV1), so they only need to be concatenated in order. Returns the header of
+    // the capture, which has the video format and dimensions needed to decode the stream.
+    static Header exportStream(File src, File dst, int lastSeconds) throws IOException {
+        Header header = readHeader(src);
+        List<Unit> units = read(src, lastSeconds);
+
+        try (FileOutputStream out = new FileOutputStream(dst)) {
+            for (Unit unit : units) {
+                out.write(unit.data);
+            }
+        }
+
+        return header;
+    }
+
+    // Writes the last lastSeconds of src into a new, tightly sized capture at dst
+    static void trim(File src, File dst, int lastSeconds) throws IOException {
+        Header header = readHeader(src);
+        List<Unit> units = read(src, lastSeconds);
+
+        int dataSize = 0;
+        for (Unit unit : units) {
+            dataSize += unit.data.length;
+        }
+
+        DecodeUnitCapture out = new DecodeUnitCapture(dst, header, Math.max(1, units.size()), Math.max(1, dataSize));
+        try {
+            for (Unit unit : units) {
+                out.record(unit.data, unit.data.length, unit.bufferType, unit.frameNumber, unit.frameType,
+                        unit.frameHostProcessingLatency, unit.receiveTimeUs, unit.enqueueTimeUs);
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.limelight.binding.video;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import com.limelight.BuildConfig;
+import com.limelight.LimeLog;
+import com.limelight.preferences.PreferenceConfiguration;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Persists the decoder choices and capability probes made by MediaCodecDecoderRenderer,
+// so later streams with the same settings can skip walking MediaCodecList, querying codec
+// capabilities and evaluating performance points.
+//
+// Everything is invalidated when the OS build, the app version or the GL renderer changes,
+// since those feed into the decoder whitelists. Callers must also invalidate the cache when
+// the decoder tombstone records a crash, since a cached choice may be what crashed.
+class DecoderCapabilityCache {
+    private static final String PREF_FILE_NAME = "decoder_capability_cache";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+
+    // Number of sessions that reuse a cached low latency try number before all tries are redone
+    static final int FULL_LOW_LATENCY_TRY_INTERVAL = 5;
+
+    private final SharedPreferences preferences;
+    private final String fingerprint;
+
+    static class CodecEntry {
+        boolean adaptivePlayback;
+        boolean fusedIdrFrame;
+        // Index of the first setDecoderLowLatencyOptions() attempt that configured successfully
+        int lowLatencyTryNumber = -1;
+        // Sessions that skipped ahead to lowLatencyTryNumber since the earlier tries were last
+        // attempted. A configure failure may have been transient, so they are retried now and then.
+        int sessionsSinceFullTry;
+
+        // True if this session should start from the most aggressive low latency options again
+        boolean shouldRetryAllLowLatencyOptions() {
+            return lowLatencyTryNumber > 0 && sessionsSinceFullTry >= FULL_LOW_LATENCY_TRY_INTERVAL;
+        }
+
+        private JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("adaptivePlayback", adaptivePlayback);
+            json.put("fusedIdrFrame", fusedIdrFrame);
+            json.put("lowLatencyTryNumber", lowLatencyTryNumber);
+            json.put("sessionsSinceFullTry", sessionsSinceFullTry);
+            return json;
+        }
+
+        private static CodecEntry fromJson(JSONObject json) {
+            CodecEntry entry = new CodecEntry();
+            entry.adaptivePlayback = json.optBoolean("adaptivePlayback");
+            entry.fusedIdrFrame = json.optBoolean("fusedIdrFrame");
+            entry.lowLatencyTryNumber = json.optInt("lowLatencyTryNumber", -1);
+            entry.sessionsSinceFullTry = json.optInt("sessionsSinceFullTry");
+            return entry;
+        }
+    }
+
+    static class Entry {
+        // Decoder names, or null if no suitable decoder was found
+        String avcDecoder, hevcDecoder, av1Decoder;
+
+        boolean directSubmit;
+        boolean refFrameInvalidationAvc, refFrameInvalidationHevc, refFrameInvalidationAv1;
+        byte avcOptimalSlicesPerFrame, hevcOptimalSlicesPerFrame;
+        boolean hevcMain10, hevcMain10Hdr10, av1Main10;
+
+        // Keyed by MIME type, filled in as each codec is configured
+        private final JSONObject codecs;
+
+        Entry() {
+            codecs = new JSONObject();
+        }
+
+        private Entry(JSONObject codecs) {
+            this.codecs = codecs;
+        }
+
+        CodecEntry getCodecEntry(String mimeType) {
+            JSONObject json = codecs.optJSONObject(mimeType);
+            return json != null ? CodecEntry.fromJson(json) : null;
+        }
+
+        void putCodecEntry(String mimeType, CodecEntry entry) {
+            try {
+                codecs.put(mimeType, entry.toJson());
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.putOpt("avcDecoder", avcDecoder);
+            json.putOpt("hevcDecoder", hevcDecoder);
+            json.putOpt("av1Decoder", av1Decoder);
+            json.put("directSubmit", directSubmit);
+            json.put("refFrameInvalidationAvc", refFrameInvalidationAvc);
+            json.put("refFrameInvalidationHevc", refFrameInvalidationHevc);
+            json.put("refFrameInvalidationAv1", refFrameInvalidationAv1);
+            json.put("avcOptimalSlicesPerFrame", avcOptimalSlicesPerFrame);
+            json.put("hevcOptimalSlicesPerFrame", hevcOptimalSlicesPerFrame);
+            json.put("hevcMain10", hevcMain10);
+            json.put("hevcMain10Hdr10", hevcMain10Hdr10);
+            json.put("av1Main10", av1Main10);
+            json.put("codecs", codecs);
+            return json;
+        }
+
+        private static Entry fromJson(JSONObject json) {
+            JSONObject codecs = json.optJSONObject("codecs");
+            Entry entry = new Entry(codecs != null ? codecs : new JSONObject());
+            entry.avcDecoder = json.optString("avcDecoder", null);
+            entry.hevcDecoder = json.optString("hevcDecoder", null);
+            entry.av1Decoder = json.optString("av1Decoder", null);
+            entry.directSubmit = json.optBoolean("directSubmit");
+            entry.refFrameInvalidationAvc = json.optBoolean("refFrameInvalidationAvc");
+            entry.refFrameInvalidationHevc = json.optBoolean("refFrameInvalidationHevc");
+            entry.refFrameInvalidationAv1 = json.optBoolean("refFrameInvalidationAv1");
+            entry.avcOptimalSlicesPerFrame = (byte) json.optInt("avcOptimalSlicesPerFrame");
+            entry.hevcOptimalSlicesPerFrame = (byte) json.optInt("hevcOptimalSlicesPerFrame");
+            entry.hevcMain10 = json.optBoolean("hevcMain10");
+            entry.hevcMain10Hdr10 = json.optBoolean("hevcMain10Hdr10");
+            entry.av1Main10 = json.optBoolean("av1Main10");
+            return entry;
+        }
+    }
+
+    DecoderCapabilityCache(Context context, String glRenderer) {
+        this.preferences = context.getSharedPreferences(PREF_FILE_NAME, Context.MODE_PRIVATE);
+        this.fingerprint = Build.FINGERPRINT + "|" + BuildConfig.VERSION_CODE + "|" + glRenderer;
+
+        if (!fingerprint.equals(preferences.getString(KEY_FINGERPRINT, null))) {
+            if (preferences.contains(KEY_FINGERPRINT)) {
+                LimeLog.info("Decoder capability cache is stale, discarding it");
+            }
+            preferences.edit()
+                    .clear()
+                    .putString(KEY_FINGERPRINT, fingerprint)
+                    .apply();
+        }
+    }
+
+    private static String generateKey(PreferenceConfiguration prefs, boolean requestedHdr) {
+        return prefs.width + "x" + prefs.height + "@" + prefs.fps + "_" + prefs.videoFormat + (requestedHdr ? "_hdr" : "");
+    }
+
+    Entry load(PreferenceConfiguration prefs, boolean requestedHdr) {
+        String json = preferences.getString(generateKey(prefs, requestedHdr), null);
+        if (json == null) {
+            return null;
+        }
+
+        try {
+            return Entry.fromJson(new JSONObject(json));
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    void save(PreferenceConfiguration prefs, boolean requestedHdr, Entry entry) {
+        try {
+            preferences.edit()
+                    .putString(generateKey(prefs, requestedHdr), entry.toJson().toString())
+                    .apply();
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    void invalidate() {
+        preferences.edit()
+                .clear()
+                .putString(KEY_FINGERPRINT, fingerprint)
+                .apply();
+    }
+}
@@ -0,0 +1,146 @@
+package com.limelight.binding.video;
+
+import com.limelight.preferences.PreferenceConfiguration;
+
+// Decides when decoded frames are released to the display. The renderer thread asks the
+// active pacer how to handle each decoded frame, and the Choreographer callback asks it
+// whether to render a queued frame on each V-sync. All times are passed in by the caller,
+// so the pacers can be driven by a virtual clock.
+//
+// Precise sync has its own busy-wait thread in MediaCodecDecoderRenderer, so its pacer
+// only tells the renderer thread to queue frames for that thread. The Choreographer just
+// samples V-sync timing in that mode.
+interface FramePacer {
+    // Returned by getVsyncReleaseTimeNs() if no frame should be rendered on this V-sync
+    long NO_RENDER = -1;
+
+    // One of the PreferenceConfiguration.FRAME_PACING_* modes
+    int getMode();
+
+    // True if decoded frames go into the output buffer queue for a V-sync driven thread to
+    // render, false if the renderer thread releases the newest frame itself
+    boolean isVsyncPaced();
+
+    // Immediate pacers only: timestamp to release the newest decoded frame with
+    long getImmediateReleaseTimeNs(long nowNs);
+
+    // V-sync paced pacers only: timestamp to release the next queued frame with on the
+    // V-sync at frameTimeNs, or NO_RENDER to leave the queue alone until the next V-sync
+    long getVsyncReleaseTimeNs(long frameTimeNs, long lastRenderedFrameTimeNs, int streamFps);
+
+    static FramePacer forMode(int mode) {
+        switch (mode) {
+            case PreferenceConfiguration.FRAME_PACING_BALANCED:
+                return new ChoreographerPacer(mode, false);
+            case PreferenceConfiguration.FRAME_PACING_PRECISE_SYNC:
+                return new PreciseSyncPacer();
+            case PreferenceConfiguration.FRAME_PACING_EXPERIMENTAL_LOW_LATENCY:
+                return new ChoreographerPacer(mode, true);
+            case PreferenceConfiguration.FRAME_PACING_CAP_FPS:
+            case PreferenceConfiguration.FRAME_PACING_MAX_SMOOTHNESS:
+                return new ImmediatePacer(mode, true);
+            case PreferenceConfiguration.FRAME_PACING_MIN_LATENCY:
+            default:
+                return new ImmediatePacer(PreferenceConfiguration.FRAME_PACING_MIN_LATENCY, false);
+        }
+    }
+
+    // Releases the newest frame as soon as it's decoded
+    class ImmediatePacer implements FramePacer {
+        private final int mode;
+        private final boolean neverDrop;
+
+        ImmediatePacer(int mode, boolean neverDrop) {
+            this.mode = mode;
+            this.neverDrop = neverDrop;
+        }
+
+        @Override
+        public int getMode() {
+            return mode;
+        }
+
+        @Override
+        public boolean isVsyncPaced() {
+            return false;
+        }
+
+        @Override
+        public long getImmediateReleaseTimeNs(long nowNs) {
+            // A PTS of 0 means the frame will never be dropped. Using the current time means
+            // it will be dropped if another frame comes in within the same V-sync period.
+            return neverDrop ? 0 : nowNs;
+        }
+
+        @Override
+        public long getVsyncReleaseTimeNs(long frameTimeNs, long lastRenderedFrameTimeNs, int streamFps) {
+            return NO_RENDER;
+        }
+    }
+
+    // Renders up to one queued frame per V-sync
+    class ChoreographerPacer implements FramePacer {
+        private final int mode;
+        private final boolean renderAhead;
+
+        ChoreographerPacer(int mode, boolean renderAhead) {
+            this.mode = mode;
+            this.renderAhead = renderAhead;
+        }
+
+        @Override
+        public int getMode() {
+            return mode;
+        }
+
+        @Override
+        public boolean isVsyncPaced() {
+            return true;
+        }
+
+        @Override
+        public long getImmediateReleaseTimeNs(long nowNs) {
+            return nowNs;
+        }
+
+        @Override
+        public long getVsyncReleaseTimeNs(long frameTimeNs, long lastRenderedFrameTimeNs, int streamFps) {
+            // Don't render unless a new frame is due. This prevents microstutter when streaming
+            // at a frame rate that doesn't match the display (such as 60 FPS on 120 Hz).
+            long expectedFrameTimeDeltaNs = 800000000 / streamFps; // within 80% of the next frame
+            if (frameTimeNs - lastRenderedFrameTimeNs < expectedFrameTimeDeltaNs) {
+                return NO_RENDER;
+            }
+
+            if (renderAhead) {
+                // 实验性低延迟模式：进一步优化V-Sync处理
+                // 安全的提前量：不超过V-Sync周期的1/2
+                frameTimeNs -= 500000000 / streamFps;
+            }
+            return frameTimeNs;
+        }
+    }
+
+    // Queues frames for the precise sync thread, which does its own timing
+    class PreciseSyncPacer implements FramePacer {
+        @Override
+        public int getMode() {
+            return PreferenceConfiguration.FRAME_PACING_PRECISE_SYNC;
+        }
+
+        @Override
+        public boolean isVsyncPaced() {
+            return true;
+        }
+
+        @Override
+        public long getImmediateReleaseTimeNs(long nowNs) {
+            return nowNs;
+        }
+
+        @Override
+        public long getVsyncReleaseTimeNs(long frameTimeNs, long lastRenderedFrameTimeNs, int streamFps) {
+            return NO_RENDER;
+        }
+    }
+}
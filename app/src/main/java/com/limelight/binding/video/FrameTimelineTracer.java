@@ -0,0 +1,157 @@
+package com.limelight.binding.video;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Records the lifecycle of each video frame into a preallocated ring, so tracing adds no
+// allocations to the per-frame path. The ring can be written to a Chrome trace_event JSON
+// file (viewable in chrome://tracing or Perfetto) after the stream ends.
+//
+// All timestamps are in microseconds on the CLOCK_MONOTONIC timebase, which is shared by
+// System.nanoTime() and the receive/enqueue times reported by moonlight-common-c.
+class FrameTimelineTracer {
+    static final int EVENT_RECEIVE = 0;
+    static final int EVENT_ENQUEUE = 1;
+    static final int EVENT_QUEUE_INPUT = 2;
+    static final int EVENT_DEQUEUE_OUTPUT = 3;
+    static final int EVENT_RELEASE_OUTPUT = 4;
+    static final int EVENT_DROP_OUTPUT = 5;
+    private static final int EVENT_COUNT = 6;
+
+    private static final String[] EVENT_NAMES = {
+            "Receive", "Enqueue", "QueueInputBuffer", "DequeueOutputBuffer", "ReleaseOutputBuffer", "DropOutputBuffer"
+    };
+
+    // Each stage of the frame lifecycle is drawn as a span between two events
+    private static final String[] STAGE_NAMES = {
+            "Reassembly", "Submit", "Decode", "Pacing"
+    };
+
+    private final long[] timesUs;
+    private final long[] presentationTimesUs;
+    private final int[] frameNumbers;
+    private final byte[] eventTypes;
+    private final int mask;
+    private final AtomicLong nextSlot = new AtomicLong();
+
+    FrameTimelineTracer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+        }
+
+        timesUs = new long[capacity];
+        presentationTimesUs = new long[capacity];
+        frameNumbers = new int[capacity];
+        eventTypes = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    // May be called from any thread. Once the ring wraps, the oldest events are overwritten.
+    void record(int eventType, int frameNumber, long presentationTimeUs, long timeUs) {
+        int slot = (int) (nextSlot.getAndIncrement() & mask);
+        timesUs[slot] = timeUs;
+        presentationTimesUs[slot] = presentationTimeUs;
+        frameNumbers[slot] = frameNumber;
+        eventTypes[slot] = (byte) eventType;
+    }
+
+    static long nowUs() {
+        return System.nanoTime() / 1000;
+    }
+
+    // Must only be called once recording has stopped
+    void writeChromeTrace(File file) throws IOException {
+        long end = nextSlot.get();
+        long start = Math.max(0, end - timesUs.length);
+
+        // Group events by presentation timestamp, since that is the only identifier
+        // available on the output side of the decoder.
+        Map<Long, long[]> frames = new HashMap<>();
+        Map<Long, Integer> frameNumbersByPts = new HashMap<>();
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+            writeThreadName(writer, 1, "Network");
+            writeThreadName(writer, 2, "Input");
+            writeThreadName(writer, 3, "Decoder");
+            writeThreadName(writer, 4, "Pacing");
+
+            for (long i = start; i < end; i++) {
+                int slot = (int) (i & mask);
+                int type = eventTypes[slot];
+                long pts = presentationTimesUs[slot];
+
+                long[] times = frames.get(pts);
+                if (times == null) {
+                    times = new long[EVENT_COUNT];
+                    frames.put(pts, times);
+                }
+                times[type] = timesUs[slot];
+
+                if (type <= EVENT_QUEUE_INPUT) {
+                    frameNumbersByPts.put(pts, frameNumbers[slot]);
+                }
+
+                // Instant events make drops and out-of-order releases easy to spot
+                writer.write(",{\"name\":\"" + EVENT_NAMES[type] + "\",\"ph\":\"i\",\"s\":\"t\",\"pid\":1,\"tid\":" +
+                        threadForEvent(type) + ",\"ts\":" + timesUs[slot] + ",\"args\":{\"pts\":" + pts + "}}\n");
+            }
+
+            for (Map.Entry<Long, long[]> frame : frames.entrySet()) {
+                long[] times = frame.getValue();
+                Integer frameNumber = frameNumbersByPts.get(frame.getKey());
+                long release = times[EVENT_RELEASE_OUTPUT] != 0 ? times[EVENT_RELEASE_OUTPUT] : times[EVENT_DROP_OUTPUT];
+
+                writeSpan(writer, 1, STAGE_NAMES[0], frameNumber, times[EVENT_RECEIVE], times[EVENT_ENQUEUE]);
+                writeSpan(writer, 2, STAGE_NAMES[1], frameNumber, times[EVENT_ENQUEUE], times[EVENT_QUEUE_INPUT]);
+                writeSpan(writer, 3, STAGE_NAMES[2], frameNumber, times[EVENT_QUEUE_INPUT], times[EVENT_DEQUEUE_OUTPUT]);
+                writeSpan(writer, 4, STAGE_NAMES[3], frameNumber, times[EVENT_DEQUEUE_OUTPUT], release);
+            }
+
+            writer.write("]}\n");
+        }
+    }
+
+    private static int threadForEvent(int eventType) {
+        switch (eventType) {
+            case EVENT_RECEIVE:
+            case EVENT_ENQUEUE:
+                return 1;
+            case EVENT_QUEUE_INPUT:
+                return 2;
+            case EVENT_DEQUEUE_OUTPUT:
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    private static void writeThreadName(Writer writer, int tid, String name) throws IOException {
+        // The leading comma of every following event is absorbed by this first entry
+        if (tid != 1) {
+            writer.write(",");
+        }
+        writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + tid +
+                ",\"args\":{\"name\":\"" + name + "\"}}\n");
+    }
+
+    private static void writeSpan(Writer writer, int tid, String name, Integer frameNumber,
+                                  long startUs, long endUs) throws IOException {
+        // Skip spans where either side fell out of the ring or never happened
+        if (startUs == 0 || endUs == 0 || endUs < startUs) {
+            return;
+        }
+
+        writer.write(",{\"name\":\"" + name + "\",\"ph\":\"X\",\"pid\":1,\"tid\":" + tid +
+                ",\"ts\":" + startUs + ",\"dur\":" + (endUs - startUs) +
+                ",\"args\":{\"frame\":" + (frameNumber != null ? frameNumber : -1) + "}}\n");
+    }
+}
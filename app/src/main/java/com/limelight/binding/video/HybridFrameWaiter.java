@@ -0,0 +1,109 @@
+package com.limelight.binding.video;
+
+import com.limelight.LimeLog;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Waits until an absolute System.nanoTime() deadline for the precise sync render loop.
+//
+// parkNanos() usually wakes up late by an amount that depends on the device's kernel and
+// CPU governor. This measures that overshoot on every wait and parks until just before the
+// deadline, minus the measured p99 overshoot, then spins for the remainder. On most devices
+// that spin window is far smaller than a fixed guess, which keeps a big core from being
+// pinned for the whole session.
+//
+// The battery profile never spins. It parks for the remaining time minus the median
+// overshoot, so wakeups are centered on the deadline at the cost of some timing accuracy.
+class HybridFrameWaiter {
+    private static final long INITIAL_SPIN_WINDOW_NS = 500000;
+    private static final long MIN_SPIN_WINDOW_NS = 20000;
+    private static final long MAX_SPIN_WINDOW_NS = 2000000;
+    // Extra margin on top of the measured p99 overshoot
+    private static final long SPIN_MARGIN_NS = 20000;
+
+    // About 2 seconds of samples at 120 FPS
+    private static final int SAMPLES_PER_CALIBRATION = 240;
+    private static final long SPIN_REPORT_INTERVAL_NS = 1000000000L;
+
+    private final boolean batteryProfile;
+    private final LatencyHistogram overshootHistogram = new LatencyHistogram();
+
+    // Time left before the deadline at which parking stops. In the battery profile this is
+    // the median overshoot, otherwise it's the spin window.
+    private long earlyWakeNs;
+
+    private long spinNs;
+    private long spinReportStartNs;
+    private volatile float spinMsPerSecond;
+
+    HybridFrameWaiter(boolean batteryProfile) {
+        this.batteryProfile = batteryProfile;
+        this.earlyWakeNs = batteryProfile ? 0 : INITIAL_SPIN_WINDOW_NS;
+        this.spinReportStartNs = System.nanoTime();
+    }
+
+    void waitUntil(long deadlineNs) {
+        long now = System.nanoTime();
+        long remainingNs = deadlineNs - now;
+        if (remainingNs <= 0) {
+            return;
+        }
+
+        long parkNs = remainingNs - earlyWakeNs;
+        if (parkNs > 0) {
+            LockSupport.parkNanos(parkNs);
+
+            long wakeNs = System.nanoTime();
+            recordOvershoot(wakeNs - (now + parkNs));
+            now = wakeNs;
+        }
+
+        if (!batteryProfile) {
+            long spinStartNs = now;
+            while (now < deadlineNs) {
+                now = System.nanoTime();
+            }
+            spinNs += now - spinStartNs;
+        }
+
+        if (now - spinReportStartNs >= SPIN_REPORT_INTERVAL_NS) {
+            spinMsPerSecond = spinNs / 1000000.0f / ((now - spinReportStartNs) / 1000000000.0f);
+            spinNs = 0;
+            spinReportStartNs = now;
+        }
+    }
+
+    private void recordOvershoot(long overshootNs) {
+        // Early returns (from an interrupt or spurious wakeup) count as no overshoot
+        overshootHistogram.record(Math.max(0, overshootNs) / 1000);
+        if (overshootHistogram.getCount() < SAMPLES_PER_CALIBRATION) {
+            return;
+        }
+
+        long newEarlyWakeNs;
+        if (batteryProfile) {
+            newEarlyWakeNs = overshootHistogram.getPercentile(50) * 1000;
+        } else {
+            newEarlyWakeNs = Math.max(MIN_SPIN_WINDOW_NS, Math.min(MAX_SPIN_WINDOW_NS,
+                    overshootHistogram.getPercentile(99) * 1000 + SPIN_MARGIN_NS));
+        }
+
+        if (Math.abs(newEarlyWakeNs - earlyWakeNs) > 50000) {
+            LimeLog.info("Precise sync wait: park overshoot p50 " + overshootHistogram.getPercentile(50) +
+                    " us, p99 " + overshootHistogram.getPercentile(99) + " us, " +
+                    (batteryProfile ? "early wake " : "spin window ") + newEarlyWakeNs / 1000 + " us");
+        }
+
+        earlyWakeNs = newEarlyWakeNs;
+        overshootHistogram.clear();
+    }
+
+    // CPU time spent spinning per second of wall time, over the last report interval
+    float getSpinMsPerSecond() {
+        return spinMsPerSecond;
+    }
+
+    long getSpinWindowNs() {
+        return batteryProfile ? 0 : earlyWakeNs;
+    }
+}
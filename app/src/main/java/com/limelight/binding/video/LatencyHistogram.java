@@ -0,0 +1,119 @@
+package com.limelight.binding.video;
+
+// Fixed-bucket log-linear histogram of microsecond values. Each power of 2 is split into
+// 16 linear sub-buckets, so any recorded value is reported within ~6% of its real value.
+// Nothing is allocated after construction, which keeps it usable on per-frame paths.
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // Values at or above 2^31 us (~35 minutes) are clamped into the last bucket
+    private static final int MAX_EXPONENT = 30;
+    private static final int BUCKET_COUNT =
+            SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long maxValue;
+
+    void record(long valueUs) {
+        if (valueUs < 0) {
+            return;
+        }
+
+        counts[bucketIndex(valueUs)]++;
+        totalCount++;
+        if (valueUs > maxValue) {
+            maxValue = valueUs;
+        }
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    void copy(LatencyHistogram other) {
+        System.arraycopy(other.counts, 0, counts, 0, BUCKET_COUNT);
+        totalCount = other.totalCount;
+        maxValue = other.maxValue;
+    }
+
+    void clear() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = 0;
+        }
+        totalCount = 0;
+        maxValue = 0;
+    }
+
+    long getCount() {
+        return totalCount;
+    }
+
+    // Returns the value at the given percentile (0-100) in microseconds, or 0 if empty
+    long getPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long targetRank = (long) Math.ceil(percentile / 100.0 * totalCount);
+        if (targetRank < 1) {
+            targetRank = 1;
+        }
+
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= targetRank) {
+                // Report the middle of the bucket, but never more than we actually saw
+                long lower = bucketLowerBound(i);
+                long mid = lower + (bucketWidth(i) - 1) / 2;
+                return Math.min(mid, maxValue);
+            }
+        }
+
+        return maxValue;
+    }
+
+    // Convenience for stats display
+    float getPercentileMs(double percentile) {
+        return getPercentile(percentile) / 1000.0f;
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int subBucket = (int) (value >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    private static long bucketWidth(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return 1;
+        }
+
+        int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+        return 1L << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -1,17 +1,14 @@
 package com.limelight.binding.video;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.LockSupport;
 
 import org.jcodec.codecs.h264.H264Utils;
 import org.jcodec.codecs.h264.io.model.SeqParameterSet;
@@ -19,6 +16,7 @@ import org.jcodec.codecs.h264.io.model.VUIParameters;
 
 import com.limelight.BuildConfig;
 import com.limelight.LimeLog;
+import com.limelight.nvstream.StartupTimeline;
 import com.limelight.nvstream.av.video.VideoDecoderRenderer;
 import com.limelight.nvstream.jni.MoonBridge;
 import com.limelight.preferences.PreferenceConfiguration;
@@ -53,23 +51,34 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     private final MediaCodecInfo avcDecoder;
     private final MediaCodecInfo hevcDecoder;
     private final MediaCodecInfo av1Decoder;
+    private final DecoderCapabilityCache capabilityCache;
+    private final DecoderCapabilityCache.Entry decoderCaps;
 
     private final ArrayList<byte[]> vpsBuffers = new ArrayList<>();
     private final ArrayList<byte[]> spsBuffers = new ArrayList<>();
     private final ArrayList<byte[]> ppsBuffers = new ArrayList<>();
+    // Patched/copied parameter sets from previous IDR frames, reused while they don't change
+    private final ParameterSetCache parameterSetCache = new ParameterSetCache();
     private boolean submittedCsd;
     private byte[] currentHdrMetadata;
 
     private int nextInputBufferIndex = -1;
     private ByteBuffer nextInputBuffer;
 
+    // Returned by prepareDecodeUnit() when nextInputBuffer is ready to receive picture data
+    private static final int DU_READY_FOR_DATA = 1;
+    private long pendingTimestampUs;
+    private int pendingCodecFlags;
+
 
     private final Context context;
     private final Activity activity;
-    private MediaCodec videoDecoder;
+    private VideoCodec videoDecoder;
+    private VideoCodec.Factory codecFactory = MediaCodecVideoCodec.FACTORY;
     private Thread rendererThread;
     private boolean needsSpsBitstreamFixup, isExynos4;
     private boolean adaptivePlayback, directSubmit, fusedIdrFrame;
+    private boolean zeroCopySubmit;
     private boolean constrainedHighProfile;
     private boolean refFrameInvalidationAvc, refFrameInvalidationHevc, refFrameInvalidationAv1;
     private final byte optimalSlicesPerFrame;
@@ -81,6 +90,15 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     private final CrashListener crashListener;
     private boolean reportedCrash;
     private final int consecutiveCrashCount;
+    private final boolean requestedHdr;
+
+    // Speculative decoder initialization during app launch (see prewarm())
+    private final Object prewarmLock = new Object();
+    private Thread prewarmThread;
+    private boolean prewarmDone;
+    private int prewarmResult;
+    private int prewarmFormat, prewarmWidth, prewarmHeight, prewarmRedrawRate;
+    private StartupTimeline startupTimeline;
     private final String glRenderer;
     private boolean foreground = true;
     private final PerfOverlayListener perfListener;
@@ -116,6 +134,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     private final VideoStats activeWindowVideoStats;
     private final VideoStats lastWindowVideoStats;
     private final VideoStats globalVideoStats;
+    private final VideoStats lastTwoWindowsVideoStats;
 
     private long lastTimestampUs;
     private int lastFrameNumber;
@@ -124,11 +143,46 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
 
     // Map to track enqueue time for each timestamp
     // Key: timestamp in microseconds (from enqueueTimeUs)
-    // Value: enqueue time in milliseconds (from SystemClock.uptimeMillis())
-    private final Map<Long, Long> timestampToEnqueueTime = new HashMap<>();
+    // Value: enqueue time in microseconds (from System.nanoTime())
+    //
+    // Written by the input thread and read by the renderer thread. This must be large
+    // enough to cover all frames that can be in flight inside the decoder at once.
+    private final TimestampRingMap timestampToEnqueueTime = new TimestampRingMap(256);
+
+    private final OutputBufferQueue outputBufferQueue;
+
+    // Frame timeline tracing is opt-in. When disabled, frameTracer is null and none of
+    // the trace points cost more than a null check.
+    private final FrameTimelineTracer frameTracer;
+    // PTS of each output buffer index waiting in outputBufferQueue, so the pacing threads
+    // can attribute their releases to a frame. Only used while tracing.
+    private final long[] outputBufferPtsUs;
+
+    // Only the newest few traces and captures are kept, since nothing else ever deletes them
+    // and a capture can be hundreds of MB
+    private static final int MAX_FRAME_TRACE_FILES = 5;
+    private static final int MAX_DECODE_CAPTURE_FILES = 2;
+
+    // Decode unit capture is opt-in too. It's opened once the stream format is known in setup().
+    private DecodeUnitCapture decodeCapture;
+    private File decodeCaptureFile;
+    // Metadata for the unit being written by the bridge between getDirectSubmitBuffer()
+    // and submitDirectDecodeUnit(), so it can be captured once the data arrives
+    private int directSubmitFrameNumber, directSubmitFrameType;
+    private char directSubmitHostProcessingLatency;
+    private long directSubmitReceiveTimeUs, directSubmitEnqueueTimeUs;
+
+    // The active frame pacing strategy. It only changes at runtime in auto mode, where
+    // autoFramePacing picks a new one each stats window.
+    private volatile FramePacer framePacer;
+    private final AutoFramePacingSelector autoFramePacing;
+    private float displayRefreshRate;
+    // V-syncs where the Choreographer had a frame due but nothing queued
+    private volatile int vsyncSkippedFrames;
+    private int lastWindowVsyncSkippedFrames;
 
-    private final LinkedBlockingQueue<Integer> outputBufferQueue = new LinkedBlockingQueue<>();
     private long lastRenderedFrameTimeNanos;
+    private long lastFrameRenderTimeNanos;
     private HandlerThread choreographerHandlerThread;
     private Handler choreographerHandler;
 
@@ -140,6 +194,13 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     private int surfaceFlingerFrameCount;
     private int surfaceFlingerSkippedFrames; // 记录跳过的帧数
 
+    // Tracks the real display V-sync period and phase from Choreographer frame times
+    // in precise sync mode, null otherwise
+    private VsyncPredictor vsyncPredictor;
+
+    // Calibrated park/spin wait for the precise sync thread
+    private HybridFrameWaiter surfaceFlingerWaiter;
+
     // 高精度帧率控制
     private long surfaceFlingerTargetTime; // 目标渲染时间（绝对时间）
     private long surfaceFlingerTimingError; // 累积时间误差
@@ -324,6 +385,11 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         return decoderInfo;
     }
 
+    // Replaces the hardware decoder, which is used to run the submission path offline
+    void setCodecFactory(VideoCodec.Factory codecFactory) {
+        this.codecFactory = codecFactory;
+    }
+
     public void setRenderTarget(SurfaceHolder renderTarget) {
         this.renderTarget = renderTarget;
     }
@@ -339,28 +405,78 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         this.prefs = prefs;
         this.crashListener = crashListener;
         this.consecutiveCrashCount = consecutiveCrashCount;
+        this.requestedHdr = requestedHdr;
         this.glRenderer = glRenderer;
         this.perfListener = perfListener;
 
         this.activeWindowVideoStats = new VideoStats();
         this.lastWindowVideoStats = new VideoStats();
         this.globalVideoStats = new VideoStats();
+        this.lastTwoWindowsVideoStats = new VideoStats();
+
+        this.outputBufferQueue = new OutputBufferQueue(prefs.outputBufferQueueLimit);
+
+        if (prefs.framePacing == PreferenceConfiguration.FRAME_PACING_AUTO) {
+            this.autoFramePacing = new AutoFramePacingSelector(SystemClock.uptimeMillis());
+            this.framePacer = FramePacer.forMode(autoFramePacing.getCurrentMode());
+        } else {
+            this.autoFramePacing = null;
+            this.framePacer = FramePacer.forMode(prefs.framePacing);
+        }
+
+        if (prefs.enableFrameTrace) {
+            // 6 events per frame, so this holds roughly the last 45 seconds at 120 FPS
+            this.frameTracer = new FrameTimelineTracer(32768);
+            this.outputBufferPtsUs = new long[64];
+        } else {
+            this.frameTracer = null;
+            this.outputBufferPtsUs = null;
+        }
+
+        capabilityCache = new DecoderCapabilityCache(activity, glRenderer);
+        DecoderCapabilityCache.Entry cachedCaps = null;
+        if (consecutiveCrashCount > 0) {
+            // The cached decoder choice may be what crashed, so probe from scratch
+            LimeLog.warning("Invalidating decoder capability cache due to previous crash");
+            capabilityCache.invalidate();
+        } else {
+            cachedCaps = capabilityCache.load(prefs, requestedHdr);
+        }
+
+        MediaCodecInfo cachedAvcDecoder = null, cachedHevcDecoder = null, cachedAv1Decoder = null;
+        boolean cacheHit = false;
+        if (cachedCaps != null) {
+            cachedAvcDecoder = findCachedDecoder(cachedCaps.avcDecoder);
+            cachedHevcDecoder = findCachedDecoder(cachedCaps.hevcDecoder);
+            cachedAv1Decoder = findCachedDecoder(cachedCaps.av1Decoder);
+
+            // Only trust the cache if every decoder it names still exists
+            cacheHit = (cachedCaps.avcDecoder == null || cachedAvcDecoder != null) &&
+                    (cachedCaps.hevcDecoder == null || cachedHevcDecoder != null) &&
+                    (cachedCaps.av1Decoder == null || cachedAv1Decoder != null);
+        }
+
+        if (cacheHit) {
+            LimeLog.info("Using cached decoder capabilities");
+            avcDecoder = cachedAvcDecoder;
+            hevcDecoder = cachedHevcDecoder;
+            av1Decoder = cachedAv1Decoder;
+        } else {
+            avcDecoder = findAvcDecoder();
+            hevcDecoder = findHevcDecoder(prefs, meteredData, requestedHdr);
+            av1Decoder = findAv1Decoder(prefs);
+        }
 
-        avcDecoder = findAvcDecoder();
         if (avcDecoder != null) {
             LimeLog.info("Selected AVC decoder: " + avcDecoder.getName());
         } else {
             LimeLog.warning("No AVC decoder found");
         }
-
-        hevcDecoder = findHevcDecoder(prefs, meteredData, requestedHdr);
         if (hevcDecoder != null) {
             LimeLog.info("Selected HEVC decoder: " + hevcDecoder.getName());
         } else {
             LimeLog.info("No HEVC decoder found");
         }
-
-        av1Decoder = findAv1Decoder(prefs);
         if (av1Decoder != null) {
             LimeLog.info("Selected AV1 decoder: " + av1Decoder.getName());
         } else {
@@ -370,49 +486,55 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         // Set attributes that are queried in getCapabilities(). This must be done here
         // because getCapabilities() may be called before setup() in current versions of the common
         // library. The limitation of this is that we don't know whether we're using HEVC or AVC.
-        int avcOptimalSlicesPerFrame = 0;
-        int hevcOptimalSlicesPerFrame = 0;
-        if (avcDecoder != null) {
-            directSubmit = MediaCodecHelper.decoderCanDirectSubmit(avcDecoder.getName());
-            refFrameInvalidationAvc = MediaCodecHelper.decoderSupportsRefFrameInvalidationAvc(avcDecoder.getName(), prefs.height);
-            avcOptimalSlicesPerFrame = MediaCodecHelper.getDecoderOptimalSlicesPerFrame(avcDecoder.getName());
+        if (cacheHit) {
+            decoderCaps = cachedCaps;
+        } else {
+            decoderCaps = probeDecoderCapabilities();
+            capabilityCache.save(prefs, requestedHdr, decoderCaps);
+        }
+
+        directSubmit = decoderCaps.directSubmit;
+        refFrameInvalidationAvc = decoderCaps.refFrameInvalidationAvc;
+        refFrameInvalidationHevc = decoderCaps.refFrameInvalidationHevc;
+        refFrameInvalidationAv1 = decoderCaps.refFrameInvalidationAv1;
 
+        if (avcDecoder != null) {
             if (directSubmit) {
                 LimeLog.info("Decoder " + avcDecoder.getName() + " will use direct submit");
             }
             if (refFrameInvalidationAvc) {
                 LimeLog.info("Decoder " + avcDecoder.getName() + " will use reference frame invalidation for AVC");
             }
-            LimeLog.info("Decoder " + avcDecoder.getName() + " wants " + avcOptimalSlicesPerFrame + " slices per frame");
+            LimeLog.info("Decoder " + avcDecoder.getName() + " wants " + decoderCaps.avcOptimalSlicesPerFrame + " slices per frame");
         }
 
         if (hevcDecoder != null) {
-            refFrameInvalidationHevc = MediaCodecHelper.decoderSupportsRefFrameInvalidationHevc(hevcDecoder);
-            hevcOptimalSlicesPerFrame = MediaCodecHelper.getDecoderOptimalSlicesPerFrame(hevcDecoder.getName());
-
             if (refFrameInvalidationHevc) {
                 LimeLog.info("Decoder " + hevcDecoder.getName() + " will use reference frame invalidation for HEVC");
             }
 
-            LimeLog.info("Decoder " + hevcDecoder.getName() + " wants " + hevcOptimalSlicesPerFrame + " slices per frame");
+            LimeLog.info("Decoder " + hevcDecoder.getName() + " wants " + decoderCaps.hevcOptimalSlicesPerFrame + " slices per frame");
         }
 
-        if (av1Decoder != null) {
-            refFrameInvalidationAv1 = MediaCodecHelper.decoderSupportsRefFrameInvalidationAv1(av1Decoder);
-
-            if (refFrameInvalidationAv1) {
-                LimeLog.info("Decoder " + av1Decoder.getName() + " will use reference frame invalidation for AV1");
-            }
+        if (av1Decoder != null && refFrameInvalidationAv1) {
+            LimeLog.info("Decoder " + av1Decoder.getName() + " will use reference frame invalidation for AV1");
         }
 
         // Use the larger of the two slices per frame preferences
-        optimalSlicesPerFrame = (byte) Math.max(avcOptimalSlicesPerFrame, hevcOptimalSlicesPerFrame);
+        optimalSlicesPerFrame = (byte) Math.max(decoderCaps.avcOptimalSlicesPerFrame, decoderCaps.hevcOptimalSlicesPerFrame);
         LimeLog.info("Requesting " + optimalSlicesPerFrame + " slices per frame");
 
         if (consecutiveCrashCount % 2 == 1) {
             refFrameInvalidationAvc = refFrameInvalidationHevc = false;
             LimeLog.warning("Disabling RFI due to previous crash");
         }
+
+        // MediaCodec input buffers are always direct on L+, so the bridge can write picture
+        // data straight into them. Fall back to the array path if we keep crashing.
+        zeroCopySubmit = consecutiveCrashCount < 2;
+        if (!zeroCopySubmit) {
+            LimeLog.warning("Disabling zero-copy submit due to previous crashes");
+        }
     }
 
     public boolean isHevcSupported() {
@@ -424,52 +546,85 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     }
 
     public boolean isHevcMain10Supported() {
-        if (hevcDecoder == null) {
-            return false;
+        return decoderCaps.hevcMain10;
+    }
+
+    public boolean isHevcMain10Hdr10Supported() {
+        return decoderCaps.hevcMain10Hdr10;
+    }
+
+    public boolean isAv1Supported() {
+        return av1Decoder != null;
+    }
+
+    public boolean isAv1Main10Supported() {
+        return decoderCaps.av1Main10;
+    }
+
+    private static MediaCodecInfo findCachedDecoder(String decoderName) {
+        if (decoderName == null) {
+            return null;
         }
 
-        for (MediaCodecInfo.CodecProfileLevel profileLevel : hevcDecoder.getCapabilitiesForType("video/hevc").profileLevels) {
-            if (profileLevel.profile == MediaCodecInfo.CodecProfileLevel.HEVCProfileMain10) {
-                LimeLog.info("HEVC decoder " + hevcDecoder.getName() + " supports HEVC Main10");
-                return true;
+        MediaCodecInfo decoderInfo = MediaCodecHelper.findDecoderByName(decoderName);
+        if (decoderInfo == null) {
+            LimeLog.warning("Cached decoder " + decoderName + " no longer exists");
+        }
+        return decoderInfo;
+    }
+
+    private static boolean decoderSupportsProfile(MediaCodecInfo decoderInfo, String mimeType, int... profiles) {
+        for (MediaCodecInfo.CodecProfileLevel profileLevel : decoderInfo.getCapabilitiesForType(mimeType).profileLevels) {
+            for (int profile : profiles) {
+                if (profileLevel.profile == profile) {
+                    return true;
+                }
             }
         }
         return false;
     }
 
-    public boolean isHevcMain10Hdr10Supported() {
-        if (hevcDecoder == null) {
-            return false;
+    // Runs the (slow) capability queries for the selected decoders
+    private DecoderCapabilityCache.Entry probeDecoderCapabilities() {
+        DecoderCapabilityCache.Entry caps = new DecoderCapabilityCache.Entry();
+
+        if (avcDecoder != null) {
+            caps.avcDecoder = avcDecoder.getName();
+            caps.directSubmit = MediaCodecHelper.decoderCanDirectSubmit(avcDecoder.getName());
+            caps.refFrameInvalidationAvc = MediaCodecHelper.decoderSupportsRefFrameInvalidationAvc(avcDecoder.getName(), prefs.height);
+            caps.avcOptimalSlicesPerFrame = MediaCodecHelper.getDecoderOptimalSlicesPerFrame(avcDecoder.getName());
         }
 
-        for (MediaCodecInfo.CodecProfileLevel profileLevel : hevcDecoder.getCapabilitiesForType("video/hevc").profileLevels) {
-            if (profileLevel.profile == MediaCodecInfo.CodecProfileLevel.HEVCProfileMain10HDR10 ||
-                    profileLevel.profile == MediaCodecInfo.CodecProfileLevel.HEVCProfileMain10HDR10Plus) {
+        if (hevcDecoder != null) {
+            caps.hevcDecoder = hevcDecoder.getName();
+            caps.refFrameInvalidationHevc = MediaCodecHelper.decoderSupportsRefFrameInvalidationHevc(hevcDecoder);
+            caps.hevcOptimalSlicesPerFrame = MediaCodecHelper.getDecoderOptimalSlicesPerFrame(hevcDecoder.getName());
+            caps.hevcMain10 = decoderSupportsProfile(hevcDecoder, "video/hevc",
+                    MediaCodecInfo.CodecProfileLevel.HEVCProfileMain10);
+            caps.hevcMain10Hdr10 = decoderSupportsProfile(hevcDecoder, "video/hevc",
+                    MediaCodecInfo.CodecProfileLevel.HEVCProfileMain10HDR10,
+                    MediaCodecInfo.CodecProfileLevel.HEVCProfileMain10HDR10Plus);
+
+            if (caps.hevcMain10) {
+                LimeLog.info("HEVC decoder " + hevcDecoder.getName() + " supports HEVC Main10");
+            }
+            if (caps.hevcMain10Hdr10) {
                 LimeLog.info("HEVC 解码器 " + hevcDecoder.getName() + " 支持 HEVC Main10 HDR10/HDR10+");
-                return true;
             }
         }
 
-        return false;
-    }
-
-    public boolean isAv1Supported() {
-        return av1Decoder != null;
-    }
-
-    public boolean isAv1Main10Supported() {
-        if (av1Decoder == null) {
-            return false;
-        }
+        if (av1Decoder != null) {
+            caps.av1Decoder = av1Decoder.getName();
+            caps.refFrameInvalidationAv1 = MediaCodecHelper.decoderSupportsRefFrameInvalidationAv1(av1Decoder);
+            caps.av1Main10 = decoderSupportsProfile(av1Decoder, "video/av01",
+                    MediaCodecInfo.CodecProfileLevel.AV1ProfileMain10HDR10);
 
-        for (MediaCodecInfo.CodecProfileLevel profileLevel : av1Decoder.getCapabilitiesForType("video/av01").profileLevels) {
-            if (profileLevel.profile == MediaCodecInfo.CodecProfileLevel.AV1ProfileMain10HDR10) {
+            if (caps.av1Main10) {
                 LimeLog.info("AV1 decoder " + av1Decoder.getName() + " supports AV1 Main 10 HDR10");
-                return true;
             }
         }
 
-        return false;
+        return caps;
     }
 
     public int getPreferredColorSpace() {
@@ -580,7 +735,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
 
         LimeLog.info("Configuring with format: " + format);
 
-        videoDecoder.configure(format, renderTarget.getSurface(), null, 0);
+        videoDecoder.configure(format, renderTarget != null ? renderTarget.getSurface() : null);
 
         configuredFormat = format;
 
@@ -589,6 +744,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         vpsBuffers.clear();
         spsBuffers.clear();
         ppsBuffers.clear();
+        parameterSetCache.clear();
         timestampToEnqueueTime.clear();
 
         // This will contain the actual accepted input format attributes
@@ -605,7 +761,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     private boolean tryConfigureDecoder(MediaCodecInfo selectedDecoderInfo, MediaFormat format, boolean throwOnCodecError) {
         boolean configured = false;
         try {
-            videoDecoder = MediaCodec.createByCodecName(selectedDecoderInfo.getName());
+            videoDecoder = codecFactory.createByCodecName(selectedDecoderInfo.getName());
             configureAndStartDecoder(format);
             LimeLog.info("Using codec " + selectedDecoderInfo.getName() + " for hardware decoding " + format.getString(MediaFormat.KEY_MIME));
             configured = true;
@@ -691,10 +847,28 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             return -3;
         }
 
-        adaptivePlayback = MediaCodecHelper.decoderSupportsAdaptivePlayback(selectedDecoderInfo, mimeType);
-        fusedIdrFrame = MediaCodecHelper.decoderSupportsFusedIdrFrame(selectedDecoderInfo, mimeType);
-
-        for (int tryNumber = 0; ; tryNumber++) {
+        DecoderCapabilityCache.CodecEntry codecCaps = decoderCaps.getCodecEntry(mimeType);
+        boolean codecCapsCached = codecCaps != null;
+        if (!codecCapsCached) {
+            codecCaps = new DecoderCapabilityCache.CodecEntry();
+            codecCaps.adaptivePlayback = MediaCodecHelper.decoderSupportsAdaptivePlayback(selectedDecoderInfo, mimeType);
+            codecCaps.fusedIdrFrame = MediaCodecHelper.decoderSupportsFusedIdrFrame(selectedDecoderInfo, mimeType);
+        }
+        adaptivePlayback = codecCaps.adaptivePlayback;
+        fusedIdrFrame = codecCaps.fusedIdrFrame;
+
+        // Skip the low latency options that failed to configure last time. Each try is less
+        // aggressive than the one before, so we just continue from there if this one fails.
+        // Every few sessions we start over from the first try, since a configure failure may
+        // have been transient and we don't want to lose the better options for good.
+        int firstTryNumber;
+        if (codecCaps.shouldRetryAllLowLatencyOptions()) {
+            LimeLog.info("Retrying low latency options skipped by cached try " + codecCaps.lowLatencyTryNumber);
+            firstTryNumber = 0;
+        } else {
+            firstTryNumber = Math.max(codecCaps.lowLatencyTryNumber, 0);
+        }
+        for (int tryNumber = firstTryNumber; ; tryNumber++) {
             LimeLog.info("Decoder configuration try: " + tryNumber);
 
             MediaFormat mediaFormat = createBaseMediaFormat(mimeType);
@@ -705,6 +879,14 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             // Throw the underlying codec exception on the last attempt if the caller requested it
             if (tryConfigureDecoder(selectedDecoderInfo, mediaFormat, !newFormat && throwOnCodecError)) {
                 // Success!
+                int sessionsSinceFullTry = firstTryNumber > 0 ? codecCaps.sessionsSinceFullTry + 1 : 0;
+                if (!codecCapsCached || codecCaps.lowLatencyTryNumber != tryNumber ||
+                        codecCaps.sessionsSinceFullTry != sessionsSinceFullTry) {
+                    codecCaps.lowLatencyTryNumber = tryNumber;
+                    codecCaps.sessionsSinceFullTry = sessionsSinceFullTry;
+                    decoderCaps.putCodecEntry(mimeType, codecCaps);
+                    capabilityCache.save(prefs, requestedHdr, decoderCaps);
+                }
                 break;
             }
 
@@ -715,7 +897,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         }
 
         if (USE_FRAME_RENDER_TIME && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            videoDecoder.setOnFrameRenderedListener((mediaCodec, presentationTimeUs, renderTimeNanos) -> {
+            videoDecoder.setOnFrameRenderedListener((presentationTimeUs, renderTimeNanos) -> {
                 // presentationTimeUs: 我们告诉系统这一帧应该在什么时间点显示
                 // renderTimeNanos: 系统报告的这一帧实际显示在屏幕上的时间点
                 long presentationTimeMs = presentationTimeUs / 1000;
@@ -728,21 +910,167 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
                 if (delta >= 0 && delta < 1000) {
                     activeWindowVideoStats.renderingTimeMs += delta;
                     activeWindowVideoStats.totalTimeMs += delta;
+                    activeWindowVideoStats.renderingLatencyHistogram.record(renderTimeNanos / 1000 - presentationTimeUs);
+                }
+
+                // Track the time between frames actually reaching the display
+                if (lastFrameRenderTimeNanos != 0) {
+                    long intervalUs = (renderTimeNanos - lastFrameRenderTimeNanos) / 1000;
+                    if (intervalUs > 0 && intervalUs < 1000000) {
+                        activeWindowVideoStats.frameIntervalHistogram.record(intervalUs);
+                    }
                 }
-            }, null);
+                lastFrameRenderTimeNanos = renderTimeNanos;
+            });
         }
 
         return 0;
     }
 
+    // Guess which format the host will pick. It chooses the best codec we both support, so
+    // this is right unless the host lacks support for it. A wrong guess just costs a re-init.
+    private int predictVideoFormat(int supportedVideoFormats) {
+        if ((supportedVideoFormats & MoonBridge.VIDEO_FORMAT_MASK_AV1) != 0 && av1Decoder != null) {
+            return (supportedVideoFormats & MoonBridge.VIDEO_FORMAT_AV1_MAIN10) != 0 ?
+                    MoonBridge.VIDEO_FORMAT_AV1_MAIN10 : MoonBridge.VIDEO_FORMAT_AV1_MAIN8;
+        } else if ((supportedVideoFormats & MoonBridge.VIDEO_FORMAT_MASK_H265) != 0 && hevcDecoder != null) {
+            return (supportedVideoFormats & MoonBridge.VIDEO_FORMAT_H265_MAIN10) != 0 ?
+                    MoonBridge.VIDEO_FORMAT_H265_MAIN10 : MoonBridge.VIDEO_FORMAT_H265;
+        } else if (avcDecoder != null) {
+            return MoonBridge.VIDEO_FORMAT_H264;
+        } else {
+            return 0;
+        }
+    }
+
+    @Override
+    public void prewarm(StartupTimeline timeline, int supportedVideoFormats, int width, int height, int redrawRate) {
+        this.startupTimeline = timeline;
+
+        if (!prefs.enableDecoderPrewarm || renderTarget == null) {
+            return;
+        }
+
+        // Don't get clever if the decoder has been crashing
+        if (consecutiveCrashCount > 0) {
+            LimeLog.info("Skipping decoder pre-warm due to previous crash");
+            return;
+        }
+
+        int format = predictVideoFormat(supportedVideoFormats);
+        if (format == 0) {
+            return;
+        }
+
+        prewarmFormat = format;
+        prewarmWidth = width;
+        prewarmHeight = height;
+        prewarmRedrawRate = redrawRate;
+
+        prewarmThread = new Thread() {
+            @Override
+            public void run() {
+                timeline.stageStarting("Decoder pre-warm");
+
+                initialWidth = prewarmWidth;
+                initialHeight = prewarmHeight;
+                videoFormat = prewarmFormat;
+                refreshRate = prewarmRedrawRate;
+
+                int result;
+                try {
+                    result = initializeDecoder(false);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    result = -1;
+                }
+
+                synchronized (prewarmLock) {
+                    prewarmResult = result;
+                    prewarmDone = true;
+
+                    // The stream was torn down before setup() could claim the decoder
+                    if (stopping) {
+                        releasePrewarmedDecoder();
+                    }
+                }
+
+                timeline.stageComplete("Decoder pre-warm");
+            }
+        };
+        prewarmThread.setName("Video - Pre-warm");
+        prewarmThread.start();
+    }
+
+    // Must be called with prewarmLock held
+    private void releasePrewarmedDecoder() {
+        if (prewarmResult == 0 && videoDecoder != null) {
+            LimeLog.info("Releasing unused pre-warmed decoder");
+            videoDecoder.release();
+            videoDecoder = null;
+        }
+        prewarmThread = null;
+    }
+
+    // Returns true if the decoder pre-warmed for these parameters is ready to use
+    private boolean claimPrewarmedDecoder(int format, int width, int height, int redrawRate) {
+        Thread thread = prewarmThread;
+        if (thread == null) {
+            return false;
+        }
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (prewarmLock) {
+            if (prewarmThread == null) {
+                // Already released by prepareForStop()
+                return false;
+            }
+
+            if (prewarmResult == 0 && format == prewarmFormat && width == prewarmWidth &&
+                    height == prewarmHeight && redrawRate == prewarmRedrawRate) {
+                LimeLog.info("Using pre-warmed decoder");
+                prewarmThread = null;
+                return true;
+            }
+
+            LimeLog.info("Pre-warmed decoder doesn't match the negotiated stream");
+            releasePrewarmedDecoder();
+            return false;
+        }
+    }
+
     @Override
     public int setup(int format, int width, int height, int redrawRate) {
-        this.initialWidth = width;
-        this.initialHeight = height;
-        this.videoFormat = format;
-        this.refreshRate = redrawRate;
+        if (startupTimeline != null) {
+            startupTimeline.stageStarting("Decoder setup");
+        }
+
+        int ret;
+        if (claimPrewarmedDecoder(format, width, height, redrawRate)) {
+            ret = 0;
+        } else {
+            this.initialWidth = width;
+            this.initialHeight = height;
+            this.videoFormat = format;
+            this.refreshRate = redrawRate;
+
+            ret = initializeDecoder(false);
+        }
+
+        if (ret == 0 && prefs.enableDecodeCapture) {
+            openDecodeCapture(format, width, height, redrawRate);
+        }
 
-        return initializeDecoder(false);
+        if (startupTimeline != null) {
+            startupTimeline.stageComplete("Decoder setup");
+        }
+        return ret;
     }
 
     // All threads that interact with the MediaCodec instance must call this function regularly!
@@ -1002,27 +1330,43 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
 
         frameTimeNanos -= activity.getWindowManager().getDefaultDisplay().getAppVsyncOffsetNanos();
 
-        // Don't render unless a new frame is due. This prevents microstutter when streaming
-        // at a frame rate that doesn't match the display (such as 60 FPS on 120 Hz).
-        long actualFrameTimeDeltaNs = frameTimeNanos - lastRenderedFrameTimeNanos;
-        long expectedFrameTimeDeltaNs = 800000000 / refreshRate; // within 80% of the next frame
-        if (actualFrameTimeDeltaNs >= expectedFrameTimeDeltaNs) {
+        if (vsyncPredictor != null) {
+            vsyncPredictor.onVsync(frameTimeNanos);
+        }
+
+        FramePacer pacer = framePacer;
+        if (!pacer.isVsyncPaced()) {
+            // Auto pacing switched to rendering on the renderer thread, so drop anything
+            // left over from the previous mode instead of holding onto the buffers.
+            int staleOutputBuffer;
+            while ((staleOutputBuffer = outputBufferQueue.poll()) != OutputBufferQueue.EMPTY) {
+                try {
+                    videoDecoder.releaseOutputBuffer(staleOutputBuffer, false);
+                    traceQueuedOutputBuffer(FrameTimelineTracer.EVENT_DROP_OUTPUT, staleOutputBuffer);
+                } catch (IllegalStateException e) {
+                    handleDecoderException(e);
+                }
+            }
+        }
+
+        long releaseTimeNanos = pacer.isVsyncPaced() ?
+                pacer.getVsyncReleaseTimeNs(frameTimeNanos, lastRenderedFrameTimeNanos, refreshRate) :
+                FramePacer.NO_RENDER;
+        if (releaseTimeNanos != FramePacer.NO_RENDER) {
             // Render up to one frame when in frame pacing mode.
             //
             // NB: The queue limit is configurable via preferences, which prevents starving
             // the decoder of output buffers by holding onto them for too long. This also ensures
             // we will have that extra frame of buffer to smooth over network/rendering jitter.
-            Integer nextOutputBuffer = outputBufferQueue.poll();
-            if (nextOutputBuffer != null) {
-                if (prefs.framePacing == PreferenceConfiguration.FRAME_PACING_EXPERIMENTAL_LOW_LATENCY) {
-                    // 实验性低延迟模式：进一步优化V-Sync处理
-                    // 安全的提前量：不超过V-Sync周期的1/2
-                    frameTimeNanos -= 500000000 / refreshRate;
-                }
+            int nextOutputBuffer = outputBufferQueue.poll();
+            if (nextOutputBuffer == OutputBufferQueue.EMPTY) {
+                vsyncSkippedFrames++;
+            } else {
                 try {
-                    videoDecoder.releaseOutputBuffer(nextOutputBuffer, frameTimeNanos);
+                    videoDecoder.releaseOutputBuffer(nextOutputBuffer, releaseTimeNanos);
+                    traceQueuedOutputBuffer(FrameTimelineTracer.EVENT_RELEASE_OUTPUT, nextOutputBuffer);
 
-                    lastRenderedFrameTimeNanos = frameTimeNanos;
+                    lastRenderedFrameTimeNanos = releaseTimeNanos;
                     activeWindowVideoStats.totalFramesRendered++;
                 } catch (IllegalStateException ignored) {
                     try {
@@ -1046,7 +1390,10 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     }
 
     private void startChoreographerThread() {
-        if (prefs.framePacing != PreferenceConfiguration.FRAME_PACING_BALANCED &&
+        // Auto pacing always needs the Choreographer, since it may switch to balanced at any time.
+        // Precise sync uses it to sample V-sync timing.
+        if (autoFramePacing == null && vsyncPredictor == null &&
+                prefs.framePacing != PreferenceConfiguration.FRAME_PACING_BALANCED &&
                 prefs.framePacing != PreferenceConfiguration.FRAME_PACING_EXPERIMENTAL_LOW_LATENCY) {
             // Not using Choreographer in this pacing mode
             return;
@@ -1077,6 +1424,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         surfaceFlingerFrameCount = 0;
         surfaceFlingerSkippedFrames = 0;
         surfaceFlingerTimingError = 0;
+        surfaceFlingerWaiter = new HybridFrameWaiter(prefs.preciseSyncBatterySaver);
 
         // 预先获取 Vsync 信息
         long vsyncOffsetNs = 0;
@@ -1133,8 +1481,8 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
 
     @SuppressLint("DefaultLocale")
     private void renderNextFrame(long currentTime, long vsyncOffsetNs, long presentationDeadlineNs) {
-        Integer nextOutputBuffer = outputBufferQueue.poll();
-        if (nextOutputBuffer == null) {
+        int nextOutputBuffer = outputBufferQueue.poll();
+        if (nextOutputBuffer == OutputBufferQueue.EMPTY) {
             surfaceFlingerSkippedFrames++;
             return;
         }
@@ -1142,6 +1490,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         try {
             long presentationTimeNs = calculatePresentationTime(currentTime, vsyncOffsetNs, presentationDeadlineNs);
             videoDecoder.releaseOutputBuffer(nextOutputBuffer, presentationTimeNs);
+            traceQueuedOutputBuffer(FrameTimelineTracer.EVENT_RELEASE_OUTPUT, nextOutputBuffer);
 
             updateTimingStats(currentTime);
 
@@ -1152,14 +1501,18 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     }
 
     private long calculatePresentationTime(long currentTime, long vsyncOffsetNs, long presentationDeadlineNs) {
-        if (vsyncOffsetNs == 0) {
+        long nextVsyncNs;
+        if (vsyncPredictor != null && vsyncPredictor.isLocked()) {
+            // Use the measured V-sync period and phase once the predictor has converged
+            nextVsyncNs = vsyncPredictor.predictNextVsyncNs(currentTime);
+        } else if (vsyncOffsetNs != 0) {
+            // 计算下一个 Vsync 时间（基于 System.nanoTime()）
+            nextVsyncNs = ((currentTime - vsyncOffsetNs + surfaceFlingerFrameInterval - 1)
+                    / surfaceFlingerFrameInterval) * surfaceFlingerFrameInterval + vsyncOffsetNs;
+        } else {
             return 0;
         }
 
-        // 计算下一个 Vsync 时间（基于 System.nanoTime()）
-        long nextVsyncNs = ((currentTime - vsyncOffsetNs + surfaceFlingerFrameInterval - 1)
-                / surfaceFlingerFrameInterval) * surfaceFlingerFrameInterval + vsyncOffsetNs;
-
 
         // 检查是否能在 deadline 前提交
         if (presentationDeadlineNs > 0) {
@@ -1196,6 +1549,13 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         if (surfaceFlingerFrameCount % 12000 == 0) {
             float avgError = surfaceFlingerTimingError / 1000000.0f / surfaceFlingerFrameCount;
             LimeLog.info(String.format("精确同步: %d帧, 跳帧: %d, 平均误差: %.3fms", surfaceFlingerFrameCount, surfaceFlingerSkippedFrames, avgError));
+            LimeLog.info(String.format("Precise sync wait: spinning %.1fms/s, spin window %dus",
+                    surfaceFlingerWaiter.getSpinMsPerSecond(), surfaceFlingerWaiter.getSpinWindowNs() / 1000));
+            if (vsyncPredictor != null) {
+                LimeLog.info(String.format("V-sync predictor: period %.3fms, error avg %.3fms max %.3fms, locked: %b",
+                        vsyncPredictor.getPeriodNs() / 1000000.0f, vsyncPredictor.getMeanErrorNs() / 1000000.0f,
+                        vsyncPredictor.getMaxErrorNs() / 1000000.0f, vsyncPredictor.isLocked()));
+            }
         }
     }
 
@@ -1211,22 +1571,8 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     }
 
     private void waitForNextFrame() {
-        long sleepTimeNs = surfaceFlingerTargetTime - System.nanoTime();
-
-        if (sleepTimeNs <= 0) {
-            return;
-        }
-
-        // 使用 LockSupport.parkNanos() 进行高效等待，提前唤醒以进行精确调整
-        if (sleepTimeNs > 1000000) { // > 1ms
-            LockSupport.parkNanos(sleepTimeNs - 500000); // 提前 0.5ms 醒来
-        } else if (sleepTimeNs > 100000) { // > 0.1ms
-            LockSupport.parkNanos(sleepTimeNs >> 1); // 等待一半时间
-        }
-
-        // 等待最后部分
-        while (System.nanoTime() < surfaceFlingerTargetTime) {
-        }
+        // 先 park 再自旋，自旋窗口根据实测的 parkNanos 超时 p99 自动校准
+        surfaceFlingerWaiter.waitUntil(surfaceFlingerTargetTime);
     }
 
     private void startRendererThread() {
@@ -1243,31 +1589,29 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
                             int lastIndex = outIndex;
 
                             numFramesOut++;
+                            traceFrame(FrameTimelineTracer.EVENT_DEQUEUE_OUTPUT, -1, presentationTimeUs);
 
-                            // Render the latest frame now if frame pacing isn't in balanced mode or Surface Flinger mode
-                            if (prefs.framePacing != PreferenceConfiguration.FRAME_PACING_BALANCED &&
-                                    prefs.framePacing != PreferenceConfiguration.FRAME_PACING_EXPERIMENTAL_LOW_LATENCY &&
-                                    prefs.framePacing != PreferenceConfiguration.FRAME_PACING_PRECISE_SYNC) {
+                            if (numFramesOut == 1 && startupTimeline != null) {
+                                startupTimeline.firstFrameDecoded();
+                            }
+
+                            // Render the latest frame now unless a V-sync driven thread does the pacing
+                            FramePacer pacer = framePacer;
+                            if (!pacer.isVsyncPaced()) {
                                 // Get the last output buffer in the queue
                                 while ((outIndex = videoDecoder.dequeueOutputBuffer(info, 0)) >= 0) {
                                     videoDecoder.releaseOutputBuffer(lastIndex, false);
+                                    traceFrame(FrameTimelineTracer.EVENT_DROP_OUTPUT, -1, presentationTimeUs);
 
                                     numFramesOut++;
 
                                     lastIndex = outIndex;
                                     presentationTimeUs = info.presentationTimeUs;
+                                    traceFrame(FrameTimelineTracer.EVENT_DEQUEUE_OUTPUT, -1, presentationTimeUs);
                                 }
 
-                                if (prefs.framePacing == PreferenceConfiguration.FRAME_PACING_MAX_SMOOTHNESS ||
-                                        prefs.framePacing == PreferenceConfiguration.FRAME_PACING_CAP_FPS) {
-                                    // In max smoothness or cap FPS mode, we want to never drop frames
-                                    // Use a PTS that will cause this frame to never be dropped
-                                    videoDecoder.releaseOutputBuffer(lastIndex, 0);
-                                } else {
-                                    // Use a PTS that will cause this frame to be dropped if another comes in within
-                                    // the same V-sync period
-                                    videoDecoder.releaseOutputBuffer(lastIndex, System.nanoTime());
-                                }
+                                videoDecoder.releaseOutputBuffer(lastIndex, pacer.getImmediateReleaseTimeNs(System.nanoTime()));
+                                traceFrame(FrameTimelineTracer.EVENT_RELEASE_OUTPUT, -1, presentationTimeUs);
 
                                 activeWindowVideoStats.totalFramesRendered++;
                             } else {
@@ -1275,31 +1619,30 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
                                 // The respective callback threads will handle rendering.
                                 // We just put all frames into the output buffer queue and let them handle things.
 
-                                // Discard the oldest buffer if we've exceeded our limit.
+                                // Add this buffer, discarding the oldest buffer if we've exceeded our limit.
                                 //
                                 // NB: We have to do this on the producer side because the consumer may not
                                 // run for a while (if there is a huge mismatch between stream FPS and display
                                 // refresh rate).
-                                if (outputBufferQueue.size() == prefs.outputBufferQueueLimit) {
-                                    try {
-                                        videoDecoder.releaseOutputBuffer(outputBufferQueue.take(), false);
-                                    } catch (InterruptedException e) {
-                                        // We're shutting down, so we can just drop this buffer on the floor
-                                        // and it will be reclaimed when the codec is released.
-                                        return;
-                                    }
+                                if (outputBufferPtsUs != null && lastIndex < outputBufferPtsUs.length) {
+                                    // Published to the pacing thread by the queue itself
+                                    outputBufferPtsUs[lastIndex] = presentationTimeUs;
+                                }
+                                int droppedIndex = outputBufferQueue.offerReplacingOldest(lastIndex);
+                                if (droppedIndex != OutputBufferQueue.EMPTY) {
+                                    videoDecoder.releaseOutputBuffer(droppedIndex, false);
+                                    traceQueuedOutputBuffer(FrameTimelineTracer.EVENT_DROP_OUTPUT, droppedIndex);
                                 }
-
-                                // Add this buffer
-                                outputBufferQueue.add(lastIndex);
                             }
 
                             // Add delta time to the totals (excluding probable outliers)
-                            long delta = calculateDecoderTime(presentationTimeUs);
-                            if (delta >= 0 && delta < 1000) {
-                                activeWindowVideoStats.decoderTimeMs += delta;
+                            long deltaUs = calculateDecoderTimeUs(presentationTimeUs);
+                            if (deltaUs >= 0 && deltaUs < 1000000) {
+                                activeWindowVideoStats.decoderTimeUs += deltaUs;
+                                activeWindowVideoStats.framesWithDecoderTime++;
+                                activeWindowVideoStats.decodeTimeHistogram.record(deltaUs);
                                 if (!USE_FRAME_RENDER_TIME) {
-                                    activeWindowVideoStats.totalTimeMs += delta;
+                                    activeWindowVideoStats.totalTimeMs += (deltaUs + 500) / 1000;
                                 }
                             }
                         } else {
@@ -1395,6 +1738,17 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
 
     @Override
     public void start() {
+        try {
+            displayRefreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+        } catch (Exception e) {
+            displayRefreshRate = 0;
+        }
+
+        if (prefs.framePacing == PreferenceConfiguration.FRAME_PACING_PRECISE_SYNC) {
+            float hz = displayRefreshRate > 0 ? displayRefreshRate : refreshRate;
+            vsyncPredictor = new VsyncPredictor((long) (1000000000.0 / hz));
+        }
+
         startRendererThread();
         startChoreographerThread();
         startSurfaceFlingerThread();
@@ -1405,6 +1759,14 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         // Let the decoding code know to ignore codec exceptions now
         stopping = true;
 
+        // Release a pre-warmed decoder that setup() never claimed. If pre-warming is still
+        // in progress, the pre-warm thread will do this itself when it finishes.
+        synchronized (prewarmLock) {
+            if (prewarmThread != null && prewarmDone) {
+                releasePrewarmedDecoder();
+            }
+        }
+
         // Clear timestamp tracking map
         timestampToEnqueueTime.clear();
 
@@ -1435,10 +1797,6 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
                 Choreographer.getInstance().removeFrameCallback(MediaCodecDecoderRenderer.this);
             });
         }
-
-        // Unblock any threads waiting on the output buffer queue
-        // We add a dummy value to ensure take() returns if it's blocked
-        outputBufferQueue.add(-1);
     }
 
     @Override
@@ -1498,6 +1856,13 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             }
         }
         timestampToEnqueueTime.clear();
+        writeFrameTrace();
+        closeDecodeCapture();
+
+        LimeLog.info("Average bytes copied per frame: " + getAverageBytesCopiedPerFrame() +
+                " (zero-copy submit: " + zeroCopySubmit + ")");
+        LimeLog.info("Parameter set cache hits/misses: " + globalVideoStats.csdCacheHits +
+                "/" + globalVideoStats.csdCacheMisses);
     }
 
     @Override
@@ -1543,6 +1908,9 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         // Update tracked resolution
         initialWidth = width;
         initialHeight = height;
+
+        // Our SPS patches depend on the resolution
+        parameterSetCache.clear();
         
         if (needsRestart) {
             LimeLog.info("New resolution exceeds decoder config, triggering codec restart");
@@ -1557,12 +1925,112 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         }
     }
 
+    private void traceFrame(int eventType, int frameNumber, long presentationTimeUs) {
+        if (frameTracer != null) {
+            frameTracer.record(eventType, frameNumber, presentationTimeUs, FrameTimelineTracer.nowUs());
+        }
+    }
+
+    private void traceQueuedOutputBuffer(int eventType, int bufferIndex) {
+        if (frameTracer != null && bufferIndex < outputBufferPtsUs.length) {
+            traceFrame(eventType, -1, outputBufferPtsUs[bufferIndex]);
+        }
+    }
+
+    // Prefer external app storage so traces and captures can be pulled without root
+    private File getDebugOutputDir() {
+        File dir = context.getExternalFilesDir(null);
+        if (dir == null) {
+            dir = context.getFilesDir();
+        }
+        return dir;
+    }
+
+    // Deletes the oldest files named prefix*suffix in dir until at most keep of them remain
+    private static void deleteOldDebugFiles(File dir, String prefix, String suffix, int keep) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(suffix));
+        if (files == null || files.length <= keep) {
+            return;
+        }
+
+        // Newest first
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        for (int i = keep; i < files.length; i++) {
+            if (files[i].delete()) {
+                LimeLog.info("Deleted old " + files[i].getName());
+            } else {
+                LimeLog.warning("Failed to delete old " + files[i].getName());
+            }
+        }
+    }
+
+    private void writeFrameTrace() {
+        if (frameTracer == null) {
+            return;
+        }
+
+        File dir = getDebugOutputDir();
+        deleteOldDebugFiles(dir, "frame-trace-", ".json", MAX_FRAME_TRACE_FILES - 1);
+
+        File traceFile = new File(dir, "frame-trace-" + System.currentTimeMillis() + ".json");
+        try {
+            frameTracer.writeChromeTrace(traceFile);
+            LimeLog.info("Wrote frame trace to " + traceFile.getAbsolutePath());
+        } catch (IOException e) {
+            LimeLog.warning("Failed to write frame trace: " + e.getMessage());
+        }
+    }
+
+    private void openDecodeCapture(int format, int width, int height, int redrawRate) {
+        // Make room before mapping the new capture, so the old ones don't count against it
+        File dir = getDebugOutputDir();
+        deleteOldDebugFiles(dir, "decode-capture-", ".mldu", MAX_DECODE_CAPTURE_FILES - 1);
+
+        DecodeUnitCapture.Header header = new DecodeUnitCapture.Header();
+        header.videoFormat = format;
+        header.width = width;
+        header.height = height;
+        header.fps = redrawRate;
+
+        // Size the ring for about 30 seconds of video at the configured bitrate
+        // and allow a few units per frame for parameter sets and slices
+        long dataCapacity = Math.max(16L << 20, Math.min(256L << 20, prefs.bitrate * 1000L / 8 * 30));
+        int indexCapacity = Math.max(4096, redrawRate * 30 * 4);
+
+        decodeCaptureFile = new File(dir, "decode-capture-" + System.currentTimeMillis() + ".mldu");
+        try {
+            decodeCapture = new DecodeUnitCapture(decodeCaptureFile, header, indexCapacity, (int) dataCapacity);
+        } catch (IOException e) {
+            LimeLog.warning("Failed to create decode unit capture: " + e.getMessage());
+            decodeCapture = null;
+        }
+    }
+
+    private void closeDecodeCapture() {
+        if (decodeCapture == null) {
+            return;
+        }
+
+        try {
+            LimeLog.info("Captured " + decodeCapture.getUnitCount() + " decode units (" +
+                    decodeCapture.getUnitsDropped() + " too large) to " + decodeCaptureFile.getAbsolutePath());
+            decodeCapture.close();
+        } catch (IOException e) {
+            LimeLog.warning("Failed to close decode unit capture: " + e.getMessage());
+        }
+        decodeCapture = null;
+    }
+
     private boolean queueNextInputBuffer(long timestampUs, int codecFlags) {
         boolean codecRecovered;
 
         try {
             // Record the enqueue time for this timestamp
-            timestampToEnqueueTime.put(timestampUs, SystemClock.uptimeMillis());
+            long queueTimeUs = System.nanoTime() / 1000;
+            timestampToEnqueueTime.put(timestampUs, queueTimeUs);
+            if (frameTracer != null && (codecFlags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                frameTracer.record(FrameTimelineTracer.EVENT_QUEUE_INPUT, lastFrameNumber, timestampUs, queueTimeUs);
+            }
 
             videoDecoder.queueInputBuffer(nextInputBufferIndex,
                     0, nextInputBuffer.position(),
@@ -1619,11 +2087,90 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         }
     }
 
-    @SuppressWarnings("deprecation")
     @Override
     public int submitDecodeUnit(byte[] decodeUnitData, int decodeUnitLength, int decodeUnitType,
                                 int frameNumber, int frameType, char frameHostProcessingLatency,
                                 long receiveTimeUs, long enqueueTimeUs) {
+        if (decodeCapture != null) {
+            decodeCapture.record(decodeUnitData, decodeUnitLength, decodeUnitType, frameNumber, frameType,
+                    frameHostProcessingLatency, receiveTimeUs, enqueueTimeUs);
+        }
+
+        int ret = prepareDecodeUnit(decodeUnitData, decodeUnitLength, decodeUnitType, frameNumber, frameType,
+                frameHostProcessingLatency, receiveTimeUs, enqueueTimeUs);
+        if (ret != DU_READY_FOR_DATA) {
+            return ret;
+        }
+
+        // Copy data from our buffer list into the input buffer
+        nextInputBuffer.put(decodeUnitData, 0, decodeUnitLength);
+        activeWindowVideoStats.bytesCopied += decodeUnitLength;
+
+        return queuePendingDecodeUnit();
+    }
+
+    @Override
+    public ByteBuffer getDirectSubmitBuffer(int decodeUnitLength, int frameNumber, int frameType,
+                                            char frameHostProcessingLatency,
+                                            long receiveTimeUs, long enqueueTimeUs) {
+        // Parameter sets never take this path, so we don't need to pass the data
+        if (prepareDecodeUnit(null, decodeUnitLength, MoonBridge.BUFFER_TYPE_PICDATA, frameNumber, frameType,
+                frameHostProcessingLatency, receiveTimeUs, enqueueTimeUs) != DU_READY_FOR_DATA) {
+            return null;
+        }
+
+        if (decodeCapture != null) {
+            directSubmitFrameNumber = frameNumber;
+            directSubmitFrameType = frameType;
+            directSubmitHostProcessingLatency = frameHostProcessingLatency;
+            directSubmitReceiveTimeUs = receiveTimeUs;
+            directSubmitEnqueueTimeUs = enqueueTimeUs;
+        }
+
+        // The bridge will write the picture data at the current position
+        return nextInputBuffer;
+    }
+
+    @Override
+    public int submitDirectDecodeUnit(int decodeUnitLength) {
+        if (nextInputBuffer == null) {
+            return MoonBridge.DR_NEED_IDR;
+        }
+
+        if (decodeCapture != null) {
+            decodeCapture.record(nextInputBuffer, nextInputBuffer.position(), decodeUnitLength,
+                    MoonBridge.BUFFER_TYPE_PICDATA, directSubmitFrameNumber, directSubmitFrameType,
+                    directSubmitHostProcessingLatency, directSubmitReceiveTimeUs, directSubmitEnqueueTimeUs);
+        }
+
+        // The bridge wrote the data in place, so there's nothing for us to copy
+        nextInputBuffer.position(nextInputBuffer.position() + decodeUnitLength);
+
+        return queuePendingDecodeUnit();
+    }
+
+    private void updateAutoFramePacing(VideoStats lastTwo) {
+        int skippedVsyncs = vsyncSkippedFrames;
+        int windowSkippedVsyncs = skippedVsyncs - lastWindowVsyncSkippedFrames;
+        lastWindowVsyncSkippedFrames = skippedVsyncs;
+
+        float jitterMs = lastTwo.frameIntervalHistogram.getPercentileMs(95) -
+                lastTwo.frameIntervalHistogram.getPercentileMs(50);
+        int newMode = autoFramePacing.onStatsWindow(SystemClock.uptimeMillis(), refreshRate, displayRefreshRate,
+                jitterMs, activeWindowVideoStats.totalFramesRendered, windowSkippedVsyncs);
+        if (newMode >= 0) {
+            // Picked up by the renderer thread and the Choreographer on their next frame
+            framePacer = FramePacer.forMode(newMode);
+        }
+    }
+
+    // Handles CSD batching, stats, and input buffer acquisition for a decode unit. Returns
+    // DU_READY_FOR_DATA if the picture data should be written to nextInputBuffer and
+    // queued with queuePendingDecodeUnit(), otherwise a DR_* status for the bridge.
+    @SuppressWarnings("deprecation")
+    private int prepareDecodeUnit(byte[] decodeUnitData, int decodeUnitLength, int decodeUnitType,
+                                  int frameNumber, int frameType, char frameHostProcessingLatency,
+                                  long receiveTimeUs, long enqueueTimeUs) {
         if (stopping) {
             // Don't bother if we're stopping
             return MoonBridge.DR_OK;
@@ -1650,7 +2197,9 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
 
         // Flip stats windows roughly every second
         if (SystemClock.uptimeMillis() >= activeWindowVideoStats.measurementStartTimestamp + 1000) {
-            VideoStats lastTwo = new VideoStats();
+            // Reused to avoid allocating a set of histograms every window
+            VideoStats lastTwo = lastTwoWindowsVideoStats;
+            lastTwo.clear();
             lastTwo.add(lastWindowVideoStats);
             lastTwo.add(activeWindowVideoStats);
             VideoStatsFps fps = lastTwo.getFps();
@@ -1665,7 +2214,9 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             } else {
                 decoder = "(unknown)";
             }
-            float decodeTimeMs = (float) lastTwo.decoderTimeMs / lastTwo.totalFramesReceived;
+            // Frames whose enqueue time is unknown have no decoder time, so don't count them
+            float decodeTimeMs = lastTwo.framesWithDecoderTime > 0 ?
+                    lastTwo.decoderTimeUs / 1000f / lastTwo.framesWithDecoderTime : 0;
             long rttInfo = MoonBridge.getEstimatedRttInfo();
             float lostFrameRate = (float) lastTwo.framesLost / lastTwo.totalFrames * 100;
             float minHostProcessingLatency = (float) lastTwo.minHostProcessingLatency / 10;
@@ -1700,10 +2251,30 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             performanceInfo.decodeTimeMs = decodeTimeMs;
             performanceInfo.renderingLatencyMs = avePureRenderingLatencyMs;
             performanceInfo.totalTimeMs = aveTotalProcessingTimeMs;
+            performanceInfo.decodeTimeP50Ms = lastTwo.decodeTimeHistogram.getPercentileMs(50);
+            performanceInfo.decodeTimeP95Ms = lastTwo.decodeTimeHistogram.getPercentileMs(95);
+            performanceInfo.decodeTimeP99Ms = lastTwo.decodeTimeHistogram.getPercentileMs(99);
+            performanceInfo.hostProcessingLatencyP50Ms = lastTwo.hostProcessingLatencyHistogram.getPercentileMs(50);
+            performanceInfo.hostProcessingLatencyP95Ms = lastTwo.hostProcessingLatencyHistogram.getPercentileMs(95);
+            performanceInfo.hostProcessingLatencyP99Ms = lastTwo.hostProcessingLatencyHistogram.getPercentileMs(99);
+            performanceInfo.renderingLatencyP50Ms = lastTwo.renderingLatencyHistogram.getPercentileMs(50);
+            performanceInfo.renderingLatencyP95Ms = lastTwo.renderingLatencyHistogram.getPercentileMs(95);
+            performanceInfo.renderingLatencyP99Ms = lastTwo.renderingLatencyHistogram.getPercentileMs(99);
+            performanceInfo.frameIntervalP50Ms = lastTwo.frameIntervalHistogram.getPercentileMs(50);
+            performanceInfo.frameIntervalP95Ms = lastTwo.frameIntervalHistogram.getPercentileMs(95);
+            performanceInfo.frameIntervalP99Ms = lastTwo.frameIntervalHistogram.getPercentileMs(99);
+            performanceInfo.windowTotalFrames = activeWindowVideoStats.totalFrames;
+            performanceInfo.windowFramesLost = activeWindowVideoStats.framesLost;
+            performanceInfo.windowFrameLossEvents = activeWindowVideoStats.frameLossEvents;
+            performanceInfo.pendingVideoFrames = MoonBridge.getPendingVideoFrames();
 
             perfListener.onPerfUpdateV(performanceInfo);
             perfListener.onPerfUpdateWG(performanceInfo);
 
+            if (autoFramePacing != null) {
+                updateAutoFramePacing(lastTwo);
+            }
+
             globalVideoStats.add(activeWindowVideoStats);
             lastWindowVideoStats.copy(activeWindowVideoStats);
             activeWindowVideoStats.clear();
@@ -1718,6 +2289,18 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             if (decodeUnitType == MoonBridge.BUFFER_TYPE_SPS && (videoFormat & MoonBridge.VIDEO_FORMAT_MASK_H264) != 0) {
                 numSpsIn++;
 
+                // Reuse the patched SPS from a previous IDR frame if the host sent the same one.
+                // The baseline hack needs the parsed SPS for replaySps(), so it always parses.
+                if (!needsBaselineSpsHack) {
+                    byte[] cachedSps = parameterSetCache.get(decodeUnitData, decodeUnitLength);
+                    if (cachedSps != null) {
+                        activeWindowVideoStats.csdCacheHits++;
+                        spsBuffers.add(cachedSps);
+                        return MoonBridge.DR_OK;
+                    }
+                }
+                activeWindowVideoStats.csdCacheMisses++;
+
                 ByteBuffer spsBuf = ByteBuffer.wrap(decodeUnitData);
                 int startSeqLen = decodeUnitData[2] == 0x01 ? 3 : 4;
 
@@ -1840,6 +2423,10 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
                 System.arraycopy(decodeUnitData, 0, naluBuffer, 0, startSeqLen + 1);
                 escapedNalu.get(naluBuffer, startSeqLen + 1, escapedNalu.limit());
 
+                if (!needsBaselineSpsHack) {
+                    parameterSetCache.put(decodeUnitData, decodeUnitLength, naluBuffer);
+                }
+
                 // Batch this to submit together with other CSD per AOSP docs
                 spsBuffers.add(naluBuffer);
                 return MoonBridge.DR_OK;
@@ -1847,9 +2434,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
                 numVpsIn++;
 
                 // Batch this to submit together with other CSD per AOSP docs
-                byte[] naluBuffer = new byte[decodeUnitLength];
-                System.arraycopy(decodeUnitData, 0, naluBuffer, 0, decodeUnitLength);
-                vpsBuffers.add(naluBuffer);
+                vpsBuffers.add(getCachedParameterSet(decodeUnitData, decodeUnitLength));
                 return MoonBridge.DR_OK;
             }
             // Only the HEVC SPS hits this path (H.264 is handled above)
@@ -1857,17 +2442,13 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
                 numSpsIn++;
 
                 // Batch this to submit together with other CSD per AOSP docs
-                byte[] naluBuffer = new byte[decodeUnitLength];
-                System.arraycopy(decodeUnitData, 0, naluBuffer, 0, decodeUnitLength);
-                spsBuffers.add(naluBuffer);
+                spsBuffers.add(getCachedParameterSet(decodeUnitData, decodeUnitLength));
                 return MoonBridge.DR_OK;
             } else if (decodeUnitType == MoonBridge.BUFFER_TYPE_PPS) {
                 numPpsIn++;
 
                 // Batch this to submit together with other CSD per AOSP docs
-                byte[] naluBuffer = new byte[decodeUnitLength];
-                System.arraycopy(decodeUnitData, 0, naluBuffer, 0, decodeUnitLength);
-                ppsBuffers.add(naluBuffer);
+                ppsBuffers.add(getCachedParameterSet(decodeUnitData, decodeUnitLength));
                 return MoonBridge.DR_OK;
             } else if ((videoFormat & (MoonBridge.VIDEO_FORMAT_MASK_H264 | MoonBridge.VIDEO_FORMAT_MASK_H265)) != 0) {
                 // If this is the first CSD blob or we aren't supporting fused IDR frames, we will
@@ -1919,6 +2500,9 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
                 activeWindowVideoStats.minHostProcessingLatency = frameHostProcessingLatency;
             }
             activeWindowVideoStats.framesWithHostProcessingLatency += 1;
+
+            // Host processing latency is reported in units of 100 us
+            activeWindowVideoStats.hostProcessingLatencyHistogram.record(frameHostProcessingLatency * 100L);
         }
         activeWindowVideoStats.maxHostProcessingLatency = (char) Math.max(activeWindowVideoStats.maxHostProcessingLatency, frameHostProcessingLatency);
         activeWindowVideoStats.totalHostProcessingLatency += frameHostProcessingLatency;
@@ -1965,6 +2549,11 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         }
         lastTimestampUs = timestampUs;
 
+        if (frameTracer != null) {
+            frameTracer.record(FrameTimelineTracer.EVENT_RECEIVE, frameNumber, timestampUs, receiveTimeUs);
+            frameTracer.record(FrameTimelineTracer.EVENT_ENQUEUE, frameNumber, timestampUs, enqueueTimeUs);
+        }
+
         numFramesIn++;
 
         if (decodeUnitLength > nextInputBuffer.limit() - nextInputBuffer.position()) {
@@ -1977,16 +2566,30 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             throw new RendererException(this, exception);
         }
 
-        // Copy data from our buffer list into the input buffer
-        nextInputBuffer.put(decodeUnitData, 0, decodeUnitLength);
+        pendingTimestampUs = timestampUs;
+        pendingCodecFlags = codecFlags;
+        return DU_READY_FOR_DATA;
+    }
 
-        if (!queueNextInputBuffer(timestampUs, codecFlags)) {
+    private int queuePendingDecodeUnit() {
+        if (!queueNextInputBuffer(pendingTimestampUs, pendingCodecFlags)) {
             return MoonBridge.DR_NEED_IDR;
         }
 
         return MoonBridge.DR_OK;
     }
 
+    private byte[] getCachedParameterSet(byte[] decodeUnitData, int decodeUnitLength) {
+        byte[] naluBuffer = parameterSetCache.get(decodeUnitData, decodeUnitLength);
+        if (naluBuffer != null) {
+            activeWindowVideoStats.csdCacheHits++;
+            return naluBuffer;
+        }
+
+        activeWindowVideoStats.csdCacheMisses++;
+        return parameterSetCache.putCopy(decodeUnitData, decodeUnitLength);
+    }
+
     private boolean replaySps() {
         if (!fetchNextInputBuffer()) {
             return false;
@@ -2036,6 +2639,11 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             capabilities |= MoonBridge.CAPABILITY_DIRECT_SUBMIT;
         }
 
+        // Have the bridge write picture data directly into our input buffers
+        if (zeroCopySubmit) {
+            capabilities |= MoonBridge.CAPABILITY_ZERO_COPY_SUBMIT;
+        }
+
         return capabilities;
     }
 
@@ -2047,10 +2655,20 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     }
 
     public int getAverageDecoderLatency() {
+        if (globalVideoStats.framesWithDecoderTime == 0) {
+            return 0;
+        }
+        long averageUs = globalVideoStats.decoderTimeUs / globalVideoStats.framesWithDecoderTime;
+        return (int) ((averageUs + 500) / 1000);
+    }
+
+    // Bytes of picture data copied into codec input buffers by submitDecodeUnit(), per frame.
+    // This doesn't include the bridge's own copy, and is zero with zero-copy submit.
+    public long getAverageBytesCopiedPerFrame() {
         if (globalVideoStats.totalFramesReceived == 0) {
             return 0;
         }
-        return (int) (globalVideoStats.decoderTimeMs / globalVideoStats.totalFramesReceived);
+        return globalVideoStats.bytesCopied / globalVideoStats.totalFramesReceived;
     }
 
     @SuppressLint("DefaultLocale")
@@ -2073,10 +2691,18 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             skipRate = (float) surfaceFlingerSkippedFrames / totalFramesExpected * 100f;
         }
 
-        return String.format("[精确同步: %d渲染/%d接收, 跳帧率: %.1f%%]",
+        // V-sync 预测误差（预测时间与 Choreographer 实际帧时间之差）
+        float vsyncErrorMs = vsyncPredictor != null ? vsyncPredictor.getMeanErrorNs() / 1000000.0f : 0f;
+
+        // 每秒自旋等待占用的 CPU 时间
+        float spinMsPerSecond = surfaceFlingerWaiter != null ? surfaceFlingerWaiter.getSpinMsPerSecond() : 0f;
+
+        return String.format("[精确同步: %d渲染/%d接收, 跳帧率: %.1f%%, V-sync预测误差: %.2fms, 自旋: %.1fms/s]",
                 globalVideoStats.totalFramesRendered,
                 globalVideoStats.totalFramesReceived,
-                skipRate);
+                skipRate,
+                vsyncErrorMs,
+                spinMsPerSecond);
     }
 
     static class DecoderHungException extends RuntimeException {
@@ -2196,17 +2822,21 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             str += "RFI active: " + renderer.refFrameInvalidationActive + DELIMITER;
             str += "Using modern SPS patching: " + (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) + DELIMITER;
             str += "Fused IDR frames: " + renderer.fusedIdrFrame + DELIMITER;
+            str += "Zero-copy submit: " + renderer.zeroCopySubmit + DELIMITER;
+            str += "Average bytes copied per frame: " + renderer.getAverageBytesCopiedPerFrame() + DELIMITER;
             str += "Video dimensions: " + renderer.initialWidth + "x" + renderer.initialHeight + DELIMITER;
             str += "FPS target: " + renderer.refreshRate + DELIMITER;
             str += "Bitrate: " + renderer.prefs.bitrate + " Kbps" + DELIMITER;
             str += "CSD stats: " + renderer.numVpsIn + ", " + renderer.numSpsIn + ", " + renderer.numPpsIn + DELIMITER;
+            str += "CSD cache hits/misses: " + renderer.globalVideoStats.csdCacheHits + "/" + renderer.globalVideoStats.csdCacheMisses + DELIMITER;
             str += "Frames in-out: " + renderer.numFramesIn + ", " + renderer.numFramesOut + DELIMITER;
             str += "Total frames received: " + renderer.globalVideoStats.totalFramesReceived + DELIMITER;
             str += "Total frames rendered: " + renderer.globalVideoStats.totalFramesRendered + DELIMITER;
             str += "Frame losses: " + renderer.globalVideoStats.framesLost + " in " + renderer.globalVideoStats.frameLossEvents + " loss events" + DELIMITER;
+            str += "Frames dropped by pacing: " + renderer.outputBufferQueue.getDroppedFrames() + DELIMITER;
             str += "Average end-to-end client latency: " + renderer.getAverageEndToEndLatency() + "ms" + DELIMITER;
             str += "Average hardware decoder latency: " + renderer.getAverageDecoderLatency() + "ms" + DELIMITER;
-            str += "Frame pacing mode: " + renderer.prefs.framePacing + DELIMITER;
+            str += "Frame pacing mode: " + renderer.prefs.framePacing + " (active: " + renderer.framePacer.getMode() + ")" + DELIMITER;
 
             if (originalException instanceof CodecException) {
                 CodecException ce = (CodecException) originalException;
@@ -2228,15 +2858,15 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
 
     // Calculate decoder time using the enqueue time we recorded
     // presentationTimeUs: presentation timestamp in microseconds (from MediaCodec)
-    // Returns: decoder time in milliseconds
-    private long calculateDecoderTime(long presentationTimeUs) {
-        // Look up the enqueue time for this timestamp (stored in milliseconds)
-        Long enqueueTimeMs = timestampToEnqueueTime.remove(presentationTimeUs);
-        if (enqueueTimeMs != null) {
-            long delta = SystemClock.uptimeMillis() - enqueueTimeMs;
-            return delta > 0 && delta < 1000 ? delta : 0;
-        }
-        // If we can't find the enqueue time, return 0
-        return 0;
+    // Returns: decoder time in microseconds, or -1 if unknown
+    private long calculateDecoderTimeUs(long presentationTimeUs) {
+        // Look up the enqueue time for this timestamp (stored in microseconds)
+        long enqueueTimeUs = timestampToEnqueueTime.remove(presentationTimeUs);
+        if (enqueueTimeUs != TimestampRingMap.NO_VALUE) {
+            long delta = System.nanoTime() / 1000 - enqueueTimeUs;
+            return delta > 0 && delta < 1000000 ? delta : -1;
+        }
+        // If we can't find the enqueue time, we can't measure this frame
+        return -1;
     }
 }
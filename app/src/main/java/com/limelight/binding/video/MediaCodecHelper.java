@@ -1003,6 +1003,17 @@ public class MediaCodecHelper {
         return null;
     }
     
+    // Used to restore a previously selected decoder without re-evaluating capabilities
+    public static MediaCodecInfo findDecoderByName(String decoderName) {
+        for (MediaCodecInfo codecInfo : getMediaCodecList()) {
+            if (!codecInfo.isEncoder() && codecInfo.getName().equals(decoderName)) {
+                return codecInfo;
+            }
+        }
+
+        return null;
+    }
+
     public static MediaCodecInfo findProbableSafeDecoder(String mimeType, int requiredProfile) {
         // First look for a preferred decoder by name
         MediaCodecInfo info = findPreferredDecoder();
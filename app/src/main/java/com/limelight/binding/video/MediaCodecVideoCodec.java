@@ -0,0 +1,101 @@
+package com.limelight.binding.video;
+
+import android.annotation.SuppressLint;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.view.Surface;
+
+import java.nio.ByteBuffer;
+
+// VideoCodec backed by a real MediaCodec decoder
+class MediaCodecVideoCodec implements VideoCodec {
+    static final Factory FACTORY = name -> new MediaCodecVideoCodec(MediaCodec.createByCodecName(name));
+
+    private final MediaCodec codec;
+
+    private MediaCodecVideoCodec(MediaCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public void configure(MediaFormat format, Surface surface) {
+        codec.configure(format, surface, null, 0);
+    }
+
+    @Override
+    public void setVideoScalingMode(int mode) {
+        codec.setVideoScalingMode(mode);
+    }
+
+    @SuppressLint("NewApi")
+    @Override
+    public void setOnFrameRenderedListener(OnFrameRenderedListener listener) {
+        codec.setOnFrameRenderedListener((mediaCodec, presentationTimeUs, renderTimeNanos) ->
+                listener.onFrameRendered(presentationTimeUs, renderTimeNanos), null);
+    }
+
+    @Override
+    public void start() {
+        codec.start();
+    }
+
+    @Override
+    public void stop() {
+        codec.stop();
+    }
+
+    @Override
+    public void flush() {
+        codec.flush();
+    }
+
+    @Override
+    public void reset() {
+        codec.reset();
+    }
+
+    @Override
+    public void release() {
+        codec.release();
+    }
+
+    @Override
+    public MediaFormat getInputFormat() {
+        return codec.getInputFormat();
+    }
+
+    @Override
+    public MediaFormat getOutputFormat() {
+        return codec.getOutputFormat();
+    }
+
+    @Override
+    public int dequeueInputBuffer(long timeoutUs) {
+        return codec.dequeueInputBuffer(timeoutUs);
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        return codec.getInputBuffer(index);
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        codec.queueInputBuffer(index, offset, size, presentationTimeUs, flags);
+    }
+
+    @Override
+    public int dequeueOutputBuffer(MediaCodec.BufferInfo info, long timeoutUs) {
+        return codec.dequeueOutputBuffer(info, timeoutUs);
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index, boolean render) {
+        codec.releaseOutputBuffer(index, render);
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index, long renderTimestampNs) {
+        codec.releaseOutputBuffer(index, renderTimestampNs);
+    }
+}
@@ -0,0 +1,106 @@
+package com.limelight.binding.video;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded queue of MediaCodec output buffer indices between the renderer thread (producer)
+// and the frame pacing thread (consumer). It never allocates or boxes after construction.
+//
+// When the queue is at its limit, the producer atomically takes the oldest index before
+// adding the new one, so the consumer can never render a buffer that is being dropped.
+// Both threads claim entries by advancing the tail with a CAS, which makes that safe.
+class OutputBufferQueue {
+    static final int EMPTY = -1;
+
+    private final int[] slots;
+    private final int mask;
+    private final int limit;
+
+    // Written only by the producer
+    private volatile long head;
+    // Advanced by whichever thread claims the oldest entry
+    private final AtomicLong tail = new AtomicLong();
+
+    // Written only by the producer
+    private volatile int droppedFrames;
+
+    OutputBufferQueue(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+
+        int capacity = Integer.highestOneBit(limit);
+        if (capacity < limit) {
+            capacity <<= 1;
+        }
+
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        this.limit = limit;
+    }
+
+    // Producer only. Adds the index and returns the index of the oldest buffer if it
+    // had to be evicted to stay within the limit, or EMPTY if nothing was evicted.
+    // The caller owns the evicted buffer and must release it.
+    int offerReplacingOldest(int index) {
+        long h = head;
+
+        int evicted = evictIfFull(h);
+        if (evicted != EMPTY) {
+            droppedFrames++;
+        }
+
+        slots[(int) (h & mask)] = index;
+
+        // Publish the entry to the consumer
+        head = h + 1;
+        return evicted;
+    }
+
+    // Consumer only. Returns the oldest index or EMPTY if the queue is empty.
+    int poll() {
+        long h = head;
+        for (;;) {
+            long t = tail.get();
+            if (t >= h) {
+                return EMPTY;
+            }
+
+            int index = slots[(int) (t & mask)];
+            if (tail.compareAndSet(t, t + 1)) {
+                return index;
+            }
+
+            // The producer evicted this entry first, so try the next one
+        }
+    }
+
+    // Takes the oldest entry only while the queue is still at its limit. The occupancy is
+    // checked again on every attempt, since the consumer may have made room in the meantime.
+    private int evictIfFull(long h) {
+        for (;;) {
+            long t = tail.get();
+            if (h - t < limit) {
+                return EMPTY;
+            }
+
+            int index = slots[(int) (t & mask)];
+            if (tail.compareAndSet(t, t + 1)) {
+                return index;
+            }
+        }
+    }
+
+    int size() {
+        return (int) Math.max(0, head - tail.get());
+    }
+
+    // Number of buffers evicted by offerReplacingOldest() since construction
+    int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    // Must only be called while both threads are quiesced
+    void clear() {
+        tail.set(head);
+    }
+}
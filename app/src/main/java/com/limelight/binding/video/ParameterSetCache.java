@@ -0,0 +1,85 @@
+package com.limelight.binding.video;
+
+// Remembers the parameter set NALUs (VPS/SPS/PPS) seen on previous IDR frames, along with
+// the buffer we submitted for each one. The host normally resends identical parameter sets
+// with every IDR frame, so a hit lets us reuse the previously patched buffer without parsing,
+// rewriting or allocating anything.
+//
+// Entries are matched by a content hash first and then compared byte for byte. The cached
+// output depends on the decoder configuration, so the cache must be cleared whenever the
+// decoder is reconfigured.
+class ParameterSetCache {
+    // Enough for a VPS, SPS and PPS plus a few stale entries
+    private static final int MAX_ENTRIES = 8;
+
+    private final int[] hashes = new int[MAX_ENTRIES];
+    private final byte[][] inputs = new byte[MAX_ENTRIES][];
+    private final byte[][] outputs = new byte[MAX_ENTRIES][];
+    private int nextSlot;
+
+    private static int hash(byte[] data, int length) {
+        int result = 1;
+        for (int i = 0; i < length; i++) {
+            result = 31 * result + data[i];
+        }
+        return result;
+    }
+
+    private static boolean contentEquals(byte[] cached, byte[] data, int length) {
+        if (cached.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (cached[i] != data[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int find(byte[] data, int length, int hash) {
+        for (int i = 0; i < MAX_ENTRIES; i++) {
+            if (inputs[i] != null && hashes[i] == hash && contentEquals(inputs[i], data, length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Returns the buffer previously stored for this NALU, or null if it hasn't been seen
+    byte[] get(byte[] data, int length) {
+        int slot = find(data, length, hash(data, length));
+        return slot >= 0 ? outputs[slot] : null;
+    }
+
+    // Stores the buffer to submit for this NALU, evicting the oldest entry if needed
+    void put(byte[] data, int length, byte[] output) {
+        byte[] input = new byte[length];
+        System.arraycopy(data, 0, input, 0, length);
+        store(hash(data, length), input, output);
+    }
+
+    // For NALUs that are submitted unmodified. Caches a copy of the NALU as its own output
+    // and returns that copy.
+    byte[] putCopy(byte[] data, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(data, 0, copy, 0, length);
+        store(hash(data, length), copy, copy);
+        return copy;
+    }
+
+    private void store(int hash, byte[] input, byte[] output) {
+        hashes[nextSlot] = hash;
+        inputs[nextSlot] = input;
+        outputs[nextSlot] = output;
+        nextSlot = (nextSlot + 1) % MAX_ENTRIES;
+    }
+
+    void clear() {
+        for (int i = 0; i < MAX_ENTRIES; i++) {
+            inputs[i] = null;
+            outputs[i] = null;
+        }
+        nextSlot = 0;
+    }
+}
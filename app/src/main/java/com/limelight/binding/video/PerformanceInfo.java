@@ -22,4 +22,33 @@ public class PerformanceInfo {
     public String bandWidth;
     public boolean isHdrActive; // 实际HDR激活状态
     public float renderingLatencyMs; // 渲染时间
+
+    // Tail latency percentiles over the same window as the averages above
+    public float decodeTimeP50Ms;
+    public float decodeTimeP95Ms;
+    public float decodeTimeP99Ms;
+    public float hostProcessingLatencyP50Ms;
+    public float hostProcessingLatencyP95Ms;
+    public float hostProcessingLatencyP99Ms;
+    public float renderingLatencyP50Ms;
+    public float renderingLatencyP95Ms;
+    public float renderingLatencyP99Ms;
+    public float frameIntervalP50Ms;
+    public float frameIntervalP95Ms;
+    public float frameIntervalP99Ms;
+
+    // Raw counters for the most recent window only, for the adaptive bitrate controller
+    public int windowTotalFrames;
+    public int windowFramesLost;
+    public int windowFrameLossEvents;
+    public int pendingVideoFrames;
+
+    // Audio, filled in by the audio renderer. Queued duration covers both the network
+    // queue and AudioTrack's buffer.
+    public float audioQueuedP50Ms;
+    public float audioQueuedP95Ms;
+    public float audioQueuedP99Ms;
+    public int audioTargetMs;
+    public int audioUnderruns;
+    public int audioCorrections;
 }
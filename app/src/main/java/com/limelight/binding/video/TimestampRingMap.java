@@ -0,0 +1,90 @@
+package com.limelight.binding.video;
+
+// Fixed-capacity long -> long map keyed by presentation timestamp. This replaces a
+// HashMap<Long, Long> on the per-frame path, so it never allocates after construction.
+//
+// It is safe for exactly one producer thread calling put() and one consumer thread
+// calling remove(). Entries are stored in insertion order, which matches the order the
+// decoder hands back output buffers. When the consumer looks up a timestamp, any older
+// entries ahead of it belong to frames the decoder dropped (or CSD buffers that never
+// produce output), so they are evicted.
+//
+// clear() may be called from any thread. It never touches tail, it just tells the consumer
+// to skip everything queued so far on its next lookup.
+class TimestampRingMap {
+    static final long NO_VALUE = Long.MIN_VALUE;
+
+    private final long[] keys;
+    private final long[] values;
+    private final int mask;
+
+    // Written only by the producer
+    private volatile long head;
+    // Written only by the consumer
+    private volatile long tail;
+    // Written only by clear(). Entries below this are abandoned.
+    private volatile long clearedHead;
+
+    TimestampRingMap(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+        }
+
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    // Producer only. Returns false if the ring is full and the entry was not stored.
+    boolean put(long key, long value) {
+        long h = head;
+        if (h - tail == keys.length) {
+            return false;
+        }
+
+        int slot = (int) (h & mask);
+        keys[slot] = key;
+        values[slot] = value;
+
+        // Publish the entry to the consumer
+        head = h + 1;
+        return true;
+    }
+
+    // Consumer only. Returns the value for the key or NO_VALUE if it isn't present.
+    long remove(long key) {
+        long t = Math.max(tail, clearedHead);
+        long h = head;
+
+        while (t < h) {
+            int slot = (int) (t & mask);
+            long k = keys[slot];
+
+            if (k == key) {
+                long value = values[slot];
+                tail = t + 1;
+                return value;
+            }
+            else if (k > key) {
+                // This key was never inserted (or was already evicted)
+                break;
+            }
+
+            // Stale entry for a frame that never came out of the decoder
+            t++;
+        }
+
+        tail = t;
+        return NO_VALUE;
+    }
+
+    int size() {
+        return (int) (head - Math.max(tail, clearedHead));
+    }
+
+    // Abandons all entries. Their slots are only freed for the producer once the consumer
+    // moves past them, so it can never overwrite an entry the consumer is still reading.
+    void clear() {
+        clearedHead = head;
+    }
+}
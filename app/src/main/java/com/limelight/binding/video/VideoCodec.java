@@ -0,0 +1,54 @@
+package com.limelight.binding.video;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// The subset of MediaCodec used by MediaCodecDecoderRenderer. Going through this interface
+// allows the submission path to run against an in-memory codec (see DecodeUnitReplay in
+// the unit tests) instead of a hardware decoder.
+interface VideoCodec {
+    interface Factory {
+        VideoCodec createByCodecName(String name) throws IOException;
+    }
+
+    interface OnFrameRenderedListener {
+        void onFrameRendered(long presentationTimeUs, long renderTimeNanos);
+    }
+
+    void configure(MediaFormat format, Surface surface);
+
+    void setVideoScalingMode(int mode);
+
+    // Only supported on Android 6.0 and later
+    void setOnFrameRenderedListener(OnFrameRenderedListener listener);
+
+    void start();
+
+    void stop();
+
+    void flush();
+
+    void reset();
+
+    void release();
+
+    MediaFormat getInputFormat();
+
+    MediaFormat getOutputFormat();
+
+    int dequeueInputBuffer(long timeoutUs);
+
+    ByteBuffer getInputBuffer(int index);
+
+    void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags);
+
+    int dequeueOutputBuffer(MediaCodec.BufferInfo info, long timeoutUs);
+
+    void releaseOutputBuffer(int index, boolean render);
+
+    void releaseOutputBuffer(int index, long renderTimestampNs);
+}
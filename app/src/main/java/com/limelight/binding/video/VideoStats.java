@@ -4,7 +4,9 @@ import android.os.SystemClock;
 
 class VideoStats {
 
-    long decoderTimeMs;
+    // Decoder time is kept in microseconds so per-frame truncation doesn't bias the average
+    long decoderTimeUs;
+    int framesWithDecoderTime;
     long totalTimeMs;
     int totalFrames;
     int totalFramesReceived;
@@ -16,16 +18,29 @@ class VideoStats {
     int totalHostProcessingLatency;
     int framesWithHostProcessingLatency;
     long measurementStartTimestamp;
+    long bytesCopied;
+    int csdCacheHits;
+    int csdCacheMisses;
     public long renderingTimeMs;// 渲染时间
 
+    // Per-frame distributions for tail latency, all in microseconds
+    final LatencyHistogram decodeTimeHistogram = new LatencyHistogram();
+    final LatencyHistogram hostProcessingLatencyHistogram = new LatencyHistogram();
+    final LatencyHistogram renderingLatencyHistogram = new LatencyHistogram();
+    final LatencyHistogram frameIntervalHistogram = new LatencyHistogram();
+
     void add(VideoStats other) {
-        this.decoderTimeMs += other.decoderTimeMs;
+        this.decoderTimeUs += other.decoderTimeUs;
+        this.framesWithDecoderTime += other.framesWithDecoderTime;
         this.totalTimeMs += other.totalTimeMs;
         this.totalFrames += other.totalFrames;
         this.totalFramesReceived += other.totalFramesReceived;
         this.totalFramesRendered += other.totalFramesRendered;
         this.frameLossEvents += other.frameLossEvents;
         this.framesLost += other.framesLost;
+        this.bytesCopied += other.bytesCopied;
+        this.csdCacheHits += other.csdCacheHits;
+        this.csdCacheMisses += other.csdCacheMisses;
 
         // 累加渲染时间
         this.renderingTimeMs += other.renderingTimeMs;
@@ -39,6 +54,11 @@ class VideoStats {
         this.totalHostProcessingLatency += other.totalHostProcessingLatency;
         this.framesWithHostProcessingLatency += other.framesWithHostProcessingLatency;
 
+        this.decodeTimeHistogram.add(other.decodeTimeHistogram);
+        this.hostProcessingLatencyHistogram.add(other.hostProcessingLatencyHistogram);
+        this.renderingLatencyHistogram.add(other.renderingLatencyHistogram);
+        this.frameIntervalHistogram.add(other.frameIntervalHistogram);
+
         if (this.measurementStartTimestamp == 0) {
             this.measurementStartTimestamp = other.measurementStartTimestamp;
         }
@@ -47,13 +67,17 @@ class VideoStats {
     }
 
     void copy(VideoStats other) {
-        this.decoderTimeMs = other.decoderTimeMs;
+        this.decoderTimeUs = other.decoderTimeUs;
+        this.framesWithDecoderTime = other.framesWithDecoderTime;
         this.totalTimeMs = other.totalTimeMs;
         this.totalFrames = other.totalFrames;
         this.totalFramesReceived = other.totalFramesReceived;
         this.totalFramesRendered = other.totalFramesRendered;
         this.frameLossEvents = other.frameLossEvents;
         this.framesLost = other.framesLost;
+        this.bytesCopied = other.bytesCopied;
+        this.csdCacheHits = other.csdCacheHits;
+        this.csdCacheMisses = other.csdCacheMisses;
         this.minHostProcessingLatency = other.minHostProcessingLatency;
         this.maxHostProcessingLatency = other.maxHostProcessingLatency;
         this.totalHostProcessingLatency = other.totalHostProcessingLatency;
@@ -62,22 +86,36 @@ class VideoStats {
 
         // 复制渲染时间
         this.renderingTimeMs = other.renderingTimeMs;
+
+        this.decodeTimeHistogram.copy(other.decodeTimeHistogram);
+        this.hostProcessingLatencyHistogram.copy(other.hostProcessingLatencyHistogram);
+        this.renderingLatencyHistogram.copy(other.renderingLatencyHistogram);
+        this.frameIntervalHistogram.copy(other.frameIntervalHistogram);
     }
 
     void clear() {
-        this.decoderTimeMs = 0;
+        this.decoderTimeUs = 0;
+        this.framesWithDecoderTime = 0;
         this.totalTimeMs = 0;
         this.totalFrames = 0;
         this.totalFramesReceived = 0;
         this.totalFramesRendered = 0;
         this.frameLossEvents = 0;
         this.framesLost = 0;
+        this.bytesCopied = 0;
+        this.csdCacheHits = 0;
+        this.csdCacheMisses = 0;
         this.minHostProcessingLatency = 0;
         this.maxHostProcessingLatency = 0;
         this.totalHostProcessingLatency = 0;
         this.framesWithHostProcessingLatency = 0;
         this.measurementStartTimestamp = 0;
         this.renderingTimeMs = 0;
+
+        this.decodeTimeHistogram.clear();
+        this.hostProcessingLatencyHistogram.clear();
+        this.renderingLatencyHistogram.clear();
+        this.frameIntervalHistogram.clear();
     }
 
     VideoStatsFps getFps() {
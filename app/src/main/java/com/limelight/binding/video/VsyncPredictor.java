@@ -0,0 +1,152 @@
+package com.limelight.binding.video;
+
+import com.limelight.LimeLog;
+
+// Phase-locked estimate of the display's V-sync timing, fed with Choreographer frame times.
+//
+// This is an alpha-beta filter (the steady-state form of a Kalman filter for a constant
+// velocity model): each observed V-sync is compared against the prediction, and a fraction
+// of the error corrects the phase while a smaller fraction corrects the period. It follows
+// the real refresh period and slow clock drift over long sessions instead of assuming the
+// nominal refresh rate. Missed Choreographer callbacks are handled by counting how many
+// periods elapsed between samples.
+//
+// Refresh rate switches (e.g. 60 <-> 120 Hz when the display mode changes) are too far off
+// for the filter to follow, and halving the rate even looks like every other callback being
+// missed. They are detected from the raw callback intervals instead: callbacks are rarely
+// missed many times in a row, so the shortest recent interval is the real period. If it stays
+// off the tracked period, the filter restarts from it.
+//
+// onVsync() is called by the Choreographer thread while predictNextVsyncNs() is called by the
+// precise sync thread, so the state is guarded by this object's monitor.
+class VsyncPredictor {
+    private static final float ALPHA = 0.1f;
+    private static final float BETA = 0.005f;
+
+    // Samples needed before predictions are trusted
+    private static final int LOCK_SAMPLES = 30;
+    // Errors beyond this fraction of the period are treated as glitches rather than drift
+    private static final float OUTLIER_FRACTION = 0.25f;
+    // Callback intervals used to check for a refresh rate change
+    private static final int RATE_CHANGE_SAMPLES = 12;
+
+    private double periodNs;
+    private double lastVsyncNs;
+    private boolean hasSample;
+    private int goodSamples;
+
+    // Raw intervals between the most recent callbacks
+    private final long[] recentIntervalsNs = new long[RATE_CHANGE_SAMPLES];
+    private int recentIntervalCount;
+    private long lastFrameTimeNs;
+
+    // Prediction error of the observed V-syncs, excluding outliers
+    private long errorSumNs;
+    private long maxErrorNs;
+    private int errorSamples;
+
+    VsyncPredictor(long nominalPeriodNs) {
+        this.periodNs = nominalPeriodNs;
+    }
+
+    // Returns true and restarts the filter if the recent callbacks show a different refresh rate
+    private boolean checkRefreshRateChange(long intervalNs, long frameTimeNs) {
+        recentIntervalsNs[recentIntervalCount % RATE_CHANGE_SAMPLES] = intervalNs;
+        recentIntervalCount++;
+        if (recentIntervalCount < RATE_CHANGE_SAMPLES) {
+            return false;
+        }
+
+        long shortestIntervalNs = Long.MAX_VALUE;
+        for (long recentIntervalNs : recentIntervalsNs) {
+            shortestIntervalNs = Math.min(shortestIntervalNs, recentIntervalNs);
+        }
+        if (Math.abs(shortestIntervalNs - periodNs) <= periodNs * OUTLIER_FRACTION) {
+            return false;
+        }
+
+        LimeLog.info(String.format("V-sync period changed from %.2f ms to %.2f ms",
+                periodNs / 1000000.0, shortestIntervalNs / 1000000.0));
+        periodNs = shortestIntervalNs;
+        lastVsyncNs = frameTimeNs;
+        goodSamples = 0;
+        recentIntervalCount = 0;
+        return true;
+    }
+
+    synchronized void onVsync(long frameTimeNs) {
+        if (!hasSample) {
+            lastVsyncNs = frameTimeNs;
+            lastFrameTimeNs = frameTimeNs;
+            hasSample = true;
+            return;
+        }
+
+        long intervalNs = frameTimeNs - lastFrameTimeNs;
+        if (intervalNs <= 0) {
+            // Duplicate or out of order frame time
+            return;
+        }
+        lastFrameTimeNs = frameTimeNs;
+
+        if (checkRefreshRateChange(intervalNs, frameTimeNs)) {
+            return;
+        }
+
+        double elapsedNs = frameTimeNs - lastVsyncNs;
+        long periods = Math.round(elapsedNs / periodNs);
+        if (periods <= 0) {
+            // Much less than a period since the last one. If the rate went up, the check
+            // above catches it once enough of these have been seen.
+            return;
+        }
+
+        double predictedNs = lastVsyncNs + periods * periodNs;
+        double errorNs = frameTimeNs - predictedNs;
+
+        if (Math.abs(errorNs) > periodNs * OUTLIER_FRACTION) {
+            // Probably a glitch. Restart the phase from this sample if it keeps happening, since
+            // the filter will never converge from that far away. Refresh rate changes are
+            // handled by checkRefreshRateChange().
+            goodSamples = Math.max(0, goodSamples - LOCK_SAMPLES / 3);
+            if (goodSamples == 0) {
+                lastVsyncNs = frameTimeNs;
+            } else {
+                lastVsyncNs = predictedNs;
+            }
+            return;
+        }
+
+        long absErrorNs = (long) Math.abs(errorNs);
+        errorSumNs += absErrorNs;
+        maxErrorNs = Math.max(maxErrorNs, absErrorNs);
+        errorSamples++;
+
+        lastVsyncNs = predictedNs + ALPHA * errorNs;
+        periodNs += BETA * errorNs / periods;
+        goodSamples = Math.min(goodSamples + 1, LOCK_SAMPLES);
+    }
+
+    synchronized boolean isLocked() {
+        return goodSamples >= LOCK_SAMPLES;
+    }
+
+    // Returns the first predicted V-sync strictly after nowNs
+    synchronized long predictNextVsyncNs(long nowNs) {
+        double elapsedNs = nowNs - lastVsyncNs;
+        long periods = elapsedNs < 0 ? 0 : (long) (elapsedNs / periodNs) + 1;
+        return (long) (lastVsyncNs + periods * periodNs);
+    }
+
+    synchronized long getPeriodNs() {
+        return (long) periodNs;
+    }
+
+    synchronized long getMeanErrorNs() {
+        return errorSamples > 0 ? errorSumNs / errorSamples : 0;
+    }
+
+    synchronized long getMaxErrorNs() {
+        return maxErrorNs;
+    }
+}
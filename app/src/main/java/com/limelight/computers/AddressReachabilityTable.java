@@ -0,0 +1,216 @@
+package com.limelight.computers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.limelight.LimeLog;
+import com.limelight.nvstream.http.ComputerDetails;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+// Remembers how each address of each host has done in past polls, so polling can try the
+// address that worked best last time before the others. The table is kept in shared
+// preferences so the first poll after launch already knows which path to take.
+class AddressReachabilityTable {
+    private static final String PREFS_NAME = "address_reachability";
+
+    // Weight of the newest sample in the moving averages
+    private static final double EWMA_WEIGHT = 0.25;
+    // An address needs at least this success rate to be raced first
+    private static final double MIN_WINNER_SUCCESS_RATE = 0.5;
+    // Stats are written at most this often unless the best address changes
+    private static final long SAVE_INTERVAL_MS = 60000;
+
+    private final SharedPreferences prefs;
+
+    // uuid -> stats for each address of that host
+    private final HashMap<String, HostStats> hosts = new HashMap<>();
+
+    private static class AddressStats {
+        double successRate;
+        double rttMs;
+
+        double getScore() {
+            // Lower is better. Flaky addresses are penalized even if they are fast.
+            return rttMs / Math.max(successRate, 0.05);
+        }
+    }
+
+    private static class HostStats {
+        final HashMap<String, AddressStats> addresses = new HashMap<>();
+        String lastBestAddress;
+        long lastSaveMs;
+    }
+
+    AddressReachabilityTable(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+
+        for (String uuid : prefs.getAll().keySet()) {
+            try {
+                JSONObject hostJson = new JSONObject(prefs.getString(uuid, "{}"));
+                HostStats host = new HostStats();
+
+                Iterator<String> it = hostJson.keys();
+                while (it.hasNext()) {
+                    String address = it.next();
+                    JSONObject addressJson = hostJson.getJSONObject(address);
+
+                    AddressStats stats = new AddressStats();
+                    stats.successRate = addressJson.getDouble("success");
+                    stats.rttMs = addressJson.getDouble("rtt");
+                    host.addresses.put(address, stats);
+                }
+
+                host.lastBestAddress = getBestAddressKey(host);
+                hosts.put(uuid, host);
+            } catch (JSONException | ClassCastException e) {
+                LimeLog.warning("Discarding corrupt reachability data for " + uuid);
+                prefs.edit().remove(uuid).apply();
+            }
+        }
+    }
+
+    // Returns the unique non-null addresses, with the best remembered address first and the
+    // rest in order of score. Addresses without history keep their given order at the end.
+    synchronized List<ComputerDetails.AddressTuple> rankAddresses(String uuid, ComputerDetails.AddressTuple... candidates) {
+        final ArrayList<ComputerDetails.AddressTuple> known = new ArrayList<>();
+        ArrayList<ComputerDetails.AddressTuple> unknown = new ArrayList<>();
+        final HostStats host = uuid != null ? hosts.get(uuid) : null;
+
+        for (ComputerDetails.AddressTuple address : candidates) {
+            if (address == null || known.contains(address) || unknown.contains(address)) {
+                continue;
+            }
+
+            if (host != null && host.addresses.containsKey(address.toString())) {
+                known.add(address);
+            }
+            else {
+                unknown.add(address);
+            }
+        }
+
+        if (host != null) {
+            // Stable sort, so ties keep the precedence order of the candidates
+            Collections.sort(known, (a, b) -> Double.compare(
+                    host.addresses.get(a.toString()).getScore(),
+                    host.addresses.get(b.toString()).getScore()));
+        }
+
+        known.addAll(unknown);
+        return known;
+    }
+
+    // True if this address has done well enough to be raced ahead of the others
+    synchronized boolean isProvenWinner(String uuid, ComputerDetails.AddressTuple address) {
+        HostStats host = uuid != null ? hosts.get(uuid) : null;
+        if (host == null) {
+            return false;
+        }
+
+        AddressStats stats = host.addresses.get(address.toString());
+        return stats != null && stats.successRate >= MIN_WINNER_SUCCESS_RATE;
+    }
+
+    // RTT of the slowest address that usually answers, or 0 if none is known
+    synchronized long getSlowestRttMs(String uuid) {
+        HostStats host = uuid != null ? hosts.get(uuid) : null;
+        if (host == null) {
+            return 0;
+        }
+
+        double slowestRttMs = 0;
+        for (AddressStats stats : host.addresses.values()) {
+            if (stats.successRate >= MIN_WINNER_SUCCESS_RATE) {
+                slowestRttMs = Math.max(slowestRttMs, stats.rttMs);
+            }
+        }
+        return (long) slowestRttMs;
+    }
+
+    synchronized void recordResult(String uuid, ComputerDetails.AddressTuple address, boolean success, long rttMs) {
+        if (uuid == null) {
+            return;
+        }
+
+        HostStats host = hosts.get(uuid);
+        if (host == null) {
+            host = new HostStats();
+            hosts.put(uuid, host);
+        }
+
+        String key = address.toString();
+        AddressStats stats = host.addresses.get(key);
+        if (stats == null) {
+            if (!success) {
+                // Don't remember addresses that have never worked
+                return;
+            }
+
+            stats = new AddressStats();
+            stats.successRate = 1;
+            stats.rttMs = rttMs;
+            host.addresses.put(key, stats);
+        }
+        else {
+            stats.successRate += EWMA_WEIGHT * ((success ? 1 : 0) - stats.successRate);
+            if (success) {
+                stats.rttMs += EWMA_WEIGHT * (rttMs - stats.rttMs);
+            }
+        }
+
+        String bestAddress = getBestAddressKey(host);
+        long now = SystemClock.elapsedRealtime();
+        boolean bestChanged = bestAddress != null && !bestAddress.equals(host.lastBestAddress);
+        if (bestChanged) {
+            LimeLog.info("Best address for " + uuid + " is now " + bestAddress);
+            host.lastBestAddress = bestAddress;
+        }
+        if (bestChanged || now - host.lastSaveMs >= SAVE_INTERVAL_MS) {
+            save(uuid, host);
+            host.lastSaveMs = now;
+        }
+    }
+
+    synchronized void removeHost(String uuid) {
+        hosts.remove(uuid);
+        prefs.edit().remove(uuid).apply();
+    }
+
+    private static String getBestAddressKey(HostStats host) {
+        String bestAddress = null;
+        double bestScore = Double.MAX_VALUE;
+        for (Map.Entry<String, AddressStats> entry : host.addresses.entrySet()) {
+            double score = entry.getValue().getScore();
+            if (score < bestScore) {
+                bestScore = score;
+                bestAddress = entry.getKey();
+            }
+        }
+        return bestAddress;
+    }
+
+    private void save(String uuid, HostStats host) {
+        try {
+            JSONObject hostJson = new JSONObject();
+            for (Map.Entry<String, AddressStats> entry : host.addresses.entrySet()) {
+                JSONObject addressJson = new JSONObject();
+                addressJson.put("success", entry.getValue().successRate);
+                addressJson.put("rtt", entry.getValue().rttMs);
+                hostJson.put(entry.getKey(), addressJson);
+            }
+            prefs.edit().putString(uuid, hostJson.toString()).apply();
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -6,9 +6,15 @@ import java.io.StringReader;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -45,6 +51,17 @@ import org.xmlpull.v1.XmlPullParserException;
 
 public class ComputerManagerService extends Service {
     private static final int SERVERINFO_POLLING_PERIOD_MS = 1500;
+    // Hosts that just changed state are polled faster for a few rounds
+    private static final int FAST_POLLING_PERIOD_MS = 1000;
+    private static final int FAST_POLL_COUNT = 5;
+    // Hosts that stay offline back off exponentially up to this period
+    private static final int MAX_OFFLINE_POLLING_PERIOD_MS = 30000;
+    // Polls of offline hosts block until the connect timeout, so a few can run at once
+    private static final int POLLING_THREADS = 4;
+    // Each poll races up to 4 addresses. These run on their own threads since they block in
+    // HTTP requests, and the polls waiting on them would starve the polling threads otherwise.
+    private static final int ADDRESS_POLL_THREADS = POLLING_THREADS * 4;
+    private static final long ADDRESS_POLL_THREAD_KEEP_ALIVE_MS = 30000;
     private static final int APPLIST_POLLING_PERIOD_MS = 30000;
     private static final int APPLIST_FAILED_POLLING_RETRY_MS = 2000;
     private static final int MDNS_QUERY_PERIOD_MS = 1000;
@@ -53,6 +70,12 @@ public class ComputerManagerService extends Service {
     private static final int EMPTY_LIST_THRESHOLD = 3;
     private static final int POLL_DATA_TTL_MS = 30000;
     private static final long COLLECTION_TIMEOUT_MS = 2000; // 收集其他地址的超时时间（2秒）
+    // Head start given to the address that won previous polls before racing the others
+    private static final long RACE_STAGGER_MS = 250;
+    // TCP connect timeout of the liveness probe, raised for hosts known to be further away
+    private static final long PROBE_TIMEOUT_MS = 80;
+    private static final long MAX_PROBE_TIMEOUT_MS = 1000;
+    private static final long POLL_STATS_INTERVAL_MS = 60000;
 
     private final ComputerManagerBinder binder = new ComputerManagerBinder();
 
@@ -60,11 +83,20 @@ public class ComputerManagerService extends Service {
     private final AtomicInteger dbRefCount = new AtomicInteger(0);
 
     private IdentityManager idManager;
+    private AddressReachabilityTable reachabilityTable;
     private final LinkedList<PollingTuple> pollingTuples = new LinkedList<>();
     private ComputerManagerListener listener = null;
     private final AtomicInteger activePolls = new AtomicInteger(0);
     private boolean pollingActive = false;
     private final Lock defaultNetworkLock = new ReentrantLock();
+    // Shared by all serverinfo and app list polls instead of a thread per host
+    private ScheduledExecutorService pollingExecutor;
+    // Runs the per-address requests of parallelPollPc()
+    private ThreadPoolExecutor addressPollExecutor;
+    // Scheduled polls that sent serverinfo requests vs. ones settled by the liveness probe alone
+    private final AtomicInteger fullPolls = new AtomicInteger(0);
+    private final AtomicInteger probeOnlyPolls = new AtomicInteger(0);
+    private long pollStatsStartMs;
 
     private ConnectivityManager.NetworkCallback networkCallback;
 
@@ -89,7 +121,9 @@ public class ComputerManagerService extends Service {
     };
 
     // Returns true if the details object was modified
-    private boolean runPoll(ComputerDetails details, boolean newPc, int offlineCount) throws InterruptedException {
+    // reachableAddresses limits the addresses polled, or is null to poll all of them
+    private boolean runPoll(ComputerDetails details, boolean newPc, int offlineCount,
+                            List<ComputerDetails.AddressTuple> reachableAddresses) throws InterruptedException {
         if (!getLocalDatabaseReference()) {
             return false;
         }
@@ -101,7 +135,7 @@ public class ComputerManagerService extends Service {
 
         // Poll the machine
         try {
-            if (!pollComputer(details)) {
+            if (!pollComputer(details, reachableAddresses)) {
                 if (!newPc && offlineCount < pollTriesBeforeOffline) {
                     // Return without calling the listener
                     releaseLocalDatabaseReference();
@@ -163,35 +197,147 @@ public class ComputerManagerService extends Service {
         return true;
     }
 
-    private Thread createPollingThread(final PollingTuple tuple) {
-        Thread t = new Thread() {
-            @Override
-            public void run() {
-                int offlineCount = 0;
-                while (!isInterrupted() && pollingActive && tuple.thread == this) {
-                    try {
-                        // Only allow one request to the machine at a time
-                        synchronized (tuple.networkLock) {
-                            // Check if this poll has modified the details
-                            if (!runPoll(tuple.computer, false, offlineCount)) {
-                                LimeLog.warning(tuple.computer.name + " is offline (try " + offlineCount + ")");
-                                offlineCount++;
-                            } else {
-                                tuple.lastSuccessfulPollMs = SystemClock.elapsedRealtime();
-                                offlineCount = 0;
-                            }
-                        }
+    // Must be called with pollingTuples locked
+    private void schedulePoll(final PollingTuple tuple, long delayMs) {
+        if (tuple.pollFuture != null) {
+            // Don't interrupt a poll that's in progress. The generation check stops it from
+            // scheduling another one when it finishes.
+            tuple.pollFuture.cancel(false);
+        }
 
-                        // Wait until the next polling interval
-                        Thread.sleep(SERVERINFO_POLLING_PERIOD_MS);
-                    } catch (InterruptedException e) {
-                        break;
+        final int generation = ++tuple.pollGeneration;
+        tuple.pollFuture = pollingExecutor.schedule(() -> runScheduledPoll(tuple, generation),
+                delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Must be called with pollingTuples locked
+    private void cancelPoll(PollingTuple tuple) {
+        tuple.pollGeneration++;
+        if (tuple.pollFuture != null) {
+            // Interrupt and remove the poll
+            tuple.pollFuture.cancel(true);
+            tuple.pollFuture = null;
+        }
+    }
+
+    // Must be called with pollingTuples locked
+    private void pollNow(PollingTuple tuple) {
+        tuple.offlinePolls = 0;
+        if (pollingActive) {
+            schedulePoll(tuple, 0);
+        }
+    }
+
+    private void runScheduledPoll(PollingTuple tuple, int generation) {
+        synchronized (pollingTuples) {
+            if (!pollingActive || tuple.pollGeneration != generation) {
+                // Replaced or cancelled before it started
+                return;
+            }
+        }
+
+        try {
+            // Only allow one request to the machine at a time
+            synchronized (tuple.networkLock) {
+                ComputerDetails.State previousState = tuple.computer.state;
+                long now = SystemClock.elapsedRealtime();
+
+                // Only send serverinfo requests to addresses that accept a connection, unless we haven't
+                // heard from the PC in a while and the probe might be missing something
+                List<ComputerDetails.AddressTuple> reachableAddresses = null;
+                if (previousState != ComputerDetails.State.UNKNOWN && now - tuple.lastFullPollMs < POLL_DATA_TTL_MS) {
+                    reachableAddresses = probeComputer(tuple.computer);
+                }
+                if (reachableAddresses == null || !reachableAddresses.isEmpty()) {
+                    tuple.lastFullPollMs = now;
+                    fullPolls.incrementAndGet();
+                }
+                else {
+                    probeOnlyPolls.incrementAndGet();
+                }
+
+                // Check if this poll has modified the details
+                if (!runPoll(tuple.computer, false, tuple.offlineCount, reachableAddresses)) {
+                    LimeLog.warning(tuple.computer.name + " is offline (try " + tuple.offlineCount + ")");
+                    tuple.offlineCount++;
+                } else {
+                    tuple.lastSuccessfulPollMs = SystemClock.elapsedRealtime();
+                    tuple.offlineCount = 0;
+                }
+
+                if (tuple.computer.state != previousState) {
+                    tuple.fastPollsRemaining = FAST_POLL_COUNT;
+
+                    if (tuple.computer.state == ComputerDetails.State.OFFLINE && tuple.lastSuccessfulPollMs != 0) {
+                        LimeLog.info(tuple.computer.name + " detected offline " +
+                                (SystemClock.elapsedRealtime() - tuple.lastSuccessfulPollMs) + " ms after its last successful poll");
                     }
                 }
+                if (tuple.computer.state == ComputerDetails.State.OFFLINE) {
+                    tuple.offlinePolls++;
+                }
+                else {
+                    tuple.offlinePolls = 0;
+                }
             }
-        };
-        t.setName("Polling thread for " + tuple.computer.name);
-        return t;
+        } catch (InterruptedException e) {
+            return;
+        }
+
+        logPollStats();
+
+        // Wait until the next polling interval
+        synchronized (pollingTuples) {
+            if (pollingActive && tuple.pollGeneration == generation) {
+                schedulePoll(tuple, getNextPollDelayMs(tuple));
+            }
+        }
+    }
+
+    // Returns the addresses accepting TCP connections, in the order they should be polled
+    private List<ComputerDetails.AddressTuple> probeComputer(ComputerDetails details) throws InterruptedException {
+        List<ComputerDetails.AddressTuple> addresses = reachabilityTable.rankAddresses(details.uuid,
+                details.localAddress, details.manualAddress, details.remoteAddress, details.ipv6Address);
+
+        // Give hosts with a slow path a chance to answer
+        long timeoutMs = Math.min(Math.max(PROBE_TIMEOUT_MS, 2 * reachabilityTable.getSlowestRttMs(details.uuid)),
+                MAX_PROBE_TIMEOUT_MS);
+
+        List<ComputerDetails.AddressTuple> reachable = LivenessProbe.probe(addresses, details.httpsPort, timeoutMs);
+        if (reachable.isEmpty()) {
+            LimeLog.info("Liveness probe: no address of " + details.name + " answered within " + timeoutMs + " ms");
+        }
+        return reachable;
+    }
+
+    private void logPollStats() {
+        synchronized (fullPolls) {
+            long now = SystemClock.elapsedRealtime();
+            if (pollStatsStartMs == 0) {
+                pollStatsStartMs = now;
+            }
+            else if (now - pollStatsStartMs >= POLL_STATS_INTERVAL_MS) {
+                LimeLog.info("Polling stats for the last " + (now - pollStatsStartMs) / 1000 + " s: " +
+                        fullPolls.getAndSet(0) + " serverinfo polls, " +
+                        probeOnlyPolls.getAndSet(0) + " polls settled by the liveness probe");
+                pollStatsStartMs = now;
+            }
+        }
+    }
+
+    private static long getNextPollDelayMs(PollingTuple tuple) {
+        if (tuple.fastPollsRemaining > 0) {
+            tuple.fastPollsRemaining--;
+            return FAST_POLLING_PERIOD_MS;
+        }
+
+        if (tuple.offlinePolls > 0) {
+            // Back off for hosts that stay offline, doubling each poll
+            long delayMs = (long) SERVERINFO_POLLING_PERIOD_MS << Math.min(tuple.offlinePolls - 1, 5);
+            return Math.min(delayMs, MAX_OFFLINE_POLLING_PERIOD_MS);
+        }
+
+        return SERVERINFO_POLLING_PERIOD_MS;
     }
 
     public class ComputerManagerBinder extends Binder {
@@ -216,11 +362,8 @@ public class ComputerManagerService extends Service {
                     // Report this computer initially
                     listener.notifyComputerUpdated(tuple.computer);
 
-                    // This polling thread might already be there
-                    if (tuple.thread == null) {
-                        tuple.thread = createPollingThread(tuple);
-                        tuple.thread.start();
-                    }
+                    // Start with a fresh poll when the UI becomes visible again
+                    pollNow(tuple);
                 }
             }
         }
@@ -299,6 +442,7 @@ public class ComputerManagerService extends Service {
                         synchronized (tuple.networkLock) {
                             tuple.computer.state = ComputerDetails.State.UNKNOWN;
                         }
+                        pollNow(tuple);
                     }
                 }
             }
@@ -316,11 +460,7 @@ public class ComputerManagerService extends Service {
         pollingActive = false;
         synchronized (pollingTuples) {
             for (PollingTuple tuple : pollingTuples) {
-                if (tuple.thread != null) {
-                    // Interrupt and remove the thread
-                    tuple.thread.interrupt();
-                    tuple.thread = null;
-                }
+                cancelPoll(tuple);
             }
         }
 
@@ -445,10 +585,9 @@ public class ComputerManagerService extends Service {
                     // Update the saved computer with potentially new details
                     tuple.computer.update(details);
 
-                    // Start a polling thread if polling is active
-                    if (pollingActive && tuple.thread == null) {
-                        tuple.thread = createPollingThread(tuple);
-                        tuple.thread.start();
+                    // It just answered us, so don't leave it in offline backoff
+                    if (tuple.offlinePolls > 0) {
+                        pollNow(tuple);
                     }
 
                     // Found an entry so we're done
@@ -457,13 +596,10 @@ public class ComputerManagerService extends Service {
             }
 
             // If we got here, we didn't find an entry
-            PollingTuple tuple = new PollingTuple(details, null);
-            if (pollingActive) {
-                tuple.thread = createPollingThread(tuple);
-            }
+            PollingTuple tuple = new PollingTuple(details);
             pollingTuples.add(tuple);
-            if (tuple.thread != null) {
-                tuple.thread.start();
+            if (pollingActive) {
+                schedulePoll(tuple, 0);
             }
         }
     }
@@ -473,7 +609,7 @@ public class ComputerManagerService extends Service {
 
         // We cannot use runPoll() here because it will attempt to persist the state of the machine
         // in the database, which would be bad because we don't have our pinned cert loaded yet.
-        if (pollComputer(fakeDetails)) {
+        if (pollComputer(fakeDetails, null)) {
             // See if we have record of this PC to pull its pinned cert
             synchronized (pollingTuples) {
                 for (PollingTuple tuple : pollingTuples) {
@@ -486,7 +622,7 @@ public class ComputerManagerService extends Service {
 
             // Poll again, possibly with the pinned cert, to get accurate pairing information.
             // This will insert the host into the database too.
-            runPoll(fakeDetails, true, 0);
+            runPoll(fakeDetails, true, 0, null);
         }
 
         // If the machine is reachable, it was successful
@@ -507,16 +643,14 @@ public class ComputerManagerService extends Service {
 
         // Remove it from the database
         dbManager.deleteComputer(computer);
+        reachabilityTable.removeHost(computer.uuid);
 
         synchronized (pollingTuples) {
             // Remove the computer from the computer list
             for (PollingTuple tuple : pollingTuples) {
                 if (tuple.computer.uuid.equals(computer.uuid)) {
-                    if (tuple.thread != null) {
-                        // Interrupt the thread on this entry
-                        tuple.thread.interrupt();
-                        tuple.thread = null;
-                    }
+                    // Cancel polling on this entry
+                    cancelPoll(tuple);
                     pollingTuples.remove(tuple);
                     break;
                 }
@@ -588,7 +722,8 @@ public class ComputerManagerService extends Service {
         public final ComputerDetails existingDetails;
 
         public volatile boolean complete;
-        public Thread pollingThread;
+        public volatile boolean cancelled;
+        public Future<?> pollFuture;
         public ComputerDetails returnedDetails;
 
         public ParallelPollTuple(ComputerDetails.AddressTuple address, ComputerDetails existingDetails) {
@@ -597,38 +732,55 @@ public class ComputerManagerService extends Service {
         }
 
         public void interrupt() {
-            if (pollingThread != null) {
-                pollingThread.interrupt();
+            cancelled = true;
+            if (pollFuture != null) {
+                // Interrupts the request if it is running, or drops it if it's still queued
+                pollFuture.cancel(true);
             }
         }
     }
 
-    private ComputerDetails parallelPollPc(ComputerDetails details) throws InterruptedException {
-        ParallelPollTuple[] tuples = {
-            new ParallelPollTuple(details.localAddress, details),
-            new ParallelPollTuple(details.manualAddress, details),
-            new ParallelPollTuple(details.remoteAddress, details),
-            new ParallelPollTuple(details.ipv6Address, details)
-        };
+    private ComputerDetails parallelPollPc(ComputerDetails details, List<ComputerDetails.AddressTuple> reachableAddresses) throws InterruptedException {
+        // Addresses that worked best before come first. Ties keep this order of precedence,
+        // which is also the order used to deduplicate them.
+        List<ComputerDetails.AddressTuple> addresses = reachabilityTable.rankAddresses(details.uuid,
+                details.localAddress, details.manualAddress, details.remoteAddress, details.ipv6Address);
+        if (reachableAddresses != null) {
+            // Skip the addresses that the liveness probe couldn't connect to
+            addresses.retainAll(reachableAddresses);
+        }
+        ParallelPollTuple[] tuples = new ParallelPollTuple[addresses.size()];
+        for (int i = 0; i < tuples.length; i++) {
+            tuples[i] = new ParallelPollTuple(addresses.get(i), details);
+        }
+
+        // If one address has reliably answered before, give it a head start and then stagger the
+        // others, like happy eyeballs. Otherwise race all of them at once as before.
+        long staggerMs = tuples.length > 0 && reachabilityTable.isProvenWinner(details.uuid, tuples[0].address) ?
+                RACE_STAGGER_MS : 0;
 
         // 使用共享锁来通知任何一个地址响应
         final Object sharedLock = new Object();
-        
-        // These must be started in order of precedence for the deduplication algorithm
-        // to result in the correct behavior.
-        HashSet<ComputerDetails.AddressTuple> uniqueAddresses = new HashSet<>();
-        for (ParallelPollTuple tuple : tuples) {
-            startParallelPollThreadFast(tuple, uniqueAddresses, sharedLock);
-        }
 
         ComputerDetails result = null;
         ComputerDetails.AddressTuple primaryAddress = null;
         long firstResponseTime = 0;
+        int started = 0;
+        long nextStartTime = SystemClock.elapsedRealtime();
 
         try {
             // 等待第一个成功响应或所有轮询完成
             synchronized (sharedLock) {
                 while (true) {
+                    // Start the next address once its turn comes, as soon as all the ones racing
+                    // have failed, or right away once we're only collecting other addresses
+                    long now = SystemClock.elapsedRealtime();
+                    while (started < tuples.length &&
+                            (now >= nextStartTime || result != null || areAllComplete(tuples, started))) {
+                        startParallelPoll(tuples[started++], sharedLock);
+                        nextStartTime = now + staggerMs;
+                    }
+
                     // 检查是否有任何成功的响应
                     if (result == null) {
                         for (ParallelPollTuple tuple : tuples) {
@@ -642,6 +794,11 @@ public class ComputerManagerService extends Service {
                                 break;
                             }
                         }
+
+                        if (result != null) {
+                            // Start the rest right away to collect them
+                            continue;
+                        }
                     }
                     
                     // 如果已经找到第一个响应，继续收集其他成功的地址
@@ -662,7 +819,7 @@ public class ComputerManagerService extends Service {
                         
                         // 如果已经收集了足够长时间，或者所有地址都完成了，就退出
                         long elapsed = SystemClock.elapsedRealtime() - firstResponseTime;
-                        boolean allComplete = areAllComplete(tuples);
+                        boolean allComplete = areAllComplete(tuples, tuples.length);
                         
                         if (elapsed >= COLLECTION_TIMEOUT_MS || allComplete) {
                             LimeLog.info("Fast poll: collected " + result.getAvailableAddresses().size() + 
@@ -670,16 +827,25 @@ public class ComputerManagerService extends Service {
                                        ", all complete: " + allComplete + ")");
                             break;
                         }
+
+                        // 等待任何一个线程完成或收集超时
+                        sharedLock.wait(COLLECTION_TIMEOUT_MS - elapsed);
+                        continue;
                     }
                     
                     // 检查是否所有轮询都已完成（全部失败）
-                    if (result == null && areAllComplete(tuples)) {
+                    if (started == tuples.length && areAllComplete(tuples, tuples.length)) {
                         LimeLog.info("Fast poll: all addresses failed");
                         break;
                     }
                     
-                    // 等待任何一个线程完成
-                    sharedLock.wait();
+                    // 等待任何一个线程完成，或者轮到下一个地址
+                    if (started < tuples.length) {
+                        sharedLock.wait(Math.max(1, nextStartTime - SystemClock.elapsedRealtime()));
+                    }
+                    else {
+                        sharedLock.wait();
+                    }
                 }
             }
         } finally {
@@ -692,53 +858,48 @@ public class ComputerManagerService extends Service {
         return result;
     }
 
-    private boolean areAllComplete(ParallelPollTuple[] tuples) {
-        for (ParallelPollTuple tuple : tuples) {
-            if (!tuple.complete) {
+    private boolean areAllComplete(ParallelPollTuple[] tuples, int count) {
+        for (int i = 0; i < count; i++) {
+            if (!tuples[i].complete) {
                 return false;
             }
         }
         return true;
     }
     
-    private void startParallelPollThreadFast(ParallelPollTuple tuple, HashSet<ComputerDetails.AddressTuple> uniqueAddresses, Object sharedLock) {
-        // Don't bother starting a polling thread for an address that doesn't exist
-        // or if the address has already been polled with an earlier tuple
-        if (tuple.address == null || !uniqueAddresses.add(tuple.address)) {
-            tuple.complete = true;
-            tuple.returnedDetails = null;
-            // 通知共享锁，即使这个地址被跳过
-            synchronized (sharedLock) {
-                sharedLock.notifyAll();
+    private void startParallelPoll(ParallelPollTuple tuple, Object sharedLock) {
+        tuple.pollFuture = addressPollExecutor.submit(() -> {
+            long startTime = SystemClock.elapsedRealtime();
+            ComputerDetails details = tryPollIp(tuple.existingDetails, tuple.address);
+
+            // A poll we cancelled says nothing about how good this address is
+            if (!tuple.cancelled) {
+                reachabilityTable.recordResult(details != null ? details.uuid : tuple.existingDetails.uuid,
+                        tuple.address, details != null, SystemClock.elapsedRealtime() - startTime);
             }
-            return;
-        }
 
-        tuple.pollingThread = new Thread() {
-            @Override
-            public void run() {
-                ComputerDetails details = tryPollIp(tuple.existingDetails, tuple.address);
+            synchronized (tuple) {
+                tuple.complete = true;
+                tuple.returnedDetails = details;
+                tuple.notify();
+            }
 
-                synchronized (tuple) {
-                    tuple.complete = true;
-                    tuple.returnedDetails = details;
-                    tuple.notify();
-                }
-                
-                // 通知共享锁，让主线程可以检查结果
-                synchronized (sharedLock) {
-                    sharedLock.notifyAll();
-                }
+            // 通知共享锁，让主线程可以检查结果
+            synchronized (sharedLock) {
+                sharedLock.notifyAll();
             }
-        };
-        tuple.pollingThread.setName("Parallel Poll - " + tuple.address + " - " + tuple.existingDetails.name);
-        tuple.pollingThread.start();
+        });
     }
 
-    private boolean pollComputer(ComputerDetails details) throws InterruptedException {
+    private boolean pollComputer(ComputerDetails details, List<ComputerDetails.AddressTuple> reachableAddresses) throws InterruptedException {
+        if (reachableAddresses != null && reachableAddresses.isEmpty()) {
+            // The liveness probe already told us that nothing is listening
+            return false;
+        }
+
         // Poll all addresses in parallel to speed up the process
         LimeLog.info("Starting parallel poll for " + details.name + " (" + details.localAddress + ", " + details.remoteAddress + ", " + details.manualAddress + ", " + details.ipv6Address + ")");
-        ComputerDetails polledDetails = parallelPollPc(details);
+        ComputerDetails polledDetails = parallelPollPc(details, reachableAddresses);
         LimeLog.info("Parallel poll for " + details.name + " returned address: " + details.activeAddress);
 
         if (polledDetails != null) {
@@ -750,6 +911,25 @@ public class ComputerManagerService extends Service {
 
     @Override
     public void onCreate() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(POLLING_THREADS, r -> {
+            Thread t = new Thread(r, "Polling thread");
+            t.setDaemon(true);
+            return t;
+        });
+        // Polls are rescheduled often, so don't keep cancelled ones queued until their delay expires
+        executor.setRemoveOnCancelPolicy(true);
+        pollingExecutor = executor;
+
+        // Bounded, with extra attempts queued rather than rejected. Idle threads exit so
+        // nothing is kept around between polls that are far apart.
+        addressPollExecutor = new ThreadPoolExecutor(ADDRESS_POLL_THREADS, ADDRESS_POLL_THREADS,
+                ADDRESS_POLL_THREAD_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "Address poll thread");
+            t.setDaemon(true);
+            return t;
+        });
+        addressPollExecutor.allowCoreThreadTimeOut(true);
+
         // Bind to the discovery service
         bindService(new Intent(this, DiscoveryService.class),
                 discoveryServiceConnection, Service.BIND_AUTO_CREATE);
@@ -757,6 +937,9 @@ public class ComputerManagerService extends Service {
         // Lookup or generate this device's UID
         idManager = new IdentityManager(this);
 
+        // Load which addresses worked best for each PC last time
+        reachabilityTable = new AddressReachabilityTable(this);
+
         // Initialize the DB
         dbManager = new ComputerDatabaseManager(this);
         dbRefCount.set(1);
@@ -785,6 +968,7 @@ public class ComputerManagerService extends Service {
                             if (listener != null) {
                                 listener.notifyComputerUpdated(tuple.computer);
                             }
+                            pollNow(tuple);
                         }
                     }
                 }
@@ -821,6 +1005,8 @@ public class ComputerManagerService extends Service {
         }
 
         // FIXME: Should await termination here but we have timeout issues in HttpURLConnection
+        pollingExecutor.shutdownNow();
+        addressPollExecutor.shutdownNow();
 
         // Remove the initial DB reference
         releaseLocalDatabaseReference();
@@ -832,39 +1018,70 @@ public class ComputerManagerService extends Service {
     }
 
     public class ApplistPoller {
-        private Thread thread;
         private final ComputerDetails computer;
-        private final Object pollEvent = new Object();
+        private ScheduledFuture<?> pollFuture;
+        // Guarded by this poller's lock like pollFuture and polling
+        private int pollGeneration;
+        private boolean active;
+        private boolean polling;
         private boolean receivedAppList = false;
+        private int emptyAppListResponses = 0;
 
         public ApplistPoller(ComputerDetails computer) {
             this.computer = computer;
         }
 
-        public void pollNow() {
-            synchronized (pollEvent) {
-                pollEvent.notify();
+        public synchronized void pollNow() {
+            // A poll that's already running will do
+            if (active && !polling) {
+                schedulePoll(0);
+            }
+        }
+
+        private synchronized void schedulePoll(long delayMs) {
+            if (pollFuture != null) {
+                pollFuture.cancel(false);
+            }
+
+            final int generation = ++pollGeneration;
+            pollFuture = pollingExecutor.schedule(() -> runScheduledPoll(generation),
+                    delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        private long getPollingDelayMs() {
+            if (receivedAppList) {
+                // If we've already reported an app list successfully,
+                // wait the full polling period
+                return APPLIST_POLLING_PERIOD_MS;
+            }
+            else {
+                // If we've failed to get an app list so far, retry much earlier
+                return APPLIST_FAILED_POLLING_RETRY_MS;
             }
         }
 
-        private boolean waitPollingDelay() {
+        private void runScheduledPoll(int generation) {
+            synchronized (this) {
+                if (!active || pollGeneration != generation) {
+                    return;
+                }
+                polling = true;
+            }
+
+            boolean keepPolling;
             try {
-                synchronized (pollEvent) {
-                    if (receivedAppList) {
-                        // If we've already reported an app list successfully,
-                        // wait the full polling period
-                        pollEvent.wait(APPLIST_POLLING_PERIOD_MS);
-                    }
-                    else {
-                        // If we've failed to get an app list so far, retry much earlier
-                        pollEvent.wait(APPLIST_FAILED_POLLING_RETRY_MS);
-                    }
+                keepPolling = pollAppList();
+            } finally {
+                synchronized (this) {
+                    polling = false;
                 }
-            } catch (InterruptedException e) {
-                return false;
             }
 
-            return thread != null && !thread.isInterrupted();
+            synchronized (this) {
+                if (keepPolling && active && pollGeneration == generation) {
+                    schedulePoll(getPollingDelayMs());
+                }
+            }
         }
 
         private PollingTuple getPollingTuple(ComputerDetails details) {
@@ -878,121 +1095,125 @@ public class ComputerManagerService extends Service {
             return null;
         }
 
-        public void start() {
-            thread = new Thread() {
-                @Override
-                public void run() {
-                    int emptyAppListResponses = 0;
-                    do {
-                        // Can't poll if it's not online or paired
-                        if (computer.state != ComputerDetails.State.ONLINE ||
-                                computer.pairState != PairingManager.PairState.PAIRED) {
-                            if (listener != null) {
-                                listener.notifyComputerUpdated(computer);
-                            }
-                            continue;
-                        }
-
-                        // Can't poll if there's no UUID yet
-                        if (computer.uuid == null) {
-                            continue;
-                        }
+        // Returns false if polling should stop
+        private boolean pollAppList() {
+            // Can't poll if it's not online or paired
+            if (computer.state != ComputerDetails.State.ONLINE ||
+                    computer.pairState != PairingManager.PairState.PAIRED) {
+                if (listener != null) {
+                    listener.notifyComputerUpdated(computer);
+                }
+                return true;
+            }
 
-                        PollingTuple tuple = getPollingTuple(computer);
+            // Can't poll if there's no UUID yet
+            if (computer.uuid == null) {
+                return true;
+            }
 
-                        try {
-                            NvHTTP http = new NvHTTP(ServerHelper.getCurrentAddressFromComputer(computer), computer.httpsPort, idManager.getUniqueId(), "",
-                                    computer.serverCert, PlatformBinding.getCryptoProvider(ComputerManagerService.this));
+            PollingTuple tuple = getPollingTuple(computer);
 
-                            String appList;
-                            if (tuple != null) {
-                                // If we're polling this machine too, grab the network lock
-                                // while doing the app list request to prevent other requests
-                                // from being issued in the meantime.
-                                synchronized (tuple.networkLock) {
-                                    appList = http.getAppListRaw();
-                                }
-                            }
-                            else {
-                                // No polling is happening now, so we just call it directly
-                                appList = http.getAppListRaw();
-                            }
+            try {
+                NvHTTP http = new NvHTTP(ServerHelper.getCurrentAddressFromComputer(computer), computer.httpsPort, idManager.getUniqueId(), "",
+                        computer.serverCert, PlatformBinding.getCryptoProvider(ComputerManagerService.this));
+
+                String appList;
+                if (tuple != null) {
+                    // If we're polling this machine too, grab the network lock
+                    // while doing the app list request to prevent other requests
+                    // from being issued in the meantime.
+                    synchronized (tuple.networkLock) {
+                        appList = http.getAppListRaw();
+                    }
+                }
+                else {
+                    // No polling is happening now, so we just call it directly
+                    appList = http.getAppListRaw();
+                }
 
-                            List<NvApp> list = NvHTTP.getAppListByReader(new StringReader(appList));
-                            if (list.isEmpty()) {
-                                LimeLog.warning("Empty app list received from " + computer.uuid);
+                List<NvApp> list = NvHTTP.getAppListByReader(new StringReader(appList));
+                if (list.isEmpty()) {
+                    LimeLog.warning("Empty app list received from " + computer.uuid);
 
-                                // The app list might actually be empty, so if we get an empty response a few times
-                                // in a row, we'll go ahead and believe it.
-                                emptyAppListResponses++;
-                            }
-                            if (!appList.isEmpty() &&
-                                    (!list.isEmpty() || emptyAppListResponses >= EMPTY_LIST_THRESHOLD)) {
-                                // Open the cache file
-                                try (final OutputStream cacheOut = CacheHelper.openCacheFileForOutput(
-                                        getCacheDir(), "applist", computer.uuid)
-                                ) {
-                                    CacheHelper.writeStringToOutputStream(cacheOut, appList);
-                                } catch (IOException e) {
-                                    e.printStackTrace();
-                                }
+                    // The app list might actually be empty, so if we get an empty response a few times
+                    // in a row, we'll go ahead and believe it.
+                    emptyAppListResponses++;
+                }
+                if (!appList.isEmpty() &&
+                        (!list.isEmpty() || emptyAppListResponses >= EMPTY_LIST_THRESHOLD)) {
+                    // Open the cache file
+                    try (final OutputStream cacheOut = CacheHelper.openCacheFileForOutput(
+                            getCacheDir(), "applist", computer.uuid)
+                    ) {
+                        CacheHelper.writeStringToOutputStream(cacheOut, appList);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
 
-                                // Reset empty count if it wasn't empty this time
-                                if (!list.isEmpty()) {
-                                    emptyAppListResponses = 0;
-                                }
+                    // Reset empty count if it wasn't empty this time
+                    if (!list.isEmpty()) {
+                        emptyAppListResponses = 0;
+                    }
 
-                                // Update the computer
-                                computer.rawAppList = appList;
-                                receivedAppList = true;
+                    // Update the computer
+                    computer.rawAppList = appList;
+                    receivedAppList = true;
 
-                                // Notify that the app list has been updated
-                                // and ensure that the thread is still active
-                                if (listener != null && thread != null) {
-                                    listener.notifyComputerUpdated(computer);
-                                }
-                            }
-                            else if (appList.isEmpty()) {
-                                LimeLog.warning("Null app list received from " + computer.uuid);
-                            }
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        } catch (XmlPullParserException e) {
-                            e.printStackTrace();
-                        } catch (InterruptedException e) {
-                            // The thread was interrupted. Stop polling.
-                            LimeLog.info("App list polling thread interrupted for " + computer.name);
-                            Thread.currentThread().interrupt(); // Restore the interrupted status
-                            break;
-                        }
-                    } while (waitPollingDelay());
+                    // Notify that the app list has been updated
+                    // and ensure that the poller is still active
+                    if (listener != null && active) {
+                        listener.notifyComputerUpdated(computer);
+                    }
                 }
-            };
-            thread.setName("App list polling thread for " + computer.name);
-            thread.start();
-        }
+                else if (appList.isEmpty()) {
+                    LimeLog.warning("Null app list received from " + computer.uuid);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (XmlPullParserException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                // The poll was cancelled. Stop polling.
+                LimeLog.info("App list polling interrupted for " + computer.name);
+                return false;
+            }
 
-        public void stop() {
-            if (thread != null) {
-                thread.interrupt();
+            return true;
+        }
 
-                // Don't join here because we might be blocked on network I/O
+        public synchronized void start() {
+            active = true;
+            schedulePoll(0);
+        }
 
-                thread = null;
+        public synchronized void stop() {
+            active = false;
+            pollGeneration++;
+            if (pollFuture != null) {
+                // Don't wait here because we might be blocked on network I/O
+                pollFuture.cancel(true);
+                pollFuture = null;
             }
         }
     }
 }
 
 class PollingTuple {
-    public Thread thread;
+    // The next or running poll, guarded by the pollingTuples lock like pollGeneration
+    public ScheduledFuture<?> pollFuture;
+    public int pollGeneration;
     public final ComputerDetails computer;
     public final Object networkLock;
     public long lastSuccessfulPollMs;
+    public long lastFullPollMs;
+
+    // Adaptive polling state, only changed while polling this host
+    public int offlineCount;
+    public int offlinePolls;
+    public int fastPollsRemaining;
 
-    public PollingTuple(ComputerDetails computer, Thread thread) {
+    public PollingTuple(ComputerDetails computer) {
         this.computer = computer;
-        this.thread = thread;
         this.networkLock = new Object();
     }
 }
@@ -0,0 +1,162 @@
+package com.limelight.computers;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.limelight.nvstream.http.ComputerDetails;
+
+// Checks which addresses of a host accept TCP connections on its HTTP or HTTPS port, using
+// non-blocking connects on all of them at once. This is much cheaper than a serverinfo request
+// and fails within the probe timeout instead of the HTTP connect timeout when a host is gone.
+//
+// Only IP literals are probed. Resolving a hostname could block for longer than the whole
+// probe budget, so hostnames are always passed through to the full request, which resolves
+// them anyway.
+class LivenessProbe {
+    // Returns the addresses where either port accepted a connection before the timeout,
+    // plus any hostnames since those aren't probed
+    static List<ComputerDetails.AddressTuple> probe(List<ComputerDetails.AddressTuple> addresses, int httpsPort, long timeoutMs)
+            throws InterruptedException {
+        LinkedHashSet<ComputerDetails.AddressTuple> reachable = new LinkedHashSet<>();
+        ArrayList<SocketChannel> channels = new ArrayList<>();
+
+        try (Selector selector = Selector.open()) {
+            int pending = 0;
+
+            for (ComputerDetails.AddressTuple address : addresses) {
+                InetAddress literal = parseLiteralAddress(address.address);
+                if (literal == null) {
+                    reachable.add(address);
+                    continue;
+                }
+
+                pending += startConnect(selector, channels, reachable, address, literal, address.port);
+                if (httpsPort > 0 && httpsPort != address.port) {
+                    pending += startConnect(selector, channels, reachable, address, literal, httpsPort);
+                }
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (pending > 0) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    break;
+                }
+                if (selector.select(remainingMs) == 0) {
+                    // Woken without a result, so recheck the deadline
+                    continue;
+                }
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    try {
+                        if (channel.finishConnect()) {
+                            reachable.add((ComputerDetails.AddressTuple) key.attachment());
+                        }
+                    } catch (IOException e) {
+                        // Refused or unreachable
+                    }
+                    key.cancel();
+                    pending--;
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            // If we can't probe at all, let the caller fall back to full requests
+            e.printStackTrace();
+            return new ArrayList<>(addresses);
+        } finally {
+            for (SocketChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+            }
+        }
+
+        return new ArrayList<>(reachable);
+    }
+
+    // Returns the address if it's an IPv4 or IPv6 literal, or null if it's a hostname. This
+    // never does a DNS lookup, since getByName() only parses the strings it is given here.
+    static InetAddress parseLiteralAddress(String address) {
+        if (address == null || address.isEmpty()) {
+            return null;
+        }
+
+        if (address.indexOf(':') >= 0) {
+            // Hostnames can't contain a colon, so this can only be IPv6 (possibly with a scope)
+            if (address.startsWith("[") && address.endsWith("]")) {
+                address = address.substring(1, address.length() - 1);
+            }
+        }
+        else if (!isIpv4Literal(address)) {
+            return null;
+        }
+
+        try {
+            return InetAddress.getByName(address);
+        } catch (UnknownHostException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private static boolean isIpv4Literal(String address) {
+        String[] parts = address.split("\\.", -1);
+        if (parts.length != 4) {
+            return false;
+        }
+
+        for (String part : parts) {
+            if (part.isEmpty() || part.length() > 3) {
+                return false;
+            }
+            for (int i = 0; i < part.length(); i++) {
+                if (part.charAt(i) < '0' || part.charAt(i) > '9') {
+                    return false;
+                }
+            }
+            if (Integer.parseInt(part) > 255) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns the number of connects left pending
+    private static int startConnect(Selector selector, List<SocketChannel> channels,
+                                    LinkedHashSet<ComputerDetails.AddressTuple> reachable,
+                                    ComputerDetails.AddressTuple address, InetAddress literal,
+                                    int port) throws IOException {
+        InetSocketAddress target = new InetSocketAddress(literal, port);
+
+        SocketChannel channel = SocketChannel.open();
+        channels.add(channel);
+        channel.configureBlocking(false);
+        try {
+            if (channel.connect(target)) {
+                // Connected immediately, which can happen for loopback
+                reachable.add(address);
+                return 0;
+            }
+        } catch (IOException e) {
+            // No route to this address
+            return 0;
+        }
+
+        channel.register(selector, SelectionKey.OP_CONNECT, address);
+        return 1;
+    }
+}
@@ -0,0 +1,187 @@
+package com.limelight.nvstream;
+
+import com.limelight.LimeLog;
+
+// Closed-loop bitrate controller fed once per video stats window (about a second).
+//
+// It uses AIMD: a window is congested if frames were lost, the RTT rose well above the
+// best RTT seen so far, or decoded frames are piling up. After a few consecutive congested
+// windows the bitrate is cut multiplicatively; after a longer run of clean windows it is
+// raised additively, more cautiously near the rate where congestion was last seen.
+// Changes are rate limited since each one is an HTTP request to the host and causes a
+// short quality transition.
+//
+// This class has no Android dependencies so it can be driven by a simulated trace.
+public class AdaptiveBitrateController {
+    // Hysteresis
+    private static final int CONGESTED_WINDOWS_TO_DECREASE = 2;
+    private static final int CLEAN_WINDOWS_TO_INCREASE = 5;
+
+    // Rate limiting
+    private static final long MIN_CHANGE_INTERVAL_MS = 2000;
+    private static final long HOLD_AFTER_DECREASE_MS = 8000;
+
+    // Congestion thresholds
+    private static final float LOSS_RATIO_CONGESTED = 0.02f;
+    private static final float LOSS_RATIO_SEVERE = 0.10f;
+    private static final int LOSS_EVENTS_CONGESTED = 2;
+    private static final int RTT_INFLATION_MIN_MS = 20;
+    private static final int PENDING_FRAMES_CONGESTED = 3;
+
+    // Decrease factors and increase step
+    private static final float DECREASE_FACTOR = 0.85f;
+    private static final float SEVERE_DECREASE_FACTOR = 0.7f;
+    private static final float INCREASE_FRACTION_OF_MAX = 0.05f;
+    private static final int MIN_INCREASE_STEP_KBPS = 500;
+
+    private final int minBitrateKbps;
+    private int maxBitrateKbps;
+    private int currentBitrateKbps;
+
+    // A change that was requested but hasn't been confirmed by the host yet
+    private int pendingBitrateKbps;
+    // Bumped by every request and manual change, so a reply to an older request can be ignored
+    private int requestSequence;
+
+    private int congestedWindows;
+    private int cleanWindows;
+    private long lastChangeTimeMs = Long.MIN_VALUE / 2;
+    private long lastDecreaseTimeMs = Long.MIN_VALUE / 2;
+    // Bitrate at which congestion was last detected, or 0 if never
+    private int lastCongestedBitrateKbps;
+
+    // Lowest RTT seen, used as the uncongested baseline
+    private int baseRttMs = Integer.MAX_VALUE;
+
+    private String lastDecision = "none";
+
+    public AdaptiveBitrateController(int minBitrateKbps, int maxBitrateKbps, int initialBitrateKbps) {
+        this.minBitrateKbps = minBitrateKbps;
+        this.maxBitrateKbps = Math.max(minBitrateKbps, maxBitrateKbps);
+        this.currentBitrateKbps = clamp(initialBitrateKbps);
+    }
+
+    private int clamp(int bitrateKbps) {
+        return Math.max(minBitrateKbps, Math.min(maxBitrateKbps, bitrateKbps));
+    }
+
+    // Processes one stats window. Returns the bitrate to request from the host,
+    // or -1 to leave it unchanged.
+    public synchronized int onStatsWindow(long nowMs, int totalFrames, int framesLost, int frameLossEvents,
+                                          int rttMs, int rttVarianceMs, int pendingFrames) {
+        if (pendingBitrateKbps != 0 || totalFrames <= 0) {
+            // Don't judge the network while a change is in flight or the stream is idle
+            return -1;
+        }
+
+        if (rttMs > 0) {
+            baseRttMs = Math.min(baseRttMs, rttMs);
+        }
+
+        float lossRatio = (float) framesLost / totalFrames;
+        int rttInflationMs = rttMs > 0 && baseRttMs != Integer.MAX_VALUE ? rttMs - baseRttMs : 0;
+        boolean rttCongested = rttInflationMs > Math.max(RTT_INFLATION_MIN_MS, 2 * rttVarianceMs);
+        boolean severe = lossRatio >= LOSS_RATIO_SEVERE;
+        boolean congested = severe ||
+                lossRatio >= LOSS_RATIO_CONGESTED ||
+                frameLossEvents >= LOSS_EVENTS_CONGESTED ||
+                rttCongested ||
+                pendingFrames >= PENDING_FRAMES_CONGESTED;
+
+        if (congested) {
+            congestedWindows++;
+            cleanWindows = 0;
+        } else {
+            cleanWindows++;
+            congestedWindows = 0;
+        }
+
+        String signals = "loss " + framesLost + "/" + totalFrames + " (" + frameLossEvents + " events), rtt " +
+                rttMs + "±" + rttVarianceMs + " ms (base " + (baseRttMs == Integer.MAX_VALUE ? "?" : baseRttMs) +
+                "), pending " + pendingFrames;
+
+        if (nowMs - lastChangeTimeMs < MIN_CHANGE_INTERVAL_MS) {
+            return -1;
+        }
+
+        int target = -1;
+        if (congested && (severe || congestedWindows >= CONGESTED_WINDOWS_TO_DECREASE)) {
+            if (currentBitrateKbps > minBitrateKbps) {
+                lastCongestedBitrateKbps = currentBitrateKbps;
+                target = clamp((int) (currentBitrateKbps * (severe ? SEVERE_DECREASE_FACTOR : DECREASE_FACTOR)));
+                lastDecreaseTimeMs = nowMs;
+                lastDecision = "decrease " + currentBitrateKbps + " -> " + target + " kbps: " + signals;
+            }
+        } else if (!congested && cleanWindows >= CLEAN_WINDOWS_TO_INCREASE &&
+                nowMs - lastDecreaseTimeMs >= HOLD_AFTER_DECREASE_MS) {
+            if (currentBitrateKbps < maxBitrateKbps) {
+                int step = Math.max(MIN_INCREASE_STEP_KBPS, (int) (maxBitrateKbps * INCREASE_FRACTION_OF_MAX));
+                if (lastCongestedBitrateKbps != 0 && currentBitrateKbps + step >= lastCongestedBitrateKbps * 0.9f) {
+                    // Probe carefully around the rate that caused trouble last time
+                    step /= 2;
+                }
+                target = clamp(currentBitrateKbps + step);
+                lastDecision = "increase " + currentBitrateKbps + " -> " + target + " kbps: " + signals;
+            }
+        }
+
+        if (target < 0 || target == currentBitrateKbps) {
+            return -1;
+        }
+
+        LimeLog.info("Adaptive bitrate: " + lastDecision);
+        congestedWindows = 0;
+        cleanWindows = 0;
+        lastChangeTimeMs = nowMs;
+        pendingBitrateKbps = target;
+        requestSequence++;
+        return target;
+    }
+
+    // Identifies the request last returned by onStatsWindow(). Read it while holding the
+    // controller's lock across both calls, so a manual change can't slip in between.
+    public synchronized int getRequestSequence() {
+        return requestSequence;
+    }
+
+    // The host accepted a bitrate requested by onStatsWindow()
+    public synchronized void onBitrateApplied(int sequence, int bitrateKbps) {
+        if (sequence != requestSequence) {
+            LimeLog.info("Adaptive bitrate: ignoring stale change to " + bitrateKbps + " kbps");
+            return;
+        }
+
+        currentBitrateKbps = bitrateKbps;
+        pendingBitrateKbps = 0;
+    }
+
+    // The host rejected or never received the last requested bitrate
+    public synchronized void onBitrateRejected(int sequence) {
+        if (sequence != requestSequence) {
+            return;
+        }
+
+        LimeLog.warning("Adaptive bitrate: host rejected " + pendingBitrateKbps + " kbps");
+        pendingBitrateKbps = 0;
+    }
+
+    // The user picked a bitrate by hand, which becomes the new ceiling. It also supersedes
+    // any change still in flight, since that was chosen against the old ceiling.
+    public synchronized void onManualBitrateChange(int bitrateKbps) {
+        maxBitrateKbps = Math.max(minBitrateKbps, bitrateKbps);
+        currentBitrateKbps = clamp(bitrateKbps);
+        pendingBitrateKbps = 0;
+        requestSequence++;
+        lastCongestedBitrateKbps = 0;
+        congestedWindows = 0;
+        cleanWindows = 0;
+    }
+
+    public synchronized int getCurrentBitrate() {
+        return currentBitrateKbps;
+    }
+
+    public synchronized String getLastDecision() {
+        return lastDecision;
+    }
+}
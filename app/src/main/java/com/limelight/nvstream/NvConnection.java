@@ -465,8 +465,18 @@ public class NvConnection {
             context.connListener = connectionListener;
             context.videoCapabilities = videoDecoderRenderer.getCapabilities();
 
+            StartupTimeline timeline = new StartupTimeline();
+
+            // Let the decoder get ready while the host launches the app
+            if (!context.streamConfig.getControlOnly()) {
+                videoDecoderRenderer.prewarm(timeline, context.streamConfig.getSupportedVideoFormats(),
+                        context.streamConfig.getWidth(), context.streamConfig.getHeight(),
+                        context.streamConfig.getRefreshRate());
+            }
+
             String appName = context.streamConfig.getApp().getAppName();
 
+            timeline.stageStarting(appName);
             context.connListener.stageStarting(appName);
 
             try {
@@ -474,6 +484,7 @@ public class NvConnection {
                     context.connListener.stageFailed(appName, 0, 0);
                     return;
                 }
+                timeline.stageComplete(appName);
                 context.connListener.stageComplete(appName);
             } catch (HostHttpResponseException e) {
                 e.printStackTrace();
@@ -508,7 +519,7 @@ public class NvConnection {
             // Moonlight-core is not thread-safe with respect to connection start and stop, so
             // we must not invoke that functionality in parallel.
             synchronized (MoonBridge.class) {
-                MoonBridge.setupBridge(videoDecoderRenderer, audioRenderer, connectionListener);
+                MoonBridge.setupBridge(videoDecoderRenderer, audioRenderer, connectionListener, timeline);
                 int ret = MoonBridge.startConnection(context.serverAddress.address,
                         context.serverAppVersion, context.serverGfeVersion, context.rtspSessionUrl,
                         context.serverCodecModeSupport,
@@ -0,0 +1,64 @@
+package com.limelight.nvstream;
+
+import android.os.SystemClock;
+
+import com.limelight.LimeLog;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Records when each connection stage starts and finishes, relative to the start of
+// NvConnection.start(), and logs a time-to-first-frame breakdown once the first frame
+// comes out of the decoder. Stages may overlap (e.g. decoder pre-warm and app launch).
+public class StartupTimeline {
+    private final long startTimeMs = SystemClock.elapsedRealtime();
+
+    // Stage name -> {start, end} in ms since startTimeMs, end is -1 while in progress
+    private final Map<String, long[]> stages = new LinkedHashMap<>();
+    private long firstFrameTimeMs = -1;
+
+    private long now() {
+        return SystemClock.elapsedRealtime() - startTimeMs;
+    }
+
+    public synchronized void stageStarting(String stage) {
+        stages.put(stage, new long[]{now(), -1});
+    }
+
+    public synchronized void stageComplete(String stage) {
+        long[] times = stages.get(stage);
+        if (times != null) {
+            times[1] = now();
+        }
+    }
+
+    public synchronized void firstFrameDecoded() {
+        if (firstFrameTimeMs >= 0) {
+            return;
+        }
+
+        firstFrameTimeMs = now();
+        LimeLog.info(getSummary());
+    }
+
+    public synchronized String getSummary() {
+        StringBuilder str = new StringBuilder();
+        if (firstFrameTimeMs >= 0) {
+            str.append("Time to first frame: ").append(firstFrameTimeMs).append(" ms");
+        } else {
+            str.append("Startup timeline");
+        }
+
+        for (Map.Entry<String, long[]> stage : stages.entrySet()) {
+            long[] times = stage.getValue();
+            str.append("\n\t").append(stage.getKey()).append(": ").append(times[0]).append(" - ");
+            if (times[1] >= 0) {
+                str.append(times[1]).append(" ms (").append(times[1] - times[0]).append(" ms)");
+            } else {
+                str.append("?");
+            }
+        }
+
+        return str.toString();
+    }
+}
@@ -2,6 +2,8 @@ package com.limelight.nvstream.av.audio;
 
 import com.limelight.nvstream.jni.MoonBridge;
 
+import java.nio.ByteBuffer;
+
 public interface AudioRenderer {
     int setup(MoonBridge.AudioConfiguration audioConfiguration, int sampleRate, int samplesPerFrame);
 
@@ -10,6 +12,16 @@ public interface AudioRenderer {
     void stop();
     
     void playDecodedAudio(short[] audioData);
+
+    // Optional zero-copy PCM path. If this returns a direct buffer with at least sizeBytes of
+    // capacity, native code decodes 16-bit PCM straight into it and calls playDirectAudio()
+    // with the number of valid bytes instead of playDecodedAudio().
+    default ByteBuffer getDirectPcmBuffer(int sizeBytes) {
+        return null;
+    }
+
+    default void playDirectAudio(int lengthBytes) {
+    }
     
     void cleanup();
 }
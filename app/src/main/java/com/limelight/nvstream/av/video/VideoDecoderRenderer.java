@@ -1,6 +1,17 @@
 package com.limelight.nvstream.av.video;
 
+import com.limelight.nvstream.StartupTimeline;
+
+import java.nio.ByteBuffer;
+
 public abstract class VideoDecoderRenderer {
+    // Called as soon as the requested stream parameters are known, while the host is still
+    // launching the app. Renderers may speculatively prepare a decoder in the background, but
+    // setup() will still be called later with the negotiated parameters. The timeline is used
+    // to report decoder stages as part of the connection startup time.
+    public void prewarm(StartupTimeline timeline, int supportedVideoFormats, int width, int height, int redrawRate) {
+    }
+
     public abstract int setup(int format, int width, int height, int redrawRate);
 
     public abstract void start();
@@ -13,6 +24,21 @@ public abstract class VideoDecoderRenderer {
                                          int frameNumber, int frameType, char frameHostProcessingLatency,
                                          long receiveTimeUs, long enqueueTimeUs);
     
+    // Zero-copy submission path, only used if CAPABILITY_ZERO_COPY_SUBMIT is returned by
+    // getCapabilities(). The bridge first obtains a direct buffer positioned where the picture
+    // data should be written, copies the decode unit into it, then commits the written length.
+    // Parameter sets are still delivered through submitDecodeUnit(). Returning null will cause
+    // an IDR frame to be requested.
+    public ByteBuffer getDirectSubmitBuffer(int decodeUnitLength, int frameNumber, int frameType,
+                                            char frameHostProcessingLatency,
+                                            long receiveTimeUs, long enqueueTimeUs) {
+        return null;
+    }
+
+    public int submitDirectDecodeUnit(int decodeUnitLength) {
+        return 0;
+    }
+
     public abstract void cleanup();
 
     public abstract int getCapabilities();
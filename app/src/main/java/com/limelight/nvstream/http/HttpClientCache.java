@@ -0,0 +1,327 @@
+package com.limelight.nvstream.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509KeyManager;
+import javax.net.ssl.X509TrustManager;
+
+import com.limelight.LimeLog;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+
+// Process-wide cache of OkHttp clients, one set per (host, pinned server cert, client cert).
+//
+// The computer manager creates a new NvHTTP for every poll of every host. When each of those
+// built its own clients without a connection pool, every serverinfo request paid for a new TCP
+// connection and, for paired hosts, a full TLS handshake with client cert auth. Clients from
+// this cache keep idle connections alive between polls, and all requests for an entry share
+// one SSLContext so the TLS session can be resumed when a new connection is needed.
+class HttpClientCache {
+    // How long idle keep-alive connections are held open. This covers several poll intervals.
+    private static final int KEEP_ALIVE_MS = 30000;
+    private static final int MAX_IDLE_CONNECTIONS = 2;
+
+    // Entries that have not been used for this long are dropped along with their connections
+    private static final long ENTRY_IDLE_TIMEOUT_MS = 5 * 60 * 1000;
+
+    private static final int STATS_LOG_INTERVAL = 500;
+
+    private static final HashMap<Key, Clients> cache = new HashMap<>();
+
+    private static X509TrustManager defaultTrustManager;
+
+    // Counters for all cached clients
+    private static final AtomicLong requests = new AtomicLong();
+    private static final AtomicLong failedRequests = new AtomicLong();
+    private static final AtomicLong totalRequestTimeNs = new AtomicLong();
+    private static final AtomicLong reusedConnections = new AtomicLong();
+    private static final AtomicLong tcpConnects = new AtomicLong();
+    private static final AtomicLong fullHandshakes = new AtomicLong();
+    private static final AtomicLong resumedHandshakes = new AtomicLong();
+
+    static class Clients {
+        final OkHttpClient longConnectTimeout;
+        final OkHttpClient shortConnectTimeout;
+        final OkHttpClient longConnectNoReadTimeout;
+
+        private long lastUsedMs;
+
+        private Clients(OkHttpClient longConnectTimeout) {
+            this.longConnectTimeout = longConnectTimeout;
+            this.shortConnectTimeout = longConnectTimeout.newBuilder()
+                    .connectTimeout(NvHTTP.SHORT_CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .build();
+            this.longConnectNoReadTimeout = longConnectTimeout.newBuilder()
+                    .readTimeout(0, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+
+        private void evictConnections() {
+            // All three clients share this pool
+            longConnectTimeout.connectionPool().evictAll();
+        }
+    }
+
+    private static class Key {
+        private final String host;
+        private final X509Certificate serverCert;
+        private final X509Certificate clientCert;
+
+        Key(String host, X509Certificate serverCert, X509Certificate clientCert) {
+            this.host = host;
+            this.serverCert = serverCert;
+            this.clientCert = clientCert;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return host.equals(other.host) &&
+                    Objects.equals(serverCert, other.serverCert) &&
+                    Objects.equals(clientCert, other.clientCert);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, serverCert, clientCert);
+        }
+    }
+
+    static Clients get(String host, X509Certificate serverCert, LimelightCryptoProvider cryptoProvider) {
+        Key key = new Key(host, serverCert, cryptoProvider.getClientCertificate());
+        long now = System.currentTimeMillis();
+
+        synchronized (cache) {
+            evictIdleEntries(now);
+
+            Clients clients = cache.get(key);
+            if (clients == null) {
+                clients = createClients(serverCert, cryptoProvider);
+                cache.put(key, clients);
+            }
+            clients.lastUsedMs = now;
+            return clients;
+        }
+    }
+
+    private static void evictIdleEntries(long now) {
+        Iterator<Map.Entry<Key, Clients>> it = cache.entrySet().iterator();
+        while (it.hasNext()) {
+            Clients clients = it.next().getValue();
+            if (now - clients.lastUsedMs > ENTRY_IDLE_TIMEOUT_MS) {
+                clients.evictConnections();
+                it.remove();
+            }
+        }
+    }
+
+    private static synchronized X509TrustManager getDefaultTrustManager() {
+        if (defaultTrustManager != null) {
+            return defaultTrustManager;
+        }
+
+        try {
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init((KeyStore) null);
+
+            for (TrustManager tm : tmf.getTrustManagers()) {
+                if (tm instanceof X509TrustManager) {
+                    defaultTrustManager = (X509TrustManager) tm;
+                    return defaultTrustManager;
+                }
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (KeyStoreException e) {
+            throw new RuntimeException(e);
+        }
+
+        throw new IllegalStateException("No X509 trust manager found");
+    }
+
+    private static Clients createClients(final X509Certificate serverCert, final LimelightCryptoProvider cryptoProvider) {
+        X509KeyManager keyManager = new X509KeyManager() {
+            public String chooseClientAlias(String[] keyTypes,
+                    Principal[] issuers, Socket socket) { return "Limelight-RSA"; }
+            public String chooseServerAlias(String keyType, Principal[] issuers,
+                    Socket socket) { return null; }
+            public X509Certificate[] getCertificateChain(String alias) {
+                return new X509Certificate[] {cryptoProvider.getClientCertificate()};
+            }
+            public String[] getClientAliases(String keyType, Principal[] issuers) { return null; }
+            public PrivateKey getPrivateKey(String alias) {
+                return cryptoProvider.getClientPrivateKey();
+            }
+            public String[] getServerAliases(String keyType, Principal[] issuers) { return null; }
+        };
+
+        final X509TrustManager defaultTrustManager = getDefaultTrustManager();
+        X509TrustManager trustManager = new X509TrustManager() {
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+            public void checkClientTrusted(X509Certificate[] certs, String authType) {
+                throw new IllegalStateException("Should never be called");
+            }
+            public void checkServerTrusted(X509Certificate[] certs, String authType) throws CertificateException {
+                try {
+                    // Try the default trust manager first to allow pairing with certificates
+                    // that chain up to a trusted root CA. This will raise CertificateException
+                    // if the certificate is not trusted (expected for GFE's self-signed certs).
+                    defaultTrustManager.checkServerTrusted(certs, authType);
+                } catch (CertificateException e) {
+                    // Check the server certificate if we've paired to this host
+                    if (certs.length == 1 && serverCert != null) {
+                        if (!certs[0].equals(serverCert)) {
+                            throw new CertificateException("Certificate mismatch");
+                        }
+                    }
+                    else {
+                        // The cert chain doesn't look like a self-signed cert or we don't have
+                        // a certificate pinned, so re-throw the original validation error.
+                        throw e;
+                    }
+                }
+            }
+        };
+
+        HostnameVerifier hv = new HostnameVerifier() {
+            public boolean verify(String hostname, SSLSession session) {
+                try {
+                    Certificate[] certificates = session.getPeerCertificates();
+                    if (certificates.length == 1 && certificates[0].equals(serverCert)) {
+                        // Allow any hostname if it's our pinned cert
+                        return true;
+                    }
+                } catch (SSLPeerUnverifiedException e) {
+                    e.printStackTrace();
+                }
+
+                // Fall back to default HostnameVerifier for validating CA-issued certs
+                return HttpsURLConnection.getDefaultHostnameVerifier().verify(hostname, session);
+            }
+        };
+
+        // One SSLContext per entry, so its client session cache can resume sessions with this host.
+        // The old per-request SSLContext worked around an SSLv3 fallback bug on Android versions
+        // older than our minSdk.
+        SSLContext sc;
+        try {
+            sc = SSLContext.getInstance("TLS");
+            sc.init(new KeyManager[] { keyManager }, new TrustManager[] { trustManager }, new SecureRandom());
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            throw new RuntimeException(e);
+        }
+
+        return new Clients(new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MS, TimeUnit.MILLISECONDS))
+                .sslSocketFactory(sc.getSocketFactory(), trustManager)
+                .hostnameVerifier(hv)
+                .eventListenerFactory(call -> new StatsListener())
+                .readTimeout(NvHTTP.READ_TIMEOUT, TimeUnit.MILLISECONDS)
+                .connectTimeout(NvHTTP.LONG_CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS)
+                .proxy(Proxy.NO_PROXY)
+                .build());
+    }
+
+    // One instance per call
+    private static class StatsListener extends EventListener {
+        private long callStartNs;
+        private long connectStartMs;
+        private boolean connected;
+
+        @Override
+        public void callStart(Call call) {
+            callStartNs = System.nanoTime();
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStartMs = System.currentTimeMillis();
+            connected = true;
+            tcpConnects.incrementAndGet();
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            if (!connected) {
+                reusedConnections.incrementAndGet();
+                return;
+            }
+
+            Socket socket = connection.socket();
+            if (socket instanceof SSLSocket) {
+                // A resumed session was created by an earlier handshake
+                SSLSession session = ((SSLSocket) socket).getSession();
+                if (session.getCreationTime() < connectStartMs) {
+                    resumedHandshakes.incrementAndGet();
+                }
+                else {
+                    fullHandshakes.incrementAndGet();
+                }
+            }
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            recordCall();
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            failedRequests.incrementAndGet();
+            recordCall();
+        }
+
+        private void recordCall() {
+            totalRequestTimeNs.addAndGet(System.nanoTime() - callStartNs);
+            if (requests.incrementAndGet() % STATS_LOG_INTERVAL == 0) {
+                LimeLog.info(getStatistics());
+            }
+        }
+    }
+
+    static String getStatistics() {
+        long count = requests.get();
+        return String.format("HTTP clients: %d requests (%d failed), avg %.1f ms, %d reused connections, " +
+                        "%d new connections, %d full TLS handshakes, %d resumed TLS handshakes",
+                count, failedRequests.get(),
+                count > 0 ? totalRequestTimeNs.get() / 1000000.0 / count : 0.0,
+                reusedConnections.get(), tcpConnects.get(),
+                fullHandshakes.get(), resumedHandshakes.get());
+    }
+}
@@ -10,16 +10,6 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.net.Inet4Address;
 import java.net.InetAddress;
-import java.net.Proxy;
-import java.net.Socket;
-import java.security.KeyManagementException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.Principal;
-import java.security.PrivateKey;
-import java.security.SecureRandom;
-import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
@@ -29,24 +19,13 @@ import java.util.ListIterator;
 import java.util.Objects;
 import java.util.Stack;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.KeyManager;
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLHandshakeException;
-import javax.net.ssl.SSLPeerUnverifiedException;
-import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.TrustManagerFactory;
-import javax.net.ssl.X509KeyManager;
-import javax.net.ssl.X509TrustManager;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -58,7 +37,6 @@ import com.limelight.nvstream.ConnectionContext;
 import com.limelight.nvstream.http.PairingManager.PairState;
 import com.limelight.nvstream.jni.MoonBridge;
 
-import okhttp3.ConnectionPool;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -88,112 +66,21 @@ public class NvHTTP {
     private OkHttpClient httpClientLongConnectNoReadTimeout;
     private OkHttpClient httpClientShortConnectTimeout;
 
-    private X509TrustManager defaultTrustManager;
-    private X509TrustManager trustManager;
-    private X509KeyManager keyManager;
+    private final LimelightCryptoProvider cryptoProvider;
     private X509Certificate serverCert;
 
     void setServerCert(X509Certificate serverCert) {
         this.serverCert = serverCert;
-    }
-
-    private static X509TrustManager getDefaultTrustManager() {
-        try {
-            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-            tmf.init((KeyStore) null);
-
-            for (TrustManager tm : tmf.getTrustManagers()) {
-                if (tm instanceof X509TrustManager) {
-                    return (X509TrustManager) tm;
-                }
-            }
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        } catch (KeyStoreException e) {
-            throw new RuntimeException(e);
-        }
 
-        throw new IllegalStateException("No X509 trust manager found");
+        // Connections validated against the old pinned cert must not be reused
+        updateHttpClients();
     }
 
-    private void initializeHttpState(final LimelightCryptoProvider cryptoProvider) {
-        keyManager = new X509KeyManager() {
-            public String chooseClientAlias(String[] keyTypes,
-                    Principal[] issuers, Socket socket) { return "Limelight-RSA"; }
-            public String chooseServerAlias(String keyType, Principal[] issuers,
-                    Socket socket) { return null; }
-            public X509Certificate[] getCertificateChain(String alias) {
-                return new X509Certificate[] {cryptoProvider.getClientCertificate()};
-            }
-            public String[] getClientAliases(String keyType, Principal[] issuers) { return null; }
-            public PrivateKey getPrivateKey(String alias) {
-                return cryptoProvider.getClientPrivateKey();
-            }
-            public String[] getServerAliases(String keyType, Principal[] issuers) { return null; }
-        };
-
-        defaultTrustManager = getDefaultTrustManager();
-        trustManager = new X509TrustManager() {
-            public X509Certificate[] getAcceptedIssuers() {
-                return new X509Certificate[0];
-            }
-            public void checkClientTrusted(X509Certificate[] certs, String authType) {
-                throw new IllegalStateException("Should never be called");
-            }
-            public void checkServerTrusted(X509Certificate[] certs, String authType) throws CertificateException {
-                try {
-                    // Try the default trust manager first to allow pairing with certificates
-                    // that chain up to a trusted root CA. This will raise CertificateException
-                    // if the certificate is not trusted (expected for GFE's self-signed certs).
-                    defaultTrustManager.checkServerTrusted(certs, authType);
-                } catch (CertificateException e) {
-                    // Check the server certificate if we've paired to this host
-                    if (certs.length == 1 && NvHTTP.this.serverCert != null) {
-                        if (!certs[0].equals(NvHTTP.this.serverCert)) {
-                            throw new CertificateException("Certificate mismatch");
-                        }
-                    }
-                    else {
-                        // The cert chain doesn't look like a self-signed cert or we don't have
-                        // a certificate pinned, so re-throw the original validation error.
-                        throw e;
-                    }
-                }
-            }
-        };
-
-        HostnameVerifier hv = new HostnameVerifier() {
-            public boolean verify(String hostname, SSLSession session) {
-                try {
-                    Certificate[] certificates = session.getPeerCertificates();
-                    if (certificates.length == 1 && certificates[0].equals(NvHTTP.this.serverCert)) {
-                        // Allow any hostname if it's our pinned cert
-                        return true;
-                    }
-                } catch (SSLPeerUnverifiedException e) {
-                    e.printStackTrace();
-                }
-
-                // Fall back to default HostnameVerifier for validating CA-issued certs
-                return HttpsURLConnection.getDefaultHostnameVerifier().verify(hostname, session);
-            }
-        };
-
-        httpClientLongConnectTimeout = new OkHttpClient.Builder()
-                .connectionPool(new ConnectionPool(0, 1, TimeUnit.MILLISECONDS))
-                .hostnameVerifier(hv)
-                .readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS)
-                .connectTimeout(LONG_CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS)
-                .proxy(Proxy.NO_PROXY)
-                .build();
-
-        httpClientShortConnectTimeout = httpClientLongConnectTimeout.newBuilder()
-                .connectTimeout(SHORT_CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS)
-                .build();
-
-        httpClientLongConnectNoReadTimeout = httpClientLongConnectTimeout.newBuilder()
-                .readTimeout(0, TimeUnit.MILLISECONDS)
-                .build();
+    private void updateHttpClients() {
+        HttpClientCache.Clients clients = HttpClientCache.get(baseUrlHttp.host(), serverCert, cryptoProvider);
+        httpClientLongConnectTimeout = clients.longConnectTimeout;
+        httpClientShortConnectTimeout = clients.shortConnectTimeout;
+        httpClientLongConnectNoReadTimeout = clients.longConnectNoReadTimeout;
     }
 
     public HttpUrl getHttpsUrl(boolean likelyOnline) throws IOException, InterruptedException {
@@ -214,8 +101,7 @@ public class NvHTTP {
         if (!clientName.isEmpty()) this.clientName = clientName;
 
         this.serverCert = serverCert;
-
-        initializeHttpState(cryptoProvider);
+        this.cryptoProvider = cryptoProvider;
 
         this.httpsPort = httpsPort;
 
@@ -242,13 +128,29 @@ public class NvHTTP {
             throw new IOException(e);
         }
 
+        updateHttpClients();
+
         this.pm = new PairingManager(this, cryptoProvider);
     }
 
+    // XmlPullParserFactory.newInstance() looks up the implementation reflectively each time,
+    // so every thread keeps one parser around and resets it with setInput() per document.
+    // Parsing never nests on a thread, so sharing it within the thread is safe.
+    private static final ThreadLocal<XmlPullParser> threadParser = new ThreadLocal<>();
+
+    static XmlPullParser getThreadParser() throws XmlPullParserException {
+        XmlPullParser xpp = threadParser.get();
+        if (xpp == null) {
+            XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            xpp = factory.newPullParser();
+            threadParser.set(xpp);
+        }
+        return xpp;
+    }
+
     static String getXmlString(Reader r, String tagname, boolean throwIfMissing) throws XmlPullParserException, IOException {
-        XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        XmlPullParser xpp = factory.newPullParser();
+        XmlPullParser xpp = getThreadParser();
 
         xpp.setInput(r);
         int eventType = xpp.getEventType();
@@ -289,7 +191,7 @@ public class NvHTTP {
         return getXmlString(new StringReader(str), tagname, throwIfMissing);
     }
     
-    private static void verifyResponseStatus(XmlPullParser xpp) throws HostHttpResponseException {
+    static void verifyResponseStatus(XmlPullParser xpp) throws HostHttpResponseException {
         // We use Long.parseLong() because in rare cases GFE can send back a status code of
         // 0xFFFFFFFF, which will cause Integer.parseInt() to throw a NumberFormatException due
         // to exceeding Integer.MAX_VALUE. We'll get the desired error code of -1 by just casting
@@ -368,39 +270,35 @@ public class NvHTTP {
 
     public ComputerDetails getComputerDetails(String serverInfo) throws IOException, XmlPullParserException {
         ComputerDetails details = new ComputerDetails();
+        ServerInfo info = ServerInfo.of(serverInfo);
 
-        details.name = getXmlString(serverInfo, "hostname", false);
+        details.name = info.getHostname();
         if (details.name == null || details.name.isEmpty()) {
             details.name = "UNKNOWN";
         }
 
         // UUID is mandatory to determine which machine is responding
-        details.uuid = getXmlString(serverInfo, "uniqueid", true);
+        details.uuid = info.getUniqueId();
 
-        details.httpsPort = getHttpsPort(serverInfo);
+        details.httpsPort = getHttpsPort(info);
 
-        details.macAddress = getXmlString(serverInfo, "mac", false);
+        details.macAddress = info.getMacAddress();
 
         // FIXME: Do we want to use the current port?
-        details.localAddress = makeTuple(getXmlString(serverInfo, "LocalIP", false), baseUrlHttp.port());
+        details.localAddress = makeTuple(info.getLocalIp(), baseUrlHttp.port());
 
         // This is missing on on recent GFE versions, but it's present on Sunshine
-        details.externalPort = getExternalPort(serverInfo);
-        details.remoteAddress = makeTuple(getXmlString(serverInfo, "ExternalIP", false), details.externalPort);
+        details.externalPort = getExternalPort(info);
+        details.remoteAddress = makeTuple(info.getExternalIp(), details.externalPort);
 
-        details.pairState = getPairState(serverInfo);
-        details.runningGameId = getCurrentGame(serverInfo);
+        details.pairState = info.isPaired() ? PairState.PAIRED : PairState.NOT_PAIRED;
+        details.runningGameId = info.getCurrentGame();
 
         // The MJOLNIR codename was used by GFE but never by any third-party server
-        details.nvidiaServer = getXmlString(serverInfo, "state", true).contains("MJOLNIR");
+        details.nvidiaServer = info.getState().contains("MJOLNIR");
 
-        // Get Sunshine version from serverinfo
-        try {
-            details.sunshineVersion = getSunshineVersion(serverInfo);
-        } catch (Exception e) {
-            // SunshineVersion parsing failed, leave it null
-            details.sunshineVersion = null;
-        }
+        // Only present on Sunshine servers
+        details.sunshineVersion = info.getSunshineVersion();
 
         // We could reach it so it's online
         details.state = ComputerDetails.State.ONLINE;
@@ -412,20 +310,6 @@ public class NvHTTP {
         return getComputerDetails(getServerInfo(likelyOnline));
     }
 
-    // This hack is Android-specific but we do it on all platforms
-    // because it doesn't really matter
-    private OkHttpClient performAndroidTlsHack(OkHttpClient client) {
-        // Doing this each time we create a socket is required
-        // to avoid the SSLv3 fallback that causes connection failures
-        try {
-            SSLContext sc = SSLContext.getInstance("TLS");
-            sc.init(new KeyManager[] { keyManager }, new TrustManager[] { trustManager }, new SecureRandom());
-            return client.newBuilder().sslSocketFactory(sc.getSocketFactory(), trustManager).build();
-        } catch (NoSuchAlgorithmException | KeyManagementException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     private HttpUrl getCompleteUrl(HttpUrl baseUrl, String path, String query) {
         return baseUrl.newBuilder()
                 .addPathSegment(path)
@@ -447,7 +331,7 @@ public class NvHTTP {
     private ResponseBody openHttpConnection(OkHttpClient client, HttpUrl baseUrl, String path, String query) throws IOException, InterruptedException {
         HttpUrl completeUrl = getCompleteUrl(baseUrl, path, query);
         Request request = new Request.Builder().url(completeUrl).get().build();
-        Response response = performAndroidTlsHack(client).newCall(request).execute();
+        Response response = client.newCall(request).execute();
 
         ResponseBody body = response.body();
         
@@ -516,7 +400,7 @@ public class NvHTTP {
             .addHeader("Content-Type", "application/json")
             .build();
             
-        Response response = performAndroidTlsHack(client).newCall(request).execute();
+        Response response = client.newCall(request).execute();
         ResponseBody responseBody = response.body();
         
         if (response.isSuccessful() && responseBody != null) {
@@ -544,7 +428,7 @@ public class NvHTTP {
 
     public String getServerVersion(String serverInfo) throws XmlPullParserException, IOException {
         // appversion is present in all supported GFE versions
-        return getXmlString(serverInfo, "appversion", true);
+        return ServerInfo.of(serverInfo).getAppVersion();
     }
 
     public PairingManager.PairState getPairState() throws IOException, XmlPullParserException, InterruptedException {
@@ -553,28 +437,18 @@ public class NvHTTP {
 
     public PairingManager.PairState getPairState(String serverInfo) throws IOException, XmlPullParserException {
         // appversion is present in all supported GFE versions
-        return NvHTTP.getXmlString(serverInfo, "PairStatus", true).equals("1") ?
+        return ServerInfo.of(serverInfo).isPaired() ?
                 PairState.PAIRED : PairState.NOT_PAIRED;
     }
     
     public long getMaxLumaPixelsH264(String serverInfo) throws XmlPullParserException, IOException {
         // MaxLumaPixelsH264 wasn't present on old GFE versions
-        String str = getXmlString(serverInfo, "MaxLumaPixelsH264", false);
-        if (str != null) {
-            return Long.parseLong(str);
-        } else {
-            return 0;
-        }
+        return ServerInfo.of(serverInfo).getMaxLumaPixelsH264();
     }
     
     public long getMaxLumaPixelsHEVC(String serverInfo) throws XmlPullParserException, IOException {
         // MaxLumaPixelsHEVC wasn't present on old GFE versions
-        String str = getXmlString(serverInfo, "MaxLumaPixelsHEVC", false);
-        if (str != null) {
-            return Long.parseLong(str);
-        } else {
-            return 0;
-        }
+        return ServerInfo.of(serverInfo).getMaxLumaPixelsHEVC();
     }
 
     // Possible meaning of bits
@@ -587,32 +461,27 @@ public class NvHTTP {
     // Bit 11: ???
     public long getServerCodecModeSupport(String serverInfo) throws XmlPullParserException, IOException {
         // ServerCodecModeSupport wasn't present on old GFE versions
-        String str = getXmlString(serverInfo, "ServerCodecModeSupport", false);
-        if (str != null) {
-            return Long.parseLong(str);
-        } else {
-            return 0;
-        }
+        return ServerInfo.of(serverInfo).getServerCodecModeSupport();
     }
     
     public String getGpuType(String serverInfo) throws XmlPullParserException, IOException {
         // ServerCodecModeSupport wasn't present on old GFE versions
-        return getXmlString(serverInfo, "gputype", false);
+        return ServerInfo.of(serverInfo).getGpuType();
     }
 
     public String getGfeVersion(String serverInfo) throws XmlPullParserException, IOException {
         // ServerCodecModeSupport wasn't present on old GFE versions
-        return getXmlString(serverInfo, "GfeVersion", false);
+        return ServerInfo.of(serverInfo).getGfeVersion();
     }
 
     public String getSunshineVersion(String serverInfo) throws XmlPullParserException, IOException {
         // SunshineVersion is only present on Sunshine servers
-        return getXmlString(serverInfo, "SunshineVersion", false);
+        return ServerInfo.of(serverInfo).getSunshineVersion();
     }
     
     public boolean supports4K(String serverInfo) throws XmlPullParserException, IOException {
         // Only allow 4K on GFE 3.x. GfeVersion wasn't present on very old versions of GFE.
-        String gfeVersionStr = getXmlString(serverInfo, "GfeVersion", false);
+        String gfeVersionStr = ServerInfo.of(serverInfo).getGfeVersion();
         if (gfeVersionStr == null || gfeVersionStr.startsWith("2.")) {
             return false;
         }
@@ -623,18 +492,22 @@ public class NvHTTP {
     public int getCurrentGame(String serverInfo) throws IOException, XmlPullParserException {
         // GFE 2.8 started keeping currentgame set to the last game played. As a result, it no longer
         // has the semantics that its name would indicate. To contain the effects of this change as much
-        // as possible, we'll force the current game to zero if the server isn't in a streaming session.
-        if (getXmlString(serverInfo, "state", true).endsWith("_SERVER_BUSY")) {
-            return Integer.parseInt(getXmlString(serverInfo, "currentgame", true));
-        }
-        else {
-            return 0;
+        // as possible, ServerInfo forces the current game to zero if the server isn't in a streaming session.
+        return ServerInfo.of(serverInfo).getCurrentGame();
+    }
+
+    private static int getHttpsPort(ServerInfo info) {
+        int port = info.getHttpsPort();
+        if (port < 0) {
+            LimeLog.warning("Missing HttpsPort in host response");
+            return DEFAULT_HTTPS_PORT;
         }
+        return port;
     }
 
     public int getHttpsPort(String serverInfo) {
         try {
-            return Integer.parseInt(getXmlString(serverInfo, "HttpsPort", true));
+            return getHttpsPort(ServerInfo.of(serverInfo));
         } catch (XmlPullParserException e) {
             e.printStackTrace();
             return DEFAULT_HTTPS_PORT;
@@ -644,13 +517,22 @@ public class NvHTTP {
         }
     }
 
-    public int getExternalPort(String serverInfo) {
+    private int getExternalPort(ServerInfo info) {
         // This is an extension which is not present in GFE. It is present for Sunshine to be able
         // to support dynamic HTTP WAN ports without requiring the user to manually enter the port.
+        int port = info.getExternalPort();
+        if (port < 0) {
+            // Expected on non-Sunshine servers
+            return baseUrlHttp.port();
+        }
+        return port;
+    }
+
+    public int getExternalPort(String serverInfo) {
         try {
-            return Integer.parseInt(getXmlString(serverInfo, "ExternalPort", true));
+            return getExternalPort(ServerInfo.of(serverInfo));
         } catch (XmlPullParserException e) {
-            // Expected on non-Sunshine servers
+            e.printStackTrace();
             return baseUrlHttp.port();
         } catch (IOException e) {
             e.printStackTrace();
@@ -698,9 +580,7 @@ public class NvHTTP {
     }
     
     public static LinkedList<NvApp> getAppListByReader(Reader r) throws XmlPullParserException, IOException {
-        XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        XmlPullParser xpp = factory.newPullParser();
+        XmlPullParser xpp = getThreadParser();
 
         xpp.setInput(r);
         int eventType = xpp.getEventType();
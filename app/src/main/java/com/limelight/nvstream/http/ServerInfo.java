@@ -0,0 +1,228 @@
+package com.limelight.nvstream.http;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Immutable view of a serverinfo response, built in a single streaming pass over the XML.
+//
+// The getXxx(String serverInfo) helpers in NvHTTP used to run a full parse for every field
+// they looked up, which is about a dozen parses each time a host is polled. They now go
+// through of(), which parses a response once and hands back the same object while callers
+// keep passing the same response string.
+public final class ServerInfo {
+    // The last response parsed, since callers usually ask for several fields in a row
+    private static volatile ServerInfo lastParsed;
+
+    private final String xml;
+
+    // First text value of every element, which is what NvHTTP.getXmlString() would return
+    private final HashMap<String, String> fields;
+
+    private final String hostname;
+    private final String uniqueId;
+    private final String macAddress;
+    private final String localIp;
+    private final String externalIp;
+    private final String state;
+    private final String appVersion;
+    private final String pairStatus;
+    private final String gfeVersion;
+    private final String sunshineVersion;
+    private final String gpuType;
+    private final int httpsPort;
+    private final int externalPort;
+    private final int currentGame;
+    private final long maxLumaPixelsH264;
+    private final long maxLumaPixelsHEVC;
+    private final long serverCodecModeSupport;
+
+    private ServerInfo(String xml, HashMap<String, String> fields) {
+        this.xml = xml;
+        this.fields = fields;
+
+        hostname = fields.get("hostname");
+        uniqueId = fields.get("uniqueid");
+        macAddress = fields.get("mac");
+        localIp = fields.get("LocalIP");
+        externalIp = fields.get("ExternalIP");
+        state = fields.get("state");
+        appVersion = fields.get("appversion");
+        pairStatus = fields.get("PairStatus");
+        gfeVersion = fields.get("GfeVersion");
+        sunshineVersion = fields.get("SunshineVersion");
+        gpuType = fields.get("gputype");
+        httpsPort = parseInt(fields.get("HttpsPort"), -1);
+        externalPort = parseInt(fields.get("ExternalPort"), -1);
+        currentGame = parseInt(fields.get("currentgame"), -1);
+        maxLumaPixelsH264 = parseLong(fields.get("MaxLumaPixelsH264"), 0);
+        maxLumaPixelsHEVC = parseLong(fields.get("MaxLumaPixelsHEVC"), 0);
+        serverCodecModeSupport = parseLong(fields.get("ServerCodecModeSupport"), 0);
+    }
+
+    // Returns the parsed form of a serverinfo response, reusing the last result if it was
+    // for the very same string. Comparing contents would cost about as much as a parse, so
+    // a new response that happens to be equal is parsed again. Throws
+    // HostHttpResponseException if the host returned an error.
+    public static ServerInfo of(String xml) throws XmlPullParserException, IOException {
+        ServerInfo cached = lastParsed;
+        if (cached != null && cached.xml == xml) {
+            return cached;
+        }
+
+        ServerInfo info = parse(xml);
+        lastParsed = info;
+        return info;
+    }
+
+    public static ServerInfo parse(String xml) throws XmlPullParserException, IOException {
+        XmlPullParser xpp = NvHTTP.getThreadParser();
+        xpp.setInput(new StringReader(xml));
+
+        HashMap<String, String> fields = new HashMap<>();
+        ArrayList<String> currentTag = new ArrayList<>();
+
+        int eventType = xpp.getEventType();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            switch (eventType) {
+            case (XmlPullParser.START_TAG):
+                if (xpp.getName().equals("root")) {
+                    NvHTTP.verifyResponseStatus(xpp);
+                }
+                currentTag.add(xpp.getName());
+                break;
+            case (XmlPullParser.END_TAG):
+                currentTag.remove(currentTag.size() - 1);
+                break;
+            case (XmlPullParser.TEXT):
+                if (!currentTag.isEmpty()) {
+                    String tag = currentTag.get(currentTag.size() - 1);
+                    if (!fields.containsKey(tag)) {
+                        fields.put(tag, xpp.getText());
+                    }
+                }
+                break;
+            }
+            eventType = xpp.next();
+        }
+
+        return new ServerInfo(xml, fields);
+    }
+
+    private static int parseInt(String str, int defaultValue) {
+        if (str == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(str);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static long parseLong(String str, long defaultValue) {
+        if (str == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(str);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static String require(String value, String tagname) throws XmlPullParserException {
+        if (value == null) {
+            // Same exception type as NvHTTP.getXmlString() so existing error handling still applies
+            throw new XmlPullParserException("Missing mandatory field in host response: "+tagname);
+        }
+        return value;
+    }
+
+    // Any other field by element name, or null if it isn't present
+    public String getField(String tagname) {
+        return fields.get(tagname);
+    }
+
+    public String getHostname() {
+        return hostname;
+    }
+
+    public String getUniqueId() throws XmlPullParserException {
+        return require(uniqueId, "uniqueid");
+    }
+
+    public String getMacAddress() {
+        return macAddress;
+    }
+
+    public String getLocalIp() {
+        return localIp;
+    }
+
+    public String getExternalIp() {
+        return externalIp;
+    }
+
+    public String getState() throws XmlPullParserException {
+        return require(state, "state");
+    }
+
+    public String getAppVersion() throws XmlPullParserException {
+        return require(appVersion, "appversion");
+    }
+
+    public boolean isPaired() throws XmlPullParserException {
+        return require(pairStatus, "PairStatus").equals("1");
+    }
+
+    public String getGfeVersion() {
+        return gfeVersion;
+    }
+
+    public String getSunshineVersion() {
+        return sunshineVersion;
+    }
+
+    public String getGpuType() {
+        return gpuType;
+    }
+
+    // -1 if not present
+    public int getHttpsPort() {
+        return httpsPort;
+    }
+
+    // -1 if not present, which is expected on GFE
+    public int getExternalPort() {
+        return externalPort;
+    }
+
+    public int getCurrentGame() throws XmlPullParserException {
+        // GFE 2.8 started keeping currentgame set to the last game played, so it is only
+        // meaningful while the server is in a streaming session.
+        if (!getState().endsWith("_SERVER_BUSY")) {
+            return 0;
+        }
+        if (currentGame < 0) {
+            require(null, "currentgame");
+        }
+        return currentGame;
+    }
+
+    public long getMaxLumaPixelsH264() {
+        return maxLumaPixelsH264;
+    }
+
+    public long getMaxLumaPixelsHEVC() {
+        return maxLumaPixelsHEVC;
+    }
+
+    public long getServerCodecModeSupport() {
+        return serverCodecModeSupport;
+    }
+}
@@ -1,6 +1,9 @@
 package com.limelight.nvstream.jni;
 
+import java.nio.ByteBuffer;
+
 import com.limelight.nvstream.NvConnectionListener;
+import com.limelight.nvstream.StartupTimeline;
 import com.limelight.nvstream.av.audio.AudioRenderer;
 import com.limelight.nvstream.av.video.VideoDecoderRenderer;
 
@@ -42,6 +45,10 @@ public class MoonBridge {
     public static final int CAPABILITY_REFERENCE_FRAME_INVALIDATION_HEVC = 4;
     public static final int CAPABILITY_REFERENCE_FRAME_INVALIDATION_AV1 = 0x40;
 
+    // This capability is consumed by our JNI bridge and masked off before the
+    // capabilities are passed to moonlight-common-c.
+    public static final int CAPABILITY_ZERO_COPY_SUBMIT = 0x10000;
+
     public static final int DR_OK = 0;
     public static final int DR_NEED_IDR = -1;
 
@@ -127,6 +134,7 @@ public class MoonBridge {
     private static AudioRenderer audioRenderer;
     private static VideoDecoderRenderer videoRenderer;
     private static NvConnectionListener connectionListener;
+    private static StartupTimeline startupTimeline;
 
     static {
         System.loadLibrary("moonlight-core");
@@ -227,6 +235,27 @@ public class MoonBridge {
         }
     }
 
+    public static ByteBuffer bridgeDrGetDirectSubmitBuffer(int decodeUnitLength, int frameNumber, int frameType,
+                                                           char frameHostProcessingLatency,
+                                                           long receiveTimeUs, long enqueueTimeUs) {
+        if (videoRenderer != null) {
+            return videoRenderer.getDirectSubmitBuffer(decodeUnitLength, frameNumber, frameType,
+                    frameHostProcessingLatency, receiveTimeUs, enqueueTimeUs);
+        }
+        else {
+            return null;
+        }
+    }
+
+    public static int bridgeDrSubmitDirectDecodeUnit(int decodeUnitLength) {
+        if (videoRenderer != null) {
+            return videoRenderer.submitDirectDecodeUnit(decodeUnitLength);
+        }
+        else {
+            return DR_OK;
+        }
+    }
+
     public static int bridgeArInit(int audioConfiguration, int sampleRate, int samplesPerFrame) {
         if (audioRenderer != null) {
             return audioRenderer.setup(new AudioConfiguration(audioConfiguration), sampleRate, samplesPerFrame);
@@ -260,13 +289,34 @@ public class MoonBridge {
         }
     }
 
+    public static ByteBuffer bridgeArGetDirectPcmBuffer(int sizeBytes) {
+        if (audioRenderer != null) {
+            return audioRenderer.getDirectPcmBuffer(sizeBytes);
+        }
+        else {
+            return null;
+        }
+    }
+
+    public static void bridgeArPlayDirectSample(int lengthBytes) {
+        if (audioRenderer != null) {
+            audioRenderer.playDirectAudio(lengthBytes);
+        }
+    }
+
     public static void bridgeClStageStarting(int stage) {
+        if (startupTimeline != null) {
+            startupTimeline.stageStarting(getStageName(stage));
+        }
         if (connectionListener != null) {
             connectionListener.stageStarting(getStageName(stage));
         }
     }
 
     public static void bridgeClStageComplete(int stage) {
+        if (startupTimeline != null) {
+            startupTimeline.stageComplete(getStageName(stage));
+        }
         if (connectionListener != null) {
             connectionListener.stageComplete(getStageName(stage));
         }
@@ -332,16 +382,19 @@ public class MoonBridge {
         }
     }
 
-    public static void setupBridge(VideoDecoderRenderer videoRenderer, AudioRenderer audioRenderer, NvConnectionListener connectionListener) {
+    public static void setupBridge(VideoDecoderRenderer videoRenderer, AudioRenderer audioRenderer,
+                                   NvConnectionListener connectionListener, StartupTimeline startupTimeline) {
         MoonBridge.videoRenderer = videoRenderer;
         MoonBridge.audioRenderer = audioRenderer;
         MoonBridge.connectionListener = connectionListener;
+        MoonBridge.startupTimeline = startupTimeline;
     }
 
     public static void cleanupBridge() {
         MoonBridge.videoRenderer = null;
         MoonBridge.audioRenderer = null;
         MoonBridge.connectionListener = null;
+        MoonBridge.startupTimeline = null;
     }
 
     public static native int startConnection(String address, String appVersion, String gfeVersion,
@@ -433,6 +486,9 @@ public class MoonBridge {
     public static native boolean isMicrophoneRequested();
     
     public static native int sendMicrophoneOpusData(byte[] opusData);
+
+    // Sends the first length bytes of a direct buffer without copying it
+    public static native int sendMicrophoneOpusData(ByteBuffer opusData, int length);
     
     public static native boolean isMicrophoneEncryptionEnabled();
 }
@@ -58,6 +58,7 @@ public class PreferenceConfiguration {
     static final String BITRATE_PREF_STRING = "seekbar_bitrate_kbps";
     static final String HOST_SCALE_PREF_STRING = "seekbar_resolutions_scale";
     private static final String BITRATE_PREF_OLD_STRING = "seekbar_bitrate";
+    private static final String ADAPTIVE_BITRATE_PREF_STRING = "checkbox_enable_adaptive_bitrate";
     static final String LONG_PRESS_FLAT_REGION_PIXELS_PREF_STRING = "seekbar_flat_region_pixels";
     static final String SYNC_TOUCH_EVENT_WITH_DISPLAY_PREF_STRING = "checkbox_sync_touch_event_with_display";
     static final String ENABLE_KEYBOARD_TOGGLE_IN_NATIVE_TOUCH = "checkbox_enable_keyboard_toggle_in_native_touch";
@@ -100,11 +101,15 @@ public class PreferenceConfiguration {
     private static final String FLIP_FACE_BUTTONS_PREF_STRING = "checkbox_flip_face_buttons";
     public static final String TOUCHSCREEN_TRACKPAD_PREF_STRING = "checkbox_touchscreen_trackpad";
     private static final String LATENCY_TOAST_PREF_STRING = "checkbox_enable_post_stream_toast";
+    private static final String FRAME_TRACE_PREF_STRING = "checkbox_enable_frame_trace";
+    private static final String DECODE_CAPTURE_PREF_STRING = "checkbox_enable_decode_capture";
+    private static final String DECODER_PREWARM_PREF_STRING = "checkbox_enable_decoder_prewarm";
     private static final String ENABLE_STUN_PREF_STRING = "checkbox_enable_stun";
     private static final String LOCK_SCREEN_AFTER_DISCONNECT_PREF_STRING = "checkbox_lock_screen_after_disconnect";
     private static final String SWAP_QUIT_AND_DISCONNECT_PERF_STRING = "checkbox_swap_quit_and_disconnect";
     private static final String SCREEN_COMBINATION_MODE_PREF_STRING = "list_screen_combination_mode";
     private static final String FRAME_PACING_PREF_STRING = "frame_pacing";
+    private static final String PRECISE_SYNC_BATTERY_SAVER_PREF_STRING = "checkbox_precise_sync_battery_saver";
     private static final String ABSOLUTE_MOUSE_MODE_PREF_STRING = "checkbox_absolute_mouse_mode";
     public static final String ENABLE_NATIVE_MOUSE_POINTER_PREF_STRING = "checkbox_enable_native_mouse_pointer";
     public static final String NATIVE_MOUSE_MODE_PRESET_PREF_STRING = "list_native_mouse_mode_preset";
@@ -193,9 +198,14 @@ public class PreferenceConfiguration {
     private static final boolean DEFAULT_TOUCHSCREEN_TRACKPAD = true;
     private static final String DEFAULT_AUDIO_CONFIG = "2"; // Stereo
     private static final boolean DEFAULT_LATENCY_TOAST = false;
+    private static final boolean DEFAULT_FRAME_TRACE = false;
+    private static final boolean DEFAULT_ADAPTIVE_BITRATE = false;
+    private static final boolean DEFAULT_DECODE_CAPTURE = false;
+    private static final boolean DEFAULT_DECODER_PREWARM = true;
     private static final boolean DEFAULT_ENABLE_STUN = false;
     private static final String DEFAULT_SCREEN_COMBINATION_MODE = "-1";
     private static final String DEFAULT_FRAME_PACING = "latency";
+    private static final boolean DEFAULT_PRECISE_SYNC_BATTERY_SAVER = false;
     private static final boolean DEFAULT_ABSOLUTE_MOUSE_MODE = false;
     private static final boolean DEFAULT_ENABLE_NATIVE_MOUSE_POINTER = false;
     private static final boolean DEFAULT_ENABLE_AUDIO_FX = false;
@@ -245,6 +255,7 @@ public class PreferenceConfiguration {
     public static final int FRAME_PACING_MAX_SMOOTHNESS = 3;
     public static final int FRAME_PACING_EXPERIMENTAL_LOW_LATENCY = 4;
     public static final int FRAME_PACING_PRECISE_SYNC = 5;
+    public static final int FRAME_PACING_AUTO = 6;
 
     public static final String RES_360P = "640x360";
     public static final String RES_480P = "854x480";
@@ -294,6 +305,7 @@ public class PreferenceConfiguration {
 
     public int width, height, fps, resolutionScale;
     public int bitrate;
+    public boolean enableAdaptiveBitrate;
     public int longPressflatRegionPixels; //Assigned to NativeTouchContext.INTIAL_ZONE_PIXELS
     public boolean syncTouchEventWithDisplay; // if true, view.requestUnbufferedDispatch(event) will be disabled
     public boolean enableEnhancedTouch; //Assigned to NativeTouchContext.ENABLE_ENHANCED_TOUCH
@@ -325,6 +337,10 @@ public class PreferenceConfiguration {
     public PerfOverlayPosition perfOverlayPosition;
     public boolean enableSimplifyPerfOverlay;
     public boolean enableLatencyToast;
+    public boolean enableFrameTrace;
+    public boolean preciseSyncBatterySaver;
+    public boolean enableDecodeCapture;
+    public boolean enableDecoderPrewarm;
     public boolean enableStun;
     public int screenCombinationMode;
     public boolean lockScreenAfterDisconnect;
@@ -628,6 +644,9 @@ public class PreferenceConfiguration {
         else if (str.equals("precise-sync")) {
             return FRAME_PACING_PRECISE_SYNC;
         }
+        else if (str.equals("auto")) {
+            return FRAME_PACING_AUTO;
+        }
         else {
             // Should never get here
             return FRAME_PACING_MIN_LATENCY;
@@ -747,6 +766,7 @@ public class PreferenceConfiguration {
         if (config.bitrate == 0) {
             config.bitrate = getDefaultBitrate(context);
         }
+        config.enableAdaptiveBitrate = prefs.getBoolean(ADAPTIVE_BITRATE_PREF_STRING, DEFAULT_ADAPTIVE_BITRATE);
 
         config.resolutionScale = prefs.getInt(HOST_SCALE_PREF_STRING, 100);
         config.longPressflatRegionPixels = prefs.getInt(LONG_PRESS_FLAT_REGION_PIXELS_PREF_STRING, 0);  // define a flat region to suppress coordinates jitter. This is a simulation of iOS behavior since it only send 1 touch event during long press, which feels better in some cases.
@@ -852,6 +872,10 @@ public class PreferenceConfiguration {
         config.flipFaceButtons = prefs.getBoolean(FLIP_FACE_BUTTONS_PREF_STRING, DEFAULT_FLIP_FACE_BUTTONS);
         config.touchscreenTrackpad = prefs.getBoolean(TOUCHSCREEN_TRACKPAD_PREF_STRING, DEFAULT_TOUCHSCREEN_TRACKPAD);
         config.enableLatencyToast = prefs.getBoolean(LATENCY_TOAST_PREF_STRING, DEFAULT_LATENCY_TOAST);
+        config.enableFrameTrace = prefs.getBoolean(FRAME_TRACE_PREF_STRING, DEFAULT_FRAME_TRACE);
+        config.preciseSyncBatterySaver = prefs.getBoolean(PRECISE_SYNC_BATTERY_SAVER_PREF_STRING, DEFAULT_PRECISE_SYNC_BATTERY_SAVER);
+        config.enableDecodeCapture = prefs.getBoolean(DECODE_CAPTURE_PREF_STRING, DEFAULT_DECODE_CAPTURE);
+        config.enableDecoderPrewarm = prefs.getBoolean(DECODER_PREWARM_PREF_STRING, DEFAULT_DECODER_PREWARM);
         config.enableStun = prefs.getBoolean(ENABLE_STUN_PREF_STRING, DEFAULT_ENABLE_STUN);
 
         String screenModeString = prefs.getString(SCREEN_COMBINATION_MODE_PREF_STRING, DEFAULT_SCREEN_COMBINATION_MODE);
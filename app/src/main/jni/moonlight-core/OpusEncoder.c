@@ -34,7 +34,8 @@ Java_com_limelight_binding_audio_OpusEncoder_nativeInit(JNIEnv* env, jclass claz
     opus_encoder_ctl(ctx->encoder, OPUS_SET_SIGNAL(OPUS_SIGNAL_VOICE));
     opus_encoder_ctl(ctx->encoder, OPUS_SET_COMPLEXITY(6)); // 降低复杂度以减少延迟 (从8降到6)
     
-    // 启用DTX（不发送静音帧）
+    // 启用DTX（不发送静音帧）。静音时编码器每400ms输出一个舒适噪声帧，
+    // 其余帧只有1-2字节，nativeEncodeDirect对这些帧返回0，调用方不发送即可
     opus_encoder_ctl(ctx->encoder, OPUS_SET_DTX(1));
     
     // 设置帧大小
@@ -49,57 +50,45 @@ Java_com_limelight_binding_audio_OpusEncoder_nativeInit(JNIEnv* env, jclass claz
     return (jlong)ctx;
 }
 
-JNIEXPORT jbyteArray
-Java_com_limelight_binding_audio_OpusEncoder_nativeEncode(JNIEnv* env, jclass clazz,
-                                                        jlong handle, jbyteArray pcmData,
-                                                        jint offset, jint length) {
+// 从直接缓冲区编码，输出到调用方提供的直接缓冲区，不创建任何Java对象。
+// 返回编码后的字节数，DTX帧返回0，出错返回负数
+JNIEXPORT jint JNICALL
+Java_com_limelight_binding_audio_OpusEncoder_nativeEncodeDirect(JNIEnv* env, jclass clazz,
+                                                              jlong handle, jobject pcmBuffer, jint pcmLength,
+                                                              jobject outBuffer) {
     if (handle == 0) {
-        return NULL;
+        return -1;
     }
     
     OpusContext* ctx = (OpusContext*)handle;
     if (ctx->encoder == NULL) {
-        return NULL;
+        return -1;
     }
     
-    jbyte* pcm;
-    jbyteArray result = NULL;
-    
-    // 最大Opus帧大小
-    unsigned char encoded[4000];
-    int encodedLength;
-    
-    // 获取PCM数据
-    pcm = (*env)->GetByteArrayElements(env, pcmData, NULL);
-    if (!pcm) {
-        return NULL;
+    const opus_int16* pcm = (const opus_int16*)(*env)->GetDirectBufferAddress(env, pcmBuffer);
+    unsigned char* out = (unsigned char*)(*env)->GetDirectBufferAddress(env, outBuffer);
+    jlong outCapacity = (*env)->GetDirectBufferCapacity(env, outBuffer);
+    if (pcm == NULL || out == NULL || outCapacity <= 0) {
+        return -1;
     }
     
-    // 确保数据长度是正确的（必须是一个完整的帧）
-    int samples = length / 2; // 16位样本 (2字节)
-    
-    // 检查帧大小是否匹配
-    if (samples != ctx->frameSize) {
-        // 如果帧大小不匹配，记录警告但继续处理
-        // 这可能是由于音频捕获的微小变化
+    // 必须是一个完整的帧
+    if (pcmLength / 2 < ctx->frameSize ||
+            (*env)->GetDirectBufferCapacity(env, pcmBuffer) < pcmLength) {
+        return -1;
     }
     
-    // 编码音频数据
-    encodedLength = opus_encode(ctx->encoder, (const opus_int16*)(pcm + offset), 
-                              ctx->frameSize, encoded, sizeof(encoded));
-    
-    // 释放PCM数据
-    (*env)->ReleaseByteArrayElements(env, pcmData, pcm, JNI_ABORT);
+    int encodedLength = opus_encode(ctx->encoder, pcm, ctx->frameSize, out, (opus_int32)outCapacity);
     
-    if (encodedLength > 0) {
-        // 创建结果数组
-        result = (*env)->NewByteArray(env, encodedLength);
-        if (result) {
-            (*env)->SetByteArrayRegion(env, result, 0, encodedLength, (jbyte*)encoded);
+    // DTX：编码器认为这一帧不需要发送
+    if (encodedLength > 0 && encodedLength <= 2) {
+        opus_int32 inDtx = 0;
+        if (opus_encoder_ctl(ctx->encoder, OPUS_GET_IN_DTX(&inDtx)) == OPUS_OK && inDtx) {
+            return 0;
         }
     }
     
-    return result;
+    return encodedLength;
 }
 
 JNIEXPORT void JNICALL
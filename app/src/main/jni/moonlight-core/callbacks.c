@@ -22,11 +22,16 @@ static jmethodID BridgeDrStartMethod;
 static jmethodID BridgeDrStopMethod;
 static jmethodID BridgeDrCleanupMethod;
 static jmethodID BridgeDrSubmitDecodeUnitMethod;
+static jmethodID BridgeDrGetDirectSubmitBufferMethod;
+static jmethodID BridgeDrSubmitDirectDecodeUnitMethod;
+static jmethodID BufferPositionMethod;
 static jmethodID BridgeArInitMethod;
 static jmethodID BridgeArStartMethod;
 static jmethodID BridgeArStopMethod;
 static jmethodID BridgeArCleanupMethod;
 static jmethodID BridgeArPlaySampleMethod;
+static jmethodID BridgeArGetDirectPcmBufferMethod;
+static jmethodID BridgeArPlayDirectSampleMethod;
 static jmethodID BridgeClStageStartingMethod;
 static jmethodID BridgeClStageCompleteMethod;
 static jmethodID BridgeClStageFailedMethod;
@@ -41,6 +46,12 @@ static jmethodID BridgeClSetControllerLEDMethod;
 static jmethodID BridgeClResolutionChangedMethod;
 static jbyteArray DecodedFrameBuffer;
 static jshortArray DecodedAudioBuffer;
+static jobject DecodedAudioDirectBuffer;
+static opus_int16* DecodedAudioDirectData;
+static bool UseZeroCopySubmit;
+
+// Keep in sync with MoonBridge.CAPABILITY_ZERO_COPY_SUBMIT
+#define BRIDGE_CAPABILITY_ZERO_COPY_SUBMIT 0x10000
 
 void DetachThread(void* context) {
     (*JVM)->DetachCurrentThread(JVM);
@@ -87,11 +98,16 @@ Java_com_limelight_nvstream_jni_MoonBridge_init(JNIEnv *env, jclass clazz) {
     BridgeDrStopMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeDrStop", "()V");
     BridgeDrCleanupMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeDrCleanup", "()V");
     BridgeDrSubmitDecodeUnitMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeDrSubmitDecodeUnit", "([BIIIICJJ)I");
+    BridgeDrGetDirectSubmitBufferMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeDrGetDirectSubmitBuffer", "(IIICJJ)Ljava/nio/ByteBuffer;");
+    BridgeDrSubmitDirectDecodeUnitMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeDrSubmitDirectDecodeUnit", "(I)I");
+    BufferPositionMethod = (*env)->GetMethodID(env, (*env)->FindClass(env, "java/nio/Buffer"), "position", "()I");
     BridgeArInitMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeArInit", "(III)I");
     BridgeArStartMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeArStart", "()V");
     BridgeArStopMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeArStop", "()V");
     BridgeArCleanupMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeArCleanup", "()V");
     BridgeArPlaySampleMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeArPlaySample", "([S)V");
+    BridgeArGetDirectPcmBufferMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeArGetDirectPcmBuffer", "(I)Ljava/nio/ByteBuffer;");
+    BridgeArPlayDirectSampleMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeArPlayDirectSample", "(I)V");
     BridgeClStageStartingMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeClStageStarting", "(I)V");
     BridgeClStageCompleteMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeClStageComplete", "(I)V");
     BridgeClStageFailedMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeClStageFailed", "(II)V");
@@ -145,10 +161,101 @@ void BridgeDrCleanup(void) {
     (*env)->CallStaticVoidMethod(env, GlobalBridgeClass, BridgeDrCleanupMethod);
 }
 
+// Writes the picture data directly into the decoder's input buffer, avoiding the
+// intermediate copy into DecodedFrameBuffer and the second copy on the Java side.
+static int SubmitPictureDataDirect(JNIEnv* env, PDECODE_UNIT decodeUnit, int pictureDataLength) {
+    jobject inputBuffer;
+    PLENTRY currentEntry;
+    char* inputBufferData;
+    int offset;
+    int ret;
+
+    inputBuffer = (*env)->CallStaticObjectMethod(env, GlobalBridgeClass, BridgeDrGetDirectSubmitBufferMethod,
+                                                 pictureDataLength, decodeUnit->frameNumber, decodeUnit->frameType,
+                                                 (jchar)decodeUnit->frameHostProcessingLatency,
+                                                 (jlong)decodeUnit->receiveTimeUs, (jlong)decodeUnit->enqueueTimeUs);
+    if ((*env)->ExceptionCheck(env)) {
+        // We will crash here
+        (*JVM)->DetachCurrentThread(JVM);
+        return DR_OK;
+    }
+    else if (inputBuffer == NULL) {
+        return DR_NEED_IDR;
+    }
+
+    // The Java side has already verified that the picture data fits in the remaining space
+    inputBufferData = (*env)->GetDirectBufferAddress(env, inputBuffer);
+    offset = (*env)->CallIntMethod(env, inputBuffer, BufferPositionMethod);
+    (*env)->DeleteLocalRef(env, inputBuffer);
+    if (inputBufferData == NULL || (*env)->ExceptionCheck(env)) {
+        (*env)->ExceptionClear(env);
+        return DR_NEED_IDR;
+    }
+
+    currentEntry = decodeUnit->bufferList;
+    while (currentEntry != NULL) {
+        if (currentEntry->bufferType == BUFFER_TYPE_PICDATA) {
+            memcpy(inputBufferData + offset, currentEntry->data, currentEntry->length);
+            offset += currentEntry->length;
+        }
+
+        currentEntry = currentEntry->next;
+    }
+
+    ret = (*env)->CallStaticIntMethod(env, GlobalBridgeClass, BridgeDrSubmitDirectDecodeUnitMethod, pictureDataLength);
+    if ((*env)->ExceptionCheck(env)) {
+        // We will crash here
+        (*JVM)->DetachCurrentThread(JVM);
+        return DR_OK;
+    }
+
+    return ret;
+}
+
 int BridgeDrSubmitDecodeUnit(PDECODE_UNIT decodeUnit) {
     JNIEnv* env = GetThreadEnv();
     int ret;
 
+    if (UseZeroCopySubmit) {
+        PLENTRY currentEntry;
+        int pictureDataLength;
+
+        currentEntry = decodeUnit->bufferList;
+        pictureDataLength = 0;
+        while (currentEntry != NULL) {
+            // Parameter sets are small and need to be parsed on the Java side, so they
+            // still go through the array path.
+            if (currentEntry->bufferType != BUFFER_TYPE_PICDATA) {
+                if ((*env)->GetArrayLength(env, DecodedFrameBuffer) < currentEntry->length) {
+                    (*env)->DeleteGlobalRef(env, DecodedFrameBuffer);
+                    DecodedFrameBuffer = (*env)->NewGlobalRef(env, (*env)->NewByteArray(env, currentEntry->length));
+                }
+
+                (*env)->SetByteArrayRegion(env, DecodedFrameBuffer, 0, currentEntry->length, (jbyte*)currentEntry->data);
+
+                ret = (*env)->CallStaticIntMethod(env, GlobalBridgeClass, BridgeDrSubmitDecodeUnitMethod,
+                                                  DecodedFrameBuffer, currentEntry->length, currentEntry->bufferType,
+                                                  decodeUnit->frameNumber, decodeUnit->frameType, (jchar)decodeUnit->frameHostProcessingLatency,
+                                                  (jlong)decodeUnit->receiveTimeUs, (jlong)decodeUnit->enqueueTimeUs);
+                if ((*env)->ExceptionCheck(env)) {
+                    // We will crash here
+                    (*JVM)->DetachCurrentThread(JVM);
+                    return DR_OK;
+                }
+                else if (ret != DR_OK) {
+                    return ret;
+                }
+            }
+            else {
+                pictureDataLength += currentEntry->length;
+            }
+
+            currentEntry = currentEntry->next;
+        }
+
+        return SubmitPictureDataDirect(env, decodeUnit, pictureDataLength);
+    }
+
     // Increase the size of our frame data buffer if our frame won't fit
     if ((*env)->GetArrayLength(env, DecodedFrameBuffer) < decodeUnit->fullLength) {
         (*env)->DeleteGlobalRef(env, DecodedFrameBuffer);
@@ -224,8 +331,31 @@ int BridgeArInit(int audioConfiguration, POPUS_MULTISTREAM_CONFIGURATION opusCon
             return -1;
         }
 
-        // We know ahead of time what the buffer size will be for decoded audio, so pre-allocate it
-        DecodedAudioBuffer = (*env)->NewGlobalRef(env, (*env)->NewShortArray(env, opusConfig->channelCount * opusConfig->samplesPerFrame));
+        // We know ahead of time what the buffer size will be for decoded audio, so pre-allocate it.
+        // If the renderer provides a direct buffer, we decode straight into memory it can hand
+        // to AudioTrack without pinning an array or copying.
+        jint pcmBufferSize = opusConfig->channelCount * opusConfig->samplesPerFrame * (jint)sizeof(opus_int16);
+        jobject directBuffer = (*env)->CallStaticObjectMethod(env, GlobalBridgeClass, BridgeArGetDirectPcmBufferMethod, pcmBufferSize);
+        if ((*env)->ExceptionCheck(env)) {
+            (*env)->ExceptionClear(env);
+            directBuffer = NULL;
+        }
+
+        DecodedAudioDirectBuffer = NULL;
+        DecodedAudioDirectData = NULL;
+        DecodedAudioBuffer = NULL;
+        if (directBuffer != NULL) {
+            void* directData = (*env)->GetDirectBufferAddress(env, directBuffer);
+            if (directData != NULL && (*env)->GetDirectBufferCapacity(env, directBuffer) >= pcmBufferSize) {
+                DecodedAudioDirectBuffer = (*env)->NewGlobalRef(env, directBuffer);
+                DecodedAudioDirectData = directData;
+            }
+            (*env)->DeleteLocalRef(env, directBuffer);
+        }
+
+        if (DecodedAudioDirectData == NULL) {
+            DecodedAudioBuffer = (*env)->NewGlobalRef(env, (*env)->NewShortArray(env, opusConfig->channelCount * opusConfig->samplesPerFrame));
+        }
     }
 
     return err;
@@ -248,7 +378,15 @@ void BridgeArCleanup() {
 
     opus_multistream_decoder_destroy(Decoder);
 
-    (*env)->DeleteGlobalRef(env, DecodedAudioBuffer);
+    if (DecodedAudioDirectBuffer != NULL) {
+        (*env)->DeleteGlobalRef(env, DecodedAudioDirectBuffer);
+        DecodedAudioDirectBuffer = NULL;
+        DecodedAudioDirectData = NULL;
+    }
+    if (DecodedAudioBuffer != NULL) {
+        (*env)->DeleteGlobalRef(env, DecodedAudioBuffer);
+        DecodedAudioBuffer = NULL;
+    }
 
     (*env)->CallStaticVoidMethod(env, GlobalBridgeClass, BridgeArCleanupMethod);
 }
@@ -256,6 +394,25 @@ void BridgeArCleanup() {
 void BridgeArDecodeAndPlaySample(char* sampleData, int sampleLength) {
     JNIEnv* env = GetThreadEnv();
 
+    if (DecodedAudioDirectData != NULL) {
+        // The renderer owns this buffer and only reads it during the call below
+        int decodeLen = opus_multistream_decode(Decoder,
+                                                (const unsigned char*)sampleData,
+                                                sampleLength,
+                                                DecodedAudioDirectData,
+                                                OpusConfig.samplesPerFrame,
+                                                0);
+        if (decodeLen > 0) {
+            (*env)->CallStaticVoidMethod(env, GlobalBridgeClass, BridgeArPlayDirectSampleMethod,
+                                         decodeLen * OpusConfig.channelCount * (jint)sizeof(opus_int16));
+            if ((*env)->ExceptionCheck(env)) {
+                // We will crash here
+                (*JVM)->DetachCurrentThread(JVM);
+            }
+        }
+        return;
+    }
+
     jshort* decodedData = (*env)->GetPrimitiveArrayCritical(env, DecodedAudioBuffer, NULL);
 
     int decodeLen = opus_multistream_decode(Decoder,
@@ -508,7 +665,8 @@ Java_com_limelight_nvstream_jni_MoonBridge_startConnection(JNIEnv *env, jclass c
     memcpy(streamConfig.remoteInputAesIv, riAesIvBuf, sizeof(streamConfig.remoteInputAesIv));
     (*env)->ReleaseByteArrayElements(env, riAesIv, riAesIvBuf, JNI_ABORT);
 
-    BridgeVideoRendererCallbacks.capabilities = videoCapabilities;
+    UseZeroCopySubmit = (videoCapabilities & BRIDGE_CAPABILITY_ZERO_COPY_SUBMIT) != 0;
+    BridgeVideoRendererCallbacks.capabilities = videoCapabilities & ~BRIDGE_CAPABILITY_ZERO_COPY_SUBMIT;
 
     // Enable all encryption features if the platform has fast AES support
     if (hasFastAes()) {
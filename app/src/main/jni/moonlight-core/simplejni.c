@@ -281,8 +281,9 @@ Java_com_limelight_nvstream_jni_MoonBridge_isMicrophoneRequested(JNIEnv *env, jc
     return (MicPortNumber != 0 && StreamConfig.enableMic) ? JNI_TRUE : JNI_FALSE;
 }
 
+// sendMicrophoneOpusData() is overloaded in Java, so these use the long JNI names
 JNIEXPORT jint JNICALL
-Java_com_limelight_nvstream_jni_MoonBridge_sendMicrophoneOpusData(JNIEnv *env, jclass clazz, jbyteArray opusData) {
+Java_com_limelight_nvstream_jni_MoonBridge_sendMicrophoneOpusData___3B(JNIEnv *env, jclass clazz, jbyteArray opusData) {
     if (opusData == NULL) {
         return -1;
     }
@@ -304,6 +305,21 @@ Java_com_limelight_nvstream_jni_MoonBridge_sendMicrophoneOpusData(JNIEnv *env, j
     return result;
 }
 
+JNIEXPORT jint JNICALL
+Java_com_limelight_nvstream_jni_MoonBridge_sendMicrophoneOpusData__Ljava_nio_ByteBuffer_2I(JNIEnv *env, jclass clazz, jobject opusData, jint length) {
+    if (opusData == NULL || length <= 0) {
+        return -1;
+    }
+
+    // Direct buffers can be sent in place without any copy
+    const unsigned char* data = (const unsigned char*)(*env)->GetDirectBufferAddress(env, opusData);
+    if (data == NULL || length > (*env)->GetDirectBufferCapacity(env, opusData)) {
+        return -1;
+    }
+
+    return sendMicrophoneOpusData(data, (int)length);
+}
+
 JNIEXPORT jboolean JNICALL
 Java_com_limelight_nvstream_jni_MoonBridge_isMicrophoneEncryptionEnabled(JNIEnv *env, jclass clazz) {
     return isMicrophoneEncryptionEnabled() ? JNI_TRUE : JNI_FALSE;
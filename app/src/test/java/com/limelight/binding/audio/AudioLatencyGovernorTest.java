@@ -0,0 +1,125 @@
+package com.limelight.binding.audio;
+
+import org.junit.Test;
+
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AudioLatencyGovernorTest {
+    private static final int CHANNELS = 2;
+    private static final int SAMPLE_RATE = 48000;
+    // 5 ms Opus frames
+    private static final int FRAME_SAMPLES = 240;
+    private static final int FRAME_MS = 5;
+    private static final int MIN_TARGET_MS = 20;
+
+    private static ShortBuffer tone() {
+        ShortBuffer pcm = ShortBuffer.allocate(FRAME_SAMPLES * CHANNELS);
+        for (int i = 0; i < FRAME_SAMPLES; i++) {
+            short sample = (short) (10000 * Math.sin(i * 2 * Math.PI / 48));
+            pcm.put(i * CHANNELS, sample);
+            pcm.put(i * CHANNELS + 1, sample);
+        }
+        return pcm;
+    }
+
+    private static ShortBuffer silence() {
+        return ShortBuffer.allocate(FRAME_SAMPLES * CHANNELS);
+    }
+
+    // Feeds frames at a constant queued duration until the first floor window has been measured
+    private static long settle(AudioLatencyGovernor governor, int queuedMs) {
+        long nowMs = 0;
+        for (; nowMs < 500; nowMs += FRAME_MS) {
+            assertEquals(FRAME_SAMPLES, governor.process(tone(), FRAME_SAMPLES, queuedMs, 0, nowMs));
+        }
+        return nowMs;
+    }
+
+    @Test
+    public void leavesFramesAloneAtTarget() {
+        AudioLatencyGovernor governor = new AudioLatencyGovernor(CHANNELS, SAMPLE_RATE, 0);
+        long nowMs = settle(governor, MIN_TARGET_MS);
+        for (int i = 0; i < 100; i++, nowMs += FRAME_MS) {
+            assertEquals(FRAME_SAMPLES, governor.process(tone(), FRAME_SAMPLES, MIN_TARGET_MS, 0, nowMs));
+        }
+        assertEquals(0, governor.getCorrections());
+    }
+
+    @Test
+    public void shortenedFramesAreCreditedAgainstFloor() {
+        AudioLatencyGovernor governor = new AudioLatencyGovernor(CHANNELS, SAMPLE_RATE, 0);
+        long nowMs = settle(governor, MIN_TARGET_MS + 1);
+
+        // 1 ms of excess is 48 samples. Each frame can only lose 240 / 48 = 5 samples, so it
+        // takes 10 frames to remove it, and the floor isn't measured again until 500 ms later.
+        int removedSamples = 0;
+        for (int i = 0; i < 50; i++, nowMs += FRAME_MS) {
+            int samples = governor.process(tone(), FRAME_SAMPLES, MIN_TARGET_MS + 1, 0, nowMs);
+            assertTrue(samples == FRAME_SAMPLES || samples == FRAME_SAMPLES - 5);
+            removedSamples += FRAME_SAMPLES - samples;
+        }
+        assertEquals(10, governor.getStretchedFrames());
+        assertEquals(50, removedSamples);
+    }
+
+    @Test
+    public void silentFramesAreDroppedAndCredited() {
+        AudioLatencyGovernor governor = new AudioLatencyGovernor(CHANNELS, SAMPLE_RATE, 0);
+        long nowMs = settle(governor, MIN_TARGET_MS + 3 * FRAME_MS);
+
+        int dropped = 0;
+        for (int i = 0; i < 10; i++, nowMs += FRAME_MS) {
+            if (governor.process(silence(), FRAME_SAMPLES, MIN_TARGET_MS + 3 * FRAME_MS, 0, nowMs) == 0) {
+                dropped++;
+            }
+        }
+        assertEquals(3, dropped);
+        assertEquals(3, governor.getSilenceDrops());
+        assertEquals(0, governor.getStretchedFrames());
+    }
+
+    @Test
+    public void shorteningKeepsFrameEndpoints() {
+        AudioLatencyGovernor governor = new AudioLatencyGovernor(CHANNELS, SAMPLE_RATE, 0);
+        long nowMs = settle(governor, 100);
+
+        ShortBuffer pcm = ShortBuffer.allocate(FRAME_SAMPLES * CHANNELS);
+        for (int i = 0; i < FRAME_SAMPLES; i++) {
+            pcm.put(i * CHANNELS, (short) (i * 100));
+            pcm.put(i * CHANNELS + 1, (short) (-i * 100));
+        }
+
+        int samples = governor.process(pcm, FRAME_SAMPLES, 100, 0, nowMs);
+        assertEquals(FRAME_SAMPLES - FRAME_SAMPLES / 48, samples);
+
+        // A ramp stays a ramp, from the same first sample to the same last sample (give or
+        // take the fixed point rounding)
+        assertEquals(0, pcm.get(0));
+        assertEquals((FRAME_SAMPLES - 1) * 100, pcm.get((samples - 1) * CHANNELS), 1);
+        assertEquals(-(FRAME_SAMPLES - 1) * 100, pcm.get((samples - 1) * CHANNELS + 1), 1);
+        for (int i = 1; i < samples; i++) {
+            assertTrue(pcm.get(i * CHANNELS) > pcm.get((i - 1) * CHANNELS));
+        }
+    }
+
+    @Test
+    public void underrunsRaiseTargetAndItDecaysBack() {
+        AudioLatencyGovernor governor = new AudioLatencyGovernor(CHANNELS, SAMPLE_RATE, 0);
+        governor.process(tone(), FRAME_SAMPLES, 0, 0, 0);
+        governor.process(tone(), FRAME_SAMPLES, 0, 1, 1000);
+        governor.process(tone(), FRAME_SAMPLES, 0, 2, 2000);
+        assertEquals(MIN_TARGET_MS + 10, governor.getTargetMs());
+        assertEquals(2, governor.getUnderruns());
+
+        // Lowered one step per 30 s of clean playback
+        governor.process(tone(), FRAME_SAMPLES, 0, 2, 31000);
+        assertEquals(MIN_TARGET_MS + 10, governor.getTargetMs());
+        governor.process(tone(), FRAME_SAMPLES, 0, 2, 32000);
+        assertEquals(MIN_TARGET_MS + 5, governor.getTargetMs());
+        governor.process(tone(), FRAME_SAMPLES, 0, 2, 62000);
+        assertEquals(MIN_TARGET_MS, governor.getTargetMs());
+    }
+}
@@ -0,0 +1,121 @@
+package com.limelight.binding.video;
+
+import com.limelight.preferences.PreferenceConfiguration;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AutoFramePacingSelectorTest {
+    private static final int FRAMES_PER_WINDOW = 60;
+
+    // Smooth frame delivery at the given stream FPS and display refresh rate
+    private static int smoothWindow(AutoFramePacingSelector selector, long nowMs, float fps, float hz) {
+        return selector.onStatsWindow(nowMs, fps, hz, 1, FRAMES_PER_WINDOW, 0);
+    }
+
+    // Frame intervals spread by more than half a frame time, with the given empty V-syncs
+    private static int jitteryWindow(AutoFramePacingSelector selector, long nowMs, float fps, float hz, int skippedVsyncs) {
+        return selector.onStatsWindow(nowMs, fps, hz, 1000 / fps, FRAMES_PER_WINDOW, skippedVsyncs);
+    }
+
+    @Test
+    public void cadenceMatchesWholeMultiples() {
+        assertTrue(AutoFramePacingSelector.isCadenceMatched(60, 60));
+        assertTrue(AutoFramePacingSelector.isCadenceMatched(60, 120));
+        assertTrue(AutoFramePacingSelector.isCadenceMatched(120, 60));
+        assertTrue(AutoFramePacingSelector.isCadenceMatched(60, 59.94f));
+        assertTrue(AutoFramePacingSelector.isCadenceMatched(30, 120));
+
+        assertFalse(AutoFramePacingSelector.isCadenceMatched(60, 90));
+        assertFalse(AutoFramePacingSelector.isCadenceMatched(60, 144));
+        assertFalse(AutoFramePacingSelector.isCadenceMatched(120, 90));
+        assertFalse(AutoFramePacingSelector.isCadenceMatched(30, 144));
+
+        // Unknown rates are assumed to line up
+        assertTrue(AutoFramePacingSelector.isCadenceMatched(60, 0));
+    }
+
+    @Test
+    public void staysAtLowestLatencyWhenCadenceMatches() {
+        AutoFramePacingSelector selector = new AutoFramePacingSelector(0);
+        for (long now = 1000; now <= 30000; now += 1000) {
+            assertEquals(-1, smoothWindow(selector, now, 60, 120));
+        }
+        assertEquals(PreferenceConfiguration.FRAME_PACING_MIN_LATENCY, selector.getCurrentMode());
+    }
+
+    @Test
+    public void switchesToBalancedWhenCadenceIsMismatched() {
+        AutoFramePacingSelector selector = new AutoFramePacingSelector(0);
+
+        // Needs three windows in a row and five seconds since the last switch
+        assertEquals(-1, smoothWindow(selector, 3000, 60, 90));
+        assertEquals(-1, smoothWindow(selector, 4000, 60, 90));
+        assertEquals(PreferenceConfiguration.FRAME_PACING_BALANCED, smoothWindow(selector, 5000, 60, 90));
+        assertEquals(PreferenceConfiguration.FRAME_PACING_BALANCED, selector.getCurrentMode());
+    }
+
+    @Test
+    public void singleMatchedWindowResetsHysteresis() {
+        AutoFramePacingSelector selector = new AutoFramePacingSelector(0);
+
+        assertEquals(-1, smoothWindow(selector, 6000, 60, 90));
+        assertEquals(-1, smoothWindow(selector, 7000, 60, 90));
+        assertEquals(-1, smoothWindow(selector, 8000, 60, 120));
+        assertEquals(-1, smoothWindow(selector, 9000, 60, 90));
+        assertEquals(-1, smoothWindow(selector, 10000, 60, 90));
+        assertEquals(PreferenceConfiguration.FRAME_PACING_BALANCED, smoothWindow(selector, 11000, 60, 90));
+    }
+
+    @Test
+    public void dwellTimeDelaysSwitchBack() {
+        AutoFramePacingSelector selector = new AutoFramePacingSelector(0);
+        for (long now = 6000; now <= 8000; now += 1000) {
+            smoothWindow(selector, now, 60, 90);
+        }
+        assertEquals(PreferenceConfiguration.FRAME_PACING_BALANCED, selector.getCurrentMode());
+
+        // The display switched to 120 Hz right after, but the balanced mode must dwell first
+        assertEquals(-1, smoothWindow(selector, 9000, 60, 120));
+        assertEquals(-1, smoothWindow(selector, 10000, 60, 120));
+        assertEquals(-1, smoothWindow(selector, 11000, 60, 120));
+        assertEquals(-1, smoothWindow(selector, 12000, 60, 120));
+        assertEquals(PreferenceConfiguration.FRAME_PACING_MIN_LATENCY, smoothWindow(selector, 13000, 60, 120));
+    }
+
+    @Test
+    public void starvedBalancedPacingFallsBackToMaxSmoothness() {
+        AutoFramePacingSelector selector = new AutoFramePacingSelector(0);
+        for (long now = 6000; now <= 8000; now += 1000) {
+            smoothWindow(selector, now, 60, 90);
+        }
+
+        // Jitter alone isn't enough, the queue has to keep running dry on V-sync
+        for (long now = 14000; now <= 20000; now += 1000) {
+            assertEquals(-1, jitteryWindow(selector, now, 60, 90, 0));
+        }
+        assertEquals(-1, jitteryWindow(selector, 21000, 60, 90, 10));
+        assertEquals(-1, jitteryWindow(selector, 22000, 60, 90, 10));
+        assertEquals(PreferenceConfiguration.FRAME_PACING_MAX_SMOOTHNESS, jitteryWindow(selector, 23000, 60, 90, 10));
+
+        // It stays there while the jitter lasts, and returns once it settles
+        for (long now = 30000; now <= 40000; now += 1000) {
+            assertEquals(-1, jitteryWindow(selector, now, 60, 90, 0));
+        }
+        assertEquals(-1, smoothWindow(selector, 41000, 60, 90));
+        assertEquals(-1, smoothWindow(selector, 42000, 60, 90));
+        assertEquals(PreferenceConfiguration.FRAME_PACING_BALANCED, smoothWindow(selector, 43000, 60, 90));
+    }
+
+    @Test
+    public void ignoresIdleWindows() {
+        AutoFramePacingSelector selector = new AutoFramePacingSelector(0);
+        for (long now = 6000; now <= 20000; now += 1000) {
+            assertEquals(-1, selector.onStatsWindow(now, 60, 90, 0, 0, 0));
+        }
+        assertEquals(PreferenceConfiguration.FRAME_PACING_MIN_LATENCY, selector.getCurrentMode());
+    }
+}
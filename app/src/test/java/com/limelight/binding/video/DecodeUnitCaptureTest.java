@@ -0,0 +1,192 @@
+package com.limelight.binding.video;
+
+import com.limelight.nvstream.jni.MoonBridge;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecodeUnitCaptureTest {
+    private static final int FPS = 60;
+    private static final long FRAME_INTERVAL_US = 1000000 / FPS;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static DecodeUnitCapture.Header newHeader() {
+        DecodeUnitCapture.Header header = new DecodeUnitCapture.Header();
+        header.videoFormat = MoonBridge.VIDEO_FORMAT_H264;
+        header.width = 1920;
+        header.height = 1080;
+        header.fps = FPS;
+        return header;
+    }
+
+    // Annex B NALU with a recognizable payload for this frame
+    private static byte[] nalu(int type, int frameNumber, int length) {
+        byte[] data = new byte[length];
+        data[2] = 1;
+        data[3] = (byte) type;
+        for (int i = 4; i < length; i++) {
+            data[i] = (byte) (frameNumber + i);
+        }
+        return data;
+    }
+
+    // Records frames [firstFrame, firstFrame + count), with an IDR frame (SPS, PPS, slice)
+    // every idrInterval frames and P frames in between
+    private static void recordFrames(DecodeUnitCapture capture, int firstFrame, int count, int idrInterval) {
+        for (int frame = firstFrame; frame < firstFrame + count; frame++) {
+            long receiveTimeUs = frame * FRAME_INTERVAL_US;
+            if (frame % idrInterval == 0) {
+                byte[] sps = nalu(0x67, frame, 16);
+                byte[] pps = nalu(0x68, frame, 8);
+                byte[] idr = nalu(0x65, frame, 1000);
+                capture.record(sps, sps.length, MoonBridge.BUFFER_TYPE_SPS, frame, MoonBridge.FRAME_TYPE_IDR,
+                        (char) 10, receiveTimeUs, receiveTimeUs + 100);
+                capture.record(pps, pps.length, MoonBridge.BUFFER_TYPE_PPS, frame, MoonBridge.FRAME_TYPE_IDR,
+                        (char) 10, receiveTimeUs, receiveTimeUs + 100);
+                capture.record(idr, idr.length, MoonBridge.BUFFER_TYPE_PICDATA, frame, MoonBridge.FRAME_TYPE_IDR,
+                        (char) 10, receiveTimeUs, receiveTimeUs + 100);
+            } else {
+                byte[] slice = nalu(0x41, frame, 300);
+                capture.record(slice, slice.length, MoonBridge.BUFFER_TYPE_PICDATA, frame, MoonBridge.FRAME_TYPE_PFRAME,
+                        (char) 10, receiveTimeUs, receiveTimeUs + 100);
+            }
+        }
+    }
+
+    @Test
+    public void readReturnsRecordedUnitsInOrder() throws IOException {
+        File file = folder.newFile("all.mldu");
+        DecodeUnitCapture capture = new DecodeUnitCapture(file, newHeader(), 1024, 1 << 20);
+        recordFrames(capture, 0, 20, 10);
+        capture.close();
+
+        DecodeUnitCapture.Header header = DecodeUnitCapture.readHeader(file);
+        assertEquals(MoonBridge.VIDEO_FORMAT_H264, header.videoFormat);
+        assertEquals(1920, header.width);
+        assertEquals(1080, header.height);
+        assertEquals(FPS, header.fps);
+
+        List<DecodeUnitCapture.Unit> units = DecodeUnitCapture.read(file, 0);
+        // 2 IDR frames of 3 units and 18 P frames of 1 unit
+        assertEquals(24, units.size());
+
+        DecodeUnitCapture.Unit first = units.get(0);
+        assertEquals(MoonBridge.BUFFER_TYPE_SPS, first.bufferType);
+        assertEquals(MoonBridge.FRAME_TYPE_IDR, first.frameType);
+        assertEquals(0, first.frameIndex);
+        assertArrayEquals(nalu(0x67, 0, 16), first.data);
+
+        DecodeUnitCapture.Unit last = units.get(units.size() - 1);
+        assertEquals(19, last.frameNumber);
+        assertEquals(19, last.frameIndex);
+        assertEquals(19 * FRAME_INTERVAL_US, last.receiveTimeUs);
+        assertEquals(19 * FRAME_INTERVAL_US + 100, last.enqueueTimeUs);
+        assertEquals(10, last.frameHostProcessingLatency);
+        assertArrayEquals(nalu(0x41, 19, 300), last.data);
+    }
+
+    @Test
+    public void ringKeepsNewestUnitsStartingAtIdr() throws IOException {
+        File file = folder.newFile("ring.mldu");
+        // Room for about 20 P frames, so most of the 100 frames are overwritten
+        DecodeUnitCapture capture = new DecodeUnitCapture(file, newHeader(), 64, 6000);
+        recordFrames(capture, 0, 100, 10);
+        capture.close();
+
+        List<DecodeUnitCapture.Unit> units = DecodeUnitCapture.read(file, 0);
+        assertTrue(units.size() > 0);
+
+        DecodeUnitCapture.Unit first = units.get(0);
+        assertEquals(MoonBridge.FRAME_TYPE_IDR, first.frameType);
+        assertEquals(0, first.frameNumber % 10);
+        assertTrue(first.frameNumber >= 80);
+        assertEquals(99, units.get(units.size() - 1).frameNumber);
+
+        // Overwritten payloads must not leak into the units that survived
+        for (DecodeUnitCapture.Unit unit : units) {
+            int type = unit.data[3];
+            int length = type == 0x67 ? 16 : type == 0x68 ? 8 : type == 0x65 ? 1000 : 300;
+            assertArrayEquals(nalu(type, unit.frameNumber, length), unit.data);
+            assertEquals(unit.frameNumber - first.frameNumber, unit.frameIndex);
+        }
+    }
+
+    @Test
+    public void directBufferRecordLeavesSourceUnchanged() throws IOException {
+        File file = folder.newFile("direct.mldu");
+        DecodeUnitCapture capture = new DecodeUnitCapture(file, newHeader(), 16, 4096);
+
+        byte[] idr = nalu(0x65, 0, 200);
+        ByteBuffer src = ByteBuffer.allocateDirect(512);
+        src.position(50);
+        src.put(idr);
+        capture.record(src, 50, idr.length, MoonBridge.BUFFER_TYPE_PICDATA, 0, MoonBridge.FRAME_TYPE_IDR,
+                (char) 0, 0, 0);
+        capture.close();
+
+        assertEquals(250, src.position());
+        assertEquals(512, src.limit());
+
+        List<DecodeUnitCapture.Unit> units = DecodeUnitCapture.read(file, 0);
+        assertEquals(1, units.size());
+        assertArrayEquals(idr, units.get(0).data);
+    }
+
+    @Test
+    public void exportStreamWritesLastSecondsFromIdr() throws IOException {
+        File file = folder.newFile("export.mldu");
+        DecodeUnitCapture capture = new DecodeUnitCapture(file, newHeader(), 4096, 4 << 20);
+        // 5 seconds with an IDR frame every other second
+        recordFrames(capture, 0, 5 * FPS, 2 * FPS);
+        capture.close();
+
+        File stream = folder.newFile("export.h264");
+        DecodeUnitCapture.Header header = DecodeUnitCapture.exportStream(file, stream, 2);
+        assertEquals(MoonBridge.VIDEO_FORMAT_H264, header.videoFormat);
+
+        // The last 2 seconds start near the end of second 2, which has no IDR frame,
+        // so the stream starts at the IDR frame that begins second 4
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (DecodeUnitCapture.Unit unit : DecodeUnitCapture.read(file, 0)) {
+            if (unit.frameNumber >= 4 * FPS) {
+                expected.write(unit.data);
+            }
+        }
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(stream.toPath()));
+    }
+
+    @Test
+    public void trimProducesEquivalentCapture() throws IOException {
+        File file = folder.newFile("full.mldu");
+        DecodeUnitCapture capture = new DecodeUnitCapture(file, newHeader(), 4096, 4 << 20);
+        recordFrames(capture, 0, 3 * FPS, FPS);
+        capture.close();
+
+        File trimmed = folder.newFile("trimmed.mldu");
+        DecodeUnitCapture.trim(file, trimmed, 1);
+        assertTrue(trimmed.length() < file.length());
+
+        List<DecodeUnitCapture.Unit> expected = DecodeUnitCapture.read(file, 1);
+        List<DecodeUnitCapture.Unit> actual = DecodeUnitCapture.read(trimmed, 0);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).frameNumber, actual.get(i).frameNumber);
+            assertEquals(expected.get(i).receiveTimeUs, actual.get(i).receiveTimeUs);
+            assertArrayEquals(expected.get(i).data, actual.get(i).data);
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package com.limelight.binding.video;
+
+import android.app.Activity;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.SystemClock;
+
+import com.limelight.LimeLog;
+import com.limelight.nvstream.jni.MoonBridge;
+import com.limelight.preferences.PreferenceConfiguration;
+
+import org.jcodec.codecs.h264.H264Utils;
+import org.jcodec.codecs.h264.io.model.SeqParameterSet;
+import org.jcodec.common.model.ColorSpace;
+import org.robolectric.shadows.MediaCodecInfoBuilder;
+import org.robolectric.shadows.ShadowMediaCodecList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Offline benchmark for the decode unit submission path. A recorded elementary stream (or a
+// DecodeUnitCapture) is split into decode units the same way moonlight-common-c delivers them,
+// then pushed through the real MediaCodecDecoderRenderer (CSD handling, SPS patching, stats
+// windows and input buffer packing) backed by a ReplayVideoCodec, as fast as possible.
+//
+// H.264 and HEVC streams are expected in Annex B format. AV1 streams are expected in the low
+// overhead OBU format that the host sends, with a temporal delimiter starting each frame.
+//
+// This needs the Android framework classes that the renderer uses, so it runs under Robolectric
+// with ShadowMoonBridge standing in for the native library. The copies that callbacks.c makes on
+// the way into the renderer are done here the same way, so the bytes copied per frame cover the
+// whole path from the bridge to the codec.
+class DecodeUnitReplay {
+    static class Result {
+        int frames;
+        long nsPerFrame;
+        long bytesAllocatedPerFrame;
+        long bytesQueuedPerFrame;
+        long bytesCopiedPerFrame;
+        boolean zeroCopySubmit;
+
+        @Override
+        public String toString() {
+            return "Replayed " + frames + " frames: " + nsPerFrame + " ns/frame, " +
+                    bytesAllocatedPerFrame + " bytes allocated/frame, " +
+                    bytesQueuedPerFrame + " bytes queued/frame, " +
+                    bytesCopiedPerFrame + " bytes copied/frame (zero-copy submit: " + zeroCopySubmit + ")";
+        }
+    }
+
+    private final MediaCodecDecoderRenderer renderer;
+    private final ReplayVideoCodec codec;
+    private final int fps;
+    private final boolean zeroCopySupported;
+    private boolean zeroCopySubmit;
+
+    // Stands in for DecodedFrameBuffer in callbacks.c, which grows to fit the largest frame
+    private byte[] bridgeBuffer = new byte[32768];
+
+    // Bytes copied by the bridge, and the part of that written straight into codec input buffers.
+    // Everything else the codec receives was copied by the renderer.
+    private long bridgeBytesCopied;
+    private long bytesWrittenDirectly;
+
+    // Frame numbers and the clock keep moving forward across replays, like a live stream
+    private int nextFrameNumber = 1;
+    private long clockMs;
+
+    // Creates a renderer backed by a ReplayVideoCodec and sets it up for the given stream
+    DecodeUnitReplay(Activity activity, PreferenceConfiguration prefs, int videoFormat) throws IOException {
+        MediaCodecHelper.initialize(activity, "");
+        renderer = new MediaCodecDecoderRenderer(activity, prefs,
+                e -> LimeLog.warning("Replay decoder crashed: " + e),
+                0, false, false, "",
+                new PerfOverlayListener() {
+                    @Override
+                    public void onPerfUpdateV(PerformanceInfo performanceInfo) {
+                    }
+
+                    @Override
+                    public void onPerfUpdateWG(PerformanceInfo performanceInfo) {
+                    }
+
+                    @Override
+                    public boolean isPerfOverlayVisible() {
+                        return false;
+                    }
+                });
+        codec = new ReplayVideoCodec(4, 4 * 1024 * 1024);
+        renderer.setCodecFactory(name -> codec);
+
+        if (renderer.setup(videoFormat, prefs.width, prefs.height, prefs.fps) != 0) {
+            throw new IOException("Renderer setup failed");
+        }
+
+        fps = prefs.fps;
+        clockMs = SystemClock.uptimeMillis();
+
+        // Picture data takes whichever path the bridge would pick
+        zeroCopySupported = (renderer.getCapabilities() & MoonBridge.CAPABILITY_ZERO_COPY_SUBMIT) != 0;
+        zeroCopySubmit = zeroCopySupported;
+    }
+
+    // Registers a hardware low latency decoder for each video format, like a recent device has
+    static void addDecoders() {
+        addDecoder("c2.qti.avc.decoder.low_latency", MediaFormat.MIMETYPE_VIDEO_AVC,
+                MediaCodecInfo.CodecProfileLevel.AVCProfileHigh, MediaCodecInfo.CodecProfileLevel.AVCLevel52);
+        addDecoder("c2.qti.hevc.decoder.low_latency", MediaFormat.MIMETYPE_VIDEO_HEVC,
+                MediaCodecInfo.CodecProfileLevel.HEVCProfileMain10, MediaCodecInfo.CodecProfileLevel.HEVCMainTierLevel51);
+        addDecoder("c2.qti.av1.decoder.low_latency", MediaFormat.MIMETYPE_VIDEO_AV1,
+                MediaCodecInfo.CodecProfileLevel.AV1ProfileMain10, MediaCodecInfo.CodecProfileLevel.AV1Level51);
+    }
+
+    private static void addDecoder(String name, String mimeType, int profile, int level) {
+        MediaFormat format = MediaFormat.createVideoFormat(mimeType, 3840, 2160);
+        format.setFeatureEnabled(MediaCodecInfo.CodecCapabilities.FEATURE_LowLatency, true);
+        format.setFeatureEnabled(MediaCodecInfo.CodecCapabilities.FEATURE_AdaptivePlayback, true);
+
+        MediaCodecInfo.CodecProfileLevel profileLevel = new MediaCodecInfo.CodecProfileLevel();
+        profileLevel.profile = profile;
+        profileLevel.level = level;
+
+        ShadowMediaCodecList.addCodec(MediaCodecInfoBuilder.newBuilder()
+                .setName(name)
+                .setIsEncoder(false)
+                .setIsVendor(true)
+                .setIsHardwareAccelerated(true)
+                .setCapabilities(MediaCodecInfoBuilder.CodecCapabilitiesBuilder.newBuilder()
+                        .setMediaFormat(format)
+                        .setIsEncoder(false)
+                        .setProfileLevels(new MediaCodecInfo.CodecProfileLevel[]{profileLevel})
+                        .setColorFormats(new int[]{MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible})
+                        .build())
+                .build());
+    }
+
+    MediaCodecDecoderRenderer getRenderer() {
+        return renderer;
+    }
+
+    ReplayVideoCodec getCodec() {
+        return codec;
+    }
+
+    // Picks the submit path for picture data, like UseZeroCopySubmit does in the bridge
+    void setZeroCopySubmit(boolean zeroCopySubmit) {
+        if (zeroCopySubmit && !zeroCopySupported) {
+            throw new IllegalStateException("Renderer doesn't support zero-copy submit");
+        }
+        this.zeroCopySubmit = zeroCopySubmit;
+    }
+
+    void release() {
+        renderer.prepareForStop();
+        renderer.cleanup();
+    }
+
+    Result replay(List<DecodeUnitCapture.Unit> units, int iterations) {
+        Result result = new Result();
+        result.zeroCopySubmit = zeroCopySubmit;
+
+        int framesPerIteration = units.isEmpty() ? 0 : units.get(units.size() - 1).frameIndex + 1;
+        if (framesPerIteration == 0 || iterations <= 0) {
+            return result;
+        }
+
+        // Replay once untimed so one-time setup and JIT compilation aren't measured
+        submitAll(units, framesPerIteration);
+
+        long startBytesQueued = codec.getBytesQueued();
+        long startBytesCopied = getBytesCopied();
+        long startAllocatedBytes = getThreadAllocatedBytes();
+        long startNs = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            submitAll(units, framesPerIteration);
+        }
+        long elapsedNs = System.nanoTime() - startNs;
+        long allocatedBytes = getThreadAllocatedBytes() - startAllocatedBytes;
+
+        result.frames = framesPerIteration * iterations;
+        result.nsPerFrame = elapsedNs / result.frames;
+        result.bytesAllocatedPerFrame = allocatedBytes / result.frames;
+        result.bytesQueuedPerFrame = (codec.getBytesQueued() - startBytesQueued) / result.frames;
+        result.bytesCopiedPerFrame = (getBytesCopied() - startBytesCopied) / result.frames;
+        return result;
+    }
+
+    private long getBytesCopied() {
+        return bridgeBytesCopied + codec.getBytesQueued() - bytesWrittenDirectly;
+    }
+
+    private void submitAll(List<DecodeUnitCapture.Unit> units, int framesPerIteration) {
+        int lastFrameIndex = -1;
+        for (DecodeUnitCapture.Unit unit : units) {
+            int frameNumber = nextFrameNumber + unit.frameIndex;
+
+            // Advance the clock a frame at a time so the stats windows flip like they do live
+            if (unit.frameIndex != lastFrameIndex) {
+                lastFrameIndex = unit.frameIndex;
+                clockMs += 1000 / fps;
+                SystemClock.setCurrentTimeMillis(clockMs);
+            }
+
+            long nowUs = System.nanoTime() / 1000;
+            if (zeroCopySubmit && unit.bufferType == MoonBridge.BUFFER_TYPE_PICDATA) {
+                ByteBuffer buffer = renderer.getDirectSubmitBuffer(unit.data.length, frameNumber,
+                        unit.frameType, unit.frameHostProcessingLatency, nowUs, nowUs);
+                if (buffer != null) {
+                    // The bridge writes at the current position without moving it
+                    int position = buffer.position();
+                    buffer.put(unit.data);
+                    buffer.position(position);
+                    bridgeBytesCopied += unit.data.length;
+                    bytesWrittenDirectly += unit.data.length;
+                    renderer.submitDirectDecodeUnit(unit.data.length);
+                }
+            } else {
+                if (bridgeBuffer.length < unit.data.length) {
+                    bridgeBuffer = new byte[unit.data.length];
+                }
+                System.arraycopy(unit.data, 0, bridgeBuffer, 0, unit.data.length);
+                bridgeBytesCopied += unit.data.length;
+
+                renderer.submitDecodeUnit(bridgeBuffer, unit.data.length, unit.bufferType,
+                        frameNumber, unit.frameType, unit.frameHostProcessingLatency, nowUs, nowUs);
+            }
+        }
+        nextFrameNumber += framesPerIteration;
+    }
+
+    private static long getThreadAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    static List<DecodeUnitCapture.Unit> parse(byte[] stream, int videoFormat) {
+        if ((videoFormat & MoonBridge.VIDEO_FORMAT_MASK_AV1) != 0) {
+            return parseAv1(stream);
+        } else {
+            return parseAnnexB(stream, (videoFormat & MoonBridge.VIDEO_FORMAT_MASK_H265) != 0);
+        }
+    }
+
+    // Returns the offset of the next 3 byte start code at or after offset, or -1
+    private static int findStartCode(byte[] data, int offset) {
+        for (int i = offset; i + 2 < data.length; i++) {
+            if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == 1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<DecodeUnitCapture.Unit> parseAnnexB(byte[] stream, boolean hevc) {
+        FrameBuilder builder = new FrameBuilder();
+
+        int start = findStartCode(stream, 0);
+        while (start >= 0) {
+            int header = start + 3;
+            int next = findStartCode(stream, header);
+            int end = next >= 0 ? next : stream.length;
+
+            // Include the leading zero of 4 byte start codes in this NALU, not the previous one
+            if (start > 0 && stream[start - 1] == 0) {
+                start--;
+            }
+            if (next > 0 && stream[next - 1] == 0) {
+                end--;
+            }
+            if (header >= end) {
+                break;
+            }
+
+            int bufferType = MoonBridge.BUFFER_TYPE_PICDATA;
+            boolean vcl, idr, firstSliceOfPicture;
+            if (hevc) {
+                int nalType = (stream[header] >> 1) & 0x3F;
+                if (nalType == 32) {
+                    bufferType = MoonBridge.BUFFER_TYPE_VPS;
+                } else if (nalType == 33) {
+                    bufferType = MoonBridge.BUFFER_TYPE_SPS;
+                } else if (nalType == 34) {
+                    bufferType = MoonBridge.BUFFER_TYPE_PPS;
+                }
+                vcl = nalType < 32;
+                idr = nalType >= 16 && nalType <= 23;
+                firstSliceOfPicture = vcl && header + 2 < end && (stream[header + 2] & 0x80) != 0;
+            } else {
+                int nalType = stream[header] & 0x1F;
+                if (nalType == 7) {
+                    bufferType = MoonBridge.BUFFER_TYPE_SPS;
+                } else if (nalType == 8) {
+                    bufferType = MoonBridge.BUFFER_TYPE_PPS;
+                }
+                vcl = nalType >= 1 && nalType <= 5;
+                idr = nalType == 5;
+                // first_mb_in_slice is ue(v), so a leading 1 bit means it's zero
+                firstSliceOfPicture = vcl && header + 1 < end && (stream[header + 1] & 0x80) != 0;
+            }
+
+            // Parameter sets and the first slice of a picture both start a new access unit
+            if (firstSliceOfPicture || bufferType != MoonBridge.BUFFER_TYPE_PICDATA) {
+                builder.finishFrame();
+            }
+
+            if (bufferType != MoonBridge.BUFFER_TYPE_PICDATA) {
+                builder.addParameterSet(bufferType, stream, start, end);
+            } else {
+                builder.addPictureData(stream, start, end, vcl, idr);
+            }
+
+            start = next;
+        }
+
+        builder.finishFrame();
+        return builder.units;
+    }
+
+    private static List<DecodeUnitCapture.Unit> parseAv1(byte[] stream) {
+        FrameBuilder builder = new FrameBuilder();
+
+        int offset = 0;
+        while (offset < stream.length) {
+            int obuStart = offset;
+            int obuHeader = stream[offset++] & 0xFF;
+            int obuType = (obuHeader >> 3) & 0xF;
+            boolean hasExtension = (obuHeader & 0x4) != 0;
+            boolean hasSizeField = (obuHeader & 0x2) != 0;
+
+            if (hasExtension) {
+                offset++;
+            }
+
+            long obuSize;
+            if (hasSizeField) {
+                // leb128()
+                obuSize = 0;
+                for (int i = 0; i < 8 && offset < stream.length; i++) {
+                    int b = stream[offset++] & 0xFF;
+                    obuSize |= (long) (b & 0x7F) << (i * 7);
+                    if ((b & 0x80) == 0) {
+                        break;
+                    }
+                }
+            } else {
+                obuSize = stream.length - offset;
+            }
+
+            int end = (int) Math.min(stream.length, offset + obuSize);
+
+            // A temporal delimiter starts each temporal unit (frame)
+            if (obuType == 2) {
+                builder.finishFrame();
+            }
+
+            // A sequence header is only sent with key frames
+            builder.addPictureData(stream, obuStart, end, true, obuType == 1);
+
+            offset = end;
+        }
+
+        builder.finishFrame();
+        return builder.units;
+    }
+
+    // Groups NALUs/OBUs into frames, with parameter sets attached to the frame that follows them
+    private static class FrameBuilder {
+        final List<DecodeUnitCapture.Unit> units = new ArrayList<>();
+        private final List<Integer> pendingParameterSetTypes = new ArrayList<>();
+        private final List<byte[]> pendingParameterSets = new ArrayList<>();
+        private final ByteArrayOutputStream picture = new ByteArrayOutputStream();
+        private boolean hasPicture, idr;
+        private int frameIndex;
+
+        void addParameterSet(int bufferType, byte[] data, int start, int end) {
+            byte[] nalu = new byte[end - start];
+            System.arraycopy(data, start, nalu, 0, nalu.length);
+            pendingParameterSetTypes.add(bufferType);
+            pendingParameterSets.add(nalu);
+        }
+
+        void addPictureData(byte[] data, int start, int end, boolean vcl, boolean idr) {
+            picture.write(data, start, end - start);
+            hasPicture |= vcl;
+            this.idr |= idr;
+        }
+
+        private void addUnit(int bufferType, int frameType, byte[] data) {
+            units.add(new DecodeUnitCapture.Unit(bufferType, frameType, frameIndex, data,
+                    frameIndex, (char) 0, 0, 0));
+        }
+
+        void finishFrame() {
+            if (!hasPicture) {
+                return;
+            }
+
+            int frameType = idr ? MoonBridge.FRAME_TYPE_IDR : MoonBridge.FRAME_TYPE_PFRAME;
+            for (int i = 0; i < pendingParameterSets.size(); i++) {
+                addUnit(pendingParameterSetTypes.get(i), frameType, pendingParameterSets.get(i));
+            }
+            addUnit(MoonBridge.BUFFER_TYPE_PICDATA, frameType, picture.toByteArray());
+
+            pendingParameterSetTypes.clear();
+            pendingParameterSets.clear();
+            picture.reset();
+            hasPicture = idr = false;
+            frameIndex++;
+        }
+    }
+
+    // Generates an elementary stream shaped like what the host sends: parameter sets and an
+    // IDR frame every idrInterval frames, with P frames of about frameSize bytes in between.
+    // The picture data is random, since nothing here decodes it.
+    static byte[] generateStream(int videoFormat, int width, int height, int frames, int idrInterval, int frameSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Random random = new Random(frames);
+
+        for (int frame = 0; frame < frames; frame++) {
+            boolean idr = frame % idrInterval == 0;
+            int pictureSize = idr ? frameSize * 4 : frameSize;
+
+            if ((videoFormat & MoonBridge.VIDEO_FORMAT_MASK_AV1) != 0) {
+                writeObu(out, 2, new byte[0]);
+                if (idr) {
+                    writeObu(out, 1, randomPayload(random, 12));
+                }
+                writeObu(out, 6, randomPayload(random, pictureSize));
+            } else if ((videoFormat & MoonBridge.VIDEO_FORMAT_MASK_H265) != 0) {
+                if (idr) {
+                    writeNalu(out, new byte[]{0x40, 0x01}, randomPayload(random, 20));
+                    writeNalu(out, new byte[]{0x42, 0x01}, randomPayload(random, 40));
+                    writeNalu(out, new byte[]{0x44, 0x01}, randomPayload(random, 8));
+                }
+                // IDR_W_RADL or TRAIL_R, with first_slice_segment_in_pic_flag set
+                writeNalu(out, idr ? new byte[]{0x26, 0x01, (byte) 0xAF} : new byte[]{0x02, 0x01, (byte) 0xD0},
+                        randomPayload(random, pictureSize));
+            } else {
+                if (idr) {
+                    writeNalu(out, new byte[]{0x67}, createH264Sps(width, height));
+                    writeNalu(out, new byte[]{0x68}, new byte[]{(byte) 0xEE, 0x3C, (byte) 0x80});
+                }
+                // IDR or non-IDR slice, with first_mb_in_slice = 0
+                writeNalu(out, idr ? new byte[]{0x65, (byte) 0x88} : new byte[]{0x41, (byte) 0x9A},
+                        randomPayload(random, pictureSize));
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] createH264Sps(int width, int height) {
+        int widthMbs = (width + 15) / 16;
+        int heightMbs = (height + 15) / 16;
+
+        SeqParameterSet sps = new SeqParameterSet();
+        sps.profileIdc = 100;
+        sps.levelIdc = 51;
+        sps.chromaFormatIdc = ColorSpace.YUV420J;
+        sps.picWidthInMbsMinus1 = widthMbs - 1;
+        sps.picHeightInMapUnitsMinus1 = heightMbs - 1;
+        sps.frameMbsOnlyFlag = true;
+        sps.direct8x8InferenceFlag = true;
+        sps.numRefFrames = 1;
+        if (heightMbs * 16 != height) {
+            sps.frameCroppingFlag = true;
+            sps.frameCropBottomOffset = (heightMbs * 16 - height) / 2;
+        }
+
+        ByteBuffer escaped = H264Utils.writeSPS(sps, 64);
+        byte[] data = new byte[escaped.remaining()];
+        escaped.get(data);
+        return data;
+    }
+
+    // Random bytes without zeros, so they can never form a start code
+    private static byte[] randomPayload(Random random, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (1 + random.nextInt(255));
+        }
+        return data;
+    }
+
+    private static void writeNalu(ByteArrayOutputStream out, byte[] header, byte[] payload) {
+        out.write(0);
+        out.write(0);
+        out.write(0);
+        out.write(1);
+        out.write(header, 0, header.length);
+        out.write(payload, 0, payload.length);
+    }
+
+    private static void writeObu(ByteArrayOutputStream out, int type, byte[] payload) {
+        // obu_has_size_field is always set, like the host does
+        out.write((type << 3) | 0x2);
+        int size = payload.length;
+        do {
+            int b = size & 0x7F;
+            size >>>= 7;
+            out.write(size != 0 ? b | 0x80 : b);
+        } while (size != 0);
+        out.write(payload, 0, payload.length);
+    }
+}
@@ -0,0 +1,79 @@
+package com.limelight.binding.video;
+
+import android.app.Activity;
+
+import com.limelight.nvstream.jni.MoonBridge;
+import com.limelight.preferences.PreferenceConfiguration;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+// Not part of the default test run, use ./gradlew test -Pbenchmark
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = ShadowMoonBridge.class, instrumentedPackages = "com.limelight.nvstream.jni")
+public class DecodeUnitReplayBenchmark {
+    private static final int WIDTH = 3840;
+    private static final int HEIGHT = 2160;
+    private static final int FPS = 120;
+    private static final int FRAMES = 1200;
+    private static final int IDR_INTERVAL = 600;
+    // About 80 Mbps at 120 FPS
+    private static final int FRAME_SIZE = 80000;
+    private static final int ITERATIONS = 20;
+
+    private Activity activity;
+    private PreferenceConfiguration prefs;
+
+    @Before
+    public void setUp() {
+        DecodeUnitReplay.addDecoders();
+        activity = Robolectric.buildActivity(Activity.class).setup().get();
+
+        prefs = PreferenceConfiguration.readPreferences(activity);
+        prefs.width = WIDTH;
+        prefs.height = HEIGHT;
+        prefs.fps = FPS;
+    }
+
+    private void benchmark(String name, int videoFormat) throws Exception {
+        byte[] stream = DecodeUnitReplay.generateStream(videoFormat, WIDTH, HEIGHT, FRAMES, IDR_INTERVAL, FRAME_SIZE);
+        List<DecodeUnitCapture.Unit> units = DecodeUnitReplay.parse(stream, videoFormat);
+
+        // Each submit path gets its own renderer, so the stats of one don't leak into the other
+        for (boolean zeroCopySubmit : new boolean[]{false, true}) {
+            DecodeUnitReplay replay = new DecodeUnitReplay(activity, prefs, videoFormat);
+            try {
+                replay.setZeroCopySubmit(zeroCopySubmit);
+                DecodeUnitReplay.Result result = replay.replay(units, ITERATIONS);
+                assertEquals(FRAMES * ITERATIONS, result.frames);
+                System.out.println(name + ": " + result);
+            } finally {
+                replay.release();
+            }
+        }
+    }
+
+    @Test
+    public void h264() throws Exception {
+        benchmark("H.264", MoonBridge.VIDEO_FORMAT_H264);
+    }
+
+    @Test
+    public void hevc() throws Exception {
+        benchmark("HEVC", MoonBridge.VIDEO_FORMAT_H265);
+    }
+
+    @Test
+    public void av1() throws Exception {
+        prefs.videoFormat = PreferenceConfiguration.FormatOption.FORCE_AV1;
+        benchmark("AV1", MoonBridge.VIDEO_FORMAT_AV1_MAIN8);
+    }
+}
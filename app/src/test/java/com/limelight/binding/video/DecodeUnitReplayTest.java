@@ -0,0 +1,200 @@
+package com.limelight.binding.video;
+
+import android.app.Activity;
+
+import com.limelight.nvstream.jni.MoonBridge;
+import com.limelight.preferences.PreferenceConfiguration;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = ShadowMoonBridge.class, instrumentedPackages = "com.limelight.nvstream.jni")
+public class DecodeUnitReplayTest {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int FPS = 60;
+    private static final int FRAMES = 120;
+    private static final int IDR_INTERVAL = 60;
+    private static final int FRAME_SIZE = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Activity activity;
+    private PreferenceConfiguration prefs;
+
+    @Before
+    public void setUp() {
+        DecodeUnitReplay.addDecoders();
+        activity = Robolectric.buildActivity(Activity.class).setup().get();
+
+        prefs = PreferenceConfiguration.readPreferences(activity);
+        prefs.width = WIDTH;
+        prefs.height = HEIGHT;
+        prefs.fps = FPS;
+    }
+
+    private List<DecodeUnitCapture.Unit> generateUnits(int videoFormat) {
+        byte[] stream = DecodeUnitReplay.generateStream(videoFormat, WIDTH, HEIGHT, FRAMES, IDR_INTERVAL, FRAME_SIZE);
+        return DecodeUnitReplay.parse(stream, videoFormat);
+    }
+
+    @Test
+    public void parseSplitsFramesAndParameterSets() {
+        List<DecodeUnitCapture.Unit> units = generateUnits(MoonBridge.VIDEO_FORMAT_H264);
+
+        // SPS, PPS and the slice for each IDR frame, and one unit for every other frame
+        assertEquals(FRAMES + 2 * FRAMES / IDR_INTERVAL, units.size());
+        assertEquals(MoonBridge.BUFFER_TYPE_SPS, units.get(0).bufferType);
+        assertEquals(MoonBridge.BUFFER_TYPE_PPS, units.get(1).bufferType);
+        assertEquals(MoonBridge.FRAME_TYPE_IDR, units.get(2).frameType);
+        assertEquals(MoonBridge.FRAME_TYPE_PFRAME, units.get(3).frameType);
+        assertEquals(MoonBridge.BUFFER_TYPE_SPS, units.get(2 + IDR_INTERVAL).bufferType);
+        assertEquals(MoonBridge.FRAME_TYPE_IDR, units.get(2 + IDR_INTERVAL).frameType);
+        assertEquals(MoonBridge.FRAME_TYPE_PFRAME, units.get(1 + IDR_INTERVAL).frameType);
+        assertEquals(FRAMES - 1, units.get(units.size() - 1).frameIndex);
+
+        List<DecodeUnitCapture.Unit> hevcUnits = generateUnits(MoonBridge.VIDEO_FORMAT_H265);
+        assertEquals(FRAMES + 3 * FRAMES / IDR_INTERVAL, hevcUnits.size());
+        assertEquals(MoonBridge.BUFFER_TYPE_VPS, hevcUnits.get(0).bufferType);
+
+        // AV1 has no separate parameter set units
+        List<DecodeUnitCapture.Unit> av1Units = generateUnits(MoonBridge.VIDEO_FORMAT_AV1_MAIN8);
+        assertEquals(FRAMES, av1Units.size());
+        assertEquals(MoonBridge.FRAME_TYPE_IDR, av1Units.get(0).frameType);
+        assertEquals(MoonBridge.FRAME_TYPE_PFRAME, av1Units.get(1).frameType);
+    }
+
+    private static long getPictureBytesPerFrame(List<DecodeUnitCapture.Unit> units) {
+        long pictureBytes = 0;
+        for (DecodeUnitCapture.Unit unit : units) {
+            if (unit.bufferType == MoonBridge.BUFFER_TYPE_PICDATA) {
+                pictureBytes += unit.data.length;
+            }
+        }
+        return pictureBytes / FRAMES;
+    }
+
+    private void assertReplayQueuesEveryFrame(int videoFormat, int csdBuffers) throws Exception {
+        List<DecodeUnitCapture.Unit> units = generateUnits(videoFormat);
+        long pictureBytesPerFrame = getPictureBytesPerFrame(units);
+
+        DecodeUnitReplay replay = new DecodeUnitReplay(activity, prefs, videoFormat);
+        try {
+            DecodeUnitReplay.Result result = replay.replay(units, 2);
+            assertEquals(2 * FRAMES, result.frames);
+
+            // The untimed warm-up pass is queued too
+            ReplayVideoCodec codec = replay.getCodec();
+            assertEquals(3 * FRAMES + csdBuffers, codec.getBuffersQueued());
+            assertEquals(csdBuffers, codec.getCodecConfigBuffersQueued());
+
+            // Parameter sets and fused IDR frames add a little on top of the picture data
+            assertTrue(result.bytesQueuedPerFrame >= pictureBytesPerFrame);
+            assertTrue(result.bytesQueuedPerFrame < pictureBytesPerFrame + 100);
+            assertTrue(result.nsPerFrame > 0);
+        } finally {
+            replay.release();
+        }
+    }
+
+    @Test
+    public void replaysH264ThroughSubmissionPath() throws Exception {
+        // SPS and PPS are batched into one codec config buffer, then fused into later IDR frames
+        assertReplayQueuesEveryFrame(MoonBridge.VIDEO_FORMAT_H264, 1);
+    }
+
+    @Test
+    public void replaysHevcThroughSubmissionPath() throws Exception {
+        assertReplayQueuesEveryFrame(MoonBridge.VIDEO_FORMAT_H265, 1);
+    }
+
+    @Test
+    public void replaysAv1ThroughSubmissionPath() throws Exception {
+        // The sequence header travels in the picture data
+        prefs.videoFormat = PreferenceConfiguration.FormatOption.FORCE_AV1;
+        assertReplayQueuesEveryFrame(MoonBridge.VIDEO_FORMAT_AV1_MAIN8, 0);
+    }
+
+    private DecodeUnitReplay.Result replayWithSubmitPath(List<DecodeUnitCapture.Unit> units,
+                                                         boolean zeroCopySubmit, boolean expectRendererCopies) throws Exception {
+        DecodeUnitReplay replay = new DecodeUnitReplay(activity, prefs, MoonBridge.VIDEO_FORMAT_H264);
+        try {
+            replay.setZeroCopySubmit(zeroCopySubmit);
+            DecodeUnitReplay.Result result = replay.replay(units, 2);
+
+            // The renderer only counts its own copy of the picture data
+            long rendererBytesCopied = replay.getRenderer().getAverageBytesCopiedPerFrame();
+            if (expectRendererCopies) {
+                assertTrue(rendererBytesCopied >= FRAME_SIZE);
+                assertTrue(rendererBytesCopied < 4 * FRAME_SIZE + 100);
+            } else {
+                assertEquals(0, rendererBytesCopied);
+            }
+            return result;
+        } finally {
+            replay.release();
+        }
+    }
+
+    @Test
+    public void zeroCopySubmitSavesOneCopy() throws Exception {
+        List<DecodeUnitCapture.Unit> units = generateUnits(MoonBridge.VIDEO_FORMAT_H264);
+        long pictureBytesPerFrame = getPictureBytesPerFrame(units);
+
+        // Bridge to byte array, then byte array to input buffer. Parameter sets take this
+        // path either way, and add a little on top.
+        DecodeUnitReplay.Result arrayPath = replayWithSubmitPath(units, false, true);
+        assertTrue(arrayPath.bytesCopiedPerFrame >= 2 * pictureBytesPerFrame);
+        assertTrue(arrayPath.bytesCopiedPerFrame < 2 * pictureBytesPerFrame + 100);
+
+        // Bridge straight to input buffer
+        DecodeUnitReplay.Result directPath = replayWithSubmitPath(units, true, false);
+        assertTrue(directPath.bytesCopiedPerFrame >= pictureBytesPerFrame);
+        assertTrue(directPath.bytesCopiedPerFrame < pictureBytesPerFrame + 100);
+    }
+
+    @Test
+    public void replaysDecodeUnitCapture() throws Exception {
+        List<DecodeUnitCapture.Unit> units = generateUnits(MoonBridge.VIDEO_FORMAT_H264);
+
+        // Record the stream the way the renderer does, then replay what was captured
+        File file = folder.newFile("replay.mldu");
+        DecodeUnitCapture.Header header = new DecodeUnitCapture.Header();
+        header.videoFormat = MoonBridge.VIDEO_FORMAT_H264;
+        header.width = WIDTH;
+        header.height = HEIGHT;
+        header.fps = FPS;
+        DecodeUnitCapture capture = new DecodeUnitCapture(file, header, 4096, 16 << 20);
+        for (DecodeUnitCapture.Unit unit : units) {
+            capture.record(unit.data, unit.data.length, unit.bufferType, unit.frameNumber + 1, unit.frameType,
+                    (char) 0, 0, 0);
+        }
+        capture.close();
+
+        List<DecodeUnitCapture.Unit> captured = DecodeUnitCapture.read(file, 0);
+        assertEquals(units.size(), captured.size());
+
+        DecodeUnitReplay replay = new DecodeUnitReplay(activity, prefs, DecodeUnitCapture.readHeader(file).videoFormat);
+        try {
+            DecodeUnitReplay.Result result = replay.replay(captured, 1);
+            assertEquals(FRAMES, result.frames);
+            assertEquals(2 * FRAMES + 1, replay.getCodec().getBuffersQueued());
+        } finally {
+            replay.release();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.limelight.binding.video;
+
+import com.limelight.preferences.PreferenceConfiguration;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FramePacerTest {
+    private static final long FRAME_60FPS_NS = 16666667;
+
+    @Test
+    public void mapsModesToPacers() {
+        assertFalse(FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_MIN_LATENCY).isVsyncPaced());
+        assertFalse(FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_MAX_SMOOTHNESS).isVsyncPaced());
+        assertFalse(FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_CAP_FPS).isVsyncPaced());
+        assertTrue(FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_BALANCED).isVsyncPaced());
+        assertTrue(FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_EXPERIMENTAL_LOW_LATENCY).isVsyncPaced());
+        assertTrue(FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_PRECISE_SYNC).isVsyncPaced());
+
+        assertEquals(PreferenceConfiguration.FRAME_PACING_BALANCED,
+                FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_BALANCED).getMode());
+        assertEquals(PreferenceConfiguration.FRAME_PACING_CAP_FPS,
+                FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_CAP_FPS).getMode());
+
+        // Unknown modes (like auto, which is resolved by the selector) get lowest latency
+        assertEquals(PreferenceConfiguration.FRAME_PACING_MIN_LATENCY, FramePacer.forMode(-1).getMode());
+    }
+
+    @Test
+    public void immediatePacersReleaseNowOrNeverDrop() {
+        long nowNs = 123456789;
+        assertEquals(nowNs, FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_MIN_LATENCY)
+                .getImmediateReleaseTimeNs(nowNs));
+
+        // A PTS of 0 tells the display never to drop the frame
+        assertEquals(0, FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_MAX_SMOOTHNESS)
+                .getImmediateReleaseTimeNs(nowNs));
+        assertEquals(0, FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_CAP_FPS)
+                .getImmediateReleaseTimeNs(nowNs));
+    }
+
+    @Test
+    public void balancedRendersOnlyWhenFrameIsDue() {
+        FramePacer pacer = FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_BALANCED);
+        long lastNs = 1000000000;
+
+        // 60 FPS on a 120 Hz display: every other V-sync is skipped
+        assertEquals(FramePacer.NO_RENDER, pacer.getVsyncReleaseTimeNs(lastNs + FRAME_60FPS_NS / 2, lastNs, 60));
+        assertEquals(lastNs + FRAME_60FPS_NS, pacer.getVsyncReleaseTimeNs(lastNs + FRAME_60FPS_NS, lastNs, 60));
+
+        // Within 80% of the frame time is close enough
+        long earlyNs = lastNs + FRAME_60FPS_NS * 85 / 100;
+        assertEquals(earlyNs, pacer.getVsyncReleaseTimeNs(earlyNs, lastNs, 60));
+        assertEquals(FramePacer.NO_RENDER,
+                pacer.getVsyncReleaseTimeNs(lastNs + FRAME_60FPS_NS * 75 / 100, lastNs, 60));
+    }
+
+    @Test
+    public void experimentalLowLatencyRendersHalfAFrameAhead() {
+        FramePacer pacer = FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_EXPERIMENTAL_LOW_LATENCY);
+        long lastNs = 1000000000;
+        long frameTimeNs = lastNs + FRAME_60FPS_NS;
+
+        assertEquals(frameTimeNs - 500000000 / 60, pacer.getVsyncReleaseTimeNs(frameTimeNs, lastNs, 60));
+        assertEquals(FramePacer.NO_RENDER, pacer.getVsyncReleaseTimeNs(lastNs + FRAME_60FPS_NS / 2, lastNs, 60));
+    }
+
+    @Test
+    public void preciseSyncLeavesRenderingToItsThread() {
+        FramePacer pacer = FramePacer.forMode(PreferenceConfiguration.FRAME_PACING_PRECISE_SYNC);
+        long lastNs = 1000000000;
+        assertEquals(FramePacer.NO_RENDER, pacer.getVsyncReleaseTimeNs(lastNs + 10 * FRAME_60FPS_NS, lastNs, 60));
+    }
+}
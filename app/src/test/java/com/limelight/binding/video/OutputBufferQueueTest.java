@@ -0,0 +1,101 @@
+package com.limelight.binding.video;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OutputBufferQueueTest {
+    @Test
+    public void pollsInOrder() {
+        OutputBufferQueue queue = new OutputBufferQueue(3);
+        assertEquals(OutputBufferQueue.EMPTY, queue.offerReplacingOldest(1));
+        assertEquals(OutputBufferQueue.EMPTY, queue.offerReplacingOldest(2));
+        assertEquals(2, queue.size());
+
+        assertEquals(1, queue.poll());
+        assertEquals(2, queue.poll());
+        assertEquals(OutputBufferQueue.EMPTY, queue.poll());
+        assertEquals(0, queue.getDroppedFrames());
+    }
+
+    @Test
+    public void evictsOldestAtLimit() {
+        OutputBufferQueue queue = new OutputBufferQueue(3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(OutputBufferQueue.EMPTY, queue.offerReplacingOldest(i));
+        }
+
+        assertEquals(0, queue.offerReplacingOldest(3));
+        assertEquals(1, queue.offerReplacingOldest(4));
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.getDroppedFrames());
+
+        // Once the consumer makes room, nothing more is evicted
+        assertEquals(2, queue.poll());
+        assertEquals(OutputBufferQueue.EMPTY, queue.offerReplacingOldest(5));
+        assertEquals(3, queue.poll());
+        assertEquals(4, queue.poll());
+        assertEquals(5, queue.poll());
+    }
+
+    @Test
+    public void deliversEachBufferOnceUnderContention() throws Exception {
+        final int buffers = 2000000;
+        final int limit = 2;
+        OutputBufferQueue queue = new OutputBufferQueue(limit);
+
+        // Each buffer must either be rendered or released, never both and never neither
+        final byte[] owners = new byte[buffers];
+        final AtomicInteger evictedWithRoom = new AtomicInteger();
+        final AtomicInteger polled = new AtomicInteger();
+        final AtomicInteger evicted = new AtomicInteger();
+        final Object done = new Object();
+        final boolean[] producerDone = new boolean[1];
+
+        Thread consumer = new Thread(() -> {
+            for (;;) {
+                int index = queue.poll();
+                if (index != OutputBufferQueue.EMPTY) {
+                    owners[index]++;
+                    polled.incrementAndGet();
+                } else {
+                    synchronized (done) {
+                        if (producerDone[0] && queue.size() == 0) {
+                            return;
+                        }
+                    }
+                }
+            }
+        });
+        consumer.start();
+
+        for (int i = 0; i < buffers; i++) {
+            int sizeBefore = queue.size();
+            int index = queue.offerReplacingOldest(i);
+            if (index != OutputBufferQueue.EMPTY) {
+                owners[index]++;
+                evicted.incrementAndGet();
+
+                // The consumer can only shrink the queue, so it had room before we started
+                if (sizeBefore < limit) {
+                    evictedWithRoom.incrementAndGet();
+                }
+            }
+            assertTrue(queue.size() <= limit);
+        }
+        synchronized (done) {
+            producerDone[0] = true;
+        }
+        consumer.join();
+
+        assertEquals(buffers, polled.get() + evicted.get());
+        assertEquals(evicted.get(), queue.getDroppedFrames());
+        assertEquals(0, evictedWithRoom.get());
+        for (int i = 0; i < buffers; i++) {
+            assertEquals("buffer " + i, 1, owners[i]);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.limelight.binding.video;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.view.Surface;
+
+import java.nio.ByteBuffer;
+
+// In-memory VideoCodec that accepts input as fast as it is queued and never decodes
+// anything. Used by DecodeUnitReplay to measure only our own submission path.
+class ReplayVideoCodec implements VideoCodec {
+    private final ByteBuffer[] inputBuffers;
+    private int nextInputBuffer;
+    private MediaFormat format;
+
+    private long buffersQueued;
+    private long codecConfigBuffersQueued;
+    private long bytesQueued;
+
+    ReplayVideoCodec(int bufferCount, int bufferSize) {
+        inputBuffers = new ByteBuffer[bufferCount];
+        for (int i = 0; i < bufferCount; i++) {
+            // MediaCodec input buffers are direct, so match that here
+            inputBuffers[i] = ByteBuffer.allocateDirect(bufferSize);
+        }
+    }
+
+    @Override
+    public void configure(MediaFormat format, Surface surface) {
+        this.format = format;
+    }
+
+    @Override
+    public void setVideoScalingMode(int mode) {
+    }
+
+    @Override
+    public void setOnFrameRenderedListener(OnFrameRenderedListener listener) {
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public void release() {
+    }
+
+    @Override
+    public MediaFormat getInputFormat() {
+        return format;
+    }
+
+    @Override
+    public MediaFormat getOutputFormat() {
+        return format;
+    }
+
+    @Override
+    public int dequeueInputBuffer(long timeoutUs) {
+        // Input is consumed instantly, so a buffer is always available
+        int index = nextInputBuffer;
+        nextInputBuffer = (nextInputBuffer + 1) % inputBuffers.length;
+        return index;
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        ByteBuffer buffer = inputBuffers[index];
+        buffer.clear();
+        return buffer;
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        buffersQueued++;
+        bytesQueued += size;
+        if ((flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+            codecConfigBuffersQueued++;
+        }
+    }
+
+    @Override
+    public int dequeueOutputBuffer(MediaCodec.BufferInfo info, long timeoutUs) {
+        return MediaCodec.INFO_TRY_AGAIN_LATER;
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index, boolean render) {
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index, long renderTimestampNs) {
+    }
+
+    long getBuffersQueued() {
+        return buffersQueued;
+    }
+
+    long getCodecConfigBuffersQueued() {
+        return codecConfigBuffersQueued;
+    }
+
+    long getBytesQueued() {
+        return bytesQueued;
+    }
+}
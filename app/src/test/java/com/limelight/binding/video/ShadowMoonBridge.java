@@ -0,0 +1,29 @@
+package com.limelight.binding.video;
+
+import com.limelight.nvstream.jni.MoonBridge;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+// Stands in for the native library so the renderer can run on the JVM. Tests that use this
+// must also list com.limelight.nvstream.jni in instrumentedPackages.
+@Implements(MoonBridge.class)
+public class ShadowMoonBridge {
+    // 2 ms RTT with 1 ms variance, packed the way the bridge returns it
+    static final long RTT_INFO = (2L << 32) | 1;
+
+    // Skips loading the native library
+    @Implementation
+    protected static void __staticInitializer__() {
+    }
+
+    @Implementation
+    protected static long getEstimatedRttInfo() {
+        return RTT_INFO;
+    }
+
+    @Implementation
+    protected static int getPendingVideoFrames() {
+        return 0;
+    }
+}
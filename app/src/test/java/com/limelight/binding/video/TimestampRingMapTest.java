@@ -0,0 +1,116 @@
+package com.limelight.binding.video;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimestampRingMapTest {
+    @Test
+    public void removesInInsertionOrder() {
+        TimestampRingMap map = new TimestampRingMap(8);
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(map.put(i * 1000, i * 10));
+        }
+        assertEquals(5, map.size());
+
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i * 10, map.remove(i * 1000));
+        }
+        assertEquals(0, map.size());
+        assertEquals(TimestampRingMap.NO_VALUE, map.remove(1000));
+    }
+
+    @Test
+    public void evictsStaleEntries() {
+        TimestampRingMap map = new TimestampRingMap(8);
+        map.put(1000, 1);
+        map.put(2000, 2);
+        map.put(3000, 3);
+        map.put(4000, 4);
+
+        // The decoder dropped the first two frames
+        assertEquals(3, map.remove(3000));
+        assertEquals(1, map.size());
+        assertEquals(TimestampRingMap.NO_VALUE, map.remove(1000));
+
+        // A key that was never inserted doesn't evict the newer entries after it
+        assertEquals(TimestampRingMap.NO_VALUE, map.remove(3500));
+        assertEquals(1, map.size());
+        assertEquals(4, map.remove(4000));
+    }
+
+    @Test
+    public void rejectsPutsWhenFull() {
+        TimestampRingMap map = new TimestampRingMap(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(map.put(i, i));
+        }
+        assertFalse(map.put(4, 4));
+        assertEquals(4, map.size());
+
+        // Removing one frees one slot, and the ring wraps around into it
+        assertEquals(0, map.remove(0));
+        assertTrue(map.put(5, 5));
+        assertFalse(map.put(6, 6));
+        assertEquals(1, map.remove(1));
+        assertEquals(5, map.remove(5));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void clearAbandonsEntries() {
+        TimestampRingMap map = new TimestampRingMap(4);
+        map.put(1000, 1);
+        map.put(2000, 2);
+        map.clear();
+        assertEquals(0, map.size());
+
+        assertEquals(TimestampRingMap.NO_VALUE, map.remove(2000));
+
+        // Timestamps can go backwards after a reconfiguration
+        assertTrue(map.put(500, 5));
+        assertEquals(5, map.remove(500));
+
+        // Abandoned slots are only reclaimed once the consumer has moved past them
+        map.put(600, 6);
+        map.put(700, 7);
+        map.clear();
+        assertTrue(map.put(800, 8));
+        assertTrue(map.put(900, 9));
+        assertFalse(map.put(1000, 10));
+        assertEquals(8, map.remove(800));
+        assertTrue(map.put(1000, 10));
+        assertTrue(map.put(1100, 11));
+        assertTrue(map.put(1200, 12));
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    public void doesNotAllocate() {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        TimestampRingMap map = new TimestampRingMap(256);
+
+        // Warm up so the JIT and the first call to getCurrentThreadAllocatedBytes() aren't counted
+        long sum = 0;
+        for (int i = 0; i < 100000; i++) {
+            map.put(i, i);
+            sum += map.remove(i);
+        }
+
+        long startBytes = threadBean.getCurrentThreadAllocatedBytes();
+        for (int i = 100000; i < 1100000; i++) {
+            map.put(i, i);
+            sum += map.remove(i);
+        }
+        long allocatedBytes = threadBean.getCurrentThreadAllocatedBytes() - startBytes;
+
+        // A boxing HashMap would allocate tens of megabytes here
+        assertTrue(sum > 0);
+        assertTrue("allocated " + allocatedBytes + " bytes", allocatedBytes < 1024);
+    }
+}
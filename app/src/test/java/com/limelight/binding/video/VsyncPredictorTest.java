@@ -0,0 +1,85 @@
+package com.limelight.binding.video;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VsyncPredictorTest {
+    private static final long PERIOD_60HZ_NS = 16666667;
+    private static final long PERIOD_120HZ_NS = 8333333;
+
+    // Feeds count V-syncs at the given period starting after startNs, and returns the last one
+    private static long feed(VsyncPredictor predictor, long startNs, long periodNs, int count) {
+        long frameTimeNs = startNs;
+        for (int i = 0; i < count; i++) {
+            frameTimeNs += periodNs;
+            predictor.onVsync(frameTimeNs);
+        }
+        return frameTimeNs;
+    }
+
+    private static void assertTracks(VsyncPredictor predictor, long lastVsyncNs, long periodNs) {
+        assertTrue(predictor.isLocked());
+        assertEquals(periodNs, predictor.getPeriodNs(), periodNs / 100);
+        long predictedNs = predictor.predictNextVsyncNs(lastVsyncNs + periodNs / 2);
+        assertEquals(lastVsyncNs + periodNs, predictedNs, periodNs / 20);
+    }
+
+    @Test
+    public void locksOntoRefreshRate() {
+        VsyncPredictor predictor = new VsyncPredictor(PERIOD_60HZ_NS);
+        long lastNs = feed(predictor, 0, PERIOD_60HZ_NS, 60);
+        assertTracks(predictor, lastNs, PERIOD_60HZ_NS);
+    }
+
+    @Test
+    public void followsRefreshRateIncrease() {
+        VsyncPredictor predictor = new VsyncPredictor(PERIOD_60HZ_NS);
+        long lastNs = feed(predictor, 0, PERIOD_60HZ_NS, 60);
+
+        lastNs = feed(predictor, lastNs, PERIOD_120HZ_NS, 120);
+        assertTracks(predictor, lastNs, PERIOD_120HZ_NS);
+    }
+
+    @Test
+    public void followsRefreshRateDecrease() {
+        VsyncPredictor predictor = new VsyncPredictor(PERIOD_120HZ_NS);
+        long lastNs = feed(predictor, 0, PERIOD_120HZ_NS, 120);
+
+        // Every V-sync is exactly two of the old periods apart, which looks like missed
+        // callbacks to the filter alone
+        lastNs = feed(predictor, lastNs, PERIOD_60HZ_NS, 60);
+        assertTracks(predictor, lastNs, PERIOD_60HZ_NS);
+    }
+
+    @Test
+    public void occasionalMissedCallbacksKeepPeriod() {
+        VsyncPredictor predictor = new VsyncPredictor(PERIOD_60HZ_NS);
+        long frameTimeNs = 0;
+        for (int i = 0; i < 300; i++) {
+            // Miss every fifth callback
+            frameTimeNs += i % 5 == 4 ? 2 * PERIOD_60HZ_NS : PERIOD_60HZ_NS;
+            predictor.onVsync(frameTimeNs);
+        }
+        assertTracks(predictor, frameTimeNs, PERIOD_60HZ_NS);
+    }
+
+    @Test
+    public void duplicateFrameTimesAreIgnored() {
+        VsyncPredictor predictor = new VsyncPredictor(PERIOD_60HZ_NS);
+        long lastNs = feed(predictor, 0, PERIOD_60HZ_NS, 60);
+        for (int i = 0; i < 20; i++) {
+            predictor.onVsync(lastNs);
+        }
+        assertTracks(predictor, lastNs, PERIOD_60HZ_NS);
+    }
+
+    @Test
+    public void notLockedBeforeEnoughSamples() {
+        VsyncPredictor predictor = new VsyncPredictor(PERIOD_60HZ_NS);
+        feed(predictor, 0, PERIOD_60HZ_NS, 10);
+        assertFalse(predictor.isLocked());
+    }
+}
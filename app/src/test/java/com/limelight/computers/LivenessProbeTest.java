@@ -0,0 +1,63 @@
+package com.limelight.computers;
+
+import com.limelight.nvstream.http.ComputerDetails;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LivenessProbeTest {
+    @Test
+    public void parsesOnlyIpLiterals() {
+        assertNotNull(LivenessProbe.parseLiteralAddress("192.168.1.20"));
+        assertNotNull(LivenessProbe.parseLiteralAddress("0.0.0.0"));
+        assertNotNull(LivenessProbe.parseLiteralAddress("fe80::1"));
+        assertNotNull(LivenessProbe.parseLiteralAddress("[2001:db8::7]"));
+        assertNotNull(LivenessProbe.parseLiteralAddress("::ffff:10.0.0.5"));
+
+        assertNull(LivenessProbe.parseLiteralAddress("gaming-pc.local"));
+        assertNull(LivenessProbe.parseLiteralAddress("localhost"));
+        assertNull(LivenessProbe.parseLiteralAddress("256.1.1.1"));
+        assertNull(LivenessProbe.parseLiteralAddress("10.0.0"));
+        assertNull(LivenessProbe.parseLiteralAddress("1.2.3.4.example.com"));
+        assertNull(LivenessProbe.parseLiteralAddress(""));
+    }
+
+    @Test
+    public void hostnamesPassThroughWithoutProbing() throws Exception {
+        // Would take the full DNS timeout to fail if it were resolved
+        ComputerDetails.AddressTuple hostname = new ComputerDetails.AddressTuple("moonlight-probe-test.invalid", 47989);
+
+        long startNs = System.nanoTime();
+        List<ComputerDetails.AddressTuple> reachable =
+                LivenessProbe.probe(Collections.singletonList(hostname), 47984, 100);
+        long elapsedMs = (System.nanoTime() - startNs) / 1000000;
+
+        assertEquals(Collections.singletonList(hostname), reachable);
+        assertTrue("took " + elapsedMs + " ms", elapsedMs < 100);
+    }
+
+    @Test
+    public void probesLiteralsOnBothPorts() throws Exception {
+        try (ServerSocket listening = new ServerSocket()) {
+            listening.bind(new InetSocketAddress("127.0.0.1", 0));
+
+            // Only the HTTPS port of the first address is listening
+            ComputerDetails.AddressTuple open = new ComputerDetails.AddressTuple("127.0.0.1", 1);
+            ComputerDetails.AddressTuple closed = new ComputerDetails.AddressTuple("127.0.0.2", 1);
+
+            List<ComputerDetails.AddressTuple> reachable =
+                    LivenessProbe.probe(Arrays.asList(open, closed), listening.getLocalPort(), 500);
+            assertEquals(Collections.singletonList(open), reachable);
+        }
+    }
+}
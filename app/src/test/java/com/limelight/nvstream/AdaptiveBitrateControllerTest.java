@@ -0,0 +1,185 @@
+package com.limelight.nvstream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveBitrateControllerTest {
+    private static final int MIN_KBPS = 500;
+    private static final int MAX_KBPS = 20000;
+    private static final int FRAMES_PER_WINDOW = 60;
+    private static final int RTT_MS = 10;
+
+    private static int cleanWindow(AdaptiveBitrateController controller, long nowMs) {
+        return controller.onStatsWindow(nowMs, FRAMES_PER_WINDOW, 0, 0, RTT_MS, 1, 0);
+    }
+
+    // Two loss events, but less than the severe loss ratio
+    private static int congestedWindow(AdaptiveBitrateController controller, long nowMs) {
+        return controller.onStatsWindow(nowMs, FRAMES_PER_WINDOW, 1, 2, RTT_MS, 1, 0);
+    }
+
+    // 10% of the frames lost
+    private static int severeWindow(AdaptiveBitrateController controller, long nowMs) {
+        return controller.onStatsWindow(nowMs, FRAMES_PER_WINDOW, FRAMES_PER_WINDOW / 10, 1, RTT_MS, 1, 0);
+    }
+
+    // Feeds a window and confirms any requested change, like Game does once the host accepts it
+    private static int applyWindow(AdaptiveBitrateController controller, int target) {
+        if (target > 0) {
+            controller.onBitrateApplied(controller.getRequestSequence(), target);
+        }
+        return target;
+    }
+
+    @Test
+    public void sustainedCongestionDecreasesByFifteenPercent() {
+        AdaptiveBitrateController controller = new AdaptiveBitrateController(MIN_KBPS, MAX_KBPS, MAX_KBPS);
+
+        // A single congested window is not enough
+        assertEquals(-1, congestedWindow(controller, 1000));
+        assertEquals(MAX_KBPS, controller.getCurrentBitrate());
+
+        assertEquals((int) (MAX_KBPS * 0.85f), applyWindow(controller, congestedWindow(controller, 2000)));
+        assertEquals(17000, controller.getCurrentBitrate());
+    }
+
+    @Test
+    public void congestionMustBeConsecutive() {
+        AdaptiveBitrateController controller = new AdaptiveBitrateController(MIN_KBPS, MAX_KBPS, MAX_KBPS);
+
+        assertEquals(-1, congestedWindow(controller, 1000));
+        assertEquals(-1, cleanWindow(controller, 2000));
+        assertEquals(-1, congestedWindow(controller, 3000));
+        assertEquals(MAX_KBPS, controller.getCurrentBitrate());
+    }
+
+    @Test
+    public void severeLossDecreasesByThirtyPercentImmediately() {
+        AdaptiveBitrateController controller = new AdaptiveBitrateController(MIN_KBPS, MAX_KBPS, MAX_KBPS);
+
+        assertEquals((int) (MAX_KBPS * 0.7f), applyWindow(controller, severeWindow(controller, 1000)));
+        assertEquals(14000, controller.getCurrentBitrate());
+    }
+
+    @Test
+    public void decreaseNeverGoesBelowMinimum() {
+        AdaptiveBitrateController controller = new AdaptiveBitrateController(MIN_KBPS, MAX_KBPS, 600);
+
+        assertEquals(MIN_KBPS, applyWindow(controller, severeWindow(controller, 1000)));
+        // Already at the floor, so there's nothing left to request
+        assertEquals(-1, severeWindow(controller, 4000));
+    }
+
+    @Test
+    public void changesAreSpacedByTwoSeconds() {
+        AdaptiveBitrateController controller = new AdaptiveBitrateController(MIN_KBPS, MAX_KBPS, MAX_KBPS);
+
+        applyWindow(controller, severeWindow(controller, 10000));
+        assertEquals(14000, controller.getCurrentBitrate());
+
+        // Still severe, but too soon after the last change
+        assertEquals(-1, severeWindow(controller, 11000));
+        assertEquals(-1, severeWindow(controller, 11999));
+        assertEquals((int) (14000 * 0.7f), applyWindow(controller, severeWindow(controller, 12000)));
+    }
+
+    @Test
+    public void increaseIsHeldForEightSecondsAfterDecrease() {
+        AdaptiveBitrateController controller = new AdaptiveBitrateController(MIN_KBPS, MAX_KBPS, MAX_KBPS);
+
+        applyWindow(controller, severeWindow(controller, 10000));
+        int decreased = controller.getCurrentBitrate();
+
+        // Five clean windows are reached at 15000, but the hold lasts until 18000
+        for (long now = 11000; now < 18000; now += 1000) {
+            assertEquals("increase at " + now, -1, cleanWindow(controller, now));
+        }
+        int increased = applyWindow(controller, cleanWindow(controller, 18000));
+        assertTrue(increased > decreased);
+    }
+
+    @Test
+    public void noDecisionsWhileChangeIsPending() {
+        AdaptiveBitrateController controller = new AdaptiveBitrateController(MIN_KBPS, MAX_KBPS, MAX_KBPS);
+
+        assertEquals(14000, severeWindow(controller, 1000));
+        // The host hasn't confirmed the change yet
+        assertEquals(-1, severeWindow(controller, 5000));
+        controller.onBitrateRejected(controller.getRequestSequence());
+        assertEquals(14000, severeWindow(controller, 6000));
+    }
+
+    @Test
+    public void manualChangeSupersedesPendingChange() {
+        AdaptiveBitrateController controller = new AdaptiveBitrateController(MIN_KBPS, MAX_KBPS, MAX_KBPS);
+
+        assertEquals(14000, severeWindow(controller, 1000));
+        int sequence = controller.getRequestSequence();
+
+        // The user picks a bitrate while the automatic change is still in flight
+        controller.onManualBitrateChange(15000);
+        assertEquals(15000, controller.getCurrentBitrate());
+
+        // The host confirms the automatic change afterwards, which must not undo the manual one
+        controller.onBitrateApplied(sequence, 14000);
+        assertEquals(15000, controller.getCurrentBitrate());
+        controller.onBitrateRejected(sequence);
+
+        // Nothing is pending anymore, so the controller keeps judging the network
+        assertEquals(10500, severeWindow(controller, 4000));
+        controller.onBitrateApplied(controller.getRequestSequence(), 10500);
+        assertEquals(10500, controller.getCurrentBitrate());
+    }
+
+    @Test
+    public void cleanWindowsIncreaseAdditivelyUpToCeiling() {
+        AdaptiveBitrateController controller = new AdaptiveBitrateController(MIN_KBPS, MAX_KBPS, 10000);
+        // 5% of the ceiling
+        int step = MAX_KBPS / 20;
+
+        int previous = controller.getCurrentBitrate();
+        int increases = 0;
+        long now = 0;
+        while (controller.getCurrentBitrate() < MAX_KBPS) {
+            now += 1000;
+            int target = applyWindow(controller, cleanWindow(controller, now));
+            if (target > 0) {
+                assertEquals(previous + step, target);
+                previous = target;
+                increases++;
+            }
+            assertTrue("ran away at " + now, now < 1000000);
+        }
+
+        assertEquals(10, increases);
+        assertEquals(MAX_KBPS, controller.getCurrentBitrate());
+
+        // At the ceiling, clean windows change nothing
+        for (int i = 0; i < 20; i++) {
+            now += 1000;
+            assertEquals(-1, cleanWindow(controller, now));
+        }
+    }
+
+    @Test
+    public void increaseSlowsNearLastCongestedBitrate() {
+        AdaptiveBitrateController controller = new AdaptiveBitrateController(MIN_KBPS, MAX_KBPS, 10000);
+        int step = MAX_KBPS / 20;
+
+        applyWindow(controller, severeWindow(controller, 1000));
+        assertEquals(7000, controller.getCurrentBitrate());
+
+        int previous = controller.getCurrentBitrate();
+        for (long now = 2000; controller.getCurrentBitrate() < 10000; now += 1000) {
+            int target = applyWindow(controller, cleanWindow(controller, now));
+            if (target > 0) {
+                // Half steps once the next full step would reach 90% of the congested rate
+                int expectedStep = previous + step >= 9000 ? step / 2 : step;
+                assertEquals(previous + expectedStep, target);
+                previous = target;
+            }
+        }
+    }
+}
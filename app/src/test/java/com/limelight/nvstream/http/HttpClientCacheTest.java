@@ -0,0 +1,154 @@
+package com.limelight.nvstream.http;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.SSLException;
+
+import mockwebserver3.MockResponse;
+import mockwebserver3.MockWebServer;
+import mockwebserver3.RecordedRequest;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class HttpClientCacheTest {
+    private static HeldCertificate clientCert;
+    private static LimelightCryptoProvider cryptoProvider;
+
+    @BeforeClass
+    public static void createClientCert() {
+        // Moonlight identifies itself to the host with an RSA client certificate
+        clientCert = new HeldCertificate.Builder()
+                .commonName("NVIDIA GameStream Client")
+                .rsa2048()
+                .build();
+        cryptoProvider = new LimelightCryptoProvider() {
+            @Override
+            public X509Certificate getClientCertificate() {
+                return clientCert.certificate();
+            }
+
+            @Override
+            public PrivateKey getClientPrivateKey() {
+                return clientCert.keyPair().getPrivate();
+            }
+
+            @Override
+            public byte[] getPemEncodedClientCertificate() {
+                return clientCert.certificatePem().getBytes();
+            }
+
+            @Override
+            public String encodeBase64String(byte[] data) {
+                return java.util.Base64.getEncoder().encodeToString(data);
+            }
+        };
+    }
+
+    // A self-signed host cert like the ones GFE and Sunshine generate, which only passes
+    // validation by being pinned
+    private static HeldCertificate newServerCert() {
+        return new HeldCertificate.Builder()
+                .commonName("NVIDIA GameStream Server")
+                .build();
+    }
+
+    // Starts an HTTPS server with the given cert that requires our client cert
+    private static MockWebServer startServer(HeldCertificate serverCert) throws IOException {
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+                .heldCertificate(serverCert)
+                .addTrustedCertificate(clientCert.certificate())
+                .build();
+
+        MockWebServer server = new MockWebServer();
+        server.useHttps(serverCertificates.sslSocketFactory());
+        server.requireClientAuth();
+        server.start();
+        return server;
+    }
+
+    private static void enqueueResponses(MockWebServer server, int count) {
+        for (int i = 0; i < count; i++) {
+            server.enqueue(new MockResponse.Builder().body("<root status_code=\"200\"/>").build());
+        }
+    }
+
+    private static void get(OkHttpClient client, MockWebServer server) throws IOException {
+        try (Response response = client.newCall(new Request.Builder().url(server.url("/serverinfo")).build()).execute()) {
+            assertEquals(200, response.code());
+            response.body().string();
+        }
+    }
+
+    @Test
+    public void sameKeyReusesClientsAndConnection() throws Exception {
+        HeldCertificate serverCert = newServerCert();
+        try (MockWebServer server = startServer(serverCert)) {
+            enqueueResponses(server, 3);
+
+            // Each poll creates a new NvHTTP, which looks up its clients again
+            HttpClientCache.Clients first = HttpClientCache.get(server.getHostName(), serverCert.certificate(), cryptoProvider);
+            HttpClientCache.Clients second = HttpClientCache.get(server.getHostName(), serverCert.certificate(), cryptoProvider);
+            assertSame(first, second);
+
+            get(first.longConnectTimeout, server);
+            get(second.longConnectTimeout, server);
+            // The timeout variants share the pool too
+            get(second.shortConnectTimeout, server);
+
+            RecordedRequest request1 = server.takeRequest();
+            RecordedRequest request2 = server.takeRequest();
+            RecordedRequest request3 = server.takeRequest();
+            assertEquals(0, request1.getConnectionIndex());
+            assertEquals(0, request2.getConnectionIndex());
+            assertEquals(0, request3.getConnectionIndex());
+            assertEquals(2, request3.getExchangeIndex());
+
+            assertSame(first.longConnectTimeout.connectionPool(), second.shortConnectTimeout.connectionPool());
+            assertEquals(1, first.longConnectTimeout.connectionPool().connectionCount());
+        }
+    }
+
+    @Test
+    public void differentServerCertGetsSeparatePool() throws Exception {
+        HeldCertificate certA = newServerCert();
+        HeldCertificate certB = newServerCert();
+        try (MockWebServer serverA = startServer(certA); MockWebServer serverB = startServer(certB)) {
+            enqueueResponses(serverA, 1);
+            enqueueResponses(serverB, 1);
+
+            // Same host, so only the pinned cert tells these apart
+            HttpClientCache.Clients clientsA = HttpClientCache.get(serverA.getHostName(), certA.certificate(), cryptoProvider);
+            HttpClientCache.Clients clientsB = HttpClientCache.get(serverB.getHostName(), certB.certificate(), cryptoProvider);
+            assertNotSame(clientsA, clientsB);
+            assertNotSame(clientsA.longConnectTimeout.connectionPool(), clientsB.longConnectTimeout.connectionPool());
+
+            get(clientsA.longConnectTimeout, serverA);
+            get(clientsB.longConnectTimeout, serverB);
+            assertEquals(1, clientsA.longConnectTimeout.connectionPool().connectionCount());
+            assertEquals(1, clientsB.longConnectTimeout.connectionPool().connectionCount());
+            assertEquals(0, serverA.takeRequest().getConnectionIndex());
+            assertEquals(0, serverB.takeRequest().getConnectionIndex());
+
+            // Clients pinned to one cert must not accept the other
+            try {
+                get(clientsA.shortConnectTimeout, serverB);
+                fail("Connected with the wrong pinned certificate");
+            } catch (SSLException expected) {
+            }
+            assertEquals(1, serverB.getRequestCount());
+        }
+    }
+}
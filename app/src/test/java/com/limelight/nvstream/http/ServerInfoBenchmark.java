@@ -0,0 +1,48 @@
+package com.limelight.nvstream.http;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+
+// Not part of the default test run, use ./gradlew test -Pbenchmark
+public class ServerInfoBenchmark {
+    private static final int ITERATIONS = 20000;
+
+    private interface ComputerDetails {
+        int read(String xml) throws Exception;
+    }
+
+    private static void benchmark(String name, String[] responses, ComputerDetails details) throws Exception {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        // Warm up so the JIT and the first call to getCurrentThreadAllocatedBytes() aren't counted
+        long hash = 0;
+        for (int i = 0; i < ITERATIONS / 4; i++) {
+            hash += details.read(responses[i % responses.length]);
+        }
+
+        long startBytes = threadBean.getCurrentThreadAllocatedBytes();
+        long startNs = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            hash += details.read(responses[i % responses.length]);
+        }
+        long elapsedNs = System.nanoTime() - startNs;
+        long allocatedBytes = threadBean.getCurrentThreadAllocatedBytes() - startBytes;
+
+        assertTrue(hash > 0);
+        System.out.printf("serverinfo fields, %s: %.1f us, %d bytes allocated per response%n",
+                name, elapsedNs / 1000.0 / ITERATIONS, allocatedBytes / ITERATIONS);
+    }
+
+    @Test
+    public void computerDetails() throws Exception {
+        String[] responses = {ServerInfoTest.GFE_SERVERINFO, ServerInfoTest.SUNSHINE_SERVERINFO};
+
+        benchmark("getXmlString, " + ServerInfoTest.COMPUTER_DETAILS_FIELDS.length + " parses",
+                responses, ServerInfoTest::oldComputerDetails);
+        benchmark("ServerInfo, 1 parse", responses, ServerInfoTest::newComputerDetails);
+    }
+}
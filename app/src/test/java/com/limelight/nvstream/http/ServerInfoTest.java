@@ -0,0 +1,235 @@
+package com.limelight.nvstream.http;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ServerInfoTest {
+    static final String GFE_SERVERINFO =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n" +
+            "<root protocol_version=\"0.1\" query=\"serverinfo\" status_code=\"200\" status_message=\"OK\">\n" +
+            "<hostname>GAMING-PC</hostname>\n" +
+            "<appversion>7.1.431.-1</appversion>\n" +
+            "<GfeVersion>3.23.0.74</GfeVersion>\n" +
+            "<uniqueid>8F3A1C2B-1D4E-4F5A-9B6C-7D8E9F0A1B2C</uniqueid>\n" +
+            "<HttpsPort>47984</HttpsPort>\n" +
+            "<MaxLumaPixelsH264>1036800</MaxLumaPixelsH264>\n" +
+            "<MaxLumaPixelsHEVC>1869449984</MaxLumaPixelsHEVC>\n" +
+            "<mac>00:1A:2B:3C:4D:5E</mac>\n" +
+            "<LocalIP>192.168.1.20</LocalIP>\n" +
+            "<ServerCodecModeSupport>259</ServerCodecModeSupport>\n" +
+            "<SupportedDisplayMode>\n" +
+            "<DisplayMode><Width>3840</Width><Height>2160</Height><RefreshRate>60</RefreshRate></DisplayMode>\n" +
+            "<DisplayMode><Width>1920</Width><Height>1080</Height><RefreshRate>120</RefreshRate></DisplayMode>\n" +
+            "</SupportedDisplayMode>\n" +
+            "<PairStatus>1</PairStatus>\n" +
+            "<currentgame>0</currentgame>\n" +
+            "<state>MJOLNIR_STATE_SERVER_AVAILABLE</state>\n" +
+            "<gputype>NVIDIA GeForce RTX 3080</gputype>\n" +
+            "<numofapps>3</numofapps>\n" +
+            "</root>\n";
+
+    static final String SUNSHINE_SERVERINFO =
+            "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<root status_code=\"200\">\n" +
+            "    <hostname>living-room</hostname>\n" +
+            "    <appversion>7.1.431.-1</appversion>\n" +
+            "    <GfeVersion>3.23.0.74</GfeVersion>\n" +
+            "    <SunshineVersion>2025.122.141614</SunshineVersion>\n" +
+            "    <uniqueid>0123456789ABCDEF</uniqueid>\n" +
+            "    <HttpsPort>47984</HttpsPort>\n" +
+            "    <ExternalPort>47989</ExternalPort>\n" +
+            "    <MaxLumaPixelsHEVC>1869449984</MaxLumaPixelsHEVC>\n" +
+            "    <mac>aa:bb:cc:dd:ee:ff</mac>\n" +
+            "    <Permission>67108863</Permission>\n" +
+            "    <LocalIP>10.0.0.5</LocalIP>\n" +
+            "    <ExternalIP>203.0.113.7</ExternalIP>\n" +
+            "    <ServerCodecModeSupport>3843</ServerCodecModeSupport>\n" +
+            "    <PairStatus>0</PairStatus>\n" +
+            "    <currentgame>881448767</currentgame>\n" +
+            "    <state>SUNSHINE_SERVER_BUSY</state>\n" +
+            "</root>\n";
+
+    private static final String ERROR_RESPONSE =
+            "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<root status_code=\"401\" status_message=\"The client is not authorized. Certificate verification failed.\"/>\n";
+
+    private static final Pattern TAG_PATTERN = Pattern.compile("<([A-Za-z][A-Za-z0-9]*)[ />]");
+
+    private static Set<String> getTagNames(String xml) {
+        Set<String> tags = new LinkedHashSet<>();
+        Matcher m = TAG_PATTERN.matcher(xml);
+        while (m.find()) {
+            tags.add(m.group(1));
+        }
+        return tags;
+    }
+
+    private static String oldString(String xml, String tag) throws Exception {
+        return NvHTTP.getXmlString(xml, tag, false);
+    }
+
+    private static int oldInt(String xml, String tag, int defaultValue) throws Exception {
+        String str = oldString(xml, tag);
+        return str != null ? Integer.parseInt(str) : defaultValue;
+    }
+
+    private static long oldLong(String xml, String tag) throws Exception {
+        String str = oldString(xml, tag);
+        return str != null ? Long.parseLong(str) : 0;
+    }
+
+    private static void assertMatchesGetXmlString(String xml) throws Exception {
+        ServerInfo info = ServerInfo.parse(xml);
+
+        for (String tag : getTagNames(xml)) {
+            assertEquals(tag, oldString(xml, tag), info.getField(tag));
+        }
+        assertNull(info.getField("NoSuchTag"));
+
+        assertEquals(oldString(xml, "hostname"), info.getHostname());
+        assertEquals(NvHTTP.getXmlString(xml, "uniqueid", true), info.getUniqueId());
+        assertEquals(oldString(xml, "mac"), info.getMacAddress());
+        assertEquals(oldString(xml, "LocalIP"), info.getLocalIp());
+        assertEquals(oldString(xml, "ExternalIP"), info.getExternalIp());
+        assertEquals(NvHTTP.getXmlString(xml, "state", true), info.getState());
+        assertEquals(NvHTTP.getXmlString(xml, "appversion", true), info.getAppVersion());
+        assertEquals(NvHTTP.getXmlString(xml, "PairStatus", true).equals("1"), info.isPaired());
+        assertEquals(oldString(xml, "GfeVersion"), info.getGfeVersion());
+        assertEquals(oldString(xml, "SunshineVersion"), info.getSunshineVersion());
+        assertEquals(oldString(xml, "gputype"), info.getGpuType());
+        assertEquals(oldInt(xml, "HttpsPort", -1), info.getHttpsPort());
+        assertEquals(oldInt(xml, "ExternalPort", -1), info.getExternalPort());
+        assertEquals(oldLong(xml, "MaxLumaPixelsH264"), info.getMaxLumaPixelsH264());
+        assertEquals(oldLong(xml, "MaxLumaPixelsHEVC"), info.getMaxLumaPixelsHEVC());
+        assertEquals(oldLong(xml, "ServerCodecModeSupport"), info.getServerCodecModeSupport());
+
+        int oldCurrentGame = NvHTTP.getXmlString(xml, "state", true).endsWith("_SERVER_BUSY") ?
+                Integer.parseInt(NvHTTP.getXmlString(xml, "currentgame", true)) : 0;
+        assertEquals(oldCurrentGame, info.getCurrentGame());
+    }
+
+    @Test
+    public void gfeFieldsMatchGetXmlString() throws Exception {
+        assertMatchesGetXmlString(GFE_SERVERINFO);
+
+        ServerInfo info = ServerInfo.parse(GFE_SERVERINFO);
+        assertEquals("GAMING-PC", info.getHostname());
+        assertTrue(info.isPaired());
+        // Not busy, so the stale currentgame value is ignored
+        assertEquals(0, info.getCurrentGame());
+        // Not sent by recent GFE versions
+        assertEquals(-1, info.getExternalPort());
+        assertNull(info.getSunshineVersion());
+        // Nested elements keep their first value like getXmlString()
+        assertEquals("3840", info.getField("Width"));
+    }
+
+    @Test
+    public void sunshineFieldsMatchGetXmlString() throws Exception {
+        assertMatchesGetXmlString(SUNSHINE_SERVERINFO);
+
+        ServerInfo info = ServerInfo.parse(SUNSHINE_SERVERINFO);
+        assertEquals("living-room", info.getHostname());
+        assertFalse(info.isPaired());
+        assertEquals(881448767, info.getCurrentGame());
+        assertEquals(47989, info.getExternalPort());
+        assertEquals("2025.122.141614", info.getSunshineVersion());
+        assertNull(info.getGpuType());
+        assertEquals(0, info.getMaxLumaPixelsH264());
+    }
+
+    @Test
+    public void missingMandatoryFieldThrowsLikeGetXmlString() throws Exception {
+        String xml = SUNSHINE_SERVERINFO.replace("    <uniqueid>0123456789ABCDEF</uniqueid>\n", "");
+
+        ServerInfo info = ServerInfo.parse(xml);
+        assertNull(info.getField("uniqueid"));
+        try {
+            info.getUniqueId();
+            fail();
+        } catch (XmlPullParserException e) {
+            try {
+                NvHTTP.getXmlString(xml, "uniqueid", true);
+                fail();
+            } catch (XmlPullParserException expected) {
+                assertEquals(expected.getMessage(), e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void errorStatusThrowsLikeGetXmlString() throws Exception {
+        try {
+            ServerInfo.parse(ERROR_RESPONSE);
+            fail();
+        } catch (HostHttpResponseException e) {
+            assertEquals(401, e.getErrorCode());
+        }
+
+        try {
+            NvHTTP.getXmlString(ERROR_RESPONSE, "hostname", false);
+            fail();
+        } catch (HostHttpResponseException e) {
+            assertEquals(401, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void ofReusesOnlyTheSameString() throws Exception {
+        ServerInfo first = ServerInfo.of(GFE_SERVERINFO);
+        assertSame(first, ServerInfo.of(GFE_SERVERINFO));
+
+        // An equal response received again is a different string, and is parsed again
+        ServerInfo again = ServerInfo.of(new String(GFE_SERVERINFO.toCharArray()));
+        assertNotSame(first, again);
+        assertEquals("GAMING-PC", again.getHostname());
+
+        assertEquals("living-room", ServerInfo.of(SUNSHINE_SERVERINFO).getHostname());
+        assertEquals("GAMING-PC", ServerInfo.of(GFE_SERVERINFO).getHostname());
+    }
+
+    // The fields that getComputerDetails() read with one getXmlString() call each before
+    // ServerInfo, in the same order. The state is read twice.
+    static final String[] COMPUTER_DETAILS_FIELDS = {
+            "hostname", "uniqueid", "HttpsPort", "mac", "LocalIP", "ExternalPort", "ExternalIP",
+            "PairStatus", "state", "currentgame", "state", "SunshineVersion",
+    };
+
+    static int oldComputerDetails(String xml) throws Exception {
+        int hash = 0;
+        for (String field : COMPUTER_DETAILS_FIELDS) {
+            String value = NvHTTP.getXmlString(xml, field, false);
+            hash += value != null ? value.length() : 0;
+        }
+        return hash;
+    }
+
+    static int newComputerDetails(String xml) throws Exception {
+        ServerInfo info = ServerInfo.parse(xml);
+        int hash = 0;
+        for (String field : COMPUTER_DETAILS_FIELDS) {
+            String value = info.getField(field);
+            hash += value != null ? value.length() : 0;
+        }
+        return hash;
+    }
+
+    @Test
+    public void computerDetailsFieldsMatchGetXmlString() throws Exception {
+        assertEquals(oldComputerDetails(GFE_SERVERINFO), newComputerDetails(GFE_SERVERINFO));
+        assertEquals(oldComputerDetails(SUNSHINE_SERVERINFO), newComputerDetails(SUNSHINE_SERVERINFO));
+    }
+}